@@ -21,6 +21,9 @@ package org.apache.ofbiz.base.util.cache;
 import org.apache.ofbiz.base.concurrent.ExecutionPool;
 
 public abstract class CacheLine<V> extends ExecutionPool.Pulse {
+    /** When the line was put in the cache, only set when the cache refreshes its elements or keeps them off-heap. */
+    long writeTimeNanos;
+
     protected CacheLine(long loadTimeNanos, long expireTimeNanos) {
         super(loadTimeNanos, expireTimeNanos);
     }
@@ -0,0 +1,188 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.base.util.cache;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Stores serialized cache elements outside of the Java heap.
+ * <p>The memory is split in segments of direct <code>ByteBuffer</code>s, allocated when first used.
+ * Elements are appended to the current segment; when it is full the next one is reused, dropping
+ * the oldest elements it holds, so the store behaves as a FIFO of a fixed number of bytes.
+ * Only the index of the elements is kept on the heap.</p>
+ * <p>Writes are synchronized, reads are not: a read copies the bytes of the element, then checks
+ * the segment has not been reused meanwhile.</p>
+ */
+final class OffHeapStore {
+
+    private static final int MAX_SEGMENT_SIZE = 64 * 1024 * 1024;
+    private static final int MIN_SEGMENTS = 4;
+
+    private final ConcurrentHashMap<Object, Slot> index = new ConcurrentHashMap<>();
+    private final ByteBuffer[] segments;
+    private final AtomicIntegerArray generations;
+    private final int segmentSize;
+
+    // the fields below are guarded by this
+    private final List<List<Object>> segmentKeys;
+    private int writeSegment = 0;
+    private int writeOffset = 0;
+
+    /** Creates a new store.
+     *@param maxSize The maximum number of bytes used by the store
+     */
+    OffHeapStore(long maxSize) {
+        int segmentCount = (int) Math.max(MIN_SEGMENTS, (maxSize + MAX_SEGMENT_SIZE - 1) / MAX_SEGMENT_SIZE);
+        this.segmentSize = (int) Math.min(MAX_SEGMENT_SIZE, maxSize / segmentCount);
+        this.segments = new ByteBuffer[segmentCount];
+        this.generations = new AtomicIntegerArray(segmentCount);
+        this.segmentKeys = new ArrayList<>(segmentCount);
+        for (int i = 0; i < segmentCount; i++) {
+            segmentKeys.add(new ArrayList<>());
+        }
+    }
+
+    /** Stores the serialized element, replacing the previous one for this key.
+     *@param key The key of the element
+     *@param bytes The serialized element
+     *@param expireTimeNanos When the element expires, compared to System.nanoTime(), or 0 when it never expires
+     *@return false if the element is too large to be stored
+     */
+    synchronized boolean put(Object key, byte[] bytes, long expireTimeNanos) {
+        if (bytes.length > segmentSize) {
+            index.remove(key);
+            return false;
+        }
+        if (writeOffset + bytes.length > segmentSize) {
+            nextSegment();
+        }
+        if (segments[writeSegment] == null) {
+            segments[writeSegment] = ByteBuffer.allocateDirect(segmentSize);
+        }
+        ByteBuffer buffer = segments[writeSegment].duplicate();
+        buffer.position(writeOffset);
+        buffer.put(bytes);
+        index.put(key, new Slot(writeSegment, generations.get(writeSegment), writeOffset, bytes.length, expireTimeNanos));
+        segmentKeys.get(writeSegment).add(key);
+        writeOffset += bytes.length;
+        return true;
+    }
+
+    private void nextSegment() {
+        writeSegment = (writeSegment + 1) % segments.length;
+        writeOffset = 0;
+        // readers of this segment check the generation after copying their bytes
+        generations.incrementAndGet(writeSegment);
+        List<Object> keys = segmentKeys.get(writeSegment);
+        for (Object key : keys) {
+            Slot slot = index.get(key);
+            if (slot != null && slot.segment == writeSegment) {
+                index.remove(key, slot);
+            }
+        }
+        keys.clear();
+    }
+
+    /** Returns the location of the element, or null when it is not found. */
+    Slot getSlot(Object key) {
+        return index.get(key);
+    }
+
+    /** Returns the serialized element stored at the passed location, or null when it expired or was overwritten. */
+    byte[] read(Object key, Slot slot) {
+        if (slot.expireTimeNanos > 0 && slot.expireTimeNanos - System.nanoTime() <= 0) {
+            index.remove(key, slot);
+            return null;
+        }
+        if (generations.get(slot.segment) != slot.generation) {
+            return null;
+        }
+        byte[] bytes = new byte[slot.length];
+        ByteBuffer buffer = segments[slot.segment].duplicate();
+        buffer.position(slot.offset);
+        buffer.get(bytes);
+        if (generations.get(slot.segment) != slot.generation) {
+            return null;
+        }
+        return bytes;
+    }
+
+    /** Removes the element only if it is still stored at the passed location. */
+    boolean remove(Object key, Slot slot) {
+        return index.remove(key, slot);
+    }
+
+    boolean remove(Object key) {
+        return index.remove(key) != null;
+    }
+
+    boolean containsKey(Object key) {
+        return index.containsKey(key);
+    }
+
+    Set<Object> keySet() {
+        return index.keySet();
+    }
+
+    int size() {
+        return index.size();
+    }
+
+    /** Returns the number of bytes allocated outside of the heap. */
+    synchronized long getAllocatedSize() {
+        long allocated = 0;
+        for (ByteBuffer segment : segments) {
+            if (segment != null) {
+                allocated += segment.capacity();
+            }
+        }
+        return allocated;
+    }
+
+    synchronized void clear() {
+        for (int i = 0; i < segments.length; i++) {
+            generations.incrementAndGet(i);
+            segmentKeys.get(i).clear();
+        }
+        index.clear();
+        writeSegment = 0;
+        writeOffset = 0;
+    }
+
+    static final class Slot {
+        private final int segment;
+        private final int generation;
+        private final int offset;
+        private final int length;
+        final long expireTimeNanos;
+
+        private Slot(int segment, int generation, int offset, int length, long expireTimeNanos) {
+            this.segment = segment;
+            this.generation = generation;
+            this.offset = offset;
+            this.length = length;
+            this.expireTimeNanos = expireTimeNanos;
+        }
+    }
+}
@@ -0,0 +1,498 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.base.util.cache;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.googlecode.concurrentlinkedhashmap.EvictionListener;
+
+/**
+ * A bounded concurrent map evicting with the W-TinyLFU policy.
+ * <p>New entries go into a small LRU admission window (1% of the capacity). Entries leaving
+ * the window only enter the main space, a segmented LRU split in probation and protected parts,
+ * when they have been used more often than the probation entry they would evict. Usage is
+ * estimated by a {@link FrequencySketch}, so a large scan of keys used only once cannot push
+ * the frequently used entries out of the cache, as it does with a plain LRU.</p>
+ * <p>The entries are held in a <code>ConcurrentHashMap</code>, the eviction policy is updated
+ * under a lock. Reads record the accessed entry in a lossy buffer which is replayed when
+ * the lock is available, so they never wait on it.</p>
+ */
+public class TinyLfuCacheMap<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V> {
+
+    private static final int READ_BUFFER_SIZE = 128;
+    private static final int READ_BUFFER_MASK = READ_BUFFER_SIZE - 1;
+    private static final int DRAIN_MASK = 15;
+
+    private static final int NONE = 0;
+    private static final int WINDOW = 1;
+    private static final int PROBATION = 2;
+    private static final int PROTECTED = 3;
+
+    private final ConcurrentHashMap<K, Node<K, V>> data = new ConcurrentHashMap<>();
+    private final ReentrantLock evictionLock = new ReentrantLock();
+    private final AtomicReferenceArray<Node<K, V>> readBuffer = new AtomicReferenceArray<>(READ_BUFFER_SIZE);
+    private final EvictionListener<K, V> listener;
+    private final FrequencySketch sketch;
+
+    // the fields below are guarded by the eviction lock
+    private final Node<K, V> window = new Node<>(null, null);
+    private final Node<K, V> probation = new Node<>(null, null);
+    private final Node<K, V> protectedSpace = new Node<>(null, null);
+    private int windowSize;
+    private int probationSize;
+    private int protectedSize;
+    private int maximum;
+    private int windowMaximum;
+    private int protectedMaximum;
+
+    /** Creates a new map.
+     *@param capacity The maximum number of entries held by the map
+     *@param listener Notified of the entries evicted by the policy, can be null
+     */
+    public TinyLfuCacheMap(int capacity, EvictionListener<K, V> listener) {
+        this.listener = listener;
+        this.sketch = new FrequencySketch(capacity);
+        window.clear();
+        probation.clear();
+        protectedSpace.clear();
+        setMaximum(capacity);
+    }
+
+    private void setMaximum(int capacity) {
+        maximum = Math.max(capacity, 1);
+        windowMaximum = Math.max(maximum / 100, 1);
+        protectedMaximum = (maximum - windowMaximum) * 4 / 5;
+    }
+
+    /** Changes the maximum number of entries, evicting the entries over the new capacity. */
+    public void setCapacity(int capacity) {
+        List<Node<K, V>> evicted = new LinkedList<>();
+        evictionLock.lock();
+        try {
+            setMaximum(capacity);
+            sketch.ensureCapacity(maximum);
+            while (protectedSize > protectedMaximum) {
+                Node<K, V> node = protectedSpace.next;
+                node.unlink();
+                protectedSize--;
+                node.linkLast(probation, PROBATION);
+                probationSize++;
+            }
+            evict(evicted);
+        } finally {
+            evictionLock.unlock();
+        }
+        notifyListener(evicted);
+    }
+
+    public int capacity() {
+        return maximum;
+    }
+
+    @Override
+    public int size() {
+        return data.size();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return data.isEmpty();
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return data.containsKey(key);
+    }
+
+    @Override
+    public V get(Object key) {
+        Node<K, V> node = data.get(key);
+        if (node == null) {
+            return null;
+        }
+        afterRead(node);
+        return node.value;
+    }
+
+    @Override
+    public V put(K key, V value) {
+        return put(key, value, false);
+    }
+
+    @Override
+    public V putIfAbsent(K key, V value) {
+        return put(key, value, true);
+    }
+
+    private V put(K key, V value, boolean onlyIfAbsent) {
+        if (key == null || value == null) {
+            throw new NullPointerException();
+        }
+        Node<K, V> node = new Node<>(key, value);
+        while (true) {
+            Node<K, V> prior = data.putIfAbsent(key, node);
+            if (prior == null) {
+                afterAdd(node);
+                return null;
+            }
+            if (onlyIfAbsent) {
+                afterRead(prior);
+                return prior.value;
+            }
+            V oldValue;
+            synchronized (prior) {
+                if (!prior.alive) {
+                    continue;
+                }
+                oldValue = prior.value;
+                prior.value = value;
+            }
+            afterRead(prior);
+            return oldValue;
+        }
+    }
+
+    @Override
+    public V replace(K key, V value) {
+        if (value == null) {
+            throw new NullPointerException();
+        }
+        Node<K, V> node = data.get(key);
+        if (node == null) {
+            return null;
+        }
+        V oldValue;
+        synchronized (node) {
+            if (!node.alive) {
+                return null;
+            }
+            oldValue = node.value;
+            node.value = value;
+        }
+        afterRead(node);
+        return oldValue;
+    }
+
+    @Override
+    public boolean replace(K key, V oldValue, V newValue) {
+        if (oldValue == null || newValue == null) {
+            throw new NullPointerException();
+        }
+        Node<K, V> node = data.get(key);
+        if (node == null) {
+            return false;
+        }
+        synchronized (node) {
+            if (!node.alive || !oldValue.equals(node.value)) {
+                return false;
+            }
+            node.value = newValue;
+        }
+        afterRead(node);
+        return true;
+    }
+
+    @Override
+    public V remove(Object key) {
+        Node<K, V> node = data.get(key);
+        if (node == null) {
+            return null;
+        }
+        V oldValue;
+        synchronized (node) {
+            if (!node.alive || !data.remove(key, node)) {
+                return null;
+            }
+            node.alive = false;
+            oldValue = node.value;
+        }
+        afterRemove(node);
+        return oldValue;
+    }
+
+    @Override
+    public boolean remove(Object key, Object value) {
+        Node<K, V> node = data.get(key);
+        if (node == null || value == null) {
+            return false;
+        }
+        synchronized (node) {
+            if (!node.alive || !value.equals(node.value) || !data.remove(key, node)) {
+                return false;
+            }
+            node.alive = false;
+        }
+        afterRemove(node);
+        return true;
+    }
+
+    @Override
+    public void clear() {
+        for (K key : data.keySet()) {
+            remove(key);
+        }
+    }
+
+    @Override
+    public Set<Map.Entry<K, V>> entrySet() {
+        return new EntrySet();
+    }
+
+    private void afterRead(Node<K, V> node) {
+        int index = ThreadLocalRandom.current().nextInt() & READ_BUFFER_MASK;
+        readBuffer.lazySet(index, node);
+        if ((index & DRAIN_MASK) == 0 && evictionLock.tryLock()) {
+            try {
+                drainReadBuffer();
+            } finally {
+                evictionLock.unlock();
+            }
+        }
+    }
+
+    private void afterAdd(Node<K, V> node) {
+        List<Node<K, V>> evicted = new LinkedList<>();
+        evictionLock.lock();
+        try {
+            drainReadBuffer();
+            if (node.alive && node.queue == NONE) {
+                sketch.increment(node.key);
+                node.linkLast(window, WINDOW);
+                windowSize++;
+                evict(evicted);
+            }
+        } finally {
+            evictionLock.unlock();
+        }
+        notifyListener(evicted);
+    }
+
+    private void afterRemove(Node<K, V> node) {
+        evictionLock.lock();
+        try {
+            unlink(node);
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    private void drainReadBuffer() {
+        for (int i = 0; i < READ_BUFFER_SIZE; i++) {
+            Node<K, V> node = readBuffer.getAndSet(i, null);
+            if (node != null) {
+                onAccess(node);
+            }
+        }
+    }
+
+    private void onAccess(Node<K, V> node) {
+        if (!node.alive || node.queue == NONE) {
+            return;
+        }
+        sketch.increment(node.key);
+        switch (node.queue) {
+        case WINDOW:
+            node.unlink();
+            node.linkLast(window, WINDOW);
+            break;
+        case PROBATION:
+            node.unlink();
+            probationSize--;
+            node.linkLast(protectedSpace, PROTECTED);
+            protectedSize++;
+            if (protectedSize > protectedMaximum) {
+                Node<K, V> demoted = protectedSpace.next;
+                demoted.unlink();
+                protectedSize--;
+                demoted.linkLast(probation, PROBATION);
+                probationSize++;
+            }
+            break;
+        case PROTECTED:
+            node.unlink();
+            node.linkLast(protectedSpace, PROTECTED);
+            break;
+        default:
+            break;
+        }
+    }
+
+    private void unlink(Node<K, V> node) {
+        switch (node.queue) {
+        case WINDOW:
+            windowSize--;
+            break;
+        case PROBATION:
+            probationSize--;
+            break;
+        case PROTECTED:
+            protectedSize--;
+            break;
+        default:
+            return;
+        }
+        node.unlink();
+    }
+
+    /** Moves the entries over the window size to probation, then evicts until the map is within its capacity.
+     * The entries coming from the window are the candidates, each one is compared with the victim at the head
+     * of probation and the least frequently used of the two is evicted.
+     */
+    private void evict(List<Node<K, V>> evicted) {
+        int candidates = 0;
+        while (windowSize > windowMaximum) {
+            Node<K, V> node = window.next;
+            node.unlink();
+            windowSize--;
+            node.linkLast(probation, PROBATION);
+            probationSize++;
+            candidates++;
+        }
+        while (windowSize + probationSize + protectedSize > maximum) {
+            Node<K, V> victim = probation.next;
+            if (victim == probation) {
+                victim = protectedSpace.next != protectedSpace ? protectedSpace.next : window.next;
+                evictNode(victim, evicted);
+                continue;
+            }
+            Node<K, V> candidate = candidates > 0 ? probation.prev : victim;
+            if (candidate == victim) {
+                candidates = 0;
+                evictNode(victim, evicted);
+            } else if (sketch.frequency(candidate.key) > sketch.frequency(victim.key)) {
+                evictNode(victim, evicted);
+            } else {
+                candidates--;
+                evictNode(candidate, evicted);
+            }
+        }
+    }
+
+    private void evictNode(Node<K, V> node, List<Node<K, V>> evicted) {
+        unlink(node);
+        synchronized (node) {
+            if (node.alive && data.remove(node.key, node)) {
+                node.alive = false;
+                evicted.add(node);
+            }
+        }
+    }
+
+    private void notifyListener(List<Node<K, V>> evicted) {
+        if (listener != null) {
+            for (Node<K, V> node : evicted) {
+                listener.onEviction(node.key, node.value);
+            }
+        }
+    }
+
+    private static final class Node<K, V> {
+        private final K key;
+        private volatile V value;
+        private volatile boolean alive = true;
+        // the fields below are guarded by the eviction lock
+        private int queue = NONE;
+        private Node<K, V> prev;
+        private Node<K, V> next;
+
+        private Node(K key, V value) {
+            this.key = key;
+            this.value = value;
+        }
+
+        /** Makes this node the empty head of a queue. */
+        private void clear() {
+            prev = this;
+            next = this;
+        }
+
+        private void linkLast(Node<K, V> head, int queue) {
+            this.queue = queue;
+            prev = head.prev;
+            next = head;
+            head.prev.next = this;
+            head.prev = this;
+        }
+
+        private void unlink() {
+            prev.next = next;
+            next.prev = prev;
+            prev = null;
+            next = null;
+            queue = NONE;
+        }
+    }
+
+    private final class EntrySet extends AbstractSet<Map.Entry<K, V>> {
+        @Override
+        public int size() {
+            return data.size();
+        }
+
+        @Override
+        public void clear() {
+            TinyLfuCacheMap.this.clear();
+        }
+
+        @Override
+        public Iterator<Map.Entry<K, V>> iterator() {
+            final Iterator<Node<K, V>> it = data.values().iterator();
+            return new Iterator<Map.Entry<K, V>>() {
+                private Node<K, V> current;
+
+                @Override
+                public boolean hasNext() {
+                    return it.hasNext();
+                }
+
+                @Override
+                public Map.Entry<K, V> next() {
+                    current = it.next();
+                    return new SimpleEntry<K, V>(current.key, current.value) {
+                        @Override
+                        public V setValue(V value) {
+                            super.setValue(value);
+                            return put(getKey(), value);
+                        }
+                    };
+                }
+
+                @Override
+                public void remove() {
+                    if (current == null) {
+                        throw new IllegalStateException();
+                    }
+                    TinyLfuCacheMap.this.remove(current.key);
+                    current = null;
+                }
+            };
+        }
+    }
+}
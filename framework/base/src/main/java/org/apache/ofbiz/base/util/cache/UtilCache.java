@@ -18,7 +18,10 @@
  *******************************************************************************/
 package org.apache.ofbiz.base.util.cache;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.io.NotSerializableException;
+import java.io.ObjectOutputStream;
 import java.io.Serializable;
 import java.util.Arrays;
 import java.util.Collection;
@@ -37,7 +40,8 @@ import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.CopyOnWriteArraySet;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
-import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
 
 import org.apache.ofbiz.base.concurrent.ExecutionPool;
 import org.apache.ofbiz.base.util.Debug;
@@ -54,10 +58,13 @@ import com.googlecode.concurrentlinkedhashmap.EvictionListener;
  * Generalized caching utility. Provides a number of caching features:
  * <ul>
  *   <li>Limited or unlimited element capacity
- *   <li>If limited, removes elements with the LRU (Least Recently Used) algorithm
+ *   <li>If limited, removes elements with the LRU (Least Recently Used) algorithm, or with the
+ *       W-TinyLFU algorithm when the evictionPolicy of the cache is set to tinylfu
  *   <li>Keeps track of when each element was loaded into the cache
  *   <li>Using the expireTime can report whether a given element has expired
  *   <li>Counts misses and hits
+ *   <li>Using the refreshAfterWrite time can reload elements in the background when read through a loader
+ *   <li>Using the offHeapMaxSize can keep the serializable elements evicted from memory outside of the Java heap
  * </ul>
  *
  */
@@ -66,6 +73,9 @@ public class UtilCache<K, V> implements Serializable, EvictionListener<Object, C
 
     public static final String module = UtilCache.class.getName();
 
+    public static final String EVICTION_POLICY_LRU = "lru";
+    public static final String EVICTION_POLICY_TINYLFU = "tinylfu";
+
     /** A static Map to keep track of all of the UtilCache instances. */
     private static final ConcurrentHashMap<String, UtilCache<?, ?>> utilCacheTable = new ConcurrentHashMap<>();
 
@@ -76,19 +86,22 @@ public class UtilCache<K, V> implements Serializable, EvictionListener<Object, C
     private final String name;
 
     /** A count of the number of cache hits */
-    protected AtomicLong hitCount = new AtomicLong(0);
+    protected final LongAdder hitCount = new LongAdder();
 
     /** A count of the number of cache misses because it is not found in the cache */
-    protected AtomicLong missCountNotFound = new AtomicLong(0);
+    protected final LongAdder missCountNotFound = new LongAdder();
     /** A count of the number of cache misses because it expired */
-    protected AtomicLong missCountExpired = new AtomicLong(0);
+    protected final LongAdder missCountExpired = new LongAdder();
     /** A count of the number of cache misses because it was cleared from the Soft Reference (ie garbage collection, etc) */
-    protected AtomicLong missCountSoftRef = new AtomicLong(0);
+    protected final LongAdder missCountSoftRef = new LongAdder();
+
+    /** A count of the number of cache hits served from the off-heap store */
+    protected final LongAdder offHeapHitCount = new LongAdder();
 
     /** A count of the number of cache hits on removes */
-    protected AtomicLong removeHitCount = new AtomicLong(0);
+    protected final LongAdder removeHitCount = new LongAdder();
     /** A count of the number of cache misses on removes */
-    protected AtomicLong removeMissCount = new AtomicLong(0);
+    protected final LongAdder removeMissCount = new LongAdder();
 
     /** The maximum number of elements in the cache.
      * If set to 0, there will be no limit on the number of elements in the cache.
@@ -104,6 +117,33 @@ public class UtilCache<K, V> implements Serializable, EvictionListener<Object, C
     /** Specifies whether or not to use soft references for this cache, defaults to false */
     protected boolean useSoftReference = false;
 
+    /** The eviction policy used when the number of elements is limited, either lru (the default) or tinylfu.
+     * The tinylfu policy only admits new elements in the cache when they are used more often than the elements
+     * they evict, so it keeps the frequently used elements when many elements are read only once.
+     */
+    protected String evictionPolicy = EVICTION_POLICY_LRU;
+
+    /** Specifies the amount of time since loading after which an element read with a loader is reloaded in the background.
+     * If set to 0, elements are never refreshed.
+     */
+    protected long refreshAfterWriteNanos = 0;
+
+    /** The maximum number of bytes used outside of the Java heap by the elements evicted from memory.
+     * If set to 0, evicted elements are dropped. Only useful when the number of elements in memory is limited.
+     */
+    protected long offHeapMaxSize = 0;
+
+    private volatile OffHeapStore offHeapStore = null;
+
+    /** How long the removed keys are remembered, much longer than the time between the eviction of an element and its move off-heap. */
+    private static final long OFF_HEAP_REMOVE_TIME_NANOS = TimeUnit.NANOSECONDS.convert(60, TimeUnit.SECONDS);
+    private final ConcurrentHashMap<Object, Long> offHeapRemoveTimes = new ConcurrentHashMap<>();
+    private volatile long offHeapClearTimeNanos = System.nanoTime();
+    private volatile long offHeapRemoveTimesPurgeNanos = System.nanoTime();
+
+    /** The keys being reloaded in the background, so each key is only reloaded once at a time. */
+    private final Set<Object> refreshingKeys = ConcurrentHashMap.newKeySet();
+
     /** The set of listeners to receive notifications when items are modified (either deliberately or because they were expired). */
     protected Set<CacheListener<K, V>> listeners = new CopyOnWriteArraySet<>();
 
@@ -128,14 +168,23 @@ public class UtilCache<K, V> implements Serializable, EvictionListener<Object, C
         if (maxMemSize == 0) {
             maxMemSize = sizeLimit;
         }
+        memoryTable = createMemoryTable(maxMemSize);
+        if (offHeapMaxSize > 0) {
+            offHeapStore = new OffHeapStore(offHeapMaxSize);
+        }
+    }
+
+    private ConcurrentMap<Object, CacheLine<V>> createMemoryTable(int maxMemSize) {
         if (maxMemSize == 0) {
-            memoryTable = new ConcurrentHashMap<>();
-        } else {
-            memoryTable = new Builder<Object, CacheLine<V>>()
-            .maximumWeightedCapacity(maxMemSize)
-            .listener(this)
-            .build();
+            return new ConcurrentHashMap<>();
+        }
+        if (EVICTION_POLICY_TINYLFU.equals(evictionPolicy)) {
+            return new TinyLfuCacheMap<>(maxMemSize, this);
         }
+        return new Builder<Object, CacheLine<V>>()
+                .maximumWeightedCapacity(maxMemSize)
+                .listener(this)
+                .build();
     }
 
     private static String getNextDefaultIndex(String cacheName) {
@@ -193,6 +242,22 @@ public class UtilCache<K, V> implements Serializable, EvictionListener<Object, C
             if (value != null) {
                 useSoftReference = "true".equals(value);
             }
+            value = getPropertyParam(res, propNames, "evictionPolicy");
+            if (UtilValidate.isNotEmpty(value)) {
+                if (EVICTION_POLICY_TINYLFU.equals(value) || EVICTION_POLICY_LRU.equals(value)) {
+                    this.evictionPolicy = value;
+                } else {
+                    Debug.logWarning("Unknown evictionPolicy [" + value + "] for cache " + Arrays.toString(propNames) + ", using " + this.evictionPolicy, module);
+                }
+            }
+            value = getPropertyParam(res, propNames, "refreshAfterWrite");
+            if (UtilValidate.isNotEmpty(value)) {
+                this.refreshAfterWriteNanos = TimeUnit.NANOSECONDS.convert(Long.parseLong(value), TimeUnit.MILLISECONDS);
+            }
+            value = getPropertyParam(res, propNames, "offHeapMaxSize");
+            if (UtilValidate.isNotEmpty(value)) {
+                this.offHeapMaxSize = Long.parseLong(value);
+            }
         }
     }
 
@@ -279,10 +344,16 @@ public class UtilCache<K, V> implements Serializable, EvictionListener<Object, C
 
     private CacheLine<V> createCacheLine(K key, V value, long expireTimeNanos) {
         long loadTimeNanos = expireTimeNanos > 0 ? System.nanoTime() : 0;
+        CacheLine<V> line;
         if (useSoftReference) {
-            return createSoftRefCacheLine(key, value, loadTimeNanos, expireTimeNanos);
+            line = createSoftRefCacheLine(key, value, loadTimeNanos, expireTimeNanos);
+        } else {
+            line = createHardRefCacheLine(key, value, loadTimeNanos, expireTimeNanos);
         }
-        return createHardRefCacheLine(key, value, loadTimeNanos, expireTimeNanos);
+        if (refreshAfterWriteNanos > 0 || offHeapStore != null) {
+            line.writeTimeNanos = loadTimeNanos > 0 ? loadTimeNanos : System.nanoTime();
+        }
+        return line;
     }
     private V cancel(CacheLine<V> line) {
         // FIXME: this is a race condition, the item could expire
@@ -310,6 +381,10 @@ public class UtilCache<K, V> implements Serializable, EvictionListener<Object, C
         Object nulledKey = fromKey(key);
         CacheLine<V> oldCacheLine = memoryTable.put(nulledKey, createCacheLine(key, value, expireTimeNanos));
         V oldValue = oldCacheLine == null ? null : cancel(oldCacheLine);
+        OffHeapStore store = offHeapStore;
+        if (store != null) {
+            store.remove(nulledKey);
+        }
         if (oldValue == null) {
             noteAddition(key, value);
             return null;
@@ -325,6 +400,10 @@ public class UtilCache<K, V> implements Serializable, EvictionListener<Object, C
         CacheLine<V> oldCacheLine = memoryTable.putIfAbsent(nulledKey, newCacheLine);
         if (oldCacheLine == null) {
             oldValue = null;
+            OffHeapStore store = offHeapStore;
+            if (store != null) {
+                store.remove(nulledKey);
+            }
         } else {
             oldValue = oldCacheLine.getValue();
             cancel(newCacheLine);
@@ -344,16 +423,167 @@ public class UtilCache<K, V> implements Serializable, EvictionListener<Object, C
         boolean countGet = true;
         Object nulledKey = fromKey(key);
         CacheLine<V> line = memoryTable.get(nulledKey);
+        if (line == null && offHeapStore != null) {
+            V value = getOffHeap(toKey(nulledKey), nulledKey);
+            if (value != null) {
+                hitCount.increment();
+                return value;
+            }
+        }
         if (line == null) {
-            missCountNotFound.incrementAndGet();
+            missCountNotFound.increment();
         } else {
             if (countGet) {
-                hitCount.incrementAndGet();
+                hitCount.increment();
             }
         }
         return line != null ? line.getValue() : null;
     }
 
+    /** Gets an element from the cache according to the specified key, loading it with the passed loader when it is not found.
+     * If refreshAfterWrite is set and the element was put in the cache longer ago, the cached value is returned
+     * and a new value is loaded in the background.
+     * @param key The key for the element, used to reference it in the hashtables and LRU linked list
+     * @param loader Loads the value of the element, may return null when there is none
+     * @return The value of the element specified by the key
+     */
+    public V get(K key, Function<? super K, ? extends V> loader) {
+        Object nulledKey = fromKey(key);
+        CacheLine<V> line = memoryTable.get(nulledKey);
+        V value = line != null ? line.getValue() : null;
+        if (line == null && offHeapStore != null) {
+            value = getOffHeap(key, nulledKey);
+            line = memoryTable.get(nulledKey);
+        }
+        if (value == null) {
+            missCountNotFound.increment();
+            value = loader.apply(key);
+            return value != null ? putIfAbsentAndGet(key, value) : null;
+        }
+        hitCount.increment();
+        if (refreshAfterWriteNanos > 0 && line != null && line.writeTimeNanos > 0 && System.nanoTime() - line.writeTimeNanos > refreshAfterWriteNanos
+                && refreshingKeys.add(nulledKey)) {
+            CacheLine<V> refreshedLine = line;
+            ExecutionPool.GLOBAL_BATCH.submit(() -> {
+                try {
+                    V newValue = loader.apply(key);
+                    if (newValue != null) {
+                        replaceInternal(key, refreshedLine, newValue);
+                    }
+                } catch (RuntimeException e) {
+                    Debug.logWarning(e, "Error refreshing key [" + key + "] of cache " + getName(), module);
+                } finally {
+                    refreshingKeys.remove(nulledKey);
+                }
+            });
+        }
+        return value;
+    }
+
+    /** Replaces the line of an element with a new value, unless the line was removed or replaced meanwhile,
+     * so that a value loaded in the background does not overwrite a newer value or come back after a remove.
+     */
+    private boolean replaceInternal(K key, CacheLine<V> oldCacheLine, V value) {
+        CacheLine<V> newCacheLine = createCacheLine(key, value, expireTimeNanos);
+        if (!memoryTable.replace(fromKey(key), oldCacheLine, newCacheLine)) {
+            cancel(newCacheLine);
+            return false;
+        }
+        V oldValue = cancel(oldCacheLine);
+        if (oldValue == null) {
+            noteAddition(key, value);
+        } else {
+            noteUpdate(key, value, oldValue);
+        }
+        return true;
+    }
+
+    /** Reads an element evicted from memory back from the off-heap store, and puts it in memory again. */
+    private V getOffHeap(K key, Object nulledKey) {
+        OffHeapStore store = offHeapStore;
+        if (store == null) {
+            return null;
+        }
+        OffHeapStore.Slot slot = store.getSlot(nulledKey);
+        if (slot == null) {
+            return null;
+        }
+        byte[] bytes = store.read(nulledKey, slot);
+        V value = bytes != null ? readOffHeapValue(bytes) : null;
+        if (value == null) {
+            store.remove(nulledKey, slot);
+            return null;
+        }
+        long expireTimeNanos = 0;
+        if (slot.expireTimeNanos > 0) {
+            expireTimeNanos = Math.max(slot.expireTimeNanos - System.nanoTime(), 1);
+        }
+        // synchronized with the removes, so a removed element cannot come back from the off-heap store
+        synchronized (this) {
+            if (!store.remove(nulledKey, slot)) {
+                // changed or read back meanwhile
+                CacheLine<V> line = memoryTable.get(nulledKey);
+                return line != null ? line.getValue() : null;
+            }
+            CacheLine<V> newCacheLine = createCacheLine(key, value, expireTimeNanos);
+            CacheLine<V> oldCacheLine = memoryTable.putIfAbsent(nulledKey, newCacheLine);
+            if (oldCacheLine != null) {
+                cancel(newCacheLine);
+                return oldCacheLine.getValue();
+            }
+        }
+        offHeapHitCount.increment();
+        return value;
+    }
+
+    private V readOffHeapValue(byte[] bytes) {
+        try {
+            return UtilGenerics.<V>cast(UtilObject.getObjectException(bytes));
+        } catch (ClassCastException | ClassNotFoundException | IOException e) {
+            Debug.logWarning(e, "Unable to read back an element of cache " + getName() + " from the off-heap store", module);
+            return null;
+        }
+    }
+
+    /** Moves an element evicted from memory to the off-heap store, if it is serializable. */
+    private void putOffHeap(OffHeapStore store, Object nulledKey, CacheLine<V> line) {
+        V value = line.getValue();
+        if (!(value instanceof Serializable)) {
+            return;
+        }
+        byte[] bytes;
+        try (ByteArrayOutputStream bos = new ByteArrayOutputStream(); ObjectOutputStream oos = new ObjectOutputStream(bos)) {
+            oos.writeObject(value);
+            oos.flush();
+            bytes = bos.toByteArray();
+        } catch (IOException e) {
+            if (Debug.verboseOn()) {
+                Debug.logVerbose("Not moving element of " + value.getClass() + " off-heap for cache " + getName() + ": " + e, module);
+            }
+            return;
+        }
+        long expireTimeNanos = line.getLoadTimeNanos() > 0 ? line.getExpireTimeNanos() : 0;
+        synchronized (this) {
+            // the element is already out of memory, so a remove done since then could not see it
+            Long removeTimeNanos = offHeapRemoveTimes.get(nulledKey);
+            if (line.writeTimeNanos == 0 || line.writeTimeNanos - offHeapClearTimeNanos < 0
+                    || (removeTimeNanos != null && line.writeTimeNanos - removeTimeNanos < 0)) {
+                return;
+            }
+            store.put(nulledKey, bytes, expireTimeNanos);
+        }
+        long now = System.nanoTime();
+        if (now - offHeapRemoveTimesPurgeNanos > OFF_HEAP_REMOVE_TIME_NANOS) {
+            offHeapRemoveTimesPurgeNanos = now;
+            offHeapRemoveTimes.values().removeIf(removeTimeNanos -> now - removeTimeNanos > OFF_HEAP_REMOVE_TIME_NANOS);
+        }
+    }
+
+    /** Records the removal of a key, so an element of the key evicted from memory before is not moved off-heap. */
+    private void noteOffHeapRemove(Object nulledKey) {
+        offHeapRemoveTimes.put(nulledKey, System.nanoTime());
+    }
+
     public Collection<V> values() {
         List<V> valuesList = new LinkedList<>();
         for (CacheLine<V> line: memoryTable.values()) {
@@ -422,15 +652,24 @@ public class UtilCache<K, V> implements Serializable, EvictionListener<Object, C
         if (oldCacheLine != null) {
             cancel(oldCacheLine);
         }
+        OffHeapStore store = offHeapStore;
+        if (store != null) {
+            noteOffHeapRemove(nulledKey);
+            OffHeapStore.Slot slot = store.getSlot(nulledKey);
+            if (slot != null && store.remove(nulledKey, slot) && oldValue == null) {
+                byte[] bytes = store.read(nulledKey, slot);
+                oldValue = bytes != null ? readOffHeapValue(bytes) : null;
+            }
+        }
         if (oldValue != null) {
             noteRemoval((K) key, oldValue);
             if (countRemove) {
-                removeHitCount.incrementAndGet();
+                removeHitCount.increment();
             }
             return oldValue;
         }
         if (countRemove) {
-            removeMissCount.incrementAndGet();
+            removeMissCount.increment();
         }
         return null;
     }
@@ -450,9 +689,14 @@ public class UtilCache<K, V> implements Serializable, EvictionListener<Object, C
         while (it.hasNext()) {
             Map.Entry<Object, CacheLine<V>> entry = it.next();
             noteRemoval(toKey(entry.getKey()), entry.getValue().getValue());
-            removeHitCount.incrementAndGet();
+            removeHitCount.increment();
             it.remove();
         }
+        OffHeapStore store = offHeapStore;
+        if (store != null) {
+            offHeapClearTimeNanos = System.nanoTime();
+            store.clear();
+        }
     }
 
     public void clear() {
@@ -485,28 +729,28 @@ public class UtilCache<K, V> implements Serializable, EvictionListener<Object, C
      * @return The number of successful cache hits
      */
     public long getHitCount() {
-        return this.hitCount.get();
+        return this.hitCount.sum();
     }
 
     /** Returns the number of cache misses from entries that are not found in the cache
      * @return The number of cache misses
      */
     public long getMissCountNotFound() {
-        return this.missCountNotFound.get();
+        return this.missCountNotFound.sum();
     }
 
     /** Returns the number of cache misses from entries that are expired
      * @return The number of cache misses
      */
     public long getMissCountExpired() {
-        return this.missCountExpired.get();
+        return this.missCountExpired.sum();
     }
 
     /** Returns the number of cache misses from entries that are have had the soft reference cleared out (by garbage collector and such)
      * @return The number of cache misses
      */
     public long getMissCountSoftRef() {
-        return this.missCountSoftRef.get();
+        return this.missCountSoftRef.sum();
     }
 
     /** Returns the number of cache misses caused by any reason
@@ -516,23 +760,31 @@ public class UtilCache<K, V> implements Serializable, EvictionListener<Object, C
         return getMissCountSoftRef() + getMissCountNotFound() + getMissCountExpired();
     }
 
+    /** Returns the number of successful hits on the off-heap store, they are also counted in the hit count
+     * @return The number of successful off-heap store hits
+     */
+    public long getOffHeapHitCount() {
+        return this.offHeapHitCount.sum();
+    }
+
     public long getRemoveHitCount() {
-        return this.removeHitCount.get();
+        return this.removeHitCount.sum();
     }
 
     public long getRemoveMissCount() {
-        return this.removeMissCount.get();
+        return this.removeMissCount.sum();
     }
 
     /** Clears the hit and miss counters
      */
     public void clearCounters() {
-        this.hitCount.set(0);
-        this.missCountNotFound.set(0);
-        this.missCountExpired.set(0);
-        this.missCountSoftRef.set(0);
-        this.removeHitCount.set(0);
-        this.removeMissCount.set(0);
+        this.hitCount.reset();
+        this.missCountNotFound.reset();
+        this.missCountExpired.reset();
+        this.missCountSoftRef.reset();
+        this.removeHitCount.reset();
+        this.removeMissCount.reset();
+        this.offHeapHitCount.reset();
     }
 
     public void setMaxInMemory(int newInMemory) {
@@ -544,12 +796,12 @@ public class UtilCache<K, V> implements Serializable, EvictionListener<Object, C
                 ((ConcurrentLinkedHashMap<?, ?>) this.memoryTable).setCapacity(newInMemory);
                 return;
             }
-            this.memoryTable =new Builder<Object, CacheLine<V>>()
-                    .maximumWeightedCapacity(newInMemory)
-                    .build();
-        } else {
-            this.memoryTable = new ConcurrentHashMap<>();
+            if (this.memoryTable instanceof TinyLfuCacheMap<?, ?>) {
+                ((TinyLfuCacheMap<?, ?>) this.memoryTable).setCapacity(newInMemory);
+                return;
+            }
         }
+        this.memoryTable = createMemoryTable(newInMemory);
 
         this.memoryTable.putAll(oldmap);
     }
@@ -566,6 +818,80 @@ public class UtilCache<K, V> implements Serializable, EvictionListener<Object, C
         return sizeLimit;
     }
 
+    /** Sets the maximum number of bytes used outside of the Java heap by the elements evicted from memory.
+     * If 0, evicted elements are dropped. The elements currently off-heap are dropped.
+     * @param offHeapMaxSize The maximum number of bytes used off-heap
+     */
+    public synchronized void setOffHeapMaxSize(long offHeapMaxSize) {
+        this.offHeapMaxSize = Math.max(offHeapMaxSize, 0);
+        OffHeapStore store = offHeapStore;
+        if (store != null) {
+            store.clear();
+        }
+        offHeapClearTimeNanos = System.nanoTime();
+        offHeapStore = this.offHeapMaxSize > 0 ? new OffHeapStore(this.offHeapMaxSize) : null;
+    }
+
+    public long getOffHeapMaxSize() {
+        return offHeapMaxSize;
+    }
+
+    /** Returns the number of elements currently in the off-heap store
+     * @return The number of elements evicted from memory and kept off-heap
+     */
+    public int getOffHeapSize() {
+        OffHeapStore store = offHeapStore;
+        return store != null ? store.size() : 0;
+    }
+
+    /** Returns the number of bytes allocated outside of the Java heap for this cache */
+    public long getOffHeapAllocatedSize() {
+        OffHeapStore store = offHeapStore;
+        return store != null ? store.getAllocatedSize() : 0;
+    }
+
+    /** Returns the eviction policy used when the number of elements is limited, either lru or tinylfu */
+    public String getEvictionPolicy() {
+        return evictionPolicy;
+    }
+
+    /** Sets the eviction policy used when the number of elements is limited, either lru or tinylfu
+     * @param evictionPolicy The eviction policy for the cache elements
+     */
+    public void setEvictionPolicy(String evictionPolicy) {
+        if (!EVICTION_POLICY_TINYLFU.equals(evictionPolicy) && !EVICTION_POLICY_LRU.equals(evictionPolicy)) {
+            throw new IllegalArgumentException("Unknown eviction policy: " + evictionPolicy);
+        }
+        if (this.evictionPolicy.equals(evictionPolicy)) {
+            return;
+        }
+        this.evictionPolicy = evictionPolicy;
+        int maxMemSize = this.maxInMemory;
+        if (maxMemSize == 0) {
+            maxMemSize = sizeLimit;
+        }
+        if (maxMemSize > 0) {
+            Map<Object, CacheLine<V>> oldmap = this.memoryTable;
+            this.memoryTable = createMemoryTable(maxMemSize);
+            this.memoryTable.putAll(oldmap);
+        }
+    }
+
+    /** Sets the refresh time for the cache elements read with a loader.
+     * If 0, elements are never refreshed.
+     * @param refreshAfterWriteMillis The refresh time for the cache elements
+     */
+    public void setRefreshAfterWrite(long refreshAfterWriteMillis) {
+        this.refreshAfterWriteNanos = TimeUnit.NANOSECONDS.convert(Math.max(refreshAfterWriteMillis, 0), TimeUnit.MILLISECONDS);
+    }
+
+    /** return the current refresh time for the cache elements
+     * @return The refresh time for the cache elements
+     */
+    public long getRefreshAfterWrite() {
+        return TimeUnit.MILLISECONDS.convert(refreshAfterWriteNanos, TimeUnit.NANOSECONDS);
+    }
+
     /** Sets the expire time for the cache elements.
      * If 0, elements never expire.
      * @param expireTimeMillis The expire time for the cache elements
@@ -619,7 +945,11 @@ public class UtilCache<K, V> implements Serializable, EvictionListener<Object, C
     public boolean containsKey(Object key) {
         Object nulledKey = fromKey(key);
         CacheLine<V> line = memoryTable.get(nulledKey);
-        return line != null;
+        if (line == null) {
+            OffHeapStore store = offHeapStore;
+            return store != null && store.containsKey(nulledKey);
+        }
+        return true;
     }
 
     /**
@@ -631,7 +961,15 @@ public class UtilCache<K, V> implements Serializable, EvictionListener<Object, C
         // note that this must be a HashSet and not a FastSet in order to have a null value
         Set<Object> keys;
 
-        if (memoryTable.containsKey(ObjectType.NULL)) {
+        OffHeapStore store = offHeapStore;
+        if (store != null && store.size() > 0) {
+            // the elements evicted from memory are still in the cache
+            keys = new HashSet<>(memoryTable.keySet());
+            keys.addAll(store.keySet());
+            if (keys.remove(ObjectType.NULL)) {
+                keys.add(null);
+            }
+        } else if (memoryTable.containsKey(ObjectType.NULL)) {
             keys = new HashSet<>(memoryTable.keySet());
             keys.remove(ObjectType.NULL);
             keys.add(null);
@@ -797,5 +1135,9 @@ public class UtilCache<K, V> implements Serializable, EvictionListener<Object, C
     @Override
     public void onEviction(Object key, CacheLine<V> value) {
         ExecutionPool.removePulse(value);
+        OffHeapStore store = offHeapStore;
+        if (store != null) {
+            putOffHeap(store, key, value);
+        }
     }
 }
@@ -22,16 +22,23 @@ import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.greaterThan;
 
 import java.io.Serializable;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
+import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.ofbiz.base.test.GenericTestCaseBase;
+import org.apache.ofbiz.base.util.Debug;
 import org.apache.ofbiz.base.util.UtilMisc;
 import org.apache.ofbiz.base.util.UtilObject;
 import org.apache.ofbiz.base.util.cache.CacheListener;
+import org.apache.ofbiz.base.util.cache.TinyLfuCacheMap;
 import org.apache.ofbiz.base.util.cache.UtilCache;
 
 @SuppressWarnings("serial")
@@ -431,4 +438,162 @@ public class UtilCacheTests extends GenericTestCaseBase implements Serializable
         assertNull("not-key(0)", cache.get("0"));
         assertTrue("empty", cache.isEmpty());
     }
+
+    public void testTinyLfuSimple() throws Exception {
+        UtilCache<String, String> cache = createUtilCache(5, 0, 0, false);
+        cache.setEvictionPolicy(UtilCache.EVICTION_POLICY_TINYLFU);
+        assertEquals("evictionPolicy", UtilCache.EVICTION_POLICY_TINYLFU, cache.getEvictionPolicy());
+        basicTest(cache);
+    }
+
+    public void testTinyLfuMap() {
+        TinyLfuCacheMap<String, String> map = new TinyLfuCacheMap<>(100, null);
+        assertNull("put", map.put("a", "1"));
+        assertEquals("put again", "1", map.put("a", "2"));
+        assertEquals("putIfAbsent", "2", map.putIfAbsent("a", "3"));
+        assertFalse("replace wrong value", map.replace("a", "1", "4"));
+        assertTrue("replace", map.replace("a", "2", "4"));
+        assertFalse("remove wrong value", map.remove("a", "2"));
+        assertEquals("remove", "4", map.remove("a"));
+        assertTrue("empty", map.isEmpty());
+        for (int i = 0; i < 1000; i++) {
+            map.put(Integer.toString(i), Integer.toString(i));
+        }
+        assertEquals("size after fill", 100, map.size());
+        map.setCapacity(10);
+        assertEquals("size after shrink", 10, map.size());
+        map.clear();
+        assertTrue("empty after clear", map.isEmpty());
+    }
+
+    /**
+     * Replays the same key trace on a lru and a tinylfu cache. The trace mixes reads of a set of popular
+     * keys following a Zipf distribution, like products and prices read by the store pages, with scans of keys
+     * read only once, like report screens listing many records. The scans push the popular keys out of the lru
+     * cache, not out of the tinylfu cache.
+     */
+    public void testTinyLfuHitRatio() {
+        int[] trace = createKeyTrace(new Random(42), 2000, 200000);
+        UtilCache<Integer, Integer> lru = createUtilCache(500, 0, 0, false);
+        UtilCache<Integer, Integer> tinyLfu = createUtilCache(500, 0, 0, false);
+        tinyLfu.setEvictionPolicy(UtilCache.EVICTION_POLICY_TINYLFU);
+        double lruHitRatio = replayKeyTrace(lru, trace);
+        double tinyLfuHitRatio = replayKeyTrace(tinyLfu, trace);
+        Debug.logInfo("Key trace hit ratio: lru " + lruHitRatio + ", tinylfu " + tinyLfuHitRatio, module);
+        assertEquals("lru size", 500, lru.size());
+        assertEquals("tinylfu size", 500, tinyLfu.size());
+        assertThat("tinylfu hit ratio", tinyLfuHitRatio, greaterThan(lruHitRatio));
+    }
+
+    private static int[] createKeyTrace(Random random, int popularKeys, int length) {
+        double[] cumulative = new double[popularKeys];
+        double total = 0;
+        for (int i = 0; i < popularKeys; i++) {
+            total += 1.0 / (i + 1);
+            cumulative[i] = total;
+        }
+        int[] trace = new int[length];
+        int scanKey = popularKeys;
+        int i = 0;
+        while (i < length) {
+            if (random.nextInt(10) == 0) {
+                // a scan of keys never read again
+                for (int j = 0; j < 1000 && i < length; j++) {
+                    trace[i++] = scanKey++;
+                }
+            } else {
+                for (int j = 0; j < 1000 && i < length; j++) {
+                    int index = Arrays.binarySearch(cumulative, random.nextDouble() * total);
+                    trace[i++] = index >= 0 ? index : -index - 1;
+                }
+            }
+        }
+        return trace;
+    }
+
+    private static double replayKeyTrace(UtilCache<Integer, Integer> cache, int[] trace) {
+        for (int key : trace) {
+            if (cache.get(key) == null) {
+                cache.put(key, key);
+            }
+        }
+        return (double) cache.getHitCount() / trace.length;
+    }
+
+    public void testOffHeap() throws Exception {
+        UtilCache<String, String> cache = createUtilCache(0, 10, 0, false);
+        cache.setOffHeapMaxSize(1024 * 1024);
+        for (int i = 0; i < 100; i++) {
+            String s = Integer.toString(i);
+            cache.put(s, ":" + s);
+        }
+        assertEquals("size in memory", 10, cache.size());
+        assertEquals("size off-heap", 90, cache.getOffHeapSize());
+        assertEquals("all keys", 100, cache.getCacheLineKeys().size());
+        assertTrue("containsKey off-heap", cache.containsKey("0"));
+        for (int i = 0; i < 100; i++) {
+            String s = Integer.toString(i);
+            assertEquals("get(" + s + ")", ":" + s, cache.get(s));
+        }
+        assertEquals("hits", 100, cache.getHitCount());
+        assertThat("off-heap hits", cache.getOffHeapHitCount(), greaterThan(0L));
+        String offHeapKey = null;
+        for (int i = 0; i < 100 && offHeapKey == null; i++) {
+            String s = Integer.toString(i);
+            if (cache.containsKey(s) && !cache.values().contains(":" + s)) {
+                offHeapKey = s;
+            }
+        }
+        assertNotNull("a key off-heap", offHeapKey);
+        assertEquals("remove off-heap", ":" + offHeapKey, cache.remove(offHeapKey));
+        assertNull("removed off-heap", cache.get(offHeapKey));
+        cache.put("1", "new");
+        assertEquals("put replaces off-heap", "new", cache.get("1"));
+        cache.clear();
+        assertEquals("cleared off-heap", 0, cache.getOffHeapSize());
+        assertTrue("cleared", cache.getCacheLineKeys().isEmpty());
+    }
+
+    public void testRefreshAfterWrite() throws Exception {
+        UtilCache<String, String> cache = createUtilCache(0, 0, 0, false);
+        cache.setRefreshAfterWrite(100);
+        AtomicInteger loads = new AtomicInteger();
+        assertEquals("first load", "1", cache.get("key", key -> Integer.toString(loads.incrementAndGet())));
+        assertEquals("cached", "1", cache.get("key", key -> Integer.toString(loads.incrementAndGet())));
+        Thread.sleep(200);
+        assertEquals("stale value while refreshing", "1", cache.get("key", key -> Integer.toString(loads.incrementAndGet())));
+        long end = System.currentTimeMillis() + 5000;
+        while (!"2".equals(cache.get("key")) && System.currentTimeMillis() < end) {
+            Thread.sleep(10);
+        }
+        assertEquals("refreshed", "2", cache.get("key"));
+        assertEquals("loads", 2, loads.get());
+    }
+
+    public void testRefreshAfterWriteKeepsNewerValue() throws Exception {
+        UtilCache<String, String> cache = createUtilCache(0, 0, 0, false);
+        cache.setRefreshAfterWrite(100);
+        assertEquals("first load", "old", cache.get("key", key -> "old"));
+        Thread.sleep(200);
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch put = new CountDownLatch(1);
+        CountDownLatch refreshed = new CountDownLatch(1);
+        assertEquals("stale value while refreshing", "old", cache.get("key", key -> {
+            try {
+                loading.countDown();
+                put.await(5, TimeUnit.SECONDS);
+                return "refreshed";
+            } catch (InterruptedException e) {
+                return null;
+            } finally {
+                refreshed.countDown();
+            }
+        }));
+        assertTrue("refresh started", loading.await(5, TimeUnit.SECONDS));
+        cache.put("key", "new");
+        put.countDown();
+        assertTrue("refresh done", refreshed.await(5, TimeUnit.SECONDS));
+        Thread.sleep(100);
+        assertEquals("the refresh does not overwrite a newer value", "new", cache.get("key"));
+    }
 }
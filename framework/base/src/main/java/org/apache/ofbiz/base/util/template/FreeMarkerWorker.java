@@ -20,6 +20,7 @@ package org.apache.ofbiz.base.util.template;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.io.Writer;
 import java.net.URL;
 import java.util.ArrayList;
@@ -269,12 +270,18 @@ public final class FreeMarkerWorker {
     }
 
     public static Template getTemplate(String templateLocation, UtilCache<String, Template> cache, Configuration config) throws IOException {
-        Template template = cache.get(templateLocation);
-        if (template == null) {
-            template = config.getTemplate(templateLocation);
-            template = cache.putIfAbsentAndGet(templateLocation, template);
+        // read through the cache loader, so that a cache with a refreshAfterWrite time reloads the template in the background
+        try {
+            return cache.get(templateLocation, location -> {
+                try {
+                    return config.getTemplate(location);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
         }
-        return template;
     }
 
     public static String getArg(Map<String, ? extends Object> args, String key, Environment env) {
@@ -97,6 +97,8 @@ public interface Delegator {
      */
     void clearCacheLine(String entityName);
 
+    void clearCacheLine(String entityName, boolean distribute);
+
     /**
      * Remove a CACHED Generic Entity (List) from the cache, either a PK, ByAnd,
      * or All
@@ -164,6 +166,25 @@ public interface Delegator {
      */
     GenericValue create(GenericValue value) throws GenericEntityException;
 
+    /**
+     * <p>Creates the Entities from the List GenericValue instances in the
+     * datasource.</p>
+     * <p>Unlike storeAll no existence check is done, so each value is
+     * inserted. The inserts all happen in one transaction and, when the
+     * batch size of the storeOptions is greater than 1, are sent to the
+     * database with JDBC batches.</p>
+     *
+     * @param values
+     *            List of GenericValue instances containing the entities to
+     *            create
+     * @param storeOptions
+     *            An instance of EntityStoreOptions that specifies advanced store
+     *            options or null for default values.
+     *            See the EntityStoreOptions JavaDoc for more details.
+     * @return int representing number of rows effected by this operation
+     */
+    int createAll(List<GenericValue> values, EntityStoreOptions storeOptions) throws GenericEntityException;
+
     /**
      * Creates a Entity in the form of a GenericValue and write it to the
      * database
@@ -898,6 +919,11 @@ public interface Delegator {
      * will either all succeed or all fail, if the data source supports
      * transactions. This is just like to othersToStore feature of the
      * GenericEntity on a create or store.</p>
+     * <p>When the batch size of the storeOptions is greater than 1 the
+     * existing values are read with one query per entity and batch, and the
+     * inserts and updates are sent to the database with JDBC batches, in the
+     * order of the list; the entity ECA rules and cache clearing still run
+     * once for each value.</p>
      *
      * @param storeOptions
      *            An instance of EntityStoreOptions that specifies advanced store
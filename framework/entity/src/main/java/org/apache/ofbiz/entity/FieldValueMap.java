@@ -0,0 +1,269 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.entity;
+
+import java.io.Serializable;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import org.apache.ofbiz.entity.model.ModelEntity;
+
+/**
+ * The field values of a GenericEntity, held in an array indexed by the position of the fields in the ModelEntity.
+ * <p>Like a <code>HashMap</code> it is not synchronized, accepts null values and tells a field set to null from
+ * a field not set, but it does not allocate an entry object per field. Names which are not fields of the entity
+ * are kept in a regular map. It is serialized as a <code>HashMap</code>.</p>
+ */
+@SuppressWarnings("serial")
+final class FieldValueMap extends AbstractMap<String, Object> implements Serializable {
+
+    /** Stands for a field set to null, a null element being a field not set. */
+    private static final Object NULL = new Object();
+
+    private final transient Map<String, Integer> positions;
+    private final transient Object[] values;
+    private transient int size = 0;
+    private transient Map<String, Object> others = null;
+    private transient Set<Map.Entry<String, Object>> entrySet = null;
+
+    FieldValueMap(ModelEntity modelEntity) {
+        this.positions = modelEntity.getFieldPositions();
+        this.values = new Object[positions.size()];
+    }
+
+    private static Object unmask(Object value) {
+        return value == NULL ? null : value;
+    }
+
+    @Override
+    public int size() {
+        return others == null ? size : size + others.size();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    @Override
+    public Object get(Object key) {
+        Integer position = positions.get(key);
+        if (position != null) {
+            return unmask(values[position]);
+        }
+        return others == null ? null : others.get(key);
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        Integer position = positions.get(key);
+        if (position != null) {
+            return values[position] != null;
+        }
+        return others != null && others.containsKey(key);
+    }
+
+    @Override
+    public Object put(String key, Object value) {
+        Integer position = positions.get(key);
+        if (position != null) {
+            Object old = values[position];
+            values[position] = value == null ? NULL : value;
+            if (old == null) {
+                size++;
+            }
+            return unmask(old);
+        }
+        if (others == null) {
+            others = new HashMap<>();
+        }
+        return others.put(key, value);
+    }
+
+    @Override
+    public Object remove(Object key) {
+        Integer position = positions.get(key);
+        if (position != null) {
+            Object old = values[position];
+            if (old != null) {
+                values[position] = null;
+                size--;
+            }
+            return unmask(old);
+        }
+        return others == null ? null : others.remove(key);
+    }
+
+    @Override
+    public void clear() {
+        for (int i = 0; i < values.length; i++) {
+            values[i] = null;
+        }
+        size = 0;
+        others = null;
+    }
+
+    @Override
+    public Set<Map.Entry<String, Object>> entrySet() {
+        if (entrySet == null) {
+            entrySet = new EntrySet();
+        }
+        return entrySet;
+    }
+
+    private Object writeReplace() {
+        return new HashMap<>(this);
+    }
+
+    private final class EntrySet extends AbstractSet<Map.Entry<String, Object>> {
+        @Override
+        public int size() {
+            return FieldValueMap.this.size();
+        }
+
+        @Override
+        public void clear() {
+            FieldValueMap.this.clear();
+        }
+
+        @Override
+        public Iterator<Map.Entry<String, Object>> iterator() {
+            return new EntryIterator();
+        }
+    }
+
+    /** Iterates over the fields set, in the order of the ModelEntity, then over the other names. */
+    private final class EntryIterator implements Iterator<Map.Entry<String, Object>> {
+        private final Iterator<Map.Entry<String, Integer>> fieldIterator = positions.entrySet().iterator();
+        private Map.Entry<String, Integer> nextField = null;
+        private FieldEntry current = null;
+        private Iterator<Map.Entry<String, Object>> othersIterator = null;
+
+        private EntryIterator() {
+            advance();
+        }
+
+        private void advance() {
+            nextField = null;
+            while (fieldIterator.hasNext()) {
+                Map.Entry<String, Integer> field = fieldIterator.next();
+                if (values[field.getValue()] != null) {
+                    nextField = field;
+                    return;
+                }
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (nextField != null) {
+                return true;
+            }
+            if (othersIterator == null && others != null) {
+                othersIterator = others.entrySet().iterator();
+            }
+            return othersIterator != null && othersIterator.hasNext();
+        }
+
+        @Override
+        public Map.Entry<String, Object> next() {
+            if (nextField != null) {
+                current = new FieldEntry(nextField.getKey(), nextField.getValue());
+                advance();
+                return current;
+            }
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            current = null;
+            return othersIterator.next();
+        }
+
+        @Override
+        public void remove() {
+            if (current != null) {
+                if (values[current.position] == null) {
+                    throw new IllegalStateException();
+                }
+                values[current.position] = null;
+                size--;
+            } else if (othersIterator != null) {
+                othersIterator.remove();
+            } else {
+                throw new IllegalStateException();
+            }
+        }
+    }
+
+    private final class FieldEntry implements Map.Entry<String, Object> {
+        private final String name;
+        private final int position;
+
+        private FieldEntry(String name, int position) {
+            this.name = name;
+            this.position = position;
+        }
+
+        @Override
+        public String getKey() {
+            return name;
+        }
+
+        @Override
+        public Object getValue() {
+            return unmask(values[position]);
+        }
+
+        @Override
+        public Object setValue(Object value) {
+            Object old = values[position];
+            values[position] = value == null ? NULL : value;
+            if (old == null) {
+                size++;
+            }
+            return unmask(old);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Map.Entry<?, ?>)) {
+                return false;
+            }
+            Map.Entry<?, ?> other = (Map.Entry<?, ?>) o;
+            Object value = getValue();
+            return getKey().equals(other.getKey()) && (value == null ? other.getValue() == null : value.equals(other.getValue()));
+        }
+
+        @Override
+        public int hashCode() {
+            Object value = getValue();
+            return getKey().hashCode() ^ (value == null ? 0 : value.hashCode());
+        }
+
+        @Override
+        public String toString() {
+            return getKey() + "=" + getValue();
+        }
+    }
+}
@@ -22,10 +22,14 @@ package org.apache.ofbiz.entity;
 import java.io.IOException;
 import java.net.URL;
 import java.sql.Timestamp;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -53,7 +57,9 @@ import org.apache.ofbiz.base.util.UtilProperties;
 import org.apache.ofbiz.base.util.UtilValidate;
 import org.apache.ofbiz.base.util.UtilXml;
 import org.apache.ofbiz.entity.cache.Cache;
+import org.apache.ofbiz.entity.cache.EntityDependencyRecorder;
 import org.apache.ofbiz.entity.condition.EntityCondition;
+import org.apache.ofbiz.entity.condition.EntityOperator;
 import org.apache.ofbiz.entity.config.model.Datasource;
 import org.apache.ofbiz.entity.config.model.DelegatorElement;
 import org.apache.ofbiz.entity.config.model.EntityConfig;
@@ -1299,6 +1305,9 @@ public class GenericDelegator implements Delegator {
         try {
             beganTransaction = TransactionUtil.begin();
 
+            BatchWriter batchWriter = storeOptions.isBatched() ? new BatchWriter(storeOptions.getBatchSize()) : null;
+            // in batch mode the existing rows are read with one query per entity and batch
+            Map<GenericPK, GenericValue> existingValues = batchWriter != null ? findExisting(values, storeOptions.getBatchSize()) : null;
             for (GenericValue value: values) {
                 String entityName = value.getEntityName();
                 GenericPK primaryKey = value.getPrimaryKey();
@@ -1310,17 +1319,29 @@ public class GenericDelegator implements Delegator {
                     throw new GenericModelException("[GenericDelegator.storeAll] One of the passed primary keys is not a valid primary key: " + primaryKey);
                 }
                 GenericValue existing = null;
-                try {
-                    existing = helper.findByPrimaryKey(primaryKey);
-                } catch (GenericEntityNotFoundException e) {
-                    existing = null;
+                if (existingValues != null && !batchWriter.isWritten(primaryKey) && !(value.getModelEntity() instanceof ModelViewEntity)) {
+                    existing = existingValues.get(primaryKey);
+                } else {
+                    if (batchWriter != null && batchWriter.isPending(primaryKey)) {
+                        // the same value is passed twice, write the pending rows so the lookup sees the first one
+                        numberChanged += batchWriter.flush();
+                    }
+                    try {
+                        existing = helper.findByPrimaryKey(primaryKey);
+                    } catch (GenericEntityNotFoundException e) {
+                        existing = null;
+                    }
                 }
 
                 if (existing == null) {
                     if (storeOptions.isCreateDummyFks()) {
                         value.checkFks(true);
                     }
-                    this.create(value);
+                    if (batchWriter != null) {
+                        batchWriter.addCreate(value);
+                    } else {
+                        this.create(value);
+                    }
                     numberChanged++;
                 } else {
                     // don't send fields that are the same, and if no fields have changed, update nothing
@@ -1345,10 +1366,17 @@ public class GenericDelegator implements Delegator {
                         if (storeOptions.isCreateDummyFks()) {
                             value.checkFks(true);
                         }
-                        numberChanged += this.store(toStore);
+                        if (batchWriter != null) {
+                            batchWriter.addStore(toStore);
+                        } else {
+                            numberChanged += this.store(toStore);
+                        }
                     }
                 }
             }
+            if (batchWriter != null) {
+                numberChanged += batchWriter.flush();
+            }
             TransactionUtil.commit(beganTransaction);
             return numberChanged;
         } catch (GenericEntityException e) {
@@ -1359,6 +1387,208 @@ public class GenericDelegator implements Delegator {
         }
     }
 
+    /* (non-Javadoc)
+     * @see org.apache.ofbiz.entity.Delegator#createAll(java.util.List, org.apache.ofbiz.entity.util.EntityStoreOptions)
+     */
+    @Override
+    public int createAll(List<GenericValue> values, EntityStoreOptions storeOptions) throws GenericEntityException {
+        if (values == null) {
+            return 0;
+        }
+
+        // if no store options passed, use default
+        if (storeOptions == null) {
+            storeOptions = new EntityStoreOptions();
+        }
+
+        boolean beganTransaction = false;
+        try {
+            beganTransaction = TransactionUtil.begin();
+
+            BatchWriter batchWriter = storeOptions.isBatched() ? new BatchWriter(storeOptions.getBatchSize()) : null;
+            for (GenericValue value: values) {
+                if (storeOptions.isCreateDummyFks()) {
+                    value.checkFks(true);
+                }
+                if (batchWriter != null) {
+                    batchWriter.addCreate(value);
+                } else {
+                    this.create(value);
+                }
+            }
+            if (batchWriter != null) {
+                batchWriter.flush();
+            }
+            TransactionUtil.commit(beganTransaction);
+            return values.size();
+        } catch (GenericEntityException e) {
+            String errMsg = "Failure in createAll operation: " + e.toString() + ". Rolling back transaction.";
+            Debug.logError(e, errMsg, module);
+            TransactionUtil.rollback(beganTransaction, errMsg, e);
+            throw new GenericEntityException(e);
+        }
+    }
+
+    /**
+     * Finds the rows of the passed values which already exist, with one query per entity and batch of primary
+     * keys rather than one query per value. The entity ECA rules are not run and the cache is not used.
+     * @return the existing rows by primary key
+     */
+    private Map<GenericPK, GenericValue> findExisting(List<GenericValue> values, int batchSize) throws GenericEntityException {
+        Map<String, Set<GenericPK>> primaryKeysByEntity = new LinkedHashMap<>();
+        for (GenericValue value : values) {
+            GenericPK primaryKey = value.getPrimaryKey();
+            // the invalid primary keys are reported by storeAll, the view entities are looked up one by one
+            if (primaryKey.isPrimaryKey() && !(value.getModelEntity() instanceof ModelViewEntity)) {
+                Set<GenericPK> primaryKeys = primaryKeysByEntity.get(value.getEntityName());
+                if (primaryKeys == null) {
+                    primaryKeys = new LinkedHashSet<>();
+                    primaryKeysByEntity.put(value.getEntityName(), primaryKeys);
+                }
+                primaryKeys.add(primaryKey);
+            }
+        }
+        Map<GenericPK, GenericValue> existingValues = new HashMap<>();
+        for (Map.Entry<String, Set<GenericPK>> entry : primaryKeysByEntity.entrySet()) {
+            ModelEntity modelEntity = getModelEntity(entry.getKey());
+            GenericHelper helper = getEntityHelper(entry.getKey());
+            List<GenericPK> primaryKeys = new ArrayList<>(entry.getValue());
+            for (int start = 0; start < primaryKeys.size(); start += batchSize) {
+                List<GenericPK> batch = primaryKeys.subList(start, Math.min(start + batchSize, primaryKeys.size()));
+                EntityCondition condition;
+                if (modelEntity.getPksSize() == 1) {
+                    String pkFieldName = modelEntity.getOnlyPk().getName();
+                    List<Object> pkValues = new ArrayList<>(batch.size());
+                    for (GenericPK primaryKey : batch) {
+                        pkValues.add(primaryKey.get(pkFieldName));
+                    }
+                    condition = EntityCondition.makeCondition(pkFieldName, EntityOperator.IN, pkValues);
+                } else {
+                    List<EntityCondition> pkConditions = new ArrayList<>(batch.size());
+                    for (GenericPK primaryKey : batch) {
+                        pkConditions.add(EntityCondition.makeCondition(primaryKey.getAllFields()));
+                    }
+                    condition = EntityCondition.makeCondition(pkConditions, EntityOperator.OR);
+                }
+                try (EntityListIterator existingIterator = helper.findListIteratorByCondition(this, modelEntity, condition, null, null, null, null)) {
+                    GenericValue existing;
+                    while ((existing = existingIterator.next()) != null) {
+                        existingValues.put(existing.getPrimaryKey(), existing);
+                    }
+                }
+            }
+        }
+        return existingValues;
+    }
+
+    /**
+     * Collects the values written by storeAll and createAll in batch mode, by helper, and writes them with JDBC
+     * batches when flushed. The validate and run entity ECA rules are evaluated when a value is added, the cache
+     * clear and return ones after the value has been written, so each of them still fires once per value.
+     */
+    private final class BatchWriter {
+        private final int batchSize;
+        private final Map<String, GenericHelper> helpers = new HashMap<>();
+        private final Map<String, List<GenericValue>> valuesToCreate = new LinkedHashMap<>();
+        private final Map<String, List<GenericValue>> valuesToStore = new LinkedHashMap<>();
+        private final Set<GenericPK> pendingPks = new HashSet<>();
+        private final Set<GenericPK> addedPks = new HashSet<>();
+
+        private BatchWriter(int batchSize) {
+            this.batchSize = batchSize;
+        }
+
+        private boolean isPending(GenericPK primaryKey) {
+            return pendingPks.contains(primaryKey);
+        }
+
+        /** Returns true when a value with this primary key was added, it is pending or already written. */
+        private boolean isWritten(GenericPK primaryKey) {
+            return addedPks.contains(primaryKey);
+        }
+
+        private void addCreate(GenericValue value) throws GenericEntityException {
+            EntityEcaRuleRunner<?> ecaRunner = getEcaRuleRunner(value.getEntityName());
+            ecaRunner.evalRules(EntityEcaHandler.EV_VALIDATE, EntityEcaHandler.OP_CREATE, value, false);
+            ecaRunner.evalRules(EntityEcaHandler.EV_RUN, EntityEcaHandler.OP_CREATE, value, false);
+            value.setDelegator(GenericDelegator.this);
+
+            // if audit log on for any fields, save new value with no old value because it's a create
+            if (value.getModelEntity().getHasFieldWithAuditLog()) {
+                createEntityAuditLogAll(value, false, false);
+            }
+            if (testMode) {
+                storeForTestRollback(new TestOperation(OperationType.INSERT, value));
+            }
+            add(valuesToCreate, value);
+        }
+
+        private void addStore(GenericValue value) throws GenericEntityException {
+            EntityEcaRuleRunner<?> ecaRunner = getEcaRuleRunner(value.getEntityName());
+            ecaRunner.evalRules(EntityEcaHandler.EV_VALIDATE, EntityEcaHandler.OP_STORE, value, false);
+            ecaRunner.evalRules(EntityEcaHandler.EV_RUN, EntityEcaHandler.OP_STORE, value, false);
+
+            // if audit log on for any fields, save old value before the update so we still have both
+            if (value.getModelEntity().getHasFieldWithAuditLog()) {
+                createEntityAuditLogAll(value, true, false);
+            }
+            if (testMode) {
+                storeForTestRollback(new TestOperation(OperationType.UPDATE, findOne(value.getEntityName(), value.getPrimaryKey(), false)));
+            }
+            add(valuesToStore, value);
+        }
+
+        private void add(Map<String, List<GenericValue>> valuesByHelper, GenericValue value) throws GenericEntityException {
+            GenericHelper helper = getEntityHelper(value.getEntityName());
+            helpers.put(helper.getHelperName(), helper);
+            List<GenericValue> helperValues = valuesByHelper.get(helper.getHelperName());
+            if (helperValues == null) {
+                helperValues = new LinkedList<>();
+                valuesByHelper.put(helper.getHelperName(), helperValues);
+            }
+            helperValues.add(value);
+            pendingPks.add(value.getPrimaryKey());
+            addedPks.add(value.getPrimaryKey());
+        }
+
+        /**
+         * Writes the pending values, the created ones first.
+         * @return the number of rows updated
+         */
+        private int flush() throws GenericEntityException {
+            for (Map.Entry<String, List<GenericValue>> entry : valuesToCreate.entrySet()) {
+                helpers.get(entry.getKey()).createAll(entry.getValue(), batchSize);
+                afterWrite(entry.getValue(), EntityEcaHandler.OP_CREATE);
+            }
+            int numberStored = 0;
+            for (Map.Entry<String, List<GenericValue>> entry : valuesToStore.entrySet()) {
+                numberStored += helpers.get(entry.getKey()).storeAll(entry.getValue(), batchSize);
+                afterWrite(entry.getValue(), EntityEcaHandler.OP_STORE);
+            }
+            valuesToCreate.clear();
+            valuesToStore.clear();
+            pendingPks.clear();
+            return numberStored;
+        }
+
+        private void afterWrite(List<GenericValue> values, String operation) throws GenericEntityException {
+            for (GenericValue value : values) {
+                EntityEcaRuleRunner<?> ecaRunner = getEcaRuleRunner(value.getEntityName());
+                value.setDelegator(GenericDelegator.this);
+                if (EntityEcaHandler.OP_STORE.equals(operation) || !value.lockEnabled()) {
+                    // doCacheClear
+                    ecaRunner.evalRules(EntityEcaHandler.EV_CACHE_CLEAR, operation, value, false);
+                    clearCacheLine(value);
+                }
+                // refresh the valueObject to get the new version
+                if (value.lockEnabled()) {
+                    refresh(value);
+                }
+                ecaRunner.evalRules(EntityEcaHandler.EV_RETURN, operation, value, false);
+            }
+        }
+    }
+
     /* (non-Javadoc)
      * @see org.apache.ofbiz.entity.Delegator#removeAll(java.lang.String)
      */
@@ -1418,6 +1648,7 @@ public class GenericDelegator implements Delegator {
         if (!primaryKey.isPrimaryKey()) {
             throw new GenericModelException("[GenericDelegator.findOne] Passed primary key is not a valid primary key: " + primaryKey);
         }
+        EntityDependencyRecorder.recordRead(primaryKey.getModelEntity());
         EntityEcaRuleRunner<?> ecaRunner = this.getEcaRuleRunner(entityName);
         if (useCache) {
             ecaRunner.evalRules(EntityEcaHandler.EV_CACHE_CHECK, EntityEcaHandler.OP_FIND, primaryKey, false);
@@ -1475,6 +1706,7 @@ public class GenericDelegator implements Delegator {
      */
     @Override
     public GenericValue findByPrimaryKeyPartial(GenericPK primaryKey, Set<String> keys) throws GenericEntityException {
+        EntityDependencyRecorder.recordRead(primaryKey.getModelEntity());
         boolean beganTransaction = false;
         try {
             if (alwaysUseTransaction) {
@@ -1544,6 +1776,7 @@ public class GenericDelegator implements Delegator {
         }
 
         ModelEntity modelEntity = getModelReader().getModelEntity(entityName);
+        EntityDependencyRecorder.recordRead(modelEntity);
         GenericValue dummyValue = GenericValue.create(modelEntity);
         EntityEcaRuleRunner<?> ecaRunner = this.getEcaRuleRunner(modelEntity.getEntityName());
         ecaRunner.evalRules(EntityEcaHandler.EV_VALIDATE, EntityEcaHandler.OP_FIND, dummyValue, false);
@@ -1575,6 +1808,7 @@ public class GenericDelegator implements Delegator {
         if (useCache) {
             ecaRunner = this.getEcaRuleRunner(entityName);
             ModelEntity modelEntity = getModelReader().getModelEntity(entityName);
+            EntityDependencyRecorder.recordRead(modelEntity);
             dummyValue = GenericValue.create(modelEntity);
             ecaRunner.evalRules(EntityEcaHandler.EV_CACHE_CHECK, EntityEcaHandler.OP_FIND, dummyValue, false);
 
@@ -1625,6 +1859,7 @@ public class GenericDelegator implements Delegator {
         }
 
         ModelViewEntity modelViewEntity = dynamicViewEntity.makeModelViewEntity(this);
+        EntityDependencyRecorder.recordRead(modelViewEntity);
         if (whereEntityCondition != null) {
             whereEntityCondition.checkCondition(modelViewEntity);
         }
@@ -1665,6 +1900,7 @@ public class GenericDelegator implements Delegator {
             }
 
             ModelEntity modelEntity = getModelReader().getModelEntity(entityName);
+            EntityDependencyRecorder.recordRead(modelEntity);
             GenericValue dummyValue = GenericValue.create(modelEntity);
             EntityEcaRuleRunner<?> ecaRunner = this.getEcaRuleRunner(modelEntity.getEntityName());
             ecaRunner.evalRules(EntityEcaHandler.EV_VALIDATE, EntityEcaHandler.OP_FIND, dummyValue, false);
@@ -1843,7 +2079,24 @@ public class GenericDelegator implements Delegator {
      */
     @Override
     public void clearCacheLine(String entityName) {
+        this.clearCacheLine(entityName, true);
+    }
+
+    /* (non-Javadoc)
+     * @see org.apache.ofbiz.entity.Delegator#clearCacheLine(java.lang.String, boolean)
+     */
+    @Override
+    public void clearCacheLine(String entityName, boolean distribute) {
         cache.remove(entityName);
+
+        if (!distribute) {
+            return;
+        }
+
+        DistributedCacheClear dcc = getDistributedCacheClear();
+        if (dcc != null) {
+            dcc.distributedClearCacheLine(entityName);
+        }
     }
 
     /* (non-Javadoc)
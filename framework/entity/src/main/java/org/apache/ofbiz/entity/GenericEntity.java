@@ -81,7 +81,7 @@ public class GenericEntity implements Map<String, Object>, LocalizedMap<Object>,
     public static final NullField NULL_FIELD = new NullField();
 
     // Do not restore observers during deserialization. Instead, client code must add observers.
-    private transient Observable observable = new Observable();
+    private transient Observable observable = null;
 
     /** Name of the GenericDelegator, used to re-get the GenericDelegator when deserialized */
     private String delegatorName = null;
@@ -94,11 +94,12 @@ public class GenericEntity implements Map<String, Object>, LocalizedMap<Object>,
     private Map<String, Object> originalDbValues = null;
 
     /** Contains the fields for this entity. Note that this should always be a
-     *  HashMap to allow for two things: non-synchronized reads (synchronized
-     *  writes are done through synchronized setters) and being able to store
+     *  HashMap or a FieldValueMap to allow for two things: non-synchronized reads
+     *  (synchronized writes are done through synchronized setters) and being able to store
      *  null values. Null values are important because with them we can distinguish
      *  between desiring to set a value to null and desiring to not modify the
-     *  current value on an update.
+     *  current value on an update. Once the ModelEntity is known a FieldValueMap is used,
+     *  it holds the values in an array indexed by field position instead of a hash table.
      */
     private Map<String, Object> fields = new HashMap<>();
 
@@ -169,6 +170,20 @@ public class GenericEntity implements Map<String, Object>, LocalizedMap<Object>,
         return this.observable;
     }
 
+    /** Returns an empty Map to hold the fields of an entity, indexed by field position when the ModelEntity is known. */
+    private static Map<String, Object> newFields(ModelEntity modelEntity) {
+        if (modelEntity == null) {
+            return new HashMap<>();
+        }
+        return new FieldValueMap(modelEntity);
+    }
+
+    private static Map<String, Object> copyFields(ModelEntity modelEntity, Map<String, Object> fields) {
+        Map<String, Object> newFields = newFields(modelEntity);
+        newFields.putAll(fields);
+        return newFields;
+    }
+
     /** Creates new GenericEntity */
     protected void init(ModelEntity modelEntity) {
         assertIsMutable();
@@ -177,6 +192,7 @@ public class GenericEntity implements Map<String, Object>, LocalizedMap<Object>,
         }
         this.modelEntity = modelEntity;
         this.entityName = modelEntity.getEntityName();
+        this.fields = newFields(modelEntity);
         this.observable = new Observable();
 
         // check some things
@@ -195,6 +211,7 @@ public class GenericEntity implements Map<String, Object>, LocalizedMap<Object>,
         this.entityName = modelEntity.getEntityName();
         this.delegatorName = delegator.getDelegatorName();
         this.internalDelegator = delegator;
+        this.fields = newFields(modelEntity);
         this.observable = new Observable();
         setFields(fields);
 
@@ -217,6 +234,7 @@ public class GenericEntity implements Map<String, Object>, LocalizedMap<Object>,
         this.entityName = modelEntity.getEntityName();
         this.delegatorName = delegator.getDelegatorName();
         this.internalDelegator = delegator;
+        this.fields = newFields(modelEntity);
         this.observable = new Observable();
         set(modelEntity.getOnlyPk().getName(), singlePkValue);
 
@@ -237,11 +255,11 @@ public class GenericEntity implements Map<String, Object>, LocalizedMap<Object>,
         // NOTE: could call getModelEntity to insure we have a value, just in case the value passed in has been serialized, but might as well leave it null to keep the object light if it isn't there
         this.modelEntity = value.modelEntity;
         if (value.fields != null) {
-            this.fields.putAll(value.fields);
+            this.fields = copyFields(this.modelEntity, value.fields);
         }
         this.delegatorName = value.delegatorName;
         this.internalDelegator = value.internalDelegator;
-        this.observable = new Observable(value.observable);
+        this.observable = new Observable(value.getObservable());
     }
 
     public void reset() {
@@ -270,11 +288,11 @@ public class GenericEntity implements Map<String, Object>, LocalizedMap<Object>,
         if (!thisPK.equals(newPK)) {
             throw new GenericEntityException("Could not refresh value, new value did not have the same primary key; this PK=" + thisPK + ", new value PK=" + newPK);
         }
-        this.fields = new HashMap<>(newValue.fields);
+        this.fields = copyFields(this.modelEntity, newValue.fields);
         this.setDelegator(newValue.getDelegator());
         this.generateHashCode = newValue.generateHashCode;
         this.cachedHashCode = newValue.cachedHashCode;
-        this.observable = new Observable(newValue.observable);
+        this.observable = new Observable(newValue.getObservable());
     }
 
     /**
@@ -293,7 +311,7 @@ public class GenericEntity implements Map<String, Object>, LocalizedMap<Object>,
      */
     public void synchronizedWithDatasource() {
         assertIsMutable();
-        this.originalDbValues = Collections.unmodifiableMap(getAllFields());
+        this.originalDbValues = Collections.unmodifiableMap(copyFields(this.modelEntity, this.fields));
         this.clearChanged();
     }
 
@@ -1659,11 +1677,19 @@ public class GenericEntity implements Map<String, Object>, LocalizedMap<Object>,
         public String toString() {
             return "[null-entity]";
         }
+
+        private Object readResolve() {
+            return GenericEntity.NULL_ENTITY;
+        }
     }
 
-    public static class NullField implements NULL, Comparable<NullField> {
+    public static class NullField implements NULL, Comparable<NullField>, Serializable {
         protected NullField() { }
 
+        private Object readResolve() {
+            return GenericEntity.NULL_FIELD;
+        }
+
         @Override
         public String toString() {
             return "[null-field]";
@@ -248,6 +248,11 @@ public class GenericValue extends GenericEntity {
         public String toString() {
             return "[null-entity-value]";
         }
+
+        private Object readResolve() {
+            // keep the singleton when read back from a serialized cache
+            return GenericValue.NULL_VALUE;
+        }
     }
 
     public static String getStackTraceAsString() {
@@ -48,11 +48,13 @@ public class Cache {
         entityCache.clear();
         entityListCache.clear();
         entityObjectCache.clear();
+        EntityDependencyRecorder.cacheCleared(delegatorName, null);
     }
 
     public void remove(String entityName) {
         entityCache.remove(entityName);
         entityListCache.remove(entityName);
+        EntityDependencyRecorder.cacheCleared(delegatorName, entityName);
     }
 
     public GenericValue get(GenericPK pk) {
@@ -96,6 +98,7 @@ public class Cache {
     public List<GenericValue> remove(String entityName, EntityCondition condition, List<String> orderBy) {
         entityCache.remove(entityName, condition);
         entityObjectCache.remove(entityName, condition);
+        EntityDependencyRecorder.cacheCleared(delegatorName, entityName);
         return entityListCache.remove(entityName, condition, orderBy);
     }
 
@@ -103,6 +106,7 @@ public class Cache {
         entityCache.remove(entityName, condition);
         entityListCache.remove(entityName, condition);
         entityObjectCache.remove(entityName, condition);
+        EntityDependencyRecorder.cacheCleared(delegatorName, entityName);
     }
 
     public <T> T remove(String entityName, EntityCondition condition, String name) {
@@ -117,6 +121,7 @@ public class Cache {
         // Workaround because AbstractEntityConditionCache.storeHook doesn't work.
         entityListCache.remove(entity);
         entityObjectCache.remove(entity);
+        EntityDependencyRecorder.cacheCleared(delegatorName, entity.getEntityName());
         return oldEntity;
     }
 
@@ -130,6 +135,7 @@ public class Cache {
         entityObjectCache.remove(pk);
         // entityListCache.storeHook(pk, null);
         // entityObjectCache.storeHook(pk, null);
+        EntityDependencyRecorder.cacheCleared(delegatorName, pk.getEntityName());
         return oldEntity;
     }
 }
@@ -0,0 +1,344 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.entity.cache;
+
+import java.io.IOException;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.ofbiz.base.concurrent.ExecutionPool;
+import org.apache.ofbiz.base.util.Debug;
+import org.apache.ofbiz.base.util.UtilProperties;
+import org.apache.ofbiz.entity.Delegator;
+import org.apache.ofbiz.entity.GenericEntity;
+import org.apache.ofbiz.entity.GenericPK;
+import org.apache.ofbiz.entity.GenericValue;
+import org.apache.ofbiz.entity.cache.CacheInvalidationMessage.Item;
+import org.apache.ofbiz.entity.condition.EntityCondition;
+import org.apache.ofbiz.entity.util.DistributedCacheClear;
+
+/**
+ * Clears the entity caches of the other nodes of a cluster by sending messages over a {@link CacheInvalidationTransport}.
+ * <p>Unlike <code>EntityCacheServices</code> it does not run a service per invalidation: the invalidations are queued
+ * and sent after a short delay, in batches where duplicates are removed and where the invalidations of an entity are
+ * replaced by a clear of the whole entity when they are too many. Each message of a node has the next sequence number:
+ * a node which notices a missing message clears all its caches, since it does not know what was invalidated.</p>
+ * <p>Enable it with the <code>distributed-cache-clear-enabled="true"</code> and
+ * <code>distributed-cache-clear-class-name="org.apache.ofbiz.entity.cache.CacheInvalidationBus"</code> attributes of
+ * the delegator in <code>entityengine.xml</code>; the transport is set in <code>cacheinvalidation.properties</code>.
+ * The nodes sharing a channel, by default the delegator name, clear the caches of each other.</p>
+ */
+public class CacheInvalidationBus implements DistributedCacheClear {
+
+    public static final String module = CacheInvalidationBus.class.getName();
+
+    private static final String PROPERTIES = "cacheinvalidation";
+
+    private final long nodeId = new SecureRandom().nextLong();
+    private final AtomicLong sequence = new AtomicLong();
+    private final Map<Long, Long> lastSequences = new ConcurrentHashMap<>();
+    private final Object sendLock = new Object();
+    private final AtomicLong messagesSent = new AtomicLong();
+    private final AtomicLong itemsSent = new AtomicLong();
+    private final AtomicLong messagesReceived = new AtomicLong();
+    private final AtomicLong messagesMissed = new AtomicLong();
+    private String channel;
+    private volatile CacheInvalidationTransport transport;
+    private long flushDelay;
+    private int maxItemsPerEntity;
+    private Delegator delegator;
+    private byte[] header;
+    private ScheduledExecutorService flushExecutor;
+
+    // the fields below are guarded by this
+    private Set<Item> pendingItems = new LinkedHashSet<>();
+    private boolean flushScheduled = false;
+
+    /** Creates a bus configured by <code>cacheinvalidation.properties</code>, as done by the delegator. */
+    public CacheInvalidationBus() {
+        this(UtilProperties.getPropertyValue(PROPERTIES, "channel"), null,
+                UtilProperties.getPropertyAsLong(PROPERTIES, "flushDelay", 10),
+                UtilProperties.getPropertyAsInteger(PROPERTIES, "maxItemsPerEntity", 100));
+    }
+
+    /** Creates a new bus.
+     *@param channel The name shared by the nodes whose caches hold the same data, or null or empty for the delegator name
+     *@param transport The transport of the messages, or null for the one set in <code>cacheinvalidation.properties</code>
+     *@param flushDelay The number of milliseconds the invalidations are queued before being sent
+     *@param maxItemsPerEntity The number of invalidations of an entity in a batch above which the whole entity is cleared
+     */
+    public CacheInvalidationBus(String channel, CacheInvalidationTransport transport, long flushDelay, int maxItemsPerEntity) {
+        this.channel = channel == null || channel.isEmpty() ? null : channel;
+        this.transport = transport;
+        this.flushDelay = flushDelay;
+        this.maxItemsPerEntity = maxItemsPerEntity;
+    }
+
+    @Override
+    public void setDelegator(Delegator delegator, String userLoginId) {
+        this.delegator = delegator;
+        if (channel == null) {
+            channel = delegator.getDelegatorName();
+        }
+        try {
+            if (transport == null) {
+                String className = UtilProperties.getPropertyValue(PROPERTIES, "transport", UdpCacheInvalidationTransport.class.getName());
+                ClassLoader loader = Thread.currentThread().getContextClassLoader();
+                transport = (CacheInvalidationTransport) loader.loadClass(className).getDeclaredConstructor().newInstance();
+            }
+            header = CacheInvalidationMessage.encodeHeader(channel, nodeId);
+            flushExecutor = ExecutionPool.getScheduledExecutor(new ThreadGroup(module), "cache-invalidation", 1, 0, false);
+            transport.start(channel, this::receive);
+        } catch (IOException | ReflectiveOperationException | ClassCastException e) {
+            Debug.logError(e, "Could not start the cache invalidation bus of channel " + channel
+                    + ", the caches of the other nodes will not be cleared", module);
+            if (flushExecutor != null) {
+                flushExecutor.shutdown();
+            }
+            transport = null;
+        }
+    }
+
+    @Override
+    public void distributedClearCacheLine(GenericValue value) {
+        queue(new Item(CacheInvalidationMessage.VALUE, value.getEntityName(), value.getAllFields(), null));
+    }
+
+    @Override
+    public void distributedClearCacheLineFlexible(GenericEntity dummyPK) {
+        queue(new Item(CacheInvalidationMessage.FLEXIBLE, dummyPK.getEntityName(), dummyPK.getAllFields(), null));
+    }
+
+    @Override
+    public void distributedClearCacheLineByCondition(String entityName, EntityCondition condition) {
+        queue(new Item(CacheInvalidationMessage.CONDITION, entityName, null, condition));
+    }
+
+    @Override
+    public void distributedClearCacheLine(GenericPK primaryKey) {
+        queue(new Item(CacheInvalidationMessage.PK, primaryKey.getEntityName(), primaryKey.getAllFields(), null));
+    }
+
+    @Override
+    public void distributedClearCacheLine(String entityName) {
+        queue(new Item(CacheInvalidationMessage.ENTITY, entityName, null, null));
+    }
+
+    @Override
+    public void clearAllCaches() {
+        queue(Item.ALL_ITEM);
+    }
+
+    private void queue(Item item) {
+        if (transport == null) {
+            return;
+        }
+        synchronized (this) {
+            if (item.kind == CacheInvalidationMessage.ALL) {
+                pendingItems.clear();
+            } else if (pendingItems.contains(Item.ALL_ITEM)) {
+                return;
+            }
+            pendingItems.add(item);
+            if (!flushScheduled) {
+                flushScheduled = true;
+                flushExecutor.schedule(this::flush, flushDelay, TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    /** Sends the queued invalidations now. */
+    public void flush() {
+        Set<Item> items;
+        synchronized (this) {
+            items = pendingItems;
+            pendingItems = new LinkedHashSet<>();
+            flushScheduled = false;
+        }
+        if (items.isEmpty() || transport == null) {
+            return;
+        }
+        synchronized (sendLock) {
+            try {
+                send(coalesce(items));
+            } catch (IOException | RuntimeException e) {
+                Debug.logError(e, "Error sending cache invalidation message on channel " + channel, module);
+            }
+        }
+    }
+
+    /** Replaces the invalidations of the entities having too many of them by clears of the whole entities. */
+    private List<Item> coalesce(Set<Item> items) {
+        if (items.contains(Item.ALL_ITEM)) {
+            List<Item> all = new ArrayList<>(1);
+            all.add(Item.ALL_ITEM);
+            return all;
+        }
+        Map<String, Integer> counts = new HashMap<>();
+        Set<String> clearedEntities = new HashSet<>();
+        for (Item item : items) {
+            int count = counts.merge(item.entityName, 1, Integer::sum);
+            if (item.kind == CacheInvalidationMessage.ENTITY || count > maxItemsPerEntity) {
+                clearedEntities.add(item.entityName);
+            }
+        }
+        List<Item> coalesced = new ArrayList<>(items.size());
+        for (String entityName : clearedEntities) {
+            coalesced.add(new Item(CacheInvalidationMessage.ENTITY, entityName, null, null));
+        }
+        for (Item item : items) {
+            if (!clearedEntities.contains(item.entityName)) {
+                coalesced.add(item);
+            }
+        }
+        return coalesced;
+    }
+
+    private void send(List<Item> items) throws IOException {
+        int maxLength = transport.getMaxMessageSize() - CacheInvalidationMessage.getHeaderLength(header);
+        List<byte[]> batch = new ArrayList<>();
+        int batchLength = 0;
+        for (Item item : items) {
+            byte[] encoded = CacheInvalidationMessage.encodeItem(item);
+            if (encoded == null || encoded.length > maxLength) {
+                // a value which can not be serialized, or is too large, is replaced by a clear of its entity
+                encoded = CacheInvalidationMessage.encodeItem(new Item(CacheInvalidationMessage.ENTITY, item.entityName, null, null));
+            }
+            if (batchLength + encoded.length > maxLength || batch.size() == 0xFFFF) {
+                sendBatch(batch);
+                batch.clear();
+                batchLength = 0;
+            }
+            batch.add(encoded);
+            batchLength += encoded.length;
+        }
+        if (!batch.isEmpty()) {
+            sendBatch(batch);
+        }
+    }
+
+    private void sendBatch(List<byte[]> batch) throws IOException {
+        transport.send(CacheInvalidationMessage.encode(header, sequence.incrementAndGet(), batch));
+        messagesSent.incrementAndGet();
+        itemsSent.addAndGet(batch.size());
+    }
+
+    private void receive(byte[] data, int length) {
+        CacheInvalidationMessage message;
+        try {
+            message = CacheInvalidationMessage.decode(data, length);
+        } catch (IOException | ClassNotFoundException | ClassCastException e) {
+            Debug.logWarning(e, "Ignoring a cache invalidation message which could not be read on channel " + channel, module);
+            return;
+        }
+        if (message == null || message.nodeId == nodeId || !channel.equals(message.channel)) {
+            return;
+        }
+        messagesReceived.incrementAndGet();
+        Long lastSequence = lastSequences.get(message.nodeId);
+        if (lastSequence == null || message.sequence > lastSequence) {
+            lastSequences.put(message.nodeId, message.sequence);
+        }
+        if (lastSequence != null && message.sequence > lastSequence + 1) {
+            messagesMissed.incrementAndGet();
+            Debug.logWarning("Cache invalidation message " + (lastSequence + 1) + " of node " + Long.toHexString(message.nodeId)
+                    + " was lost on channel " + channel + ", clearing all the caches", module);
+            delegator.clearAllCaches(false);
+            return;
+        }
+        for (Item item : message.items) {
+            try {
+                apply(item);
+            } catch (RuntimeException e) {
+                Debug.logWarning(e, "Could not clear the cache of entity " + item.entityName + " on channel " + channel, module);
+            }
+        }
+    }
+
+    private void apply(Item item) {
+        switch (item.kind) {
+        case CacheInvalidationMessage.ALL:
+            delegator.clearAllCaches(false);
+            break;
+        case CacheInvalidationMessage.ENTITY:
+            delegator.clearCacheLine(item.entityName, false);
+            break;
+        case CacheInvalidationMessage.PK:
+            delegator.clearCacheLine(delegator.makePK(item.entityName, item.fields), false);
+            break;
+        case CacheInvalidationMessage.VALUE:
+            delegator.clearCacheLine(delegator.makeValue(item.entityName, item.fields), false);
+            break;
+        case CacheInvalidationMessage.FLEXIBLE:
+            delegator.clearCacheLineFlexible(delegator.makeValue(item.entityName, item.fields), false);
+            break;
+        case CacheInvalidationMessage.CONDITION:
+            delegator.clearCacheLineByCondition(item.entityName, item.condition, false);
+            break;
+        default:
+            break;
+        }
+    }
+
+    /** Sends the queued invalidations, then stops the transport. */
+    public void close() {
+        flush();
+        if (flushExecutor != null) {
+            flushExecutor.shutdown();
+        }
+        if (transport != null) {
+            transport.stop();
+            transport = null;
+        }
+    }
+
+    public String getChannel() {
+        return channel;
+    }
+
+    /** Returns the number of messages sent by this node. */
+    public long getMessagesSent() {
+        return messagesSent.get();
+    }
+
+    /** Returns the number of invalidations sent by this node, after coalescing. */
+    public long getItemsSent() {
+        return itemsSent.get();
+    }
+
+    /** Returns the number of messages received from the other nodes. */
+    public long getMessagesReceived() {
+        return messagesReceived.get();
+    }
+
+    /** Returns the number of times a message of another node was missing, causing all the caches to be cleared. */
+    public long getMessagesMissed() {
+        return messagesMissed.get();
+    }
+}
@@ -0,0 +1,324 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.entity.cache;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import org.apache.ofbiz.base.util.UtilObject;
+import org.apache.ofbiz.entity.condition.EntityCondition;
+
+/**
+ * A batch of cache invalidations sent by a node of the cluster.
+ * <p>The message is written with a <code>DataOutputStream</code>: a header made of a magic number, a version,
+ * the channel, the id of the sending node and a sequence number, followed by the items. Field values of the
+ * common types are written in a compact form, the other values and the conditions are serialized.</p>
+ */
+final class CacheInvalidationMessage {
+
+    static final int MAGIC = 0x4F434942;
+    static final int VERSION = 1;
+
+    /** Clears all the caches. */
+    static final int ALL = 0;
+    /** Clears all the cache lines of an entity. */
+    static final int ENTITY = 1;
+    /** Clears the cache line of a primary key. */
+    static final int PK = 2;
+    /** Clears the cache lines of a value. */
+    static final int VALUE = 3;
+    /** Clears the cache lines matching a partial primary key. */
+    static final int FLEXIBLE = 4;
+    /** Clears the cache lines matching a condition. */
+    static final int CONDITION = 5;
+
+    private static final byte NULL = 'N';
+    private static final byte STRING = 'S';
+    private static final byte LONG = 'J';
+    private static final byte INTEGER = 'I';
+    private static final byte DOUBLE = 'D';
+    private static final byte DECIMAL = 'B';
+    private static final byte BOOLEAN = 'Z';
+    private static final byte TIMESTAMP = 'T';
+    private static final byte DATE = 'd';
+    private static final byte TIME = 't';
+    private static final byte OBJECT = 'O';
+
+    /** The longest string written as UTF-8, writeUTF being limited to 65535 bytes. */
+    private static final int MAX_UTF_LENGTH = 65535 / 3;
+
+    final String channel;
+    final long nodeId;
+    final long sequence;
+    final List<Item> items;
+
+    CacheInvalidationMessage(String channel, long nodeId, long sequence, List<Item> items) {
+        this.channel = channel;
+        this.nodeId = nodeId;
+        this.sequence = sequence;
+        this.items = items;
+    }
+
+    /** Returns the header of the messages of a node, the sequence number excepted. */
+    static byte[] encodeHeader(String channel, long nodeId) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(MAGIC);
+        out.writeByte(VERSION);
+        out.writeUTF(channel);
+        out.writeLong(nodeId);
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    /** Returns a message made of the header, the sequence number and the encoded items. */
+    static byte[] encode(byte[] header, long sequence, List<byte[]> encodedItems) throws IOException {
+        int length = header.length + 8 + 2;
+        for (byte[] item : encodedItems) {
+            length += item.length;
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(length);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.write(header);
+        out.writeLong(sequence);
+        out.writeShort(encodedItems.size());
+        for (byte[] item : encodedItems) {
+            out.write(item);
+        }
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    /** Returns the number of bytes of the header followed by the sequence number and the item count. */
+    static int getHeaderLength(byte[] header) {
+        return header.length + 8 + 2;
+    }
+
+    /** Encodes an item.
+     *@param item The item to encode
+     *@return the bytes of the item, or null when a field value or the condition can not be serialized
+     */
+    static byte[] encodeItem(Item item) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(item.kind);
+        switch (item.kind) {
+        case ALL:
+            break;
+        case ENTITY:
+            out.writeUTF(item.entityName);
+            break;
+        case PK:
+        case VALUE:
+        case FLEXIBLE:
+            out.writeUTF(item.entityName);
+            out.writeShort(item.fields.size());
+            for (Map.Entry<String, Object> entry : item.fields.entrySet()) {
+                out.writeUTF(entry.getKey());
+                if (!writeValue(out, entry.getValue())) {
+                    return null;
+                }
+            }
+            break;
+        case CONDITION:
+            out.writeUTF(item.entityName);
+            byte[] condition = UtilObject.getBytes(item.condition);
+            if (condition == null) {
+                return null;
+            }
+            out.writeInt(condition.length);
+            out.write(condition);
+            break;
+        default:
+            throw new IllegalArgumentException("Unknown cache invalidation kind " + item.kind);
+        }
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    private static boolean writeValue(DataOutputStream out, Object value) throws IOException {
+        if (value == null) {
+            out.writeByte(NULL);
+        } else if (value instanceof String && ((String) value).length() <= MAX_UTF_LENGTH) {
+            out.writeByte(STRING);
+            out.writeUTF((String) value);
+        } else if (value instanceof Long) {
+            out.writeByte(LONG);
+            out.writeLong((Long) value);
+        } else if (value instanceof Integer) {
+            out.writeByte(INTEGER);
+            out.writeInt((Integer) value);
+        } else if (value instanceof Double) {
+            out.writeByte(DOUBLE);
+            out.writeDouble((Double) value);
+        } else if (value instanceof BigDecimal) {
+            out.writeByte(DECIMAL);
+            out.writeUTF(value.toString());
+        } else if (value instanceof Boolean) {
+            out.writeByte(BOOLEAN);
+            out.writeBoolean((Boolean) value);
+        } else if (value instanceof Timestamp) {
+            out.writeByte(TIMESTAMP);
+            out.writeLong(((Timestamp) value).getTime());
+            out.writeInt(((Timestamp) value).getNanos());
+        } else if (value instanceof java.sql.Date) {
+            out.writeByte(DATE);
+            out.writeLong(((java.sql.Date) value).getTime());
+        } else if (value instanceof java.sql.Time) {
+            out.writeByte(TIME);
+            out.writeLong(((java.sql.Time) value).getTime());
+        } else {
+            byte[] object = value instanceof Serializable ? UtilObject.getBytes(value) : null;
+            if (object == null) {
+                return false;
+            }
+            out.writeByte(OBJECT);
+            out.writeInt(object.length);
+            out.write(object);
+        }
+        return true;
+    }
+
+    /** Decodes a message.
+     *@param data The bytes received
+     *@param length The number of bytes received
+     *@return the message, or null when the bytes are not a cache invalidation message of this version
+     */
+    static CacheInvalidationMessage decode(byte[] data, int length) throws IOException, ClassNotFoundException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(data, 0, length));
+        if (length < 5 || in.readInt() != MAGIC || in.readByte() != VERSION) {
+            return null;
+        }
+        String channel = in.readUTF();
+        long nodeId = in.readLong();
+        long sequence = in.readLong();
+        int count = in.readUnsignedShort();
+        List<Item> items = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int kind = in.readByte();
+            switch (kind) {
+            case ALL:
+                items.add(Item.ALL_ITEM);
+                break;
+            case ENTITY:
+                items.add(new Item(ENTITY, in.readUTF(), null, null));
+                break;
+            case PK:
+            case VALUE:
+            case FLEXIBLE:
+                String entityName = in.readUTF();
+                int fieldCount = in.readUnsignedShort();
+                Map<String, Object> fields = new LinkedHashMap<>();
+                for (int j = 0; j < fieldCount; j++) {
+                    fields.put(in.readUTF(), readValue(in));
+                }
+                items.add(new Item(kind, entityName, fields, null));
+                break;
+            case CONDITION:
+                String conditionEntityName = in.readUTF();
+                byte[] condition = new byte[in.readInt()];
+                in.readFully(condition);
+                items.add(new Item(CONDITION, conditionEntityName, null, (EntityCondition) UtilObject.getObjectException(condition)));
+                break;
+            default:
+                throw new IOException("Unknown cache invalidation kind " + kind);
+            }
+        }
+        return new CacheInvalidationMessage(channel, nodeId, sequence, items);
+    }
+
+    private static Object readValue(DataInputStream in) throws IOException, ClassNotFoundException {
+        byte type = in.readByte();
+        switch (type) {
+        case NULL:
+            return null;
+        case STRING:
+            return in.readUTF();
+        case LONG:
+            return in.readLong();
+        case INTEGER:
+            return in.readInt();
+        case DOUBLE:
+            return in.readDouble();
+        case DECIMAL:
+            return new BigDecimal(in.readUTF());
+        case BOOLEAN:
+            return in.readBoolean();
+        case TIMESTAMP:
+            Timestamp timestamp = new Timestamp(in.readLong());
+            timestamp.setNanos(in.readInt());
+            return timestamp;
+        case DATE:
+            return new java.sql.Date(in.readLong());
+        case TIME:
+            return new java.sql.Time(in.readLong());
+        case OBJECT:
+            byte[] object = new byte[in.readInt()];
+            in.readFully(object);
+            return UtilObject.getObjectException(object);
+        default:
+            throw new IOException("Unknown field value type " + new String(new byte[] {type}, StandardCharsets.US_ASCII));
+        }
+    }
+
+    /** A cache invalidation. Items are compared by value, so that the same invalidation is sent once per batch. */
+    static final class Item {
+        static final Item ALL_ITEM = new Item(ALL, null, null, null);
+
+        final int kind;
+        final String entityName;
+        final Map<String, Object> fields;
+        final EntityCondition condition;
+
+        Item(int kind, String entityName, Map<String, Object> fields, EntityCondition condition) {
+            this.kind = kind;
+            this.entityName = entityName;
+            this.fields = fields == null ? null : Collections.unmodifiableMap(new LinkedHashMap<>(fields));
+            this.condition = condition;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Item)) {
+                return false;
+            }
+            Item other = (Item) obj;
+            return kind == other.kind && Objects.equals(entityName, other.entityName) && Objects.equals(fields, other.fields)
+                    && Objects.equals(condition, other.condition);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(kind, entityName, fields, condition);
+        }
+    }
+}
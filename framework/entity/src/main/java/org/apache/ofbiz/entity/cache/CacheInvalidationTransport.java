@@ -0,0 +1,51 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.entity.cache;
+
+import java.io.IOException;
+
+/**
+ * Carries the messages of the {@link CacheInvalidationBus} between the nodes of a cluster.
+ * <p>A transport delivers each message sent to the other nodes, and usually to the sending node too, which ignores
+ * its own messages. Messages may be lost: the bus numbers them and clears all the caches when one is missing.
+ * Implementations have a public no-arg constructor and read their settings from <code>cacheinvalidation.properties</code>.</p>
+ */
+public interface CacheInvalidationTransport {
+
+    /** Receives the messages delivered by a transport. */
+    public interface Receiver {
+        /** Called by the transport for each message received, from a single thread. */
+        public void receive(byte[] data, int length);
+    }
+
+    /** Starts sending and receiving messages.
+     *@param channel The name of the channel, which a transport may use to isolate the nodes of different channels
+     *@param receiver Called for each message received
+     */
+    public void start(String channel, Receiver receiver) throws IOException;
+
+    /** Sends a message to all the nodes. */
+    public void send(byte[] data) throws IOException;
+
+    /** Returns the maximum number of bytes of a message. */
+    public int getMaxMessageSize();
+
+    /** Stops sending and receiving messages, releasing the resources of the transport. */
+    public void stop();
+}
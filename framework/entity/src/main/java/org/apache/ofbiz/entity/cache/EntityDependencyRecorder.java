@@ -0,0 +1,226 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.entity.cache;
+
+import java.util.Collection;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import javax.transaction.Status;
+import javax.transaction.Synchronization;
+
+import org.apache.ofbiz.base.util.Debug;
+import org.apache.ofbiz.entity.model.ModelEntity;
+import org.apache.ofbiz.entity.model.ModelViewEntity;
+import org.apache.ofbiz.entity.model.ModelViewEntity.ModelMemberEntity;
+import org.apache.ofbiz.entity.transaction.GenericTransactionException;
+import org.apache.ofbiz.entity.transaction.TransactionUtil;
+
+/**
+ * Records the entities read through the delegator by a thread, and tells the listeners when the entity cache of
+ * an entity is cleared.
+ * <p>A recording started by {@link #start} collects the names of the entities read until {@link #stop} is called,
+ * the member entities for the view entities. Recordings can be nested: the entities of an inner recording are
+ * added to the outer one when it stops. Since the entity cache is cleared on each write to an entity, locally or
+ * through the distributed cache clear, a listener added with {@link #addCacheClearListener} can drop the data it
+ * derived from a recording when one of its entities changes.</p>
+ * <p>The cache is cleared when the entity is written, before the transaction of the write is completed, so the
+ * data derived meanwhile from the old rows would stay. The clears done in a transaction are told to the listeners
+ * a second time once it is committed or rolled back.</p>
+ */
+public final class EntityDependencyRecorder {
+
+    public static final String module = EntityDependencyRecorder.class.getName();
+
+    private static final ThreadLocal<Recording> currentRecording = new ThreadLocal<>();
+    private static final List<CacheClearListener> listeners = new CopyOnWriteArrayList<>();
+    private static final ThreadLocal<CompletionClears> completionClears = new ThreadLocal<>();
+
+    private EntityDependencyRecorder() {}
+
+    /** Listens to the clearing of the entity cache. */
+    public interface CacheClearListener {
+        /** Called when the cache lines of an entity are cleared.
+         *@param delegatorName The name of the delegator of the cache
+         *@param entityName The name of the entity, or null when all the caches of the delegator are cleared
+         */
+        void cacheCleared(String delegatorName, String entityName);
+    }
+
+    /** The entities read by a thread since the recording started. */
+    public static final class Recording {
+        private final Recording parent;
+        private final Set<String> entityNames = new HashSet<>();
+        private boolean cacheable = true;
+
+        private Recording(Recording parent) {
+            this.parent = parent;
+        }
+
+        /** Returns the names of the entities read. */
+        public Set<String> getEntityNames() {
+            return Collections.unmodifiableSet(entityNames);
+        }
+
+        /** Returns false when an entity read is never cached, so that its changes are not notified. */
+        public boolean isCacheable() {
+            return cacheable;
+        }
+    }
+
+    /** Starts recording the entities read by the current thread. */
+    public static Recording start() {
+        Recording recording = new Recording(currentRecording.get());
+        currentRecording.set(recording);
+        return recording;
+    }
+
+    /** Stops a recording, adding its entities to the enclosing recording if any.
+     *@param recording The recording returned by {@link #start}
+     */
+    public static void stop(Recording recording) {
+        if (currentRecording.get() != recording) {
+            Debug.logWarning("Stopping an entity dependency recording which is not the current one", module);
+        }
+        if (recording.parent == null) {
+            currentRecording.remove();
+        } else {
+            recording.parent.entityNames.addAll(recording.entityNames);
+            recording.parent.cacheable &= recording.cacheable;
+            currentRecording.set(recording.parent);
+        }
+    }
+
+    /** Adds the entities of a recording made by another thread to the recording of the current thread, if any.
+     *@param recording The recording of the other thread, once stopped
+     */
+    public static void addRecording(Recording recording) {
+        Recording current = currentRecording.get();
+        if (current != null && current != recording) {
+            current.entityNames.addAll(recording.entityNames);
+            current.cacheable &= recording.cacheable;
+        }
+    }
+
+    /** Records a read of an entity by the current thread, when it is recording. */
+    public static void recordRead(ModelEntity modelEntity) {
+        Recording recording = currentRecording.get();
+        if (recording == null || modelEntity == null) {
+            return;
+        }
+        if (modelEntity.getNeverCache()) {
+            recording.cacheable = false;
+        }
+        if (!recording.entityNames.add(modelEntity.getEntityName())) {
+            return;
+        }
+        if (modelEntity instanceof ModelViewEntity) {
+            ModelViewEntity modelViewEntity = (ModelViewEntity) modelEntity;
+            for (ModelMemberEntity memberEntity : modelViewEntity.getAllModelMemberEntities()) {
+                recordRead(modelViewEntity.getMemberModelEntity(memberEntity.getEntityAlias()));
+            }
+        }
+    }
+
+    /** Records the reads of entities by the current thread, when it is recording; used to replay the reads of a cached result. */
+    public static void recordReads(Collection<String> entityNames) {
+        Recording recording = currentRecording.get();
+        if (recording != null) {
+            recording.entityNames.addAll(entityNames);
+        }
+    }
+
+    public static void addCacheClearListener(CacheClearListener listener) {
+        listeners.add(listener);
+    }
+
+    public static void removeCacheClearListener(CacheClearListener listener) {
+        listeners.remove(listener);
+    }
+
+    static void cacheCleared(String delegatorName, String entityName) {
+        notifyListeners(delegatorName, entityName);
+        if (!listeners.isEmpty()) {
+            clearedInTransaction(delegatorName, entityName);
+        }
+    }
+
+    private static void notifyListeners(String delegatorName, String entityName) {
+        for (CacheClearListener listener : listeners) {
+            try {
+                listener.cacheCleared(delegatorName, entityName);
+            } catch (RuntimeException e) {
+                Debug.logError(e, "Error notifying the clearing of the cache of entity [" + entityName + "]", module);
+            }
+        }
+    }
+
+    // records a clear to notify again once the transaction of the current thread is completed, if any
+    private static void clearedInTransaction(String delegatorName, String entityName) {
+        try {
+            if (TransactionUtil.getStatus() != Status.STATUS_ACTIVE) {
+                return;
+            }
+            CompletionClears clears = completionClears.get();
+            if (clears == null || clears.completed) {
+                clears = new CompletionClears();
+                TransactionUtil.registerSynchronization(clears);
+                completionClears.set(clears);
+            }
+            clears.add(delegatorName, entityName);
+        } catch (GenericTransactionException e) {
+            Debug.logWarning(e, "Unable to notify the clearing of the cache of entity [" + entityName + "] after the transaction", module);
+        }
+    }
+
+    /** The clears done in a transaction, notified again when it is completed. */
+    private static final class CompletionClears implements Synchronization {
+        private final Set<List<String>> clears = new LinkedHashSet<>();
+        private volatile boolean completed = false;
+
+        private synchronized void add(String delegatorName, String entityName) {
+            clears.add(Arrays.asList(delegatorName, entityName));
+        }
+
+        @Override
+        public void beforeCompletion() {
+        }
+
+        @Override
+        public void afterCompletion(int status) {
+            completed = true;
+            if (completionClears.get() == this) {
+                completionClears.remove();
+            }
+            List<List<String>> toNotify;
+            synchronized (this) {
+                toNotify = new ArrayList<>(clears);
+            }
+            for (List<String> clear : toNotify) {
+                notifyListeners(clear.get(0), clear.get(1));
+            }
+        }
+    }
+}
@@ -0,0 +1,160 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.entity.cache;
+
+import java.io.IOException;
+import java.net.BindException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.MulticastSocket;
+import java.net.SocketException;
+
+import org.apache.ofbiz.base.util.Debug;
+import org.apache.ofbiz.base.util.UtilProperties;
+
+/**
+ * Sends the cache invalidation messages as UDP datagrams.
+ * <p>When the address is a multicast group, every node joins the group on the same port, so the nodes may run
+ * on different hosts. Otherwise each node binds the first free port of a range on the address, usually the loopback
+ * address, and sends each message to all the ports of the range: this lets the JVMs of a single host share their
+ * invalidations without any network configuration.</p>
+ */
+public class UdpCacheInvalidationTransport implements CacheInvalidationTransport {
+
+    public static final String module = UdpCacheInvalidationTransport.class.getName();
+
+    private final InetAddress address;
+    private final int port;
+    private final int portCount;
+    private final int timeToLive;
+    private final int maxMessageSize;
+    private volatile DatagramSocket socket;
+    private Thread receiverThread;
+    private volatile boolean stopped = false;
+
+    public UdpCacheInvalidationTransport() throws IOException {
+        this(InetAddress.getByName(UtilProperties.getPropertyValue("cacheinvalidation", "udp.address", "127.0.0.1")),
+                UtilProperties.getPropertyAsInteger("cacheinvalidation", "udp.port", 45564),
+                UtilProperties.getPropertyAsInteger("cacheinvalidation", "udp.portCount", 8),
+                UtilProperties.getPropertyAsInteger("cacheinvalidation", "udp.timeToLive", 1),
+                UtilProperties.getPropertyAsInteger("cacheinvalidation", "udp.maxMessageSize", 16384));
+    }
+
+    /** Creates a new transport.
+     *@param address The multicast group, or the address shared by the nodes of a single host
+     *@param port The port of the multicast group, or the first port of the range
+     *@param portCount The number of ports of the range, ignored for a multicast group
+     *@param timeToLive The time to live of the multicast datagrams
+     *@param maxMessageSize The maximum number of bytes of a datagram
+     */
+    public UdpCacheInvalidationTransport(InetAddress address, int port, int portCount, int timeToLive, int maxMessageSize) {
+        this.address = address;
+        this.port = port;
+        this.portCount = Math.max(1, portCount);
+        this.timeToLive = timeToLive;
+        this.maxMessageSize = Math.min(maxMessageSize, 65507);
+    }
+
+    @Override
+    public synchronized void start(String channel, Receiver receiver) throws IOException {
+        if (address.isMulticastAddress()) {
+            MulticastSocket multicastSocket = new MulticastSocket(port);
+            multicastSocket.setTimeToLive(timeToLive);
+            multicastSocket.joinGroup(address);
+            socket = multicastSocket;
+        } else {
+            socket = bindPortInRange();
+        }
+        socket.setReceiveBufferSize(Math.max(socket.getReceiveBufferSize(), maxMessageSize * 64));
+        final DatagramSocket receiveSocket = socket;
+        receiverThread = new Thread(() -> {
+            byte[] buffer = new byte[maxMessageSize];
+            DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+            while (!stopped) {
+                try {
+                    packet.setLength(buffer.length);
+                    receiveSocket.receive(packet);
+                    receiver.receive(packet.getData(), packet.getLength());
+                } catch (IOException e) {
+                    if (!stopped) {
+                        Debug.logError(e, "Error receiving cache invalidation message on channel " + channel, module);
+                    }
+                } catch (RuntimeException e) {
+                    Debug.logError(e, "Error handling cache invalidation message on channel " + channel, module);
+                }
+            }
+        }, "OFBiz-cache-invalidation-" + channel);
+        receiverThread.setDaemon(true);
+        receiverThread.start();
+        if (Debug.infoOn()) {
+            Debug.logInfo("Cache invalidation channel " + channel + " listening on " + socket.getLocalSocketAddress(), module);
+        }
+    }
+
+    private DatagramSocket bindPortInRange() throws SocketException {
+        BindException lastException = null;
+        for (int i = 0; i < portCount; i++) {
+            try {
+                return new DatagramSocket(new InetSocketAddress(address, port + i));
+            } catch (BindException e) {
+                lastException = e;
+            }
+        }
+        throw lastException;
+    }
+
+    @Override
+    public void send(byte[] data) throws IOException {
+        DatagramSocket sendSocket = socket;
+        if (sendSocket == null) {
+            throw new IOException("The cache invalidation transport is not started");
+        }
+        if (address.isMulticastAddress()) {
+            sendSocket.send(new DatagramPacket(data, data.length, address, port));
+        } else {
+            for (int i = 0; i < portCount; i++) {
+                if (port + i != sendSocket.getLocalPort()) {
+                    sendSocket.send(new DatagramPacket(data, data.length, address, port + i));
+                }
+            }
+        }
+    }
+
+    @Override
+    public int getMaxMessageSize() {
+        return maxMessageSize;
+    }
+
+    @Override
+    public synchronized void stop() {
+        stopped = true;
+        if (socket != null) {
+            socket.close();
+        }
+        if (receiverThread != null) {
+            try {
+                receiverThread.join(1000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
@@ -29,6 +29,7 @@ import org.apache.ofbiz.base.util.PatternFactory;
 import org.apache.ofbiz.base.util.UtilGenerics;
 import org.apache.ofbiz.base.util.UtilValidate;
 import org.apache.ofbiz.entity.Delegator;
+import org.apache.ofbiz.entity.GenericEntity;
 import org.apache.ofbiz.entity.GenericModelException;
 import org.apache.ofbiz.entity.config.model.Datasource;
 import org.apache.ofbiz.entity.model.ModelEntity;
@@ -112,6 +113,52 @@ public abstract class EntityComparisonOperator<L, R> extends EntityOperator<L, R
         return false;
     }
 
+    /** Appends the shape of the SQL generated by {@link #addSqlValue} and adds its parameters, see {@link EntityCondition#addSqlShape}. */
+    public boolean addSqlShape(StringBuilder shape, ModelEntity entity, List<EntityConditionParam> entityConditionParams, L lhs, R rhs) {
+        if (this.idInt == EntityOperator.ID_NOT || !(lhs instanceof EntityConditionValue)) {
+            return false;
+        }
+        shape.append('[');
+        if (this.idInt == EntityOperator.ID_IN && UtilValidate.isEmpty(rhs)) {
+            shape.append("1=0]");
+            return true;
+        }
+        EntityConditionValue ecv = (EntityConditionValue) lhs;
+        if (!ecv.addSqlShape(shape, entity)) {
+            return false;
+        }
+        shape.append(' ').append(getCode()).append(' ');
+        if (rhs instanceof EntityConditionValue) {
+            // only field references, the other values are written in the SQL
+            if (!(rhs instanceof EntityFieldValue) || !((EntityFieldValue) rhs).addSqlShape(shape, entity)) {
+                return false;
+            }
+        } else if (rhs == null || rhs == GenericEntity.NULL_FIELD) {
+            shape.append("NULL");
+        } else {
+            ModelField field = ecv.getModelField(entity);
+            if (field == null) {
+                // without a field the values are written in the SQL
+                return false;
+            }
+            if (rhs instanceof Collection<?>) {
+                Collection<?> values = UtilGenerics.cast(rhs);
+                shape.append('#').append(values.size());
+                for (Object value: values) {
+                    if (value instanceof Collection<?>) {
+                        return false;
+                    }
+                    entityConditionParams.add(new EntityConditionParam(field, value));
+                }
+            } else {
+                shape.append('?');
+                entityConditionParams.add(new EntityConditionParam(field, rhs));
+            }
+        }
+        shape.append(']');
+        return true;
+    }
+
     protected void makeRHSWhereString(ModelEntity entity, List<EntityConditionParam> entityConditionParams, StringBuilder sql, ModelField field, R rhs, Datasource datasourceInfo) {
         sql.append(' ').append(getCode()).append(' ');
         makeRHSWhereStringValue(entity, entityConditionParams, sql, field, rhs, datasourceInfo);
@@ -120,6 +120,19 @@ public abstract class EntityCondition extends EntityConditionBase implements IsE
 
     abstract public String makeWhereString(ModelEntity modelEntity, List<EntityConditionParam> entityConditionParams, Datasource datasourceInfo);
 
+    /**
+     * Appends a key describing the SQL generated by {@link #makeWhereString} for this condition, without the
+     * values, and adds the parameters that SQL would bind. Conditions with the same shape generate the same SQL.
+     *
+     *@param shape The key to append to
+     *@param modelEntity The ModelEntity the condition is for
+     *@param entityConditionParams The list the parameters are added to
+     *@return false if the generated SQL depends on the values of this condition, in which case it can't be reused
+     */
+    public boolean addSqlShape(StringBuilder shape, ModelEntity modelEntity, List<EntityConditionParam> entityConditionParams) {
+        return false;
+    }
+
     abstract public void checkCondition(ModelEntity modelEntity) throws GenericModelException;
 
     public boolean entityMatches(GenericEntity entity) {
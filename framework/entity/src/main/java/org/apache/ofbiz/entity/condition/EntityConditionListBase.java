@@ -72,6 +72,11 @@ public abstract class EntityConditionListBase<T extends EntityCondition> extends
         return sql.toString();
     }
 
+    @Override
+    public boolean addSqlShape(StringBuilder shape, ModelEntity modelEntity, List<EntityConditionParam> entityConditionParams) {
+        return operator.addSqlShape(shape, modelEntity, entityConditionParams, conditionList);
+    }
+
     @Override
     public void checkCondition(ModelEntity modelEntity) throws GenericModelException {
         operator.validateSql(modelEntity, conditionList);
@@ -88,6 +88,11 @@ public abstract class EntityConditionValue extends EntityConditionBase {
 
     public abstract void validateSql(ModelEntity modelEntity) throws GenericModelException;
 
+    /** Appends the shape of the SQL generated by {@link #addSqlValue}, see {@link EntityCondition#addSqlShape}; values without parameters can't be shaped. */
+    public boolean addSqlShape(StringBuilder shape, ModelEntity modelEntity) {
+        return false;
+    }
+
     public Object getValue(GenericEntity entity) {
         if (entity == null) {
             return null;
@@ -55,6 +55,12 @@ public final class EntityDateFilterCondition extends EntityCondition {
         return condition.makeWhereString(modelEntity, entityConditionParams, datasourceInfo);
     }
 
+    @Override
+    public boolean addSqlShape(StringBuilder shape, ModelEntity modelEntity, List<EntityConditionParam> entityConditionParams) {
+        EntityCondition condition = makeCondition();
+        return condition.addSqlShape(shape, modelEntity, entityConditionParams);
+    }
+
     @Override
     public void checkCondition(ModelEntity modelEntity) throws GenericModelException {
         EntityCondition condition = makeCondition();
@@ -18,6 +18,7 @@
  *******************************************************************************/
 package org.apache.ofbiz.entity.condition;
 
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.List;
 import java.util.Locale;
@@ -120,6 +121,18 @@ public final class EntityExpr extends EntityCondition {
         return sql.toString();
     }
 
+    @Override
+    public boolean addSqlShape(StringBuilder shape, ModelEntity modelEntity, List<EntityConditionParam> entityConditionParams) {
+        EntityOperator<?, ?, ?> op = this.operator;
+        if (op instanceof EntityJoinOperator) {
+            return ((EntityJoinOperator) op).addSqlShape(shape, modelEntity, entityConditionParams, Arrays.asList((EntityCondition) lhs, (EntityCondition) rhs));
+        }
+        if (op instanceof EntityComparisonOperator<?, ?>) {
+            return UtilGenerics.<EntityComparisonOperator<Object, Object>>cast(op).addSqlShape(shape, modelEntity, entityConditionParams, lhs, rhs);
+        }
+        return false;
+    }
+
     @Override
     public boolean mapMatches(Delegator delegator, Map<String, ? extends Object> map) {
         return operator.mapMatches(delegator, map, lhs, rhs);
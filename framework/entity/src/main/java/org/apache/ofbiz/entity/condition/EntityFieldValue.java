@@ -171,6 +171,15 @@ public class EntityFieldValue extends EntityConditionValue {
         }
     }
 
+    @Override
+    public boolean addSqlShape(StringBuilder shape, ModelEntity modelEntity) {
+        shape.append(fieldName);
+        if (this.modelViewEntity != null) {
+            shape.append('@').append(modelViewEntity.getEntityName()).append(':').append(entityAlias).append(':').append(entityAliasStack);
+        }
+        return true;
+    }
+
     @Override
     public void validateSql(ModelEntity modelEntity) throws GenericModelException {
         ModelField field = getModelField(modelEntity);
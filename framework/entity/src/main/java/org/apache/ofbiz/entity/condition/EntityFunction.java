@@ -200,6 +200,20 @@ public abstract class EntityFunction<T extends Comparable<?>> extends EntityCond
         sql.append(')');
     }
 
+    @Override
+    public boolean addSqlShape(StringBuilder shape, ModelEntity modelEntity) {
+        if (nested == null) {
+            // the value is written in the SQL
+            return false;
+        }
+        shape.append(function.name()).append('(');
+        if (!nested.addSqlShape(shape, modelEntity)) {
+            return false;
+        }
+        shape.append(')');
+        return true;
+    }
+
     @Override
     public ModelField getModelField(ModelEntity modelEntity) {
         if (nested != null) {
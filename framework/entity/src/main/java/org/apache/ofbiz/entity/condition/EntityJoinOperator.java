@@ -79,6 +79,21 @@ public class EntityJoinOperator extends EntityOperator<EntityCondition, EntityCo
         }
     }
 
+    public boolean addSqlShape(StringBuilder shape, ModelEntity modelEntity, List<EntityConditionParam> entityConditionParams, List<? extends EntityCondition> conditionList) {
+        shape.append(getCode()).append('(');
+        for (EntityCondition condition: conditionList) {
+            if (condition.isEmpty()) {
+                continue;
+            }
+            if (!condition.addSqlShape(shape, modelEntity, entityConditionParams)) {
+                return false;
+            }
+            shape.append(',');
+        }
+        shape.append(')');
+        return true;
+    }
+
     protected EntityCondition freeze(Object item) {
         return ((EntityCondition) item).freeze();
     }
@@ -58,6 +58,12 @@ public final class EntityWhereString extends EntityCondition {
         return sqlString;
     }
 
+    @Override
+    public boolean addSqlShape(StringBuilder shape, ModelEntity modelEntity, List<EntityConditionParam> entityConditionParams) {
+        shape.append("SQL").append(sqlString.length()).append(':').append(sqlString);
+        return true;
+    }
+
     @Override
     public void checkCondition(ModelEntity modelEntity) throws GenericModelException {// no nothing, this is always assumed to be fine... could do funky SQL syntax checking, but hey this is a HACK anyway
     }
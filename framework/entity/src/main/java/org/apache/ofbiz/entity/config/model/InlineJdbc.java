@@ -50,6 +50,8 @@ public final class InlineJdbc extends JdbcElement {
     private final boolean testOnReturn; // type = xs:boolean
     private final boolean testWhileIdle; // type = xs:boolean
     private final String poolXaWrapperClass; // type = xs:string
+    private final boolean poolStatements; // type = xs:boolean
+    private final int poolStatementsMaxsize; // type = xs:nonNegativeInteger
 
     InlineJdbc(Element element) throws GenericEntityConfException {
         super(element);
@@ -167,6 +169,17 @@ public final class InlineJdbc extends JdbcElement {
         this.testOnReturn = "true".equals(element.getAttribute("test-on-return"));
         this.testWhileIdle = "true".equals(element.getAttribute("test-while-idle"));
         this.poolXaWrapperClass = element.getAttribute("pool-xa-wrapper-class").intern();
+        this.poolStatements = "true".equals(element.getAttribute("pool-statements"));
+        String poolStatementsMaxsize = element.getAttribute("pool-statements-maxsize");
+        if (poolStatementsMaxsize.isEmpty()) {
+            this.poolStatementsMaxsize = 100;
+        } else {
+            try {
+                this.poolStatementsMaxsize = Integer.parseInt(poolStatementsMaxsize);
+            } catch (Exception e) {
+                throw new GenericEntityConfException("<inline-jdbc> element pool-statements-maxsize attribute is invalid" + lineNumberText);
+            }
+        }
     }
 
     /** Returns the value of the <code>jdbc-driver</code> attribute. */
@@ -268,4 +281,14 @@ public final class InlineJdbc extends JdbcElement {
     public String getPoolXaWrapperClass() {
         return this.poolXaWrapperClass;
     }
+
+    /** Returns the value of the <code>pool-statements</code> attribute. */
+    public boolean getPoolStatements() {
+        return this.poolStatements;
+    }
+
+    /** Returns the value of the <code>pool-statements-maxsize</code> attribute. */
+    public int getPoolStatementsMaxsize() {
+        return this.poolStatementsMaxsize;
+    }
 }
@@ -58,6 +58,8 @@ public class DBCPConnectionFactory implements ConnectionFactory {
     // In case you don't want to be disturbed in the log (focusing on something else), it's still easy to comment out the line from DebugManagedDataSource
     protected static final ConcurrentHashMap<String, DebugManagedDataSource<? extends Connection>> dsCache =
             new ConcurrentHashMap<>();
+    protected static final ConcurrentHashMap<String, StatementCachingConnectionFactory> statementCacheFactories =
+            new ConcurrentHashMap<>();
 
     public Connection getConnection(GenericHelperInfo helperInfo, JdbcElement abstractJdbc) throws SQLException, GenericEntityException {
         String cacheKey = helperInfo.getHelperFullName();
@@ -106,8 +108,15 @@ public class DBCPConnectionFactory implements ConnectionFactory {
         // wrap it with a LocalXAConnectionFactory
         XAConnectionFactory xacf = new LocalXAConnectionFactory(txMgr, cf);
 
-        // create the pool object factory
-        PoolableConnectionFactory factory = new PoolableManagedConnectionFactory(xacf, null);
+        // create the pool object factory, caching the prepared statements of each connection if configured
+        PoolableConnectionFactory factory;
+        if (jdbcElement.getPoolStatements()) {
+            StatementCachingConnectionFactory statementCachingFactory = new StatementCachingConnectionFactory(xacf, jdbcElement.getPoolStatementsMaxsize());
+            statementCacheFactories.putIfAbsent(cacheKey, statementCachingFactory);
+            factory = statementCachingFactory;
+        } else {
+            factory = new PoolableManagedConnectionFactory(xacf, null);
+        }
         factory.setValidationQuery(jdbcElement.getPoolJdbcTestStmt());
         factory.setDefaultReadOnly(false);
         factory.setRollbackOnReturn(false);
@@ -162,6 +171,7 @@ public class DBCPConnectionFactory implements ConnectionFactory {
     public void closeAll() {
         // no methods on the pool to shutdown; so just clearing for GC
         dsCache.clear();
+        statementCacheFactories.clear();
     }
 
     public static Map<String, Object> getDataSourceInfo(String helperName) {
@@ -170,6 +180,11 @@ public class DBCPConnectionFactory implements ConnectionFactory {
         if (mds != null) {
             dataSourceInfo = mds.getInfo();
         }
+        StatementCachingConnectionFactory statementCachingFactory = statementCacheFactories.get(helperName);
+        if (statementCachingFactory != null) {
+            dataSourceInfo.put("statementCacheHits", statementCachingFactory.getHitCount());
+            dataSourceInfo.put("statementCacheMisses", statementCachingFactory.getMissCount());
+        }
         return dataSourceInfo;
     }
 
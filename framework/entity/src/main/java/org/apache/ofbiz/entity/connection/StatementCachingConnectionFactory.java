@@ -0,0 +1,117 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.entity.connection;
+
+import java.sql.Connection;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.commons.dbcp2.DelegatingPreparedStatement;
+import org.apache.commons.dbcp2.PStmtKey;
+import org.apache.commons.dbcp2.PoolableConnection;
+import org.apache.commons.dbcp2.PoolingConnection;
+import org.apache.commons.dbcp2.managed.PoolableManagedConnectionFactory;
+import org.apache.commons.dbcp2.managed.XAConnectionFactory;
+import org.apache.commons.pool2.KeyedPooledObjectFactory;
+import org.apache.commons.pool2.PooledObject;
+import org.apache.commons.pool2.impl.GenericKeyedObjectPool;
+import org.apache.commons.pool2.impl.GenericKeyedObjectPoolConfig;
+
+/**
+ * A managed connection factory caching the prepared statements of each pooled connection.
+ * <p>The statements are cached by DBCP, keyed by SQL text and result set options; this factory
+ * replaces the statement pool of each new connection with one counting the cache hits and misses
+ * so they can be shown with the other connection pool information.</p>
+ */
+public class StatementCachingConnectionFactory extends PoolableManagedConnectionFactory {
+
+    private final int maxOpenPreparedStatements;
+    private final LongAdder borrowCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+
+    public StatementCachingConnectionFactory(XAConnectionFactory xaConnectionFactory, int maxOpenPreparedStatements) {
+        super(xaConnectionFactory, null);
+        this.maxOpenPreparedStatements = maxOpenPreparedStatements;
+        setPoolStatements(true);
+        setMaxOpenPreparedStatements(maxOpenPreparedStatements);
+    }
+
+    @Override
+    public synchronized PooledObject<PoolableConnection> makeObject() throws Exception {
+        PooledObject<PoolableConnection> pooledConnection = super.makeObject();
+        Connection delegate = pooledConnection.getObject().getDelegate();
+        if (delegate instanceof PoolingConnection) {
+            PoolingConnection poolingConnection = (PoolingConnection) delegate;
+            // same settings DBCP uses for the statement pool it creates
+            GenericKeyedObjectPoolConfig<DelegatingPreparedStatement> config = new GenericKeyedObjectPoolConfig<>();
+            config.setMaxTotalPerKey(-1);
+            config.setBlockWhenExhausted(false);
+            config.setMaxWaitMillis(0);
+            config.setMaxIdlePerKey(1);
+            config.setMaxTotal(maxOpenPreparedStatements);
+            poolingConnection.setStatementPool(new GenericKeyedObjectPool<>(new CountingStatementFactory(poolingConnection), config));
+        }
+        return pooledConnection;
+    }
+
+    /** Returns the number of prepared statements served from the cache. */
+    public long getHitCount() {
+        return borrowCount.sum() - missCount.sum();
+    }
+
+    /** Returns the number of prepared statements that had to be prepared by the database. */
+    public long getMissCount() {
+        return missCount.sum();
+    }
+
+    private final class CountingStatementFactory implements KeyedPooledObjectFactory<PStmtKey, DelegatingPreparedStatement> {
+        private final PoolingConnection poolingConnection;
+
+        private CountingStatementFactory(PoolingConnection poolingConnection) {
+            this.poolingConnection = poolingConnection;
+        }
+
+        @Override
+        public PooledObject<DelegatingPreparedStatement> makeObject(PStmtKey key) throws Exception {
+            missCount.increment();
+            return poolingConnection.makeObject(key);
+        }
+
+        @Override
+        public void destroyObject(PStmtKey key, PooledObject<DelegatingPreparedStatement> p) throws Exception {
+            poolingConnection.destroyObject(key, p);
+        }
+
+        @Override
+        public boolean validateObject(PStmtKey key, PooledObject<DelegatingPreparedStatement> p) {
+            return poolingConnection.validateObject(key, p);
+        }
+
+        @Override
+        public void activateObject(PStmtKey key, PooledObject<DelegatingPreparedStatement> p) throws Exception {
+            // called on each borrow, for new and cached statements alike
+            borrowCount.increment();
+            poolingConnection.activateObject(key, p);
+        }
+
+        @Override
+        public void passivateObject(PStmtKey key, PooledObject<DelegatingPreparedStatement> p) throws Exception {
+            poolingConnection.passivateObject(key, p);
+        }
+    }
+}
@@ -20,7 +20,9 @@ package org.apache.ofbiz.entity.datasource;
 
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
 import java.sql.Timestamp;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
@@ -35,6 +37,7 @@ import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.ofbiz.base.util.Debug;
 import org.apache.ofbiz.base.util.UtilValidate;
+import org.apache.ofbiz.base.util.cache.UtilCache;
 import org.apache.ofbiz.entity.Delegator;
 import org.apache.ofbiz.entity.EntityLockedException;
 import org.apache.ofbiz.entity.GenericDataSourceException;
@@ -75,6 +78,8 @@ public class GenericDAO {
     private final GenericHelperInfo helperInfo;
     private final ModelFieldTypeReader modelFieldTypeReader;
     private final Datasource datasource;
+    /** The generated SQL by entity and statement shape, see {@link SqlTemplate} */
+    private final UtilCache<String, SqlTemplate> sqlTemplateCache;
 
     public static GenericDAO getGenericDAO(GenericHelperInfo helperInfo) {
         String cacheKey = helperInfo.getHelperFullName();
@@ -90,6 +95,35 @@ public class GenericDAO {
         this.helperInfo = helperInfo;
         this.modelFieldTypeReader = ModelFieldTypeReader.getModelFieldTypeReader(helperInfo.getHelperBaseName());
         this.datasource = EntityConfig.getDatasource(helperInfo.getHelperBaseName());
+        this.sqlTemplateCache = UtilCache.createUtilCache("entity.SqlTemplate." + helperInfo.getHelperFullName(), 2000, 0, 0, false, "entity.SqlTemplate");
+    }
+
+    /** Returns true if the primary key values can be bound to cached "col=?" SQL, ie none of them is null or a collection. */
+    private static boolean hasBindablePkValues(ModelEntity modelEntity, GenericEntity entity) {
+        Iterator<ModelField> pksIter = modelEntity.getPksIterator();
+        while (pksIter.hasNext()) {
+            Object value = entity.dangerousGetNoCheckButFast(pksIter.next());
+            if (value == null || value == GenericEntity.NULL_FIELD || value instanceof Collection<?>) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String makeSqlTemplateKey(String statement, ModelEntity modelEntity, List<ModelField> modelFields) {
+        if (isDynamicView(modelEntity)) {
+            return null;
+        }
+        StringBuilder cacheKey = new StringBuilder(statement).append(':').append(modelEntity.getEntityName()).append('|');
+        for (ModelField modelField: modelFields) {
+            cacheKey.append(modelField.getName()).append(',');
+        }
+        return cacheKey.toString();
+    }
+
+    // dynamic views are all named DynamicViewEntity by default, their SQL can't be keyed on the entity name
+    private static boolean isDynamicView(ModelEntity modelEntity) {
+        return modelEntity instanceof ModelViewEntity && ((ModelViewEntity) modelEntity).isDynamic();
     }
 
     private void addFieldIfMissing(List<ModelField> fieldsToSave, String fieldName, ModelEntity modelEntity) {
@@ -121,6 +155,22 @@ public class GenericDAO {
             return singleUpdateView(entity, (ModelViewEntity) modelEntity, fieldsToSave, sqlP);
         }
 
+        setInsertStamps(entity, modelEntity, fieldsToSave);
+        String sql = makeInsertSql(modelEntity, fieldsToSave);
+
+        try {
+            sqlP.prepareStatement(sql);
+            SqlJdbcUtil.setValues(sqlP, fieldsToSave, entity, modelFieldTypeReader);
+            int retVal = sqlP.executeUpdate();
+
+            entity.synchronizedWithDatasource();
+            return retVal;
+        } catch (GenericEntityException e) {
+            throw new GenericEntityException("Error while inserting: " + entity.toString(), e);
+        }
+    }
+
+    private void setInsertStamps(GenericEntity entity, ModelEntity modelEntity, List<ModelField> fieldsToSave) {
         // if we have a STAMP_TX_FIELD or CREATE_STAMP_TX_FIELD then set it with NOW, always do this before the STAMP_FIELD
         // NOTE: these fairly complicated if statements have a few objectives:
         //   1. don't run the TransationUtil.getTransaction*Stamp() methods when we don't need to
@@ -153,24 +203,24 @@ public class GenericDAO {
                 addFieldIfMissing(fieldsToSave, ModelEntity.CREATE_STAMP_FIELD, modelEntity);
             }
         }
+    }
 
+    private String makeInsertSql(ModelEntity modelEntity, List<ModelField> fieldsToSave) {
+        String cacheKey = makeSqlTemplateKey("INSERT", modelEntity, fieldsToSave);
+        SqlTemplate template = cacheKey != null ? sqlTemplateCache.get(cacheKey) : null;
+        if (template != null) {
+            return template.sql;
+        }
         StringBuilder sqlB = new StringBuilder("INSERT INTO ").append(modelEntity.getTableName(datasource)).append(" (");
 
         modelEntity.colNameString(fieldsToSave, sqlB, "");
         sqlB.append(") VALUES (");
         modelEntity.fieldsStringList(fieldsToSave, sqlB, "?", ", ");
         String sql = sqlB.append(")").toString();
-
-        try {
-            sqlP.prepareStatement(sql);
-            SqlJdbcUtil.setValues(sqlP, fieldsToSave, entity, modelFieldTypeReader);
-            int retVal = sqlP.executeUpdate();
-
-            entity.synchronizedWithDatasource();
-            return retVal;
-        } catch (GenericEntityException e) {
-            throw new GenericEntityException("Error while inserting: " + entity.toString(), e);
+        if (cacheKey != null) {
+            sqlTemplateCache.put(cacheKey, new SqlTemplate(sql, null));
         }
+        return sql;
     }
 
     public int updateAll(GenericEntity entity) throws GenericEntityException {
@@ -182,6 +232,10 @@ public class GenericDAO {
     public int update(GenericEntity entity) throws GenericEntityException {
         ModelEntity modelEntity = entity.getModelEntity();
 
+        return customUpdate(entity, modelEntity, getPartialFields(entity, modelEntity));
+    }
+
+    private List<ModelField> getPartialFields(GenericEntity entity, ModelEntity modelEntity) {
         // we don't want to update ALL fields, just the nonpk fields that are in the passed GenericEntity
         List<ModelField> partialFields = new LinkedList<ModelField>();
         Collection<String> keys = entity.getAllKeys();
@@ -193,8 +247,7 @@ public class GenericDAO {
                 partialFields.add(curField);
             }
         }
-
-        return customUpdate(entity, modelEntity, partialFields);
+        return partialFields;
     }
 
     private int customUpdate(GenericEntity entity, ModelEntity modelEntity, List<ModelField> fieldsToSave) throws GenericEntityException {
@@ -234,6 +287,28 @@ public class GenericDAO {
             }
         }
 
+        setUpdateStamps(entity, modelEntity, fieldsToSave);
+        String sql = makeUpdateSql(entity, modelEntity, fieldsToSave);
+
+        int retVal = 0;
+
+        try {
+            sqlP.prepareStatement(sql);
+            SqlJdbcUtil.setValues(sqlP, fieldsToSave, entity, modelFieldTypeReader);
+            SqlJdbcUtil.setPkValues(sqlP, modelEntity, entity, modelFieldTypeReader);
+            retVal = sqlP.executeUpdate();
+            entity.synchronizedWithDatasource();
+        } catch (GenericEntityException e) {
+            throw new GenericEntityException("Error while updating: " + entity.toString(), e);
+        }
+
+        if (retVal == 0) {
+            throw new GenericEntityNotFoundException("Tried to update an entity that does not exist, entity: " + entity.toString());
+        }
+        return retVal;
+    }
+
+    private void setUpdateStamps(GenericEntity entity, ModelEntity modelEntity, List<ModelField> fieldsToSave) {
         // if we have a STAMP_TX_FIELD then set it with NOW, always do this before the STAMP_FIELD
         // NOTE: these fairly complicated if statements have a few objectives:
         //   1. don't run the TransationUtil.getTransaction*Stamp() methods when we don't need to
@@ -248,26 +323,189 @@ public class GenericDAO {
             entity.set(ModelEntity.STAMP_FIELD, TransactionUtil.getTransactionUniqueNowStamp());
             addFieldIfMissing(fieldsToSave, ModelEntity.STAMP_FIELD, modelEntity);
         }
+    }
 
+    private String makeUpdateSql(GenericEntity entity, ModelEntity modelEntity, List<ModelField> fieldsToSave) {
+        // the WHERE clause depends on which primary key values are null, only cache the common case
+        String cacheKey = hasBindablePkValues(modelEntity, entity) ? makeSqlTemplateKey("UPDATE", modelEntity, fieldsToSave) : null;
+        SqlTemplate template = cacheKey != null ? sqlTemplateCache.get(cacheKey) : null;
+        if (template != null) {
+            return template.sql;
+        }
         StringBuilder sql = new StringBuilder().append("UPDATE ").append(modelEntity.getTableName(datasource)).append(" SET ");
         modelEntity.colNameString(fieldsToSave, sql, "", "=?, ", "=?", false);
         sql.append(" WHERE ");
         SqlJdbcUtil.makeWhereStringFromFields(sql, modelEntity.getPkFieldsUnmodifiable(), entity, "AND");
+        if (cacheKey != null) {
+            sqlTemplateCache.put(cacheKey, new SqlTemplate(sql.toString(), null));
+        }
+        return sql.toString();
+    }
 
-        int retVal = 0;
+    /* ====================================================================== */
 
-        try {
-            sqlP.prepareStatement(sql.toString());
-            SqlJdbcUtil.setValues(sqlP, fieldsToSave, entity, modelFieldTypeReader);
-            SqlJdbcUtil.setPkValues(sqlP, modelEntity, entity, modelFieldTypeReader);
-            retVal = sqlP.executeUpdate();
-            entity.synchronizedWithDatasource();
-        } catch (GenericEntityException e) {
-            throw new GenericEntityException("Error while updating: " + entity.toString(), e);
+    /**
+     * Inserts the given entities using JDBC batches. The rows are written in the order of the list: the
+     * consecutive rows with the same statement are sent with batches of at most <code>batchSize</code> rows,
+     * and the pending batch is sent whenever the entity or the statement changes, so that a row referring to
+     * a row earlier in the list is inserted after it. View entities are inserted one row at a time.
+     *
+     *@param entities The entities to insert
+     *@param batchSize The maximum number of rows sent in one JDBC batch
+     *@return int representing number of rows effected by this operation
+     */
+    public int insertBatch(List<? extends GenericEntity> entities, int batchSize) throws GenericEntityException {
+        if (UtilValidate.isEmpty(entities)) {
+            return 0;
         }
 
-        if (retVal == 0) {
-            throw new GenericEntityNotFoundException("Tried to update an entity that does not exist, entity: " + entity.toString());
+        try (SQLProcessor sqlP = new SQLProcessor(entities.get(0).getDelegator(), helperInfo)) {
+            try {
+                int retVal = 0;
+                StatementBatch batch = new StatementBatch(false, batchSize, sqlP);
+                for (GenericEntity entity : entities) {
+                    ModelEntity modelEntity = entity.getModelEntity();
+                    if (modelEntity instanceof ModelViewEntity) {
+                        retVal += batch.execute();
+                        retVal += singleInsert(entity, modelEntity, modelEntity.getFieldsUnmodifiable(), sqlP);
+                        continue;
+                    }
+                    List<ModelField> fieldsToSave = modelEntity.getFieldsUnmodifiable();
+                    setInsertStamps(entity, modelEntity, fieldsToSave);
+                    retVal += batch.add(makeInsertSql(modelEntity, fieldsToSave), fieldsToSave, entity);
+                }
+                retVal += batch.execute();
+                return retVal;
+            } catch (GenericEntityException e) {
+                sqlP.rollback();
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Updates the non-primary key fields present in each of the given entities using JDBC batches. The rows are
+     * written in the order of the list like in {@link #insertBatch(List, int)}; view entities and entities using
+     * optimistic locking are updated one row at a time.
+     *
+     *@param entities The entities to update
+     *@param batchSize The maximum number of rows sent in one JDBC batch
+     *@return int representing number of rows effected by this operation
+     */
+    public int updateBatch(List<? extends GenericEntity> entities, int batchSize) throws GenericEntityException {
+        if (UtilValidate.isEmpty(entities)) {
+            return 0;
+        }
+
+        try (SQLProcessor sqlP = new SQLProcessor(entities.get(0).getDelegator(), helperInfo)) {
+            try {
+                int retVal = 0;
+                StatementBatch batch = new StatementBatch(true, batchSize, sqlP);
+                for (GenericEntity entity : entities) {
+                    ModelEntity modelEntity = entity.getModelEntity();
+                    List<ModelField> fieldsToSave = getPartialFields(entity, modelEntity);
+                    if (modelEntity instanceof ModelViewEntity || modelEntity.lock() || fieldsToSave.isEmpty()) {
+                        retVal += batch.execute();
+                        retVal += singleUpdate(entity, modelEntity, fieldsToSave, sqlP);
+                        continue;
+                    }
+                    setUpdateStamps(entity, modelEntity, fieldsToSave);
+                    retVal += batch.add(makeUpdateSql(entity, modelEntity, fieldsToSave), fieldsToSave, entity);
+                }
+                retVal += batch.execute();
+                return retVal;
+            } catch (GenericEntityException e) {
+                sqlP.rollback();
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * The consecutive rows sharing the same statement, sent together when a row with another statement is added
+     * or when executed, so that the rows are written in the order they are added.
+     */
+    private final class StatementBatch {
+        private final boolean isUpdate;
+        private final int batchSize;
+        private final SQLProcessor sqlP;
+        private final List<GenericEntity> entities = new ArrayList<GenericEntity>();
+        private String sql = null;
+        // the same statement means the same fields in the same order
+        private List<ModelField> fieldsToSave = null;
+
+        private StatementBatch(boolean isUpdate, int batchSize, SQLProcessor sqlP) {
+            this.isUpdate = isUpdate;
+            this.batchSize = batchSize;
+            this.sqlP = sqlP;
+        }
+
+        /**
+         * Adds a row, first sending the pending rows when their statement is not the same.
+         *@return the number of rows affected by the rows sent
+         */
+        private int add(String sql, List<ModelField> fieldsToSave, GenericEntity entity) throws GenericEntityException {
+            int retVal = 0;
+            if (!sql.equals(this.sql)) {
+                retVal = execute();
+                this.sql = sql;
+                this.fieldsToSave = fieldsToSave;
+            }
+            entities.add(entity);
+            return retVal;
+        }
+
+        /**
+         * Sends the pending rows.
+         *@return the number of rows affected
+         */
+        private int execute() throws GenericEntityException {
+            if (entities.isEmpty()) {
+                return 0;
+            }
+            int retVal = executeBatch(sql, fieldsToSave, entities, isUpdate, batchSize, sqlP);
+            entities.clear();
+            sql = null;
+            fieldsToSave = null;
+            return retVal;
+        }
+    }
+
+    private int executeBatch(String sql, List<ModelField> fieldsToSave, List<GenericEntity> entities, boolean isUpdate, int batchSize,
+            SQLProcessor sqlP) throws GenericEntityException {
+        int retVal = 0;
+        int batchStart = 0;
+        sqlP.prepareStatement(sql);
+        for (int i = 0; i < entities.size(); i++) {
+            GenericEntity entity = entities.get(i);
+            SqlJdbcUtil.setValues(sqlP, fieldsToSave, entity, modelFieldTypeReader);
+            if (isUpdate) {
+                SqlJdbcUtil.setPkValues(sqlP, entity.getModelEntity(), entity, modelFieldTypeReader);
+            }
+            sqlP.addBatch();
+            if (i + 1 - batchStart >= batchSize || i + 1 == entities.size()) {
+                List<GenericEntity> batchEntities = entities.subList(batchStart, i + 1);
+                int[] updateCounts;
+                try {
+                    updateCounts = sqlP.executeBatch();
+                } catch (GenericEntityException e) {
+                    throw new GenericEntityException("Error while " + (isUpdate ? "updating" : "inserting") + " a batch of " + batchEntities.size()
+                            + " rows starting with: " + batchEntities.get(0).toString(), e);
+                }
+                for (int j = 0; j < updateCounts.length; j++) {
+                    GenericEntity batchEntity = batchEntities.get(j);
+                    if (updateCounts[j] == Statement.EXECUTE_FAILED) {
+                        throw new GenericEntityException("Error while " + (isUpdate ? "updating" : "inserting") + ": " + batchEntity.toString());
+                    }
+                    if (isUpdate && updateCounts[j] == 0) {
+                        throw new GenericEntityNotFoundException("Tried to update an entity that does not exist, entity: " + batchEntity.toString());
+                    }
+                    // some drivers only report that the row succeeded, without the number of rows affected
+                    retVal += updateCounts[j] == Statement.SUCCESS_NO_INFO ? 1 : updateCounts[j];
+                    batchEntity.synchronizedWithDatasource();
+                }
+                batchStart = i + 1;
+            }
         }
         return retVal;
     }
@@ -474,18 +712,9 @@ public class GenericDAO {
             throw new GenericEntityException("Entity has no primary keys, cannot select by primary key");
         }
 
-        StringBuilder sqlBuffer = new StringBuilder("SELECT ");
-
-        if (modelEntity.getNopksSize() > 0) {
-            modelEntity.colNameString(modelEntity.getNopksCopy(), sqlBuffer, "", ", ", "", datasource.getAliasViewColumns());
-        } else {
-            sqlBuffer.append("*");
-        }
-
-        sqlBuffer.append(SqlJdbcUtil.makeFromClause(modelEntity, modelFieldTypeReader, datasource));
-        sqlBuffer.append(SqlJdbcUtil.makeWhereClause(modelEntity, modelEntity.getPkFieldsUnmodifiable(), entity, "AND", datasource.getJoinStyle()));
+        String sql = makeSelectSql(entity, modelEntity, modelEntity.getNopksCopy());
 
-            sqlP.prepareStatement(sqlBuffer.toString(), true, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            sqlP.prepareStatement(sql, true, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
             SqlJdbcUtil.setPkValues(sqlP, modelEntity, entity, modelFieldTypeReader);
             sqlP.executeQuery();
 
@@ -530,18 +759,10 @@ public class GenericDAO {
             throw new GenericModelException("In partialSelect invalid field names specified: " + tempKeys.toString());
         }
 
-        StringBuilder sqlBuffer = new StringBuilder("SELECT ");
-
-        if (partialFields.size() > 0) {
-            modelEntity.colNameString(partialFields, sqlBuffer, "", ", ", "", datasource.getAliasViewColumns());
-        } else {
-            sqlBuffer.append("*");
-        }
-        sqlBuffer.append(SqlJdbcUtil.makeFromClause(modelEntity, modelFieldTypeReader, datasource));
-        sqlBuffer.append(SqlJdbcUtil.makeWhereClause(modelEntity, modelEntity.getPkFieldsUnmodifiable(), entity, "AND", datasource.getJoinStyle()));
+        String sql = makeSelectSql(entity, modelEntity, partialFields);
 
         try (SQLProcessor sqlP = new SQLProcessor(entity.getDelegator(), helperInfo)) {
-            sqlP.prepareStatement(sqlBuffer.toString(), true, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            sqlP.prepareStatement(sql, true, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
             SqlJdbcUtil.setPkValues(sqlP, modelEntity, entity, modelFieldTypeReader);
             sqlP.executeQuery();
 
@@ -558,6 +779,29 @@ public class GenericDAO {
         }
     }
 
+    private String makeSelectSql(GenericEntity entity, ModelEntity modelEntity, List<ModelField> selectFields) throws GenericEntityException {
+        // the WHERE clause depends on which primary key values are null, only cache the common case
+        String cacheKey = hasBindablePkValues(modelEntity, entity) ? makeSqlTemplateKey("SELECT", modelEntity, selectFields) : null;
+        SqlTemplate template = cacheKey != null ? sqlTemplateCache.get(cacheKey) : null;
+        if (template != null) {
+            return template.sql;
+        }
+        StringBuilder sqlBuffer = new StringBuilder("SELECT ");
+
+        if (selectFields.size() > 0) {
+            modelEntity.colNameString(selectFields, sqlBuffer, "", ", ", "", datasource.getAliasViewColumns());
+        } else {
+            sqlBuffer.append("*");
+        }
+        sqlBuffer.append(SqlJdbcUtil.makeFromClause(modelEntity, modelFieldTypeReader, datasource));
+        sqlBuffer.append(SqlJdbcUtil.makeWhereClause(modelEntity, modelEntity.getPkFieldsUnmodifiable(), entity, "AND", datasource.getJoinStyle()));
+        String sql = sqlBuffer.toString();
+        if (cacheKey != null) {
+            sqlTemplateCache.put(cacheKey, new SqlTemplate(sql, null));
+        }
+        return sql;
+    }
+
     /* ====================================================================== */
     /* ====================================================================== */
 
@@ -594,75 +838,6 @@ public class GenericDAO {
             if (Debug.verboseOn()) Debug.logVerbose("Doing selectListIteratorByCondition with whereEntityCondition: " + whereEntityCondition, module);
         }
 
-        // make two ArrayLists of fields, one for fields to select and the other for where clause fields (to find by)
-        List<ModelField> selectFields = new LinkedList<ModelField>();
-        if (UtilValidate.isNotEmpty(fieldsToSelect)) {
-            Set<String> tempKeys = new HashSet<String>();
-            tempKeys.addAll(fieldsToSelect);
-            Set<String> fieldSetsToInclude = new HashSet<String>();
-            Set<String> addedFields = new HashSet<String>();
-            for (String fieldToSelect : fieldsToSelect) {
-                if (tempKeys.contains(fieldToSelect)) {
-                    ModelField curField = modelEntity.getField(fieldToSelect);
-                    if (curField != null) {
-                        fieldSetsToInclude.add(curField.getFieldSet());
-                        selectFields.add(curField);
-                        tempKeys.remove(fieldToSelect);
-                        addedFields.add(fieldToSelect);
-                    }
-                }
-            }
-
-            if (tempKeys.size() > 0) {
-                throw new GenericModelException("In selectListIteratorByCondition invalid field names specified: " + tempKeys.toString());
-            }
-            fieldSetsToInclude.remove("");
-            if (verboseOn) {
-                Debug.logInfo("[" + modelEntity.getEntityName() + "]: field-sets to include: " + fieldSetsToInclude, module);
-            }
-            if (UtilValidate.isNotEmpty(fieldSetsToInclude)) {
-                Iterator<ModelField> fieldIter = modelEntity.getFieldsIterator();
-                Set<String> extraFields = new HashSet<String>();
-                Set<String> reasonSets = new HashSet<String>();
-                while (fieldIter.hasNext()) {
-                    ModelField curField = fieldIter.next();
-                    String fieldSet = curField.getFieldSet();
-                    if (UtilValidate.isEmpty(fieldSet)) {
-                        continue;
-                    }
-                    if (!fieldSetsToInclude.contains(fieldSet)) {
-                        continue;
-                    }
-                    String fieldName = curField.getName();
-                    if (addedFields.contains(fieldName)) {
-                        continue;
-                    }
-                    reasonSets.add(fieldSet);
-                    extraFields.add(fieldName);
-                    addedFields.add(fieldName);
-                    selectFields.add(curField);
-                }
-                if (verboseOn) {
-                    Debug.logInfo("[" + modelEntity.getEntityName() + "]: auto-added select fields: " + extraFields, module);
-                    Debug.logInfo("[" + modelEntity.getEntityName() + "]: auto-added field-sets: " + reasonSets, module);
-                }
-            }
-        } else {
-            selectFields = modelEntity.getFieldsUnmodifiable();
-        }
-
-        StringBuilder sqlBuffer = new StringBuilder("SELECT ");
-
-        if (findOptions.getDistinct()) {
-            sqlBuffer.append("DISTINCT ");
-        }
-
-        if (selectFields.size() > 0) {
-            modelEntity.colNameString(selectFields, sqlBuffer, "", ", ", "", datasource.getAliasViewColumns());
-        } else {
-            sqlBuffer.append("*");
-        }
-
         // populate the info from entity-condition in the view-entity, if it is one and there is one
         List<EntityCondition> viewWhereConditions = null;
         List<EntityCondition> viewHavingConditions = null;
@@ -674,39 +849,76 @@ public class GenericDAO {
             modelViewEntity.populateViewEntityConditionInformation(modelFieldTypeReader, viewWhereConditions, viewHavingConditions, viewOrderByList, null);
         }
 
-        // FROM clause and when necessary the JOIN or LEFT JOIN clause(s) as well
-        sqlBuffer.append(SqlJdbcUtil.makeFromClause(modelEntity, modelFieldTypeReader, datasource));
+        // use the SQL generated for an earlier query of the same shape, only the parameters are taken from this one
+        List<EntityConditionParam> whereShapeParams = new LinkedList<EntityConditionParam>();
+        List<EntityConditionParam> havingShapeParams = new LinkedList<EntityConditionParam>();
+        String cacheKey = makeSelectTemplateKey(modelEntity, whereEntityCondition, viewWhereConditions, havingEntityCondition, viewHavingConditions,
+                fieldsToSelect, orderBy, findOptions, whereShapeParams, havingShapeParams);
+        SqlTemplate template = cacheKey != null ? sqlTemplateCache.get(cacheKey) : null;
+
+        List<ModelField> selectFields;
+        String sql;
+        List<EntityConditionParam> whereEntityConditionParams;
+        List<EntityConditionParam> havingEntityConditionParams;
+        if (template != null) {
+            selectFields = template.selectFields;
+            sql = template.sql;
+            whereEntityConditionParams = whereShapeParams;
+            havingEntityConditionParams = havingShapeParams;
+        } else {
+            selectFields = makeSelectFields(modelEntity, fieldsToSelect, verboseOn);
 
-        // WHERE clause
-        List<EntityConditionParam> whereEntityConditionParams = new LinkedList<EntityConditionParam>();
-        makeConditionWhereString(sqlBuffer, " WHERE ", modelEntity, whereEntityCondition, viewWhereConditions, whereEntityConditionParams);
+            StringBuilder sqlBuffer = new StringBuilder("SELECT ");
 
-        // GROUP BY clause for view-entity
-        if (modelViewEntity != null) {
-            modelViewEntity.colNameString(modelViewEntity.getGroupBysCopy(selectFields), sqlBuffer, " GROUP BY ", ", ", "", false);
-        }
+            if (findOptions.getDistinct()) {
+                sqlBuffer.append("DISTINCT ");
+            }
 
-        // HAVING clause
-        List<EntityConditionParam> havingEntityConditionParams = new LinkedList<EntityConditionParam>();
-        makeConditionHavingString(sqlBuffer, " HAVING ", modelEntity, havingEntityCondition, viewHavingConditions, havingEntityConditionParams);
+            if (selectFields.size() > 0) {
+                modelEntity.colNameString(selectFields, sqlBuffer, "", ", ", "", datasource.getAliasViewColumns());
+            } else {
+                sqlBuffer.append("*");
+            }
 
-        // ORDER BY clause
-        List<String> orderByExpanded = new LinkedList<String>();
-        // add the manually specified ones, then the ones in the view entity's entity-condition
-        if (orderBy != null) {
-            orderByExpanded.addAll(orderBy);
-        }
-        if (viewOrderByList != null) {
-            // add to end of other order by so that those in method call will override those in view
-            orderByExpanded.addAll(viewOrderByList);
-        }
-        sqlBuffer.append(SqlJdbcUtil.makeOrderByClause(modelEntity, orderByExpanded, datasource));
+            // FROM clause and when necessary the JOIN or LEFT JOIN clause(s) as well
+            sqlBuffer.append(SqlJdbcUtil.makeFromClause(modelEntity, modelFieldTypeReader, datasource));
 
-        // OFFSET clause
-        makeOffsetString(sqlBuffer, findOptions);
+            // WHERE clause
+            whereEntityConditionParams = new LinkedList<EntityConditionParam>();
+            makeConditionWhereString(sqlBuffer, " WHERE ", modelEntity, whereEntityCondition, viewWhereConditions, whereEntityConditionParams);
 
-        // make the final SQL String
-        String sql = sqlBuffer.toString();
+            // GROUP BY clause for view-entity
+            if (modelViewEntity != null) {
+                modelViewEntity.colNameString(modelViewEntity.getGroupBysCopy(selectFields), sqlBuffer, " GROUP BY ", ", ", "", false);
+            }
+
+            // HAVING clause
+            havingEntityConditionParams = new LinkedList<EntityConditionParam>();
+            makeConditionHavingString(sqlBuffer, " HAVING ", modelEntity, havingEntityCondition, viewHavingConditions, havingEntityConditionParams);
+
+            // ORDER BY clause
+            List<String> orderByExpanded = new LinkedList<String>();
+            // add the manually specified ones, then the ones in the view entity's entity-condition
+            if (orderBy != null) {
+                orderByExpanded.addAll(orderBy);
+            }
+            if (viewOrderByList != null) {
+                // add to end of other order by so that those in method call will override those in view
+                orderByExpanded.addAll(viewOrderByList);
+            }
+            sqlBuffer.append(SqlJdbcUtil.makeOrderByClause(modelEntity, orderByExpanded, datasource));
+
+            // OFFSET clause
+            makeOffsetString(sqlBuffer, findOptions);
+
+            // make the final SQL String
+            sql = sqlBuffer.toString();
+
+            // the shape only describes the SQL if it binds the same parameters
+            if (cacheKey != null && sameParams(whereShapeParams, whereEntityConditionParams) && sameParams(havingShapeParams, havingEntityConditionParams)) {
+                sqlTemplateCache.put(cacheKey, new SqlTemplate(sql, selectFields));
+            }
+        }
 
         SQLProcessor sqlP = new SQLProcessor(delegator, helperInfo);
         sqlP.prepareStatement(sql, findOptions.getSpecifyTypeAndConcur(), findOptions.getResultSetType(),
@@ -744,6 +956,125 @@ public class GenericDAO {
         return new EntityListIterator(sqlP, modelEntity, selectFields, modelFieldTypeReader, this, whereEntityCondition, havingEntityCondition, findOptions.getDistinct());
     }
 
+    private List<ModelField> makeSelectFields(ModelEntity modelEntity, Collection<String> fieldsToSelect, boolean verboseOn) throws GenericModelException {
+        if (UtilValidate.isEmpty(fieldsToSelect)) {
+            return modelEntity.getFieldsUnmodifiable();
+        }
+        List<ModelField> selectFields = new LinkedList<ModelField>();
+        Set<String> tempKeys = new HashSet<String>();
+        tempKeys.addAll(fieldsToSelect);
+        Set<String> fieldSetsToInclude = new HashSet<String>();
+        Set<String> addedFields = new HashSet<String>();
+        for (String fieldToSelect : fieldsToSelect) {
+            if (tempKeys.contains(fieldToSelect)) {
+                ModelField curField = modelEntity.getField(fieldToSelect);
+                if (curField != null) {
+                    fieldSetsToInclude.add(curField.getFieldSet());
+                    selectFields.add(curField);
+                    tempKeys.remove(fieldToSelect);
+                    addedFields.add(fieldToSelect);
+                }
+            }
+        }
+
+        if (tempKeys.size() > 0) {
+            throw new GenericModelException("In selectListIteratorByCondition invalid field names specified: " + tempKeys.toString());
+        }
+        fieldSetsToInclude.remove("");
+        if (verboseOn) {
+            Debug.logInfo("[" + modelEntity.getEntityName() + "]: field-sets to include: " + fieldSetsToInclude, module);
+        }
+        if (UtilValidate.isNotEmpty(fieldSetsToInclude)) {
+            Iterator<ModelField> fieldIter = modelEntity.getFieldsIterator();
+            Set<String> extraFields = new HashSet<String>();
+            Set<String> reasonSets = new HashSet<String>();
+            while (fieldIter.hasNext()) {
+                ModelField curField = fieldIter.next();
+                String fieldSet = curField.getFieldSet();
+                if (UtilValidate.isEmpty(fieldSet)) {
+                    continue;
+                }
+                if (!fieldSetsToInclude.contains(fieldSet)) {
+                    continue;
+                }
+                String fieldName = curField.getName();
+                if (addedFields.contains(fieldName)) {
+                    continue;
+                }
+                reasonSets.add(fieldSet);
+                extraFields.add(fieldName);
+                addedFields.add(fieldName);
+                selectFields.add(curField);
+            }
+            if (verboseOn) {
+                Debug.logInfo("[" + modelEntity.getEntityName() + "]: auto-added select fields: " + extraFields, module);
+                Debug.logInfo("[" + modelEntity.getEntityName() + "]: auto-added field-sets: " + reasonSets, module);
+            }
+        }
+        return selectFields;
+    }
+
+    /**
+     * Makes the key of the SQL generated by selectListIteratorByCondition for the given query, collecting the parameters
+     * the SQL binds; see {@link EntityCondition#addSqlShape}.
+     *@return The key, or null if the SQL depends on condition values and can't be cached
+     */
+    private String makeSelectTemplateKey(ModelEntity modelEntity, EntityCondition whereEntityCondition, List<EntityCondition> viewWhereConditions,
+            EntityCondition havingEntityCondition, List<EntityCondition> viewHavingConditions, Collection<String> fieldsToSelect, List<String> orderBy,
+            EntityFindOptions findOptions, List<EntityConditionParam> whereShapeParams, List<EntityConditionParam> havingShapeParams) {
+        if (isDynamicView(modelEntity)) {
+            return null;
+        }
+        StringBuilder cacheKey = new StringBuilder("FIND:").append(modelEntity.getEntityName());
+        cacheKey.append('|').append(findOptions.getDistinct()).append('|').append(fieldsToSelect);
+        cacheKey.append("|W:");
+        if (!addSqlShape(cacheKey, modelEntity, whereEntityCondition, whereShapeParams)) {
+            return null;
+        }
+        if (viewWhereConditions != null && !addSqlShape(cacheKey, modelEntity, EntityCondition.makeCondition(viewWhereConditions), whereShapeParams)) {
+            return null;
+        }
+        cacheKey.append("|H:");
+        if (!addSqlShape(cacheKey, modelEntity, havingEntityCondition, havingShapeParams)) {
+            return null;
+        }
+        if (viewHavingConditions != null && !addSqlShape(cacheKey, modelEntity, EntityCondition.makeCondition(viewHavingConditions), havingShapeParams)) {
+            return null;
+        }
+        cacheKey.append("|O:").append(orderBy);
+        if (UtilValidate.isNotEmpty(datasource.getOffsetStyle())) {
+            cacheKey.append("|L:").append(findOptions.getLimit()).append(',').append(findOptions.getOffset());
+        }
+        return cacheKey.toString();
+    }
+
+    private static boolean addSqlShape(StringBuilder cacheKey, ModelEntity modelEntity, EntityCondition condition, List<EntityConditionParam> shapeParams) {
+        if (condition == null) {
+            cacheKey.append('-');
+            return true;
+        }
+        if (condition.isEmpty()) {
+            cacheKey.append("()");
+            return true;
+        }
+        return condition.addSqlShape(cacheKey, modelEntity, shapeParams);
+    }
+
+    private static boolean sameParams(List<EntityConditionParam> shapeParams, List<EntityConditionParam> entityConditionParams) {
+        if (shapeParams.size() != entityConditionParams.size()) {
+            return false;
+        }
+        Iterator<EntityConditionParam> shapeIter = shapeParams.iterator();
+        for (EntityConditionParam entityConditionParam: entityConditionParams) {
+            EntityConditionParam shapeParam = shapeIter.next();
+            // values are compared by type only, a date filter condition makes a new timestamp each time it is used
+            if (shapeParam.getModelField() != entityConditionParam.getModelField() || !sameType(shapeParam.getFieldValue(), entityConditionParam.getFieldValue())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     @Deprecated
     protected StringBuilder makeConditionWhereString(ModelEntity modelEntity, EntityCondition whereEntityCondition, List<EntityCondition> viewWhereConditions, List<EntityConditionParam> whereEntityConditionParams) throws GenericEntityException {
         return makeConditionWhereString(new StringBuilder(), "", modelEntity, whereEntityCondition, viewWhereConditions, whereEntityConditionParams);
@@ -1158,4 +1489,19 @@ public class GenericDAO {
         DatabaseUtil dbUtil = new DatabaseUtil(this.helperInfo);
         return dbUtil.induceModelFromDb(messages);
     }
+
+    private static boolean sameType(Object value, Object other) {
+        return value == null ? other == null : other != null && value.getClass() == other.getClass();
+    }
+
+    /** The SQL generated for a statement shape, along with the fields it selects. */
+    private static final class SqlTemplate {
+        private final String sql;
+        private final List<ModelField> selectFields;
+
+        private SqlTemplate(String sql, List<ModelField> selectFields) {
+            this.sql = sql;
+            this.selectFields = selectFields;
+        }
+    }
 }
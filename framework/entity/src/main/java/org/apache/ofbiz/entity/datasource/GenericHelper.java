@@ -53,6 +53,13 @@ public interface GenericHelper {
      */
     public GenericValue create(GenericValue value) throws GenericEntityException;
 
+    /** Creates a group of Entities in the form of GenericValues and write them to the database using JDBC batches
+     *@param values The values to create
+     *@param batchSize The maximum number of rows sent in one JDBC batch
+     *@return int representing number of rows effected by this operation
+     */
+    public int createAll(List<GenericValue> values, int batchSize) throws GenericEntityException;
+
     /** Find a Generic Entity by its Primary Key
      *@param primaryKey The primary key to find by.
      *@return The GenericValue corresponding to the primaryKey
@@ -125,6 +132,13 @@ public interface GenericHelper {
      */
     public int store(GenericValue value) throws GenericEntityException;
 
+    /** Store a group of Entities from the GenericValues to the persistent store using JDBC batches
+     *@param values The values to store
+     *@param batchSize The maximum number of rows sent in one JDBC batch
+     *@return int representing number of rows effected by this operation
+     */
+    public int storeAll(List<GenericValue> values, int batchSize) throws GenericEntityException;
+
     /** Check the datasource to make sure the entity definitions are correct, optionally adding missing entities or fields on the server
      *@param modelEntities Map of entityName names and ModelEntity values
      *@param messages List to put any result messages in
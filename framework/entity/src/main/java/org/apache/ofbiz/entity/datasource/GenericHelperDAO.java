@@ -68,6 +68,20 @@ public class GenericHelperDAO implements GenericHelper {
         return value;
     }
 
+    /** Creates a group of Entities in the form of GenericValues and write them to the database using JDBC batches
+     *@param values The values to create
+     *@param batchSize The maximum number of rows sent in one JDBC batch
+     *@return int representing number of rows effected by this operation
+     */
+    public int createAll(List<GenericValue> values, int batchSize) throws GenericEntityException {
+        if (values == null) {
+            return 0;
+        }
+        int retVal = genericDAO.insertBatch(values, batchSize);
+        if (Debug.verboseOn()) Debug.logVerbose("Batch Insert Return Value : " + retVal, module);
+        return retVal;
+    }
+
     /** Find a Generic Entity by its Primary Key
      *@param primaryKey The primary key to find by.
      *@return The GenericValue corresponding to the primaryKey
@@ -180,6 +194,18 @@ public class GenericHelperDAO implements GenericHelper {
         return genericDAO.update(value);
     }
 
+    /** Store a group of Entities from the GenericValues to the persistent store using JDBC batches
+     *@param values The values to store
+     *@param batchSize The maximum number of rows sent in one JDBC batch
+     *@return int representing number of rows effected by this operation
+     */
+    public int storeAll(List<GenericValue> values, int batchSize) throws GenericEntityException {
+        if (values == null) {
+            return 0;
+        }
+        return genericDAO.updateBatch(values, batchSize);
+    }
+
     /** Updates a group of values in a single pass.
      *@param modelEntity The ModelEntity of the Entity as defined in the entity XML file
      *@param fieldsToSet The fields of the named entity to set in the database
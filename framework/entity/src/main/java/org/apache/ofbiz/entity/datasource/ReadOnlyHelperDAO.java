@@ -62,6 +62,13 @@ public class ReadOnlyHelperDAO implements GenericHelper {
         return null;
     }
 
+    /** Read only, no creation realize on the database
+     *@return 0
+     */
+    public int createAll(List<GenericValue> values, int batchSize) throws GenericEntityException {
+        return 0;
+    }
+
     /** Find a Generic Entity by its Primary Key
      *@param primaryKey The primary key to find by.
      *@return The GenericValue corresponding to the primaryKey
@@ -162,6 +169,13 @@ public class ReadOnlyHelperDAO implements GenericHelper {
         return 0;
     }
 
+    /** Read only, no store realize on the database
+     *@return 0
+     */
+    public int storeAll(List<GenericValue> values, int batchSize) throws GenericEntityException {
+        return 0;
+    }
+
     /** Read only, no store realize on the database
      *@return 0
      */
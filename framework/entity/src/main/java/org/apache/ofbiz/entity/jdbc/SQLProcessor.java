@@ -380,6 +380,9 @@ public class SQLProcessor implements AutoCloseable {
             if (maxRows > 0) {
                 _ps.setMaxRows(maxRows);
                 if (Debug.verboseOn()) Debug.logVerbose("[SQLProcessor.prepareStatement] max rows set : " + maxRows, module);
+            } else if (isStatementPooled()) {
+                // a cached statement keeps the max rows of its previous use
+                _ps.setMaxRows(0);
             }
             this.setFetchSize(_ps, fetchSize);
         } catch (SQLException sqle) {
@@ -436,6 +439,41 @@ public class SQLProcessor implements AutoCloseable {
         }
     }
 
+    /**
+     * Add the currently bound values of the prepared statement to its batch
+     * and reset the binding index for the next row
+     *
+     * @throws GenericDataSourceException
+     */
+    public void addBatch() throws GenericDataSourceException {
+        try {
+            _ps.addBatch();
+            _ind = 1;
+        } catch (SQLException sqle) {
+            throw new GenericDataSourceException("SQL Exception while adding a batch for the following:" + _sql, sqle);
+        }
+    }
+
+    /**
+     * Execute the batch of the prepared statement
+     *
+     * @return  The number of rows updated for each batched row, as returned by the driver
+     * @throws GenericDataSourceException
+     */
+    public int[] executeBatch() throws GenericDataSourceException {
+        try {
+            return _ps.executeBatch();
+        } catch (SQLException sqle) {
+            this.checkLockWaitInfo(sqle);
+            SQLException next = sqle.getNextException();
+            if (next != null) {
+                // drivers like PostgreSQL only report the cause of a failed batch in the chained exception
+                Debug.logWarning("[SQLProcessor.executeBatch]: Next exception was: " + next, module);
+            }
+            throw new GenericDataSourceException("SQL Exception while executing the batch for the following:" + _sql, sqle);
+        }
+    }
+
     /**
      * Execute update based on the SQL statement given
      *
@@ -858,9 +896,17 @@ public class SQLProcessor implements AutoCloseable {
         // otherwise only set if the size is > -1 (0 is sometimes used to note ALL rows)
         if (fetchSize > -1) {
             stmt.setFetchSize(fetchSize);
+        } else if (isStatementPooled()) {
+            // a cached statement keeps the fetch size of its previous use, go back to the driver default
+            stmt.setFetchSize(0);
         }
     }
 
+    private boolean isStatementPooled() {
+        Datasource ds = EntityConfig.getDatasource(this.helperInfo.getHelperBaseName());
+        return ds != null && ds.getInlineJdbc() != null && ds.getInlineJdbc().getPoolStatements();
+    }
+
     private void checkLockWaitInfo(Exception sqle) {
         String eMsg = sqle.getMessage();
 
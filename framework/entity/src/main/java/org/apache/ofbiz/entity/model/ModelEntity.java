@@ -27,6 +27,7 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Locale;
@@ -99,6 +100,9 @@ public class ModelEntity implements Comparable<ModelEntity>, Serializable {
 
     private final Map<String, ModelField> fieldsMap = new HashMap<>();
 
+    /** The position of each field name, in the order of fieldsList; built when first needed, reset when the fields change. */
+    private volatile Map<String, Integer> fieldPositions = null;
+
     private final ArrayList<String> pkFieldNames = new ArrayList<>();
 
     /** A List of the Field objects for the Entity, one for each Primary Key */
@@ -299,6 +303,7 @@ public class ModelEntity implements Comparable<ModelEntity>, Serializable {
         }
         this.fieldsList.add(newField);
         this.fieldsMap.put(newField.getName(), newField);
+        this.fieldPositions = null;
     }
 
     protected void populateRelated(ModelReader reader, Element entityElement) {
@@ -395,6 +400,7 @@ public class ModelEntity implements Comparable<ModelEntity>, Serializable {
                 }
                 this.fieldsList.add(newField);
                 this.fieldsMap.put(newField.getName(), newField);
+                this.fieldPositions = null;
                 if (!newField.getIsPk()) {
                     if (existingField != null) {
                         this.nopks.remove(existingField);
@@ -658,6 +664,7 @@ public class ModelEntity implements Comparable<ModelEntity>, Serializable {
         synchronized (fieldsLock) {
             this.fieldsList.add(field);
             fieldsMap.put(field.getName(), field);
+            this.fieldPositions = null;
             if (field.getIsPk()) {
                 pks.add(field);
                 if (!pkFieldNames.contains(field.getName())) {
@@ -676,6 +683,7 @@ public class ModelEntity implements Comparable<ModelEntity>, Serializable {
             ModelField field = fieldsMap.remove(fieldName);
             if (field != null) {
                 this.fieldsList.remove(field);
+                this.fieldPositions = null;
                 if (field.getIsPk()) {
                     pks.remove(field);
                     pkFieldNames.remove(field.getName());
@@ -687,6 +695,29 @@ public class ModelEntity implements Comparable<ModelEntity>, Serializable {
         }
     }
 
+    /** Returns the position of each field name, numbered from 0 in the order the fields were defined.
+     * The returned map is unmodifiable and iterates in position order.
+     */
+    public Map<String, Integer> getFieldPositions() {
+        Map<String, Integer> positions = this.fieldPositions;
+        if (positions == null) {
+            synchronized (fieldsLock) {
+                positions = this.fieldPositions;
+                if (positions == null) {
+                    Map<String, Integer> newPositions = new LinkedHashMap<>();
+                    for (ModelField field : this.fieldsList) {
+                        if (!newPositions.containsKey(field.getName())) {
+                            newPositions.put(field.getName(), newPositions.size());
+                        }
+                    }
+                    positions = Collections.unmodifiableMap(newPositions);
+                    this.fieldPositions = positions;
+                }
+            }
+        }
+        return positions;
+    }
+
     public List<String> getAllFieldNames() {
         synchronized (fieldsLock) {
             return new ArrayList<>(this.fieldsMap.keySet());
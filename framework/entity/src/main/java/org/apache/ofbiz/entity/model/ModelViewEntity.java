@@ -105,6 +105,9 @@ public class ModelViewEntity extends ModelEntity {
 
     protected ViewEntityCondition viewEntityCondition = null;
 
+    /** True if this view was built from a DynamicViewEntity instead of an entity definition */
+    protected boolean dynamic = false;
+
     public ModelViewEntity(ModelReader reader, Element entityElement, UtilTimer utilTimer, ModelInfo def) {
         super(reader, entityElement, def);
 
@@ -163,6 +166,7 @@ public class ModelViewEntity extends ModelEntity {
                 dynamicViewEntity.getDefaultResourceName()));
         this.entityName = dynamicViewEntity.getEntityName();
         this.packageName = dynamicViewEntity.getPackageName();
+        this.dynamic = true;
 
         // member-entities
         Iterator<Map.Entry<String, ModelMemberEntity>> modelMemberEntitiesEntryIter = dynamicViewEntity.getModelMemberEntitiesEntryIter();
@@ -219,6 +223,11 @@ public class ModelViewEntity extends ModelEntity {
         this.allModelMemberEntities.remove(modelMemberEntity);
     }
 
+    /** Returns true if this view was built from a DynamicViewEntity; dynamic views usually share the same entity name */
+    public boolean isDynamic() {
+        return this.dynamic;
+    }
+
     /** The col-name of the Field, the alias of the field if this is on a view-entity */
     @Override
     public String getColNameOrAlias(String fieldName) {
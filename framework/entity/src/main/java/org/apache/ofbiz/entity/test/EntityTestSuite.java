@@ -18,19 +18,26 @@
  *******************************************************************************/
 package org.apache.ofbiz.entity.test;
 
+import java.lang.management.ManagementFactory;
 import java.math.BigDecimal;
+import java.net.InetAddress;
 import java.sql.Blob;
 import java.sql.Date;
 import java.sql.Time;
 import java.sql.Timestamp;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicBoolean;
 
@@ -42,13 +49,18 @@ import org.apache.ofbiz.base.util.Observable;
 import org.apache.ofbiz.base.util.Observer;
 import org.apache.ofbiz.base.util.UtilDateTime;
 import org.apache.ofbiz.base.util.UtilMisc;
+import org.apache.ofbiz.base.util.UtilObject;
 import org.apache.ofbiz.base.util.UtilXml;
+import org.apache.ofbiz.base.util.cache.UtilCache;
 import org.apache.ofbiz.entity.Delegator;
 import org.apache.ofbiz.entity.DelegatorFactory;
 import org.apache.ofbiz.entity.GenericEntity;
 import org.apache.ofbiz.entity.GenericEntityException;
 import org.apache.ofbiz.entity.GenericPK;
 import org.apache.ofbiz.entity.GenericValue;
+import org.apache.ofbiz.entity.cache.CacheInvalidationBus;
+import org.apache.ofbiz.entity.cache.EntityDependencyRecorder;
+import org.apache.ofbiz.entity.cache.UdpCacheInvalidationTransport;
 import org.apache.ofbiz.entity.condition.EntityCondition;
 import org.apache.ofbiz.entity.condition.EntityOperator;
 import org.apache.ofbiz.entity.config.model.Datasource;
@@ -58,9 +70,11 @@ import org.apache.ofbiz.entity.model.ModelField;
 import org.apache.ofbiz.entity.testtools.EntityTestCase;
 import org.apache.ofbiz.entity.transaction.GenericTransactionException;
 import org.apache.ofbiz.entity.transaction.TransactionUtil;
+import org.apache.ofbiz.entity.util.EntityDataLoadPipeline;
 import org.apache.ofbiz.entity.util.EntityListIterator;
 import org.apache.ofbiz.entity.util.EntityQuery;
 import org.apache.ofbiz.entity.util.EntitySaxReader;
+import org.apache.ofbiz.entity.util.EntityStoreOptions;
 import org.apache.ofbiz.entity.util.SequenceUtil;
 
 public class EntityTestSuite extends EntityTestCase {
@@ -305,6 +319,267 @@ public class EntityTestSuite extends EntityTestCase {
         assertEquals("View retrieved from cache has the correct member description", "New Testing Subtype #Cache-3", testValue.getString("subtypeDescription"));
     }
 
+    /*
+     * Tests the entity cache keeping the values evicted from memory off-heap
+     */
+    public void testEntityCacheOffHeap() throws Exception {
+        delegator.removeByCondition("TestingType", EntityCondition.makeCondition("testingTypeId", EntityOperator.LIKE, "TEST-OFFHEAP-%"));
+        List<GenericValue> newValues = new LinkedList<>();
+        for (int i = 0; i < 50; i++) {
+            newValues.add(delegator.makeValue("TestingType", "testingTypeId", "TEST-OFFHEAP-" + i, "description", "Testing Type #OffHeap-" + i));
+        }
+        delegator.storeAll(newValues);
+        GenericValue testValue = EntityQuery.use(delegator).from("TestingType").where("testingTypeId", "TEST-OFFHEAP-NONE").cache(true).queryOne();
+        assertNull("No type value", testValue);
+        UtilCache<GenericPK, GenericValue> cache = UtilCache.findCache("entitycache.entity." + delegator.getDelegatorName() + ".TestingType");
+        assertNotNull("Entity cache found", cache);
+        int maxInMemory = cache.getMaxInMemory();
+        long offHeapMaxSize = cache.getOffHeapMaxSize();
+        try {
+            cache.setMaxInMemory(10);
+            cache.setOffHeapMaxSize(1024 * 1024);
+            cache.clearCounters();
+            testValue = EntityQuery.use(delegator).from("TestingType").where("testingTypeId", "TEST-OFFHEAP-NONE").cache(true).queryOne();
+            assertNull("No type value", testValue);
+            for (int i = 0; i < 50; i++) {
+                EntityQuery.use(delegator).from("TestingType").where("testingTypeId", "TEST-OFFHEAP-" + i).cache(true).queryOne();
+            }
+            assertTrue("Values moved off-heap", cache.getOffHeapSize() > 0);
+            testValue = EntityQuery.use(delegator).from("TestingType").where("testingTypeId", "TEST-OFFHEAP-NONE").cache(true).queryOne();
+            assertNull("No type value read back from off-heap", testValue);
+            for (int i = 0; i < 50; i++) {
+                testValue = EntityQuery.use(delegator).from("TestingType").where("testingTypeId", "TEST-OFFHEAP-" + i).cache(true).queryOne();
+                assertEquals("Value read back has the correct description", "Testing Type #OffHeap-" + i, testValue.getString("description"));
+                assertFalse("Value read back is immutable", testValue.isMutable());
+            }
+            assertTrue("Values read back from off-heap", cache.getOffHeapHitCount() > 0);
+            // storing clears the value from the cache, wherever it is
+            for (int i = 0; i < 50; i++) {
+                testValue = EntityQuery.use(delegator).from("TestingType").where("testingTypeId", "TEST-OFFHEAP-" + i).queryOne();
+                testValue.set("description", "New Testing Type #OffHeap-" + i);
+                testValue.store();
+            }
+            for (int i = 0; i < 50; i++) {
+                testValue = EntityQuery.use(delegator).from("TestingType").where("testingTypeId", "TEST-OFFHEAP-" + i).cache(true).queryOne();
+                assertEquals("Value has the new description", "New Testing Type #OffHeap-" + i, testValue.getString("description"));
+            }
+        } finally {
+            cache.setOffHeapMaxSize(offHeapMaxSize);
+            cache.setMaxInMemory(maxInMemory);
+            delegator.removeByCondition("TestingType", EntityCondition.makeCondition("testingTypeId", EntityOperator.LIKE, "TEST-OFFHEAP-%"));
+        }
+    }
+
+    /*
+     * Tests clearing the caches of other delegators over the cache invalidation bus
+     */
+    public void testCacheInvalidationBus() throws Exception {
+        delegator.removeByCondition("TestingType", EntityCondition.makeCondition("testingTypeId", EntityOperator.LIKE, "TEST-BUS-%"));
+        delegator.create("TestingType", "testingTypeId", "TEST-BUS-1", "description", "Testing Type #Bus-1");
+        // the default delegators have their own caches, on the same database as the test delegator
+        Delegator writer = delegator.cloneDelegator();
+        List<Delegator> readers = UtilMisc.toList(DelegatorFactory.getDelegator("default"), DelegatorFactory.getDelegator("default-no-eca"));
+        String channel = "entity-test-" + UUID.randomUUID();
+        int port = 46000 + (int) (Math.random() * 1000) * 4;
+        List<CacheInvalidationBus> buses = new LinkedList<>();
+        try {
+            CacheInvalidationBus writerBus = new CacheInvalidationBus(channel,
+                    new UdpCacheInvalidationTransport(InetAddress.getLoopbackAddress(), port, 3, 1, 16384), 50, 10);
+            buses.add(writerBus);
+            writerBus.setDelegator(writer, null);
+            writer.setDistributedCacheClear(writerBus);
+            for (Delegator reader : readers) {
+                CacheInvalidationBus readerBus = new CacheInvalidationBus(channel,
+                        new UdpCacheInvalidationTransport(InetAddress.getLoopbackAddress(), port, 3, 1, 16384), 50, 10);
+                buses.add(readerBus);
+                readerBus.setDelegator(reader, null);
+                GenericValue testValue = EntityQuery.use(reader).from("TestingType").where("testingTypeId", "TEST-BUS-1").cache(true).queryOne();
+                assertEquals("Value cached", "Testing Type #Bus-1", testValue.getString("description"));
+                List<GenericValue> testValues = EntityQuery.use(reader).from("TestingType")
+                        .where(EntityCondition.makeCondition("testingTypeId", EntityOperator.LIKE, "TEST-BUS-%")).cache(true).queryList();
+                assertEquals("List cached", 1, testValues.size());
+            }
+            // storing a value clears its cache line
+            GenericValue testValue = EntityQuery.use(writer).from("TestingType").where("testingTypeId", "TEST-BUS-1").queryOne();
+            testValue.set("description", "New Testing Type #Bus-1");
+            testValue.store();
+            for (Delegator reader : readers) {
+                assertTrue("Value cleared from the cache of " + reader.getDelegatorName(), waitFor(() -> "New Testing Type #Bus-1".equals(
+                        EntityQuery.use(reader).from("TestingType").where("testingTypeId", "TEST-BUS-1").cache(true).queryOne().getString("description"))));
+            }
+            // creating a value clears the lists of its entity
+            writer.create("TestingType", "testingTypeId", "TEST-BUS-2", "description", "Testing Type #Bus-2");
+            for (Delegator reader : readers) {
+                assertTrue("List cleared from the cache of " + reader.getDelegatorName(), waitFor(() -> EntityQuery.use(reader).from("TestingType")
+                        .where(EntityCondition.makeCondition("testingTypeId", EntityOperator.LIKE, "TEST-BUS-%")).cache(true).queryList().size() == 2));
+            }
+            // removing by condition clears the cache of the entity
+            writer.removeByCondition("TestingType", EntityCondition.makeCondition("testingTypeId", EntityOperator.LIKE, "TEST-BUS-%"));
+            for (Delegator reader : readers) {
+                assertTrue("Entity cleared from the cache of " + reader.getDelegatorName(), waitFor(() -> EntityQuery.use(reader).from("TestingType")
+                        .where("testingTypeId", "TEST-BUS-1").cache(true).queryOne() == null));
+            }
+            // invalidations queued together are sent in a few messages, coalesced per entity
+            writerBus.flush();
+            long messagesSent = writerBus.getMessagesSent();
+            long itemsSent = writerBus.getItemsSent();
+            for (int i = 0; i < 50; i++) {
+                writer.clearCacheLine(writer.makePK("TestingType", "testingTypeId", "TEST-BUS-" + i));
+            }
+            writerBus.flush();
+            assertTrue("Invalidations sent in a few messages", writerBus.getMessagesSent() - messagesSent <= 5);
+            assertTrue("Invalidations coalesced", writerBus.getItemsSent() - itemsSent < 50);
+            for (CacheInvalidationBus readerBus : buses.subList(1, buses.size())) {
+                assertTrue("Messages received", readerBus.getMessagesReceived() > 0);
+            }
+        } finally {
+            writer.setDistributedCacheClear(null);
+            for (CacheInvalidationBus bus : buses) {
+                bus.close();
+            }
+            delegator.removeByCondition("TestingType", EntityCondition.makeCondition("testingTypeId", EntityOperator.LIKE, "TEST-BUS-%"));
+        }
+    }
+
+    /*
+     * Tests recording the entities read, and the notification of the clearing of their caches
+     */
+    public void testEntityDependencyRecorder() throws Exception {
+        List<String> clearedEntities = new CopyOnWriteArrayList<>();
+        EntityDependencyRecorder.CacheClearListener listener = (delegatorName, entityName) -> {
+            if (delegator.getDelegatorName().equals(delegatorName)) {
+                clearedEntities.add(String.valueOf(entityName));
+            }
+        };
+        EntityDependencyRecorder.addCacheClearListener(listener);
+        try {
+            EntityDependencyRecorder.Recording outer = EntityDependencyRecorder.start();
+            EntityQuery.use(delegator).from("Testing").where("testingId", "TEST-DEP-1").cache(true).queryOne();
+            EntityDependencyRecorder.Recording inner = EntityDependencyRecorder.start();
+            EntityQuery.use(delegator).from("TestingViewPks").cache(true).queryList();
+            EntityDependencyRecorder.stop(inner);
+            EntityDependencyRecorder.stop(outer);
+            assertEquals("Inner recording with the view and its members", UtilMisc.toSet("TestingViewPks", "TestingType", "TestingSubtype"), inner.getEntityNames());
+            assertEquals("Outer recording with the inner entities", UtilMisc.toSet("Testing", "TestingViewPks", "TestingType", "TestingSubtype"), outer.getEntityNames());
+            assertTrue("Recording of cached entities", outer.isCacheable());
+            EntityQuery.use(delegator).from("TestingType").queryList();
+            assertEquals("Entities not recorded out of a recording", UtilMisc.toSet("Testing", "TestingViewPks", "TestingType", "TestingSubtype"), outer.getEntityNames());
+
+            delegator.create("TestingType", "testingTypeId", "TEST-DEP-1", "description", "Testing Type #Dep-1");
+            assertTrue("Write to TestingType notified", clearedEntities.contains("TestingType"));
+            delegator.removeByAnd("TestingType", "testingTypeId", "TEST-DEP-1");
+
+            // a write in a transaction is notified again once the transaction is committed
+            boolean beganTransaction = TransactionUtil.begin();
+            try {
+                delegator.create("TestingType", "testingTypeId", "TEST-DEP-2", "description", "Testing Type #Dep-2");
+                assertTrue("Write in a transaction notified", clearedEntities.contains("TestingType"));
+                clearedEntities.clear();
+                TransactionUtil.commit(beganTransaction);
+            } catch (Exception e) {
+                TransactionUtil.rollback(beganTransaction, "Error testing the entity dependency recorder", e);
+                throw e;
+            }
+            assertTrue("Write notified again after the commit", clearedEntities.contains("TestingType"));
+            delegator.removeByAnd("TestingType", "testingTypeId", "TEST-DEP-2");
+        } finally {
+            EntityDependencyRecorder.removeCacheClearListener(listener);
+        }
+    }
+
+    private static boolean waitFor(Callable<Boolean> condition) throws Exception {
+        long timeout = System.currentTimeMillis() + 5000;
+        while (!condition.call()) {
+            if (System.currentTimeMillis() > timeout) {
+                return false;
+            }
+            Thread.sleep(10);
+        }
+        return true;
+    }
+
+    /*
+     * Tests the field values of a GenericValue behave as a Map, whatever the way they are stored
+     */
+    public void testFieldStorage() throws Exception {
+        GenericValue testValue = delegator.makeValue("Testing", "testingId", "TEST-FIELDS");
+        assertFalse("Field not set", testValue.containsKey("description"));
+        testValue.set("description", null);
+        assertTrue("Field set to null", testValue.containsKey("description"));
+        assertNull("Field set to null has no value", testValue.get("description"));
+        testValue.set("testingSize", Long.valueOf(10));
+        assertEquals("Fields set", 3, testValue.getAllFields().size());
+        assertEquals("Field names", UtilMisc.toSet("testingId", "description", "testingSize"), testValue.keySet());
+        testValue.remove("description");
+        assertFalse("Field removed", testValue.containsKey("description"));
+        GenericValue copyValue = GenericValue.create(testValue);
+        assertEquals("Copy equals the value", testValue, copyValue);
+        assertEquals("Copy has the same hash code", testValue.hashCode(), copyValue.hashCode());
+        Map<String, Object> map = UtilMisc.toMap("testingId", "TEST-FIELDS", "testingSize", Long.valueOf(10));
+        assertEquals("Fields equal a HashMap", map, testValue.getAllFields());
+        GenericValue serializedValue = (GenericValue) UtilObject.getObject(UtilObject.getBytes(testValue));
+        assertEquals("Deserialized value equals the value", testValue, serializedValue);
+        testValue.setImmutable();
+        try {
+            testValue.put("description", "Immutable");
+            fail("Immutable value cannot be changed");
+        } catch (UnsupportedOperationException | IllegalStateException e) {
+        }
+    }
+
+    /*
+     * Compares the memory allocated to materialize query results with the memory of the HashMaps previously used to hold the fields
+     */
+    public void testFieldStorageAllocation() throws Exception {
+        java.lang.management.ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+        if (!(threadMXBean instanceof com.sun.management.ThreadMXBean) || !((com.sun.management.ThreadMXBean) threadMXBean).isThreadAllocatedMemorySupported()) {
+            Debug.logInfo("Thread allocated memory not supported, skipping the field storage allocation test", module);
+            return;
+        }
+        com.sun.management.ThreadMXBean allocationBean = (com.sun.management.ThreadMXBean) threadMXBean;
+        long threadId = Thread.currentThread().getId();
+        for (String entityName : UtilMisc.toList("OrderItem", "InventoryItem", "Testing")) {
+            ModelEntity modelEntity = delegator.getModelEntity(entityName);
+            if (modelEntity == null) {
+                continue;
+            }
+            List<ModelField> modelFields = modelEntity.getFieldsUnmodifiable();
+            int rows = 10000;
+            List<Object> results = new ArrayList<>(rows);
+            // warm up, then measure as EntityListIterator would materialize the rows
+            for (int pass = 0; pass < 2; pass++) {
+                results.clear();
+                long start = allocationBean.getThreadAllocatedBytes(threadId);
+                for (int i = 0; i < rows; i++) {
+                    GenericValue value = GenericValue.create(modelEntity);
+                    value.setDelegator(delegator);
+                    for (ModelField modelField : modelFields) {
+                        value.dangerousSetNoCheckButFast(modelField, entityName);
+                    }
+                    value.synchronizedWithDatasource();
+                    results.add(value);
+                }
+                long valueBytes = allocationBean.getThreadAllocatedBytes(threadId) - start;
+                results.clear();
+                start = allocationBean.getThreadAllocatedBytes(threadId);
+                for (int i = 0; i < rows; i++) {
+                    Map<String, Object> fields = new HashMap<>();
+                    for (ModelField modelField : modelFields) {
+                        fields.put(modelField.getName(), entityName);
+                    }
+                    results.add(fields);
+                    results.add(new HashMap<>(fields));
+                }
+                long hashMapBytes = allocationBean.getThreadAllocatedBytes(threadId) - start;
+                if (pass == 1) {
+                    Debug.logInfo("Materializing " + rows + " " + entityName + " values with " + modelFields.size() + " fields allocated " + (valueBytes / rows)
+                            + " bytes per value, the HashMaps of the fields and original values alone allocated " + (hashMapBytes / rows) + " bytes per value", module);
+                    assertTrue(entityName + " values allocate less than the HashMaps of their fields", valueBytes < hashMapBytes);
+                }
+            }
+        }
+    }
+
     /*
      * Tests XML serialization by serializing/deserializing a GenericValue
      */
@@ -732,6 +1007,124 @@ public class EntityTestSuite extends EntityTestCase {
         }
     }
 
+    /*
+     * This test will create a large number of unique items and then update them, both with JDBC batches
+     */
+    public void testCreateManyAndStoreAllBatched() throws Exception {
+        try {
+            List<GenericValue> newValues = new LinkedList<>();
+            for (int i = 0; i < TEST_COUNT; i++) {
+                newValues.add(delegator.makeValue("Testing", "testingId", getTestId("T4-", i)));
+            }
+            int n = delegator.storeAll(newValues, new EntityStoreOptions(false, 100));
+            assertEquals("Test to create " + TEST_COUNT + " with batches", TEST_COUNT, n);
+            for (GenericValue value: newValues) {
+                value.put("description", "batched");
+            }
+            n = delegator.storeAll(newValues, new EntityStoreOptions(false, 100));
+            assertEquals("Test to store " + TEST_COUNT + " with batches", TEST_COUNT, n);
+            List<GenericValue> newlyStoredValues = EntityQuery.use(delegator)
+                                                              .from("Testing")
+                                                              .where(EntityCondition.makeCondition("testingId", EntityOperator.LIKE, "T4-%"),
+                                                                      EntityCondition.makeCondition("description", "batched"))
+                                                              .queryList();
+            assertEquals("Test to create and store " + TEST_COUNT + " with batches", TEST_COUNT, newlyStoredValues.size());
+        } finally {
+            List<GenericValue> newlyCreatedValues = EntityQuery.use(delegator)
+                                                               .from("Testing")
+                                                               .where(EntityCondition.makeCondition("testingId", EntityOperator.LIKE, "T4-%"))
+                                                               .queryList();
+            delegator.removeAll(newlyCreatedValues);
+        }
+    }
+
+    /*
+     * Tests that the batches keep the order of the values, a value referring to a value of another entity
+     * passed before it, itself after a value of its own entity
+     */
+    public void testStoreAllBatchedKeepsOrder() throws Exception {
+        try {
+            List<GenericValue> newValues = new LinkedList<>();
+            newValues.add(delegator.makeValue("Testing", "testingId", "T5-1"));
+            newValues.add(delegator.makeValue("TestingType", "testingTypeId", "T5-TYPE"));
+            newValues.add(delegator.makeValue("Testing", "testingId", "T5-2", "testingTypeId", "T5-TYPE"));
+            int n = delegator.storeAll(newValues, new EntityStoreOptions(false, 100));
+            assertEquals("Test to create values referring to the values before them with batches", 3, n);
+            GenericValue testing = EntityQuery.use(delegator).from("Testing").where("testingId", "T5-2").queryOne();
+            assertNotNull("Test the referring value was created", testing);
+            assertEquals("Test the referring value refers to the type", "T5-TYPE", testing.getString("testingTypeId"));
+        } finally {
+            delegator.removeByCondition("Testing", EntityCondition.makeCondition("testingId", EntityOperator.LIKE, "T5-%"));
+            delegator.removeByAnd("TestingType", "testingTypeId", "T5-TYPE");
+        }
+    }
+
+    /*
+     * Tests that queries of the same shape but different values, which share the cached SQL, get their own results
+     * and logs the time taken by a query with and without the cached SQL
+     */
+    public void testSqlTemplateCache() throws Exception {
+        try {
+            List<GenericValue> newValues = new LinkedList<>();
+            for (int i = 0; i < 10; i++) {
+                newValues.add(delegator.makeValue("Testing", "testingId", getTestId("T5-", i), "testingSize", (long) i,
+                        "description", i % 2 == 0 ? "even" : null));
+            }
+            delegator.storeAll(newValues);
+            for (int i = 0; i < 10; i++) {
+                GenericValue value = EntityQuery.use(delegator).from("Testing").where("testingId", getTestId("T5-", i)).queryOne();
+                assertEquals("Test find by primary key " + i, (long) i, value.getLong("testingSize").longValue());
+            }
+            for (int size = 0; size < 5; size++) {
+                List<Long> sizes = new LinkedList<>();
+                for (long i = 0; i < size; i++) {
+                    sizes.add(i);
+                }
+                List<GenericValue> values = EntityQuery.use(delegator).from("Testing")
+                        .where(EntityCondition.makeCondition("testingId", EntityOperator.LIKE, "T5-%"), EntityCondition.makeCondition("testingSize", EntityOperator.IN, sizes))
+                        .queryList();
+                assertEquals("Test IN condition with " + size + " values", size, values.size());
+            }
+            for (long limit = 2; limit <= 8; limit += 2) {
+                long count = EntityQuery.use(delegator).from("Testing")
+                        .where(EntityCondition.makeCondition("testingId", EntityOperator.LIKE, "T5-%"), EntityCondition.makeCondition("testingSize", EntityOperator.LESS_THAN, limit))
+                        .queryList().size();
+                assertEquals("Test LESS_THAN condition with " + limit, limit, count);
+            }
+            List<GenericValue> evenValues = EntityQuery.use(delegator).from("Testing")
+                    .where(EntityCondition.makeCondition("testingId", EntityOperator.LIKE, "T5-%"), EntityCondition.makeCondition("description", "even"))
+                    .queryList();
+            assertEquals("Test EQUALS condition", 5, evenValues.size());
+            List<GenericValue> oddValues = EntityQuery.use(delegator).from("Testing")
+                    .where(EntityCondition.makeCondition("testingId", EntityOperator.LIKE, "T5-%"), EntityCondition.makeCondition("description", null))
+                    .queryList();
+            assertEquals("Test EQUALS null condition", 5, oddValues.size());
+
+            int numberOfQueries = 200;
+            long startTime = System.nanoTime();
+            for (int i = 0; i < numberOfQueries; i++) {
+                UtilCache.clearCachesThatStartWith("entity.SqlTemplate.");
+                EntityQuery.use(delegator).from("Testing").where(EntityCondition.makeCondition("testingId", EntityOperator.LIKE, "T5-%"),
+                        EntityCondition.makeCondition("testingSize", EntityOperator.LESS_THAN, (long) i)).orderBy("testingId").queryList();
+            }
+            long coldTime = System.nanoTime() - startTime;
+            startTime = System.nanoTime();
+            for (int i = 0; i < numberOfQueries; i++) {
+                EntityQuery.use(delegator).from("Testing").where(EntityCondition.makeCondition("testingId", EntityOperator.LIKE, "T5-%"),
+                        EntityCondition.makeCondition("testingSize", EntityOperator.LESS_THAN, (long) i)).orderBy("testingId").queryList();
+            }
+            long warmTime = System.nanoTime() - startTime;
+            Debug.logInfo("Ran " + numberOfQueries + " queries in " + (coldTime / 1000000) + " ms generating the SQL each time and in "
+                    + (warmTime / 1000000) + " ms with the cached SQL", module);
+        } finally {
+            List<GenericValue> newlyCreatedValues = EntityQuery.use(delegator)
+                                                               .from("Testing")
+                                                               .where(EntityCondition.makeCondition("testingId", EntityOperator.LIKE, "T5-%"))
+                                                               .queryList();
+            delegator.removeAll(newlyCreatedValues);
+        }
+    }
+
     /*
      * This test will use the large number of unique items from above and test the EntityListIterator looping through the list
      */
@@ -1066,6 +1459,41 @@ public class EntityTestSuite extends EntityTestCase {
         assertEquals("Create Testing(T2).testingDate", UtilDateTime.toTimestamp("02/01/2010 00:00:00"), t2.getTimestamp("testingDate"));
     }
 
+    public void testEntitySaxReaderPipeline() throws Exception {
+        StringBuilder xmlContentLoad = new StringBuilder("<entity-engine-xml>");
+        for (int i = 0; i < 30; i++) {
+            xmlContentLoad.append("<TestingType testingTypeId=\"PIPE-TYPE-").append(i).append("\" description=\"pipeline test\"/>");
+            xmlContentLoad.append("<Testing testingId=\"PIPE-").append(i).append("\" testingTypeId=\"PIPE-TYPE-").append(i).append("\" testingSize=\"").append(i).append("\"/>");
+        }
+        xmlContentLoad.append("<create><Testing testingId=\"PIPE-0\" testingTypeId=\"PIPE-TYPE-0\" testingSize=\"100\"/>");
+        xmlContentLoad.append("<Testing testingId=\"PIPE-CREATED\" testingTypeId=\"PIPE-TYPE-1\"/></create>");
+        xmlContentLoad.append("<delete><Testing testingId=\"PIPE-29\"/></delete>");
+        xmlContentLoad.append("<Testing testingId=\"PIPE-1\" testingTypeId=\"PIPE-TYPE-1\" testingSize=\"101\"/>");
+        xmlContentLoad.append("</entity-engine-xml>");
+        try (EntityDataLoadPipeline pipeline = new EntityDataLoadPipeline(delegator, 4, 8, 4, 2, -1, false)) {
+            assertTrue("Testing has a higher level than TestingType", pipeline.getLevel("Testing") > pipeline.getLevel("TestingType"));
+            EntitySaxReader reader = new EntitySaxReader(delegator);
+            reader.setPipeline(pipeline);
+            long numberLoaded = reader.parse(xmlContentLoad.toString());
+            assertEquals("Values read", 64, numberLoaded);
+            pipeline.waitForCompletion();
+            assertEquals("Values written", 64, pipeline.getNumberWritten());
+            for (int i = 1; i < 29; i++) {
+                GenericValue testing = EntityQuery.use(delegator).from("Testing").where("testingId", "PIPE-" + i).queryOne();
+                assertNotNull("Testing value written", testing);
+                assertEquals("Testing value type", "PIPE-TYPE-" + i, testing.getString("testingTypeId"));
+                assertEquals("Testing value size", Long.valueOf(i == 1 ? 101 : i), testing.getLong("testingSize"));
+            }
+            GenericValue testing = EntityQuery.use(delegator).from("Testing").where("testingId", "PIPE-0").queryOne();
+            assertEquals("Existing value not created again", Long.valueOf(0), testing.getLong("testingSize"));
+            assertNotNull("Missing value created", EntityQuery.use(delegator).from("Testing").where("testingId", "PIPE-CREATED").queryOne());
+            assertNull("Value deleted", EntityQuery.use(delegator).from("Testing").where("testingId", "PIPE-29").queryOne());
+        } finally {
+            delegator.removeByCondition("Testing", EntityCondition.makeCondition("testingId", EntityOperator.LIKE, "PIPE-%"));
+            delegator.removeByCondition("TestingType", EntityCondition.makeCondition("testingTypeId", EntityOperator.LIKE, "PIPE-TYPE-%"));
+        }
+    }
+
     public void testEntitySaxReaderCreateSkip() throws Exception {
         String xmlContentLoad =
                 "<entity-engine-xml>" +
@@ -1185,6 +1613,23 @@ public class EntityTestSuite extends EntityTestCase {
         assertEquals(10020, seqId.longValue());
     }
 
+    public void testSequenceBankPrefetch() {
+        SequenceUtil sequencer = new SequenceUtil(delegator.getGroupHelperInfo(delegator.getEntityGroupName("SequenceValueItem")),
+                                                  delegator.getModelEntity("SequenceValueItem"),
+                                                  "seqName", "seqId");
+        UUID id = UUID.randomUUID();
+        String sequenceName = "BogusSequence" + id.toString();
+        // the banks prefetched in the background follow each other, so the ids have no gaps
+        for (int i = 10000; i <= 10500; i++) {
+            Long seqId = sequencer.getNextSeqId(sequenceName, 1, null);
+            assertEquals(i, seqId.longValue());
+        }
+        Map<String, Object> bankInfo = sequencer.getBankInfo(sequenceName);
+        Debug.logInfo("testSequenceBankPrefetch bank info: " + bankInfo, module);
+        assertTrue("Banks were prefetched", (Long) bankInfo.get("prefetchCount") > 0);
+        assertTrue("Bank size grew with the allocation rate", (Long) bankInfo.get("bankSize") > 10);
+    }
+
     public void testSequenceValueItemWithConcurrentThreads() {
         final SequenceUtil sequencer = new SequenceUtil(delegator.getGroupHelperInfo(delegator.getEntityGroupName("SequenceValueItem")),
                                                   delegator.getModelEntity("SequenceValueItem"),
@@ -1226,6 +1671,47 @@ public class EntityTestSuite extends EntityTestCase {
         assertFalse("Duplicate sequence id returned", duplicateFound.get());
     }
 
+    public void testSequenceBankPrefetchWithConcurrentThreads() {
+        final SequenceUtil sequencer = new SequenceUtil(delegator.getGroupHelperInfo(delegator.getEntityGroupName("SequenceValueItem")),
+                                                  delegator.getModelEntity("SequenceValueItem"),
+                                                  "seqName", "seqId");
+        UUID id = UUID.randomUUID();
+        final String sequenceName = "BogusSequence" + id.toString();
+        final int threads = 8;
+        final int idsPerThread = 500;
+        final Set<Long> seqIds = ConcurrentHashMap.newKeySet();
+        final AtomicBoolean duplicateFound = new AtomicBoolean(false);
+        final AtomicBoolean nullSeqIdReturned = new AtomicBoolean(false);
+        final CountDownLatch startLatch = new CountDownLatch(1);
+
+        // the threads take the ids of the current bank while the next ones are prefetched
+        List<Future<Void>> futures = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            futures.add(ExecutionPool.GLOBAL_FORK_JOIN.submit(() -> {
+                startLatch.await();
+                for (int j = 0; j < idsPerThread; j++) {
+                    Long seqId = sequencer.getNextSeqId(sequenceName, 1, null);
+                    if (seqId == null) {
+                        nullSeqIdReturned.set(true);
+                    } else if (!seqIds.add(seqId)) {
+                        duplicateFound.set(true);
+                    }
+                }
+                return null;
+            }));
+        }
+        startLatch.countDown();
+        ExecutionPool.getAllFutures(futures);
+        assertFalse("Null sequence id returned", nullSeqIdReturned.get());
+        assertFalse("Duplicate sequence id returned", duplicateFound.get());
+        assertEquals("All the ids returned", threads * idsPerThread, seqIds.size());
+        // the banks follow each other, so the ids have no gaps
+        assertEquals("First id", 10000L, (long) Collections.min(seqIds));
+        assertEquals("Last id", 10000L + threads * idsPerThread - 1, (long) Collections.max(seqIds));
+        Map<String, Object> bankInfo = sequencer.getBankInfo(sequenceName);
+        assertTrue("Banks were prefetched", (Long) bankInfo.get("prefetchCount") > 0);
+    }
+
     /*
         This test is useful to confirm that the default setting of use-transaction="true" for screen definitions is
         the best one for performance.
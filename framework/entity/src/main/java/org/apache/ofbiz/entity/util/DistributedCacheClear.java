@@ -39,5 +39,9 @@ public interface DistributedCacheClear {
 
     public void distributedClearCacheLine(GenericPK primaryKey);
 
+    /** Clears all the cache lines of an entity, which is not distributed unless the implementation overrides this method. */
+    public default void distributedClearCacheLine(String entityName) {
+    }
+
     public void clearAllCaches();
 }
@@ -0,0 +1,415 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.entity.util;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.ofbiz.base.concurrent.ExecutionPool;
+import org.apache.ofbiz.base.util.Debug;
+import org.apache.ofbiz.entity.Delegator;
+import org.apache.ofbiz.entity.GenericEntityException;
+import org.apache.ofbiz.entity.GenericEntityNotFoundException;
+import org.apache.ofbiz.entity.GenericValue;
+import org.apache.ofbiz.entity.datasource.GenericHelper;
+import org.apache.ofbiz.entity.model.ModelEntity;
+import org.apache.ofbiz.entity.model.ModelRelation;
+import org.apache.ofbiz.entity.transaction.GenericTransactionException;
+import org.apache.ofbiz.entity.transaction.TransactionUtil;
+
+/**
+ * Writes the values read by one or more EntitySaxReader with a pool of writer threads.
+ * <p>The parsing thread hands the values over in chunks of <code>valuesPerCommit</code> values, each chunk
+ * being written with a JDBC batched <code>storeAll</code> in its own transaction; at most <code>queueSize</code>
+ * chunks wait for a writer, after that the parsing thread blocks.</p>
+ * <p>Values are grouped by dependency level: an entity referencing other entities through foreign keys
+ * (type="one" relations) has a higher level than the entities it references, entities referencing each other
+ * share the same level and component. A chunk is only written once the chunks handed over before it which it may
+ * reference, those of a lower level or of a shared component, are written, so the order of the data files
+ * is respected where it matters and the other chunks are written in parallel. Create and delete actions,
+ * which depend on what is already in the database, wait for all the chunks before them and the chunks after
+ * them wait for them.</p>
+ * <p>Unlike a plain EntitySaxReader load the data is not loaded in one transaction: when a chunk fails the chunks
+ * written before it stay committed.</p>
+ */
+public class EntityDataLoadPipeline implements AutoCloseable {
+
+    public static final String module = EntityDataLoadPipeline.class.getName();
+
+    private enum Action {STORE, CREATE, DELETE};
+
+    private final int valuesPerCommit;
+    private final int batchSize;
+    private final int transactionTimeout;
+    private final boolean continueOnFail;
+    private final ScheduledExecutorService executor;
+    private final Semaphore queueSlots;
+    private final Map<String, Integer> entityLevels = new HashMap<>();
+    private final Map<String, Integer> entityComponents = new HashMap<>();
+
+    // the fields below are only used by the parsing thread
+    private final TreeMap<Integer, List<GenericValue>> storeBuffers = new TreeMap<>();
+    private final List<GenericValue> actionBuffer = new ArrayList<>();
+    private Action bufferedAction = null;
+    private Delegator bufferedDelegator = null;
+    private boolean bufferedCreateDummyFks = false;
+    private long nextSequence = 0;
+
+    // chunks handed over and not written yet, in sequence order, guarded by itself
+    private final Deque<Chunk> pendingChunks = new ArrayDeque<>();
+    private final AtomicLong numberWritten = new AtomicLong();
+    private volatile GenericEntityException failure = null;
+
+    /** Creates a new pipeline, its writer threads are started right away.
+     *@param delegator The delegator the entity model is read from
+     *@param writerThreads The number of threads writing the values
+     *@param queueSize The number of chunks waiting for a writer before the parsing thread blocks
+     *@param valuesPerCommit The number of values written in each transaction
+     *@param batchSize The maximum number of rows of a JDBC batch
+     *@param transactionTimeout The timeout of the transactions in seconds, or -1 for the default timeout
+     *@param continueOnFail If true a chunk which cannot be written is logged and skipped, otherwise the load stops
+     */
+    public EntityDataLoadPipeline(Delegator delegator, int writerThreads, int queueSize, int valuesPerCommit, int batchSize,
+            int transactionTimeout, boolean continueOnFail) throws GenericEntityException {
+        this.valuesPerCommit = Math.max(1, valuesPerCommit);
+        this.batchSize = batchSize;
+        this.transactionTimeout = transactionTimeout;
+        this.continueOnFail = continueOnFail;
+        computeLevels(delegator.getModelReader().getEntityCache());
+        this.queueSlots = new Semaphore(writerThreads + Math.max(0, queueSize));
+        this.executor = ExecutionPool.getScheduledExecutor(new ThreadGroup(module), "entity-data-load", writerThreads, 0, true);
+    }
+
+    /** Computes the dependency level of each entity, from the strongly connected components of the
+     * graph of type="one" relations found by the Tarjan algorithm. */
+    private void computeLevels(Map<String, ModelEntity> entities) {
+        Map<String, Integer> index = new HashMap<>();
+        Map<String, Integer> lowLink = new HashMap<>();
+        Deque<String> stack = new ArrayDeque<>();
+        Set<String> onStack = new HashSet<>();
+        for (String entityName : entities.keySet()) {
+            if (!index.containsKey(entityName)) {
+                visit(entityName, entities, index, lowLink, stack, onStack);
+            }
+        }
+    }
+
+    private void visit(String entityName, Map<String, ModelEntity> entities, Map<String, Integer> index, Map<String, Integer> lowLink,
+            Deque<String> stack, Set<String> onStack) {
+        index.put(entityName, index.size());
+        lowLink.put(entityName, index.get(entityName));
+        stack.push(entityName);
+        onStack.add(entityName);
+        List<String> references = getReferencedEntityNames(entities.get(entityName), entities);
+        for (String relEntityName : references) {
+            if (!index.containsKey(relEntityName)) {
+                visit(relEntityName, entities, index, lowLink, stack, onStack);
+                lowLink.put(entityName, Math.min(lowLink.get(entityName), lowLink.get(relEntityName)));
+            } else if (onStack.contains(relEntityName)) {
+                lowLink.put(entityName, Math.min(lowLink.get(entityName), index.get(relEntityName)));
+            }
+        }
+        if (lowLink.get(entityName).equals(index.get(entityName))) {
+            // entityName is the root of a component, the components it references are already done
+            List<String> component = new LinkedList<>();
+            String member;
+            do {
+                member = stack.pop();
+                onStack.remove(member);
+                component.add(member);
+            } while (!member.equals(entityName));
+            int level = 0;
+            for (String componentMember : component) {
+                for (String relEntityName : getReferencedEntityNames(entities.get(componentMember), entities)) {
+                    Integer relLevel = entityLevels.get(relEntityName);
+                    if (relLevel != null) {
+                        level = Math.max(level, relLevel + 1);
+                    }
+                }
+            }
+            int componentId = index.get(entityName);
+            for (String componentMember : component) {
+                entityLevels.put(componentMember, level);
+                entityComponents.put(componentMember, componentId);
+            }
+        }
+    }
+
+    private static List<String> getReferencedEntityNames(ModelEntity modelEntity, Map<String, ModelEntity> entities) {
+        List<String> references = new LinkedList<>();
+        if (modelEntity == null) {
+            return references;
+        }
+        for (ModelRelation relation : modelEntity.getRelationsOneList()) {
+            if ("one".equals(relation.getType()) && entities.containsKey(relation.getRelEntityName())) {
+                references.add(relation.getRelEntityName());
+            }
+        }
+        return references;
+    }
+
+    /** Returns the dependency level of the entity, 0 for an entity referencing no other entity. */
+    public int getLevel(String entityName) {
+        Integer level = entityLevels.get(entityName);
+        return level == null ? 0 : level;
+    }
+
+    /** Stores the value, as a create-update action. */
+    public void store(Delegator delegator, GenericValue value, boolean createDummyFks) throws GenericEntityException {
+        add(Action.STORE, delegator, value, createDummyFks);
+    }
+
+    /** Creates the value if it does not exist yet. */
+    public void create(Delegator delegator, GenericValue value, boolean createDummyFks) throws GenericEntityException {
+        add(Action.CREATE, delegator, value, createDummyFks);
+    }
+
+    /** Removes the value. */
+    public void remove(Delegator delegator, GenericValue value) throws GenericEntityException {
+        add(Action.DELETE, delegator, value, false);
+    }
+
+    private void add(Action action, Delegator delegator, GenericValue value, boolean createDummyFks) throws GenericEntityException {
+        checkFailure();
+        if (delegator != bufferedDelegator || createDummyFks != bufferedCreateDummyFks) {
+            flush();
+            bufferedDelegator = delegator;
+            bufferedCreateDummyFks = createDummyFks;
+        }
+        if (action == Action.STORE) {
+            if (!actionBuffer.isEmpty()) {
+                dispatchActionBuffer();
+            }
+            int level = getLevel(value.getEntityName());
+            List<GenericValue> buffer = storeBuffers.get(level);
+            if (buffer == null) {
+                buffer = new ArrayList<>(valuesPerCommit);
+                storeBuffers.put(level, buffer);
+            }
+            buffer.add(value);
+            if (buffer.size() >= valuesPerCommit) {
+                // the values of lower levels read before may be referenced, so they go first
+                for (Iterator<Map.Entry<Integer, List<GenericValue>>> iter = storeBuffers.headMap(level, true).entrySet().iterator(); iter.hasNext();) {
+                    Map.Entry<Integer, List<GenericValue>> entry = iter.next();
+                    dispatch(new Chunk(Action.STORE, entry.getKey(), entry.getValue()));
+                    iter.remove();
+                }
+            }
+        } else {
+            if (!storeBuffers.isEmpty() || (bufferedAction != action && !actionBuffer.isEmpty())) {
+                flush();
+            }
+            bufferedAction = action;
+            actionBuffer.add(value);
+            if (actionBuffer.size() >= valuesPerCommit) {
+                dispatchActionBuffer();
+            }
+        }
+    }
+
+    private void dispatchActionBuffer() throws GenericEntityException {
+        dispatch(new Chunk(bufferedAction, -1, new ArrayList<>(actionBuffer)));
+        actionBuffer.clear();
+    }
+
+    /** Hands the values buffered by the calling thread over to the writers, lower levels first. */
+    public void flush() throws GenericEntityException {
+        for (Map.Entry<Integer, List<GenericValue>> entry : storeBuffers.entrySet()) {
+            dispatch(new Chunk(Action.STORE, entry.getKey(), entry.getValue()));
+        }
+        storeBuffers.clear();
+        if (!actionBuffer.isEmpty()) {
+            dispatchActionBuffer();
+        }
+    }
+
+    private void dispatch(Chunk chunk) throws GenericEntityException {
+        try {
+            queueSlots.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new GenericEntityException("Interrupted while waiting for a data load writer", e);
+        }
+        synchronized (pendingChunks) {
+            pendingChunks.addLast(chunk);
+        }
+        executor.execute(chunk);
+    }
+
+    /** Hands the buffered values over to the writers and waits until all of them are written.
+     *@throws GenericEntityException if a chunk of values could not be written, unless continueOnFail is set
+     */
+    public void waitForCompletion() throws GenericEntityException {
+        flush();
+        synchronized (pendingChunks) {
+            while (!pendingChunks.isEmpty()) {
+                try {
+                    pendingChunks.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new GenericEntityException("Interrupted while waiting for the data load writers", e);
+                }
+            }
+        }
+        checkFailure();
+    }
+
+    private void checkFailure() throws GenericEntityException {
+        if (failure != null) {
+            throw new GenericEntityException("Could not write the data", failure);
+        }
+    }
+
+    /** Returns the number of values written so far. */
+    public long getNumberWritten() {
+        return numberWritten.get();
+    }
+
+    /** Waits until all of the values are written, then stops the writer threads. */
+    @Override
+    public void close() throws GenericEntityException {
+        try {
+            waitForCompletion();
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private final class Chunk implements Runnable {
+        private final long sequence;
+        private final Action action;
+        private final int level;
+        private final Set<Integer> components = new HashSet<>();
+        private final List<GenericValue> values;
+        private final Delegator delegator;
+        private final boolean createDummyFks;
+
+        private Chunk(Action action, int level, List<GenericValue> values) {
+            this.sequence = nextSequence++;
+            this.action = action;
+            this.level = level;
+            this.values = values;
+            this.delegator = bufferedDelegator;
+            this.createDummyFks = bufferedCreateDummyFks;
+            for (GenericValue value : values) {
+                Integer component = entityComponents.get(value.getEntityName());
+                if (component != null) {
+                    components.add(component);
+                }
+            }
+        }
+
+        /** Returns true if this chunk has to be written after the passed chunk, handed over before it. */
+        private boolean dependsOn(Chunk previous) {
+            if (action != Action.STORE || previous.action != Action.STORE || previous.level < level) {
+                return true;
+            }
+            for (Integer component : previous.components) {
+                if (components.contains(component)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public void run() {
+            try {
+                synchronized (pendingChunks) {
+                    while (mustWait()) {
+                        pendingChunks.wait();
+                    }
+                }
+                if (failure == null) {
+                    write();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                failure = new GenericEntityException("Interrupted while writing data", e);
+            } finally {
+                synchronized (pendingChunks) {
+                    pendingChunks.remove(this);
+                    pendingChunks.notifyAll();
+                }
+                queueSlots.release();
+            }
+        }
+
+        private boolean mustWait() {
+            for (Chunk pending : pendingChunks) {
+                if (pending.sequence >= sequence) {
+                    return false;
+                }
+                if (dependsOn(pending)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private void write() {
+            boolean beganTransaction = false;
+            try {
+                beganTransaction = transactionTimeout > -1 ? TransactionUtil.begin(transactionTimeout) : TransactionUtil.begin();
+                if (action == Action.DELETE) {
+                    delegator.removeAll(values);
+                } else {
+                    List<GenericValue> valuesToStore = values;
+                    if (action == Action.CREATE) {
+                        valuesToStore = new LinkedList<>();
+                        for (GenericValue value : values) {
+                            GenericHelper helper = delegator.getEntityHelper(value.getEntityName());
+                            try {
+                                helper.findByPrimaryKey(value.getPrimaryKey());
+                            } catch (GenericEntityNotFoundException e) {
+                                valuesToStore.add(value);
+                            }
+                        }
+                    }
+                    delegator.storeAll(valuesToStore, new EntityStoreOptions(createDummyFks, batchSize));
+                }
+                TransactionUtil.commit(beganTransaction);
+                numberWritten.addAndGet(values.size());
+            } catch (GenericEntityException | RuntimeException e) {
+                String errMsg = "Error writing " + values.size() + " values starting with " + values.get(0).getPrimaryKey() + ", rolling back transaction";
+                Debug.logError(e, errMsg, module);
+                try {
+                    TransactionUtil.rollback(beganTransaction, errMsg, e);
+                } catch (GenericTransactionException e2) {
+                    Debug.logError(e2, module);
+                }
+                if (!continueOnFail) {
+                    failure = e instanceof GenericEntityException ? (GenericEntityException) e : new GenericEntityException(errMsg, e);
+                }
+            }
+        }
+    }
+}
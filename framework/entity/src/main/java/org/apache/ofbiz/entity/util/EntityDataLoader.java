@@ -238,6 +238,13 @@ public class EntityDataLoader {
     }
 
     public static int loadData(URL dataUrl, String helperName, Delegator delegator, List<Object> errorMessages, int txTimeout, boolean dummyFks, boolean maintainTxs, boolean tryInsert, boolean continueOnFail) throws GenericEntityException {
+        return loadData(dataUrl, helperName, delegator, errorMessages, txTimeout, dummyFks, maintainTxs, tryInsert, continueOnFail, null);
+    }
+
+    /** Loads the data file, its values being written by the passed pipeline if it is not null.
+     * When a pipeline is used the values may still be written after this method returns, see {@link EntityDataLoadPipeline#waitForCompletion()}.
+     */
+    public static int loadData(URL dataUrl, String helperName, Delegator delegator, List<Object> errorMessages, int txTimeout, boolean dummyFks, boolean maintainTxs, boolean tryInsert, boolean continueOnFail, EntityDataLoadPipeline pipeline) throws GenericEntityException {
         int rowsChanged = 0;
 
         if (dataUrl == null) {
@@ -265,6 +272,7 @@ public class EntityDataLoader {
             reader.setCreateDummyFks(dummyFks);
             reader.setMaintainTxStamps(maintainTxs);
             reader.setContinueOnFail(continueOnFail);
+            reader.setPipeline(pipeline);
             rowsChanged += reader.parse(dataUrl);
         } catch (IOException | SAXException e) {
             String xmlError = "[loadData]: Error loading XML Resource \"" + dataUrl.toExternalForm() + "\"; Error was: " + e.getMessage();
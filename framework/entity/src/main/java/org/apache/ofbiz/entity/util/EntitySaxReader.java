@@ -101,6 +101,7 @@ public class EntitySaxReader extends DefaultHandler {
     private List<String> actionTags = UtilMisc.toList("create", "create-update", "create-replace", "delete");
     private Action currentAction = Action.CREATE_UPDATE;
     private List<Object> messageList = null;
+    private EntityDataLoadPipeline pipeline = null;
 
     private List<GenericValue> valuesToWrite = new ArrayList<>(valuesPerWrite);
     private List<GenericValue> valuesToDelete = new ArrayList<>(valuesPerWrite);
@@ -155,6 +156,17 @@ public class EntitySaxReader extends DefaultHandler {
         this.continueOnFail = continueOnFail;
     }
 
+    /** Sets the pipeline writing the values read, instead of writing them in one transaction from the parsing thread.
+     * It is not used with the try insert method or when only checking the data.
+     */
+    public void setPipeline(EntityDataLoadPipeline pipeline) {
+        this.pipeline = pipeline;
+    }
+
+    private boolean usePipeline() {
+        return pipeline != null && !useTryInsertMethod && !checkDataOnly;
+    }
+
     public void setPlaceholderValues(Map<String,Object> placeholderValues) {
         this.placeholderValues = placeholderValues;
     }
@@ -215,6 +227,17 @@ public class EntitySaxReader extends DefaultHandler {
             throw new SAXException("Unable to create the SAX parser", pce);
         }
         numberRead = 0;
+        if (usePipeline()) {
+            // the values are written by the pipeline, in transactions of its own
+            try {
+                parser.parse(is, this);
+                pipeline.flush();
+            } catch (GenericEntityException e) {
+                throw new SAXException("An error occurred writing data", e);
+            }
+            Debug.logImportant("Finished " + numberRead + " values from " + docDescription + ", " + pipeline.getNumberWritten() + " values written by the pipeline so far", module);
+            return numberRead;
+        }
         try {
             boolean beganTransaction = false;
             if (transactionTimeout > -1) {
@@ -333,6 +356,7 @@ public class EntitySaxReader extends DefaultHandler {
 
                     EntitySaxReader reader = new EntitySaxReader(delegator);
                     reader.setUseTryInsertMethod(this.useTryInsertMethod);
+                    reader.setPipeline(this.pipeline);
                     try {
                         reader.setTransactionTimeout(this.transactionTimeout);
                     } catch (GenericTransactionException e1) {
@@ -392,6 +416,21 @@ public class EntitySaxReader extends DefaultHandler {
                 }
 
                 try {
+                    if (usePipeline()) {
+                        if (Action.DELETE == currentAction) {
+                            pipeline.remove(delegator, currentValue);
+                        } else if (Action.CREATE == currentAction) {
+                            pipeline.create(delegator, currentValue, createDummyFks);
+                        } else {
+                            pipeline.store(delegator, currentValue, createDummyFks);
+                        }
+                        numberRead++;
+                        if ((numberRead % valuesPerMessage) == 0) {
+                            Debug.logImportant("Another " + valuesPerMessage + " values read: now up to " + numberRead, module);
+                        }
+                        currentValue = null;
+                        return;
+                    }
                     boolean exist = true;
                     boolean skip = false;
                     //if verbose on, check if entity exist on database for count each action
@@ -27,8 +27,11 @@ public class EntityStoreOptions implements java.io.Serializable {
     /** Option for creating missing referenced values as dummy (pk-only) entries */
     protected boolean createDummyFks = false;
 
+    /** Option for writing the values with JDBC batches of at most this number of rows; 0 or 1 disables batching */
+    protected int batchSize = 0;
+
     /**
-     * Default constructor. Defaults are as follows: createDummyFks = false
+     * Default constructor. Defaults are as follows: createDummyFks = false, batchSize = 0
      */
     public EntityStoreOptions() {
     }
@@ -42,6 +45,17 @@ public class EntityStoreOptions implements java.io.Serializable {
         this.createDummyFks = createDummyFks;
     }
 
+    /**
+     * Optional constructor with options to specify.
+     *
+     * @param createDummyFks
+     * @param batchSize
+     */
+    public EntityStoreOptions(boolean createDummyFks, int batchSize) {
+        this.createDummyFks = createDummyFks;
+        this.batchSize = batchSize;
+    }
+
     /**
      * If true, missing entries in FK referenced entities will be created while storing the given GenericValues.
      * 
@@ -53,10 +67,39 @@ public class EntityStoreOptions implements java.io.Serializable {
 
     /**
      * If true, missing entries in FK referenced entities will be created while storing the given GenericValues.
-     * 
+     *
      * @param createDummyFks
      */
     public void setCreateDummyFks(boolean createDummyFks) {
         this.createDummyFks = createDummyFks;
     }
+
+    /**
+     * If greater than 1, the consecutive inserts and updates with the same statement are sent to the database
+     * with JDBC batches of at most this number of rows, in the order of the values.
+     *
+     * @return int
+     */
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * If greater than 1, the consecutive inserts and updates with the same statement are sent to the database
+     * with JDBC batches of at most this number of rows, in the order of the values.
+     *
+     * @param batchSize
+     */
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Returns true if the values should be written with JDBC batches.
+     *
+     * @return boolean
+     */
+    public boolean isBatched() {
+        return batchSize > 1;
+    }
 }
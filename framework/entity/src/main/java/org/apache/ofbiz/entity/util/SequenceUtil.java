@@ -22,11 +22,23 @@ import java.sql.Connection;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
 
 import javax.transaction.Transaction;
 
+import org.apache.ofbiz.base.concurrent.ExecutionPool;
 import org.apache.ofbiz.base.util.Debug;
 import org.apache.ofbiz.entity.GenericEntityException;
 import org.apache.ofbiz.entity.datasource.GenericHelperInfo;
@@ -43,6 +55,8 @@ public class SequenceUtil {
 
     public static final String module = SequenceUtil.class.getName();
 
+    private static final ScheduledExecutorService prefetchExecutor = ExecutionPool.getScheduledExecutor(new ThreadGroup(module), "sequence-prefetch", 2, 60, false);
+
     private final ConcurrentMap<String, SequenceBank> sequences = new ConcurrentHashMap<String, SequenceBank>();
     private final GenericHelperInfo helperInfo;
     private final String tableName;
@@ -86,6 +100,24 @@ public class SequenceUtil {
         bank.refresh(staggerMax);
     }
 
+    /**
+     * Returns the current bank size and the refresh counters of the named sequence bank, or null if
+     * no id was taken from it yet. The times are in milliseconds.
+     */
+    public Map<String, Object> getBankInfo(String seqName) {
+        SequenceBank bank = sequences.get(seqName);
+        if (bank == null) {
+            return null;
+        }
+        Map<String, Object> bankInfo = new LinkedHashMap<String, Object>();
+        bankInfo.put("bankSize", bank.bankSize);
+        bankInfo.put("refreshCount", bank.refreshCount.sum());
+        bankInfo.put("prefetchCount", bank.prefetchCount.sum());
+        bankInfo.put("totalRefreshTime", TimeUnit.NANOSECONDS.toMillis(bank.refreshNanos.sum()));
+        bankInfo.put("maxRefreshTime", TimeUnit.NANOSECONDS.toMillis(bank.maxRefreshNanos.get()));
+        return bankInfo;
+    }
+
     private SequenceBank getBank(String seqName, ModelEntity seqModelEntity) {
         SequenceBank bank = sequences.get(seqName);
 
@@ -103,23 +135,57 @@ public class SequenceUtil {
         return bank;
     }
 
+    /** A range of ids taken from the sequence table, handed out from <code>nextSeqId</code> up to but excluding <code>maxSeqId</code>. */
+    private static final class SequenceRange {
+        private final AtomicLong nextSeqId;
+        private final long maxSeqId;
+        private final long prefetchSeqId;
+        private final AtomicBoolean prefetchRequested = new AtomicBoolean(false);
+
+        private SequenceRange(long curSeqId, long maxSeqId) {
+            this.nextSeqId = new AtomicLong(curSeqId);
+            this.maxSeqId = maxSeqId;
+            this.prefetchSeqId = maxSeqId - (maxSeqId - curSeqId) * SequenceBank.prefetchPercent / 100;
+        }
+    }
+
+    /*
+       Ids are handed out from the current range without locking. When the ids taken from a range pass its
+       prefetch mark the next range is taken from the sequence table in the background, so most threads never
+       wait for the database; a thread only waits when the current range runs out before the next one is there.
+       The bank size grows when banks are used up faster than fastRefreshTime and shrinks back to the configured
+       size when they last longer than slowRefreshTime.
+     */
     private class SequenceBank {
         public static final long defaultBankSize = 10;
         public static final long maxBankSize = 5000;
         public static final long startSeqId = 10000;
+        public static final long prefetchPercent = 20;
+        public static final long fastRefreshTime = 1000;
+        public static final long slowRefreshTime = 300000;
 
         private final String seqName;
-        private final long bankSize;
+        private final long minBankSize;
         private final String updateForLockStatement;
         private final String selectSequenceStatement;
 
-        private long curSeqId;
-        private long maxSeqId;
+        private volatile SequenceRange range = new SequenceRange(0, 0);
+        private volatile long bankSize;
+        // the bank lock; not a monitor, so that a virtual thread waiting for the database does not pin its carrier thread
+        private final ReentrantLock lock = new ReentrantLock();
+        // the fields below are guarded by the bank lock
+        private Future<SequenceRange> prefetch = null;
+        private long lastRefreshNanos = 0;
+        private int fastRefreshes = 0;
+
+        private final LongAdder refreshCount = new LongAdder();
+        private final LongAdder prefetchCount = new LongAdder();
+        private final LongAdder refreshNanos = new LongAdder();
+        private final AtomicLong maxRefreshNanos = new AtomicLong();
 
         private SequenceBank(String seqName, long bankSize) {
             this.seqName = seqName;
-            curSeqId = 0;
-            maxSeqId = 0;
+            this.minBankSize = bankSize;
             this.bankSize = bankSize;
             updateForLockStatement = "UPDATE " + SequenceUtil.this.tableName + " SET " + SequenceUtil.this.idColName + "=" + SequenceUtil.this.idColName + " WHERE " + SequenceUtil.this.nameColName + "='" + this.seqName + "'";
             selectSequenceStatement = "SELECT " + SequenceUtil.this.idColName + " FROM " + SequenceUtil.this.tableName + " WHERE " + SequenceUtil.this.nameColName + "='" + this.seqName + "'";
@@ -131,28 +197,115 @@ public class SequenceUtil {
                 stagger = (long)Math.ceil(Math.random() * staggerMax);
                 if (stagger == 0) stagger = 1;
             }
-            synchronized (this) {
-                if ((curSeqId + stagger) <= maxSeqId) {
-                    long retSeqId = curSeqId;
-                    curSeqId += stagger;
-                    return retSeqId;
-                } else {
-                    fillBank(stagger);
-                    if ((curSeqId + stagger) <= maxSeqId) {
-                        long retSeqId = curSeqId;
-                        curSeqId += stagger;
-                        return retSeqId;
-                    } else {
-                        Debug.logError("Fill bank failed, returning null", module);
-                        return null;
+            while (true) {
+                SequenceRange current = this.range;
+                long retSeqId = current.nextSeqId.getAndAdd(stagger);
+                if ((retSeqId + stagger) <= current.maxSeqId) {
+                    if ((retSeqId + stagger) >= current.prefetchSeqId && current.prefetchRequested.compareAndSet(false, true)) {
+                        prefetch(current, stagger);
                     }
+                    return retSeqId;
+                }
+                if (!nextRange(current, stagger)) {
+                    Debug.logError("Fill bank failed, returning null", module);
+                    return null;
+                }
+            }
+        }
+
+        private void prefetch(SequenceRange current, long stagger) {
+            lock.lock();
+            try {
+                if (this.range != current || this.prefetch != null) {
+                    return;
+                }
+                final long nextBankSize = nextBankSize(stagger);
+                try {
+                    this.prefetch = prefetchExecutor.submit(() -> fillBank(nextBankSize));
+                    prefetchCount.increment();
+                } catch (RejectedExecutionException e) {
+                    Debug.logWarning(e, "Could not prefetch the next bank of sequenced IDs for [" + this.seqName + "]", module);
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /** Replaces the used up range with the prefetched one, or with a new one when there is none; returns false if no range could be taken. */
+        private boolean nextRange(SequenceRange current, long stagger) {
+            lock.lock();
+            try {
+                if (this.range != current) {
+                    // another thread already replaced it
+                    return true;
+                }
+                SequenceRange next = takePrefetched();
+                if (next == null || next.nextSeqId.get() + stagger > next.maxSeqId) {
+                    next = fillBank(nextBankSize(stagger));
                 }
+                if (next == null) {
+                    return false;
+                }
+                this.range = next;
+                return true;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void refresh(long staggerMax) {
+            lock.lock();
+            try {
+                // the prefetched range may predate the changes the refresh is done for
+                takePrefetched();
+                long refreshBankSize = staggerMax > 1 ? Math.min(staggerMax * defaultBankSize, maxBankSize) : this.bankSize;
+                SequenceRange next = fillBank(refreshBankSize);
+                this.range = next != null ? next : new SequenceRange(0, 0);
+            } finally {
+                lock.unlock();
             }
         }
 
-        private synchronized void refresh(long staggerMax) {
-            this.curSeqId = this.maxSeqId;
-            this.fillBank(staggerMax);
+        private SequenceRange takePrefetched() {
+            Future<SequenceRange> prefetch = this.prefetch;
+            if (prefetch == null) {
+                return null;
+            }
+            this.prefetch = null;
+            try {
+                return prefetch.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return null;
+            } catch (ExecutionException e) {
+                Debug.logError(e, "Error prefetching the bank of sequenced IDs for [" + this.seqName + "]", module);
+                return null;
+            }
+        }
+
+        private long nextBankSize(long stagger) {
+            if (stagger > 1) {
+                // NOTE: could use staggerMax for this, but if that is done it would be easier to guess a valid next id without a brute force attack
+                return Math.min(stagger * defaultBankSize, maxBankSize);
+            }
+            long now = System.nanoTime();
+            if (lastRefreshNanos != 0) {
+                long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(now - lastRefreshNanos);
+                if (elapsedMillis < fastRefreshTime) {
+                    // grow only for a sustained rate, not for a single burst
+                    if (++fastRefreshes >= 2) {
+                        bankSize = Math.min(bankSize * 2, maxBankSize);
+                        fastRefreshes = 0;
+                    }
+                } else {
+                    fastRefreshes = 0;
+                    if (elapsedMillis > slowRefreshTime) {
+                        bankSize = Math.max(bankSize / 2, minBankSize);
+                    }
+                }
+            }
+            lastRefreshNanos = now;
+            return bankSize;
         }
 
         /*
@@ -163,22 +316,9 @@ public class SequenceUtil {
            3 - increment the sequence
            The three steps are executed in one dedicated database transaction.
          */
-        private void fillBank(long stagger) {
-            // no need to get a new bank, SeqIds available
-            if ((curSeqId + stagger) <= maxSeqId) {
-                return;
-            }
-
-            long bankSize = this.bankSize;
-            if (stagger > 1) {
-                // NOTE: could use staggerMax for this, but if that is done it would be easier to guess a valid next id without a brute force attack
-                bankSize = stagger * defaultBankSize;
-            }
-
-            if (bankSize > maxBankSize) {
-                bankSize = maxBankSize;
-            }
-
+        private SequenceRange fillBank(long bankSize) {
+            long startNanos = System.nanoTime();
+            long curSeqId = 0;
             Transaction suspendedTransaction = null;
             try {
                 suspendedTransaction = TransactionUtil.suspend();
@@ -256,9 +396,7 @@ public class SequenceUtil {
                         }
                     }
                 } catch (SQLException | GenericEntityException  e) {
-                    // reset the sequence fields and return (note: it would be better to throw an exception)
-                    curSeqId = 0;
-                    maxSeqId = 0;
+                    // return no range (note: it would be better to throw an exception)
                     String errMsg = "General error in getting a sequenced ID";
                     Debug.logError(e, errMsg, module);
                     try {
@@ -266,30 +404,31 @@ public class SequenceUtil {
                     } catch (GenericTransactionException gte2) {
                         Debug.logError(gte2, "Unable to rollback transaction", module);
                     }
-                    return;
+                    return null;
                 }
             } catch (GenericTransactionException e) {
                 Debug.logError(e, "System Error suspending transaction in sequence util", module);
-                // reset the sequence fields and return (note: it would be better to throw an exception)
-                curSeqId = 0;
-                maxSeqId = 0;
-                return;
+                // return no range (note: it would be better to throw an exception)
+                return null;
             } finally {
                 if (suspendedTransaction != null) {
                     try {
                         TransactionUtil.resume(suspendedTransaction);
                     } catch (GenericTransactionException e) {
                         Debug.logError(e, "Error resuming suspended transaction in sequence util", module);
-                        // reset the sequence fields and return (note: it would be better to throw an exception)
-                        curSeqId = 0;
-                        maxSeqId = 0;
-                        return;
+                        // return no range (note: it would be better to throw an exception)
+                        return null;
                     }
                 }
             }
 
-            maxSeqId = curSeqId + bankSize;
-            if (Debug.infoOn()) Debug.logInfo("Got bank of sequenced IDs for [" + this.seqName + "]; curSeqId=" + curSeqId + ", maxSeqId=" + maxSeqId + ", bankSize=" + bankSize, module);
+            long maxSeqId = curSeqId + bankSize;
+            long elapsedNanos = System.nanoTime() - startNanos;
+            refreshCount.increment();
+            refreshNanos.add(elapsedNanos);
+            maxRefreshNanos.accumulateAndGet(elapsedNanos, Math::max);
+            if (Debug.infoOn()) Debug.logInfo("Got bank of sequenced IDs for [" + this.seqName + "]; curSeqId=" + curSeqId + ", maxSeqId=" + maxSeqId + ", bankSize=" + bankSize + ", took " + TimeUnit.NANOSECONDS.toMillis(elapsedNanos) + " ms", module);
+            return new SequenceRange(curSeqId, maxSeqId);
         }
     }
 }
@@ -0,0 +1,94 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.entity.connection;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.transaction.TransactionManager;
+
+import org.apache.commons.dbcp2.PoolableConnection;
+import org.apache.commons.dbcp2.managed.LocalXAConnectionFactory;
+import org.junit.Before;
+import org.junit.Test;
+
+public class StatementCachingConnectionFactoryTests {
+    private static final String SQL = "SELECT TESTING_ID FROM TESTING WHERE TESTING_ID = ?";
+    private final List<Connection> physicalConnections = new ArrayList<>();
+    private StatementCachingConnectionFactory factory;
+
+    // a database connection preparing a new statement on each call
+    private Connection newPhysicalConnection() throws SQLException {
+        Connection connection = mock(Connection.class);
+        when(connection.prepareStatement(SQL)).thenAnswer(invocation -> mock(PreparedStatement.class));
+        physicalConnections.add(connection);
+        return connection;
+    }
+
+    @Before
+    public void initialize() {
+        factory = new StatementCachingConnectionFactory(new LocalXAConnectionFactory(mock(TransactionManager.class), this::newPhysicalConnection), 10);
+    }
+
+    @Test
+    public void statementIsPreparedOncePerConnection() throws Exception {
+        PoolableConnection connection = factory.makeObject().getObject();
+        for (int i = 0; i < 3; i++) {
+            try (PreparedStatement statement = connection.prepareStatement(SQL)) {
+                statement.setString(1, "TEST-" + i);
+            }
+        }
+        verify(physicalConnections.get(0), times(1)).prepareStatement(SQL);
+        assertEquals(1, factory.getMissCount());
+        assertEquals(2, factory.getHitCount());
+    }
+
+    @Test
+    public void eachConnectionHasItsOwnCache() throws Exception {
+        PoolableConnection first = factory.makeObject().getObject();
+        PoolableConnection second = factory.makeObject().getObject();
+        first.prepareStatement(SQL).close();
+        second.prepareStatement(SQL).close();
+        first.prepareStatement(SQL).close();
+        verify(physicalConnections.get(0), times(1)).prepareStatement(SQL);
+        verify(physicalConnections.get(1), times(1)).prepareStatement(SQL);
+        assertEquals(2, factory.getMissCount());
+        assertEquals(1, factory.getHitCount());
+    }
+
+    @Test
+    public void statementInUseIsNotShared() throws Exception {
+        PoolableConnection connection = factory.makeObject().getObject();
+        try (PreparedStatement first = connection.prepareStatement(SQL); PreparedStatement second = connection.prepareStatement(SQL)) {
+            // both statements are open, the second one is prepared by the database
+            verify(physicalConnections.get(0), times(2)).prepareStatement(SQL);
+        }
+        assertEquals(2, factory.getMissCount());
+        assertEquals(0, factory.getHitCount());
+    }
+}
@@ -53,6 +53,7 @@ import org.apache.ofbiz.entity.condition.EntityOperator;
 import org.apache.ofbiz.entity.datasource.GenericHelperInfo;
 import org.apache.ofbiz.entity.jdbc.DatabaseUtil;
 import org.apache.ofbiz.entity.model.ModelEntity;
+import org.apache.ofbiz.entity.util.EntityDataLoadPipeline;
 import org.apache.ofbiz.entity.util.EntityDataLoader;
 import org.apache.ofbiz.entity.util.EntityQuery;
 import org.apache.ofbiz.entity.util.EntityUtil;
@@ -84,6 +85,7 @@ public class EntityDataLoadContainer implements Container {
     private static final String TRY_INSERTS = "try-inserts";
     private static final String REPAIR_COLUMNS = "repair-columns";
     private static final String CONTINUE_ON_FAIL = "continue-on-failure";
+    private static final String WRITER_THREADS = "writer-threads";
 
     @Override
     public void init(List<StartupCommand> ofbizCommands, String name, String configFile) throws ContainerException {
@@ -424,6 +426,7 @@ public class EntityDataLoadContainer implements Container {
         boolean maintainTxs = isPropertySet(loadDataProps, MAINTAIN_TXS);
         boolean tryInserts = isPropertySet(loadDataProps, TRY_INSERTS);
         boolean continueOnFail = isPropertySet(loadDataProps, CONTINUE_ON_FAIL);
+        int writerThreads = getWriterThreads(loadDataProps.get(WRITER_THREADS));
 
         List<URL> urlList = prepareDataUrls(delegator, baseDelegator, allComponents, helperInfo, loadDataProps);
         List<String> infoMessages = new ArrayList<String>();
@@ -432,16 +435,35 @@ public class EntityDataLoadContainer implements Container {
 
         logDataLoadingPlan(urlList, delegator.getDelegatorName());
 
-        for (URL dataUrl: urlList) {
+        // with writer threads the next files are parsed while the values of the previous ones are written
+        EntityDataLoadPipeline pipeline = null;
+        if (writerThreads > 0) {
             try {
-                int rowsChanged = EntityDataLoader.loadData(dataUrl, helperInfo.getHelperBaseName(),
-                        delegator, errorMessages, txTimeout, useDummyFks, maintainTxs, tryInserts, continueOnFail);
-                totalRowsChanged += rowsChanged;
-                infoMessages.add(createDataLoadMessage(dataUrl, rowsChanged, totalRowsChanged));
+                pipeline = new EntityDataLoadPipeline(delegator, writerThreads, writerThreads * 2, 1000, 100, txTimeout, continueOnFail);
             } catch (GenericEntityException e) {
-                if (continueOnFail) {
-                    Debug.logError(e, "Error loading data file: " + dataUrl.toExternalForm(), module);
-                } else {
+                throw new ContainerException(e);
+            }
+        }
+        try {
+            for (URL dataUrl: urlList) {
+                try {
+                    int rowsChanged = EntityDataLoader.loadData(dataUrl, helperInfo.getHelperBaseName(),
+                            delegator, errorMessages, txTimeout, useDummyFks, maintainTxs, tryInserts, continueOnFail, pipeline);
+                    totalRowsChanged += rowsChanged;
+                    infoMessages.add(createDataLoadMessage(dataUrl, rowsChanged, totalRowsChanged));
+                } catch (GenericEntityException e) {
+                    if (continueOnFail) {
+                        Debug.logError(e, "Error loading data file: " + dataUrl.toExternalForm(), module);
+                    } else {
+                        throw new ContainerException(e);
+                    }
+                }
+            }
+        } finally {
+            if (pipeline != null) {
+                try {
+                    pipeline.close();
+                } catch (GenericEntityException e) {
                     throw new ContainerException(e);
                 }
             }
@@ -450,6 +472,14 @@ public class EntityDataLoadContainer implements Container {
         logDataLoadingResults(infoMessages, errorMessages, totalRowsChanged);
     }
 
+    private int getWriterThreads(String writerThreads) {
+        try {
+            return Integer.parseInt(writerThreads);
+        } catch (Exception e) {
+            return 0;
+        }
+    }
+
     private int getTransactionTimeout(String timeout) {
         try {
             return Integer.parseInt(timeout);
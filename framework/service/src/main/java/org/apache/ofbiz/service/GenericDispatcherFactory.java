@@ -18,6 +18,7 @@
  *******************************************************************************/
 package org.apache.ofbiz.service;
 
+import java.util.List;
 import java.util.Map;
 
 import org.apache.ofbiz.base.util.Debug;
@@ -108,6 +109,12 @@ public class GenericDispatcherFactory implements LocalDispatcherFactory {
             return runSync(serviceName, ServiceUtil.makeContext(context), transactionTimeout, requireNewTransaction);
         }
 
+        @Override
+        public List<Map<String, Object>> runSyncBatch(String serviceName, List<? extends Map<String, ? extends Object>> contexts, int chunkSize) throws GenericServiceException {
+            ModelService service = ctx.getModelService(serviceName);
+            return dispatcher.runSyncBatch(this.name, service, contexts, chunkSize);
+        }
+
         @Override
         public void runSyncIgnore(String serviceName, Map<String, ? extends Object> context) throws GenericServiceException {
             ModelService service = ctx.getModelService(serviceName);
@@ -18,6 +18,7 @@
  *******************************************************************************/
 package org.apache.ofbiz.service;
 
+import java.util.List;
 import java.util.Map;
 
 import org.apache.ofbiz.entity.Delegator;
@@ -75,6 +76,17 @@ public interface LocalDispatcher {
     Map<String, Object> runSync(String serviceName, Map<String, ? extends Object> context, int transactionTimeout, boolean requireNewTransaction) throws ServiceAuthException, ServiceValidationException, GenericServiceException;
     Map<String, Object> runSync(String serviceName, int transactionTimeout, boolean requireNewTransaction, Object... context) throws ServiceAuthException, ServiceValidationException, GenericServiceException;
 
+    /**
+     * Run the service synchronously once for each context of a list and return the results, committing the calls in chunks.
+     * The transaction of the caller is suspended; when a call of a chunk fails, the chunk is rolled back and its calls run again one by one.
+     * @param serviceName Name of the service to run.
+     * @param contexts List of maps of name, value pairs composing the context of each call.
+     * @param chunkSize Number of calls committed together, or 0 for a single transaction for all the calls.
+     * @return List of the results of the calls, in the order of the contexts.
+     * @throws GenericServiceException
+     */
+    List<Map<String, Object>> runSyncBatch(String serviceName, List<? extends Map<String, ? extends Object>> contexts, int chunkSize) throws GenericServiceException;
+
     /**
      * Run the service synchronously and IGNORE the result.
      * @param serviceName Name of the service to run.
@@ -64,11 +64,9 @@ import org.apache.ofbiz.base.metrics.Metrics;
 import org.apache.ofbiz.base.util.Debug;
 import org.apache.ofbiz.base.util.GeneralException;
 import org.apache.ofbiz.base.util.ObjectType;
-import org.apache.ofbiz.base.util.UtilCodec;
 import org.apache.ofbiz.base.util.UtilMisc;
 import org.apache.ofbiz.base.util.UtilProperties;
 import org.apache.ofbiz.base.util.UtilValidate;
-import org.apache.ofbiz.entity.util.EntityUtilProperties;
 import org.apache.ofbiz.service.group.GroupModel;
 import org.apache.ofbiz.service.group.GroupServiceModel;
 import org.apache.ofbiz.service.group.ServiceGroupReader;
@@ -214,6 +212,11 @@ public class ModelService extends AbstractMap<String, Object> implements Seriali
     /** Flag to say if we have pulled in our addition parameters from our implemented service(s) */
     protected boolean inheritedParameters = false;
 
+    // the parameters compiled for validate and makeValid, once the parameters are inherited
+    private transient volatile ModelServiceValidator inValidator = null;
+    private transient volatile ModelServiceValidator outValidator = null;
+    private transient volatile ModelServiceValidator inOutValidator = null;
+
     /**
      * Service metrics.
      */
@@ -412,9 +415,46 @@ public class ModelService extends AbstractMap<String, Object> implements Seriali
         if (param != null) {
             contextInfo.put(param.name, param);
             contextParamList.add(param);
+            clearValidators();
         }
     }
 
+    private void clearValidators() {
+        inValidator = null;
+        outValidator = null;
+        inOutValidator = null;
+    }
+
+    /**
+     * Returns the parameters of a mode compiled for validate and makeValid. They are kept once the
+     * parameters of the implemented services are inherited, and compiled on each call before.
+     */
+    private ModelServiceValidator getValidator(String mode) {
+        ModelServiceValidator validator;
+        if (IN_PARAM.equals(mode)) {
+            validator = inValidator;
+        } else if (OUT_PARAM.equals(mode)) {
+            validator = outValidator;
+        } else if (IN_OUT_PARAM.equals(mode)) {
+            validator = inOutValidator;
+        } else {
+            return ModelServiceValidator.compile(this, mode);
+        }
+        if (validator == null) {
+            validator = ModelServiceValidator.compile(this, mode);
+            if (inheritedParameters()) {
+                if (IN_PARAM.equals(mode)) {
+                    inValidator = validator;
+                } else if (OUT_PARAM.equals(mode)) {
+                    outValidator = validator;
+                } else {
+                    inOutValidator = validator;
+                }
+            }
+        }
+        return validator;
+    }
+
     /* DEJ20060125 This is private but not used locally, so just commenting it out for now... may remove later
     private void copyParams(Collection params) {
         if (params != null) {
@@ -515,9 +555,6 @@ public class ModelService extends AbstractMap<String, Object> implements Seriali
      * @param locale the actual locale to use
      */
     public void validate(Map<String, Object> context, String mode, Locale locale) throws ServiceValidationException {
-        Map<String, String> requiredInfo = new HashMap<>();
-        Map<String, String> optionalInfo = new HashMap<>();
-
         if (Debug.verboseOn()) Debug.logVerbose("[ModelService.validate] : {" + this.name + "} : Validating context - " + context, module);
 
         // do not validate results with errors
@@ -528,100 +565,7 @@ public class ModelService extends AbstractMap<String, Object> implements Seriali
             }
         }
 
-        // get the info values
-        for (ModelParam modelParam: this.contextParamList) {
-            if (IN_OUT_PARAM.equals(modelParam.mode) || mode.equals(modelParam.mode)) {
-                if (modelParam.optional) {
-                    optionalInfo.put(modelParam.name, modelParam.type);
-                } else {
-                    requiredInfo.put(modelParam.name, modelParam.type);
-                }
-            }
-        }
-
-        // get the test values
-        Map<String, Object> requiredTest = new HashMap<>();
-        Map<String, Object> optionalTest = new HashMap<>();
-
-        if (context == null) {
-            context = new HashMap<>();
-        }
-        requiredTest.putAll(context);
-
-        List<String> requiredButNull = new LinkedList<>();
-        List<String> keyList = new LinkedList<>();
-        keyList.addAll(requiredTest.keySet());
-        for (String key: keyList) {
-            Object value = requiredTest.get(key);
-
-            if (!requiredInfo.containsKey(key)) {
-                requiredTest.remove(key);
-                optionalTest.put(key, value);
-            } else if (value == null) {
-                requiredButNull.add(key);
-            }
-        }
-
-        // check for requiredButNull fields and return an error since null values are not allowed for required fields
-        if (requiredButNull.size() > 0) {
-            List<String> missingMsg = new LinkedList<>();
-            for (String missingKey: requiredButNull) {
-                String message = this.getParam(missingKey).getPrimaryFailMessage(locale);
-                if (message == null) {
-                    String errMsg = UtilProperties.getMessage(ServiceUtil.getResource(), "ModelService.following_required_parameter_missing", locale);
-                    message = errMsg + " [" + this.name + "." + missingKey + "]";
-                }
-                missingMsg.add(message);
-            }
-            throw new ServiceValidationException(missingMsg, this, requiredButNull, null, mode);
-        }
-
-        if (Debug.verboseOn()) {
-            StringBuilder requiredNames = new StringBuilder();
-
-            for (String key: requiredInfo.keySet()) {
-                if (requiredNames.length() > 0) {
-                    requiredNames.append(", ");
-                }
-                requiredNames.append(key);
-            }
-            if (Debug.verboseOn()) Debug.logVerbose("[ModelService.validate] : required fields - " + requiredNames, module);
-
-            if (Debug.verboseOn()) Debug.logVerbose("[ModelService.validate] : {" + name + "} : (" + mode + ") Required - " +
-                requiredTest.size() + " / " + requiredInfo.size(), module);
-            if (Debug.verboseOn()) Debug.logVerbose("[ModelService.validate] : {" + name + "} : (" + mode + ") Optional - " +
-                optionalTest.size() + " / " + optionalInfo.size(), module);
-        }
-
-        try {
-            validate(requiredInfo, requiredTest, true, this, mode, locale);
-            validate(optionalInfo, optionalTest, false, this, mode, locale);
-        } catch (ServiceValidationException e) {
-            Debug.logError("[ModelService.validate] : {" + name + "} : (" + mode + ") Required test error: " + e.toString(), module);
-            throw e;
-        }
-
-        // required and type validation complete, do allow-html validation
-        if (IN_PARAM.equals(mode)) {
-            List<String> errorMessageList = new LinkedList<>();
-            for (ModelParam modelParam : this.contextInfo.values()) {
-                // the param is a String, allow-html is not any, and we are looking at an IN parameter during input parameter validation
-                if (context.get(modelParam.name) != null && ("String".equals(modelParam.type) || "java.lang.String".equals(modelParam.type))
-                        && !"any".equals(modelParam.allowHtml) && (IN_OUT_PARAM.equals(modelParam.mode) || IN_PARAM.equals(modelParam.mode))) {
-                    String value = (String) context.get(modelParam.name);
-                    if ("none".equals(modelParam.allowHtml)) {
-                        UtilCodec.checkStringForHtmlStrictNone(modelParam.name, value, errorMessageList, (Locale) context.get("locale"));
-                    } else if ("safe".equals(modelParam.allowHtml)) {
-                        UtilCodec.checkStringForHtmlSafe(modelParam.name, value, errorMessageList, 
-                                (Locale) context.get("locale"), 
-                                EntityUtilProperties.getPropertyAsBoolean("owasp", "sanitizer.enable", true));
-                    }
-                }
-            }
-            if (errorMessageList.size() > 0) {
-                throw new ServiceValidationException(errorMessageList, this, mode);
-            }
-        }
+        getValidator(mode).validate(this, context, locale);
     }
 
     /**
@@ -924,68 +868,7 @@ public class ModelService extends AbstractMap<String, Object> implements Seriali
             }
         }
 
-        for (ModelParam param: contextParamList) {
-            if (param.mode.equals(IN_OUT_PARAM) || param.mode.equals(mode)) {
-                String key = param.name;
-
-                // internal map of strings
-                if (UtilValidate.isNotEmpty(param.stringMapPrefix) && !source.containsKey(key)) {
-                    Map<String, Object> paramMap = this.makePrefixMap(source, param);
-                    if (UtilValidate.isNotEmpty(paramMap)) {
-                        target.put(key, paramMap);
-                    }
-                // internal list of strings
-                } else if (UtilValidate.isNotEmpty(param.stringListSuffix) && !source.containsKey(key)) {
-                    List<Object> paramList = this.makeSuffixList(source, param);
-                    if (UtilValidate.isNotEmpty(paramList)) {
-                        target.put(key, paramList);
-                    }
-                // other attributes
-                } else {
-                    if (source.containsKey(key)) {
-                        if ((param.internal && includeInternal) || (!param.internal)) {
-                            Object value = source.get(key);
-
-                            try {
-                                // no need to fail on type conversion; the validator will catch this
-                                value = ObjectType.simpleTypeConvert(value, param.type, null, timeZone, locale, false);
-                            } catch (GeneralException e) {
-                                String errMsg = "Type conversion of field [" + key + "] to type [" + param.type + "] failed for value \"" + value + "\": " + e.toString();
-                                Debug.logWarning("[ModelService.makeValid] : " + errMsg, module);
-                                if (errorMessages != null) {
-                                    errorMessages.add(errMsg);
-                                }
-                            }
-                            target.put(key, value);
-                        }
-                    }
-                }
-            }
-        }
-        return target;
-    }
-
-    private Map<String, Object> makePrefixMap(Map<String, ? extends Object> source, ModelParam param) {
-        Map<String, Object> paramMap = new HashMap<>();
-        for (Map.Entry<String, ? extends Object> entry: source.entrySet()) {
-            String key = entry.getKey();
-            if (key.startsWith(param.stringMapPrefix)) {
-                key=key.replace(param.stringMapPrefix,"");
-                paramMap.put(key, entry.getValue());
-            }
-        }
-        return paramMap;
-    }
-
-    private List<Object> makeSuffixList(Map<String, ? extends Object> source, ModelParam param) {
-        List<Object> paramList = new LinkedList<>();
-        for (Map.Entry<String, ? extends Object> entry: source.entrySet()) {
-            String key = entry.getKey();
-            if (key.endsWith(param.stringListSuffix)) {
-                paramList.add(entry.getValue());
-            }
-        }
-        return paramList;
+        return getValidator(mode).makeValid(this, source, includeInternal, errorMessages, timeZone, locale);
     }
 
     public boolean containsPermissions() {
@@ -1231,6 +1114,11 @@ public class ModelService extends AbstractMap<String, Object> implements Seriali
 
             // set the flag so we don't do this again
             this.inheritedParameters = true;
+
+            // the parameters are now complete, compile them
+            clearValidators();
+            getValidator(IN_PARAM);
+            getValidator(OUT_PARAM);
         }
     }
 
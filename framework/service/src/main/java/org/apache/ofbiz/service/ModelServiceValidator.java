@@ -0,0 +1,471 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.service;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.TreeSet;
+
+import org.apache.ofbiz.base.util.Debug;
+import org.apache.ofbiz.base.util.GeneralException;
+import org.apache.ofbiz.base.util.ObjectType;
+import org.apache.ofbiz.base.util.UtilCodec;
+import org.apache.ofbiz.base.util.UtilProperties;
+import org.apache.ofbiz.base.util.UtilValidate;
+import org.apache.ofbiz.entity.util.EntityUtilProperties;
+import org.w3c.dom.Node;
+
+/**
+ * The parameters of a service for one mode, compiled for {@link ModelService#validate} and {@link ModelService#makeValid}.
+ * <p>The parameters are split once into required and optional lookup tables, their types are loaded once and
+ * the validator methods are looked up once as <code>MethodHandle</code>s, instead of on every call. A type which
+ * can not be loaded when the validator is compiled is loaded on each call, as before, so that the errors are the same.</p>
+ */
+final class ModelServiceValidator {
+
+    public static final String module = ModelServiceValidator.class.getName();
+    private static final MethodType VALIDATOR_TYPE = MethodType.methodType(Object.class, Object.class);
+
+    private final String mode;
+    private final Map<String, ParamCheck> required;
+    private final Map<String, ParamCheck> optional;
+    // the required parameter names in the order of the missing parameter messages
+    private final String[] requiredNames;
+    private final ParamCheck[] htmlChecks;
+    private final ParamCheck[] targetParams;
+
+    private ModelServiceValidator(String mode, Map<String, ParamCheck> required, Map<String, ParamCheck> optional, ParamCheck[] htmlChecks,
+            ParamCheck[] targetParams) {
+        this.mode = mode;
+        this.required = required;
+        this.optional = optional;
+        this.requiredNames = new TreeSet<>(required.keySet()).toArray(new String[required.size()]);
+        this.htmlChecks = htmlChecks;
+        this.targetParams = targetParams;
+    }
+
+    /** Compiles the parameters of a service for a mode.
+     *@param model The service, which parameters should not change anymore
+     *@param mode The mode, IN, OUT or INOUT
+     *@return the compiled parameters
+     */
+    static ModelServiceValidator compile(ModelService model, String mode) {
+        Map<ModelParam, ParamCheck> checks = new IdentityHashMap<>();
+        Map<String, ParamCheck> required = new HashMap<>();
+        Map<String, ParamCheck> optional = new HashMap<>();
+        List<ParamCheck> targetParams = new ArrayList<>();
+        for (ModelParam param : model.contextParamList) {
+            if (ModelService.IN_OUT_PARAM.equals(param.mode) || mode.equals(param.mode)) {
+                ParamCheck check = checks.computeIfAbsent(param, p -> new ParamCheck(model, p));
+                if (param.optional) {
+                    optional.put(param.name, check);
+                } else {
+                    required.put(param.name, check);
+                }
+                targetParams.add(check);
+            }
+        }
+        List<ParamCheck> htmlChecks = new ArrayList<>();
+        if (ModelService.IN_PARAM.equals(mode)) {
+            for (ModelParam param : model.contextInfo.values()) {
+                if (("String".equals(param.type) || "java.lang.String".equals(param.type)) && !"any".equals(param.allowHtml)
+                        && (ModelService.IN_OUT_PARAM.equals(param.mode) || ModelService.IN_PARAM.equals(param.mode))) {
+                    htmlChecks.add(checks.computeIfAbsent(param, p -> new ParamCheck(model, p)));
+                }
+            }
+        }
+        return new ModelServiceValidator(mode, required, optional, htmlChecks.toArray(new ParamCheck[htmlChecks.size()]),
+                targetParams.toArray(new ParamCheck[targetParams.size()]));
+    }
+
+    /** Validates a context, see {@link ModelService#validate(Map, String, Locale)}. */
+    void validate(ModelService model, Map<String, Object> context, Locale locale) throws ServiceValidationException {
+        if (context == null) {
+            context = Collections.emptyMap();
+        }
+        List<Map.Entry<String, Object>> requiredTest = new ArrayList<>(required.size());
+        List<Map.Entry<String, Object>> optionalTest = new LinkedList<>();
+        List<String> requiredButNull = null;
+        for (Map.Entry<String, Object> entry : context.entrySet()) {
+            if (!required.containsKey(entry.getKey())) {
+                optionalTest.add(entry);
+            } else if (entry.getValue() == null) {
+                if (requiredButNull == null) {
+                    requiredButNull = new LinkedList<>();
+                }
+                requiredButNull.add(entry.getKey());
+            } else {
+                requiredTest.add(entry);
+            }
+        }
+
+        // check for requiredButNull fields and return an error since null values are not allowed for required fields
+        if (requiredButNull != null) {
+            List<String> missingMsg = new LinkedList<>();
+            for (String missingKey : requiredButNull) {
+                String message = model.getParam(missingKey).getPrimaryFailMessage(locale);
+                if (message == null) {
+                    String errMsg = UtilProperties.getMessage(ServiceUtil.getResource(), "ModelService.following_required_parameter_missing", locale);
+                    message = errMsg + " [" + model.name + "." + missingKey + "]";
+                }
+                missingMsg.add(message);
+            }
+            throw new ServiceValidationException(missingMsg, model, requiredButNull, null, mode);
+        }
+
+        try {
+            // This is to see if the context contains all the required parameters
+            if (requiredTest.size() < requiredNames.length) {
+                List<String> missing = new LinkedList<>();
+                List<String> missingMsgs = new LinkedList<>();
+                for (String key : requiredNames) {
+                    if (!context.containsKey(key)) {
+                        missing.add(key);
+                        String msg = model.getParam(key).getPrimaryFailMessage(locale);
+                        if (msg == null) {
+                            String errMsg = UtilProperties.getMessage(ServiceUtil.getResource(), "ModelService.following_required_parameter_missing", locale);
+                            msg = errMsg + " [" + mode + "] [" + model.name + "." + key + "]";
+                        }
+                        missingMsgs.add(msg);
+                    }
+                }
+                throw new ServiceValidationException(missingMsgs, model, missing, null, mode);
+            }
+            typeValidate(model, required, requiredTest, locale);
+
+            // This is to see if the parameters contain all the other entries of the context
+            TreeSet<String> extra = null;
+            for (Map.Entry<String, Object> entry : optionalTest) {
+                if (!optional.containsKey(entry.getKey())) {
+                    if (extra == null) {
+                        extra = new TreeSet<>();
+                    }
+                    extra.add(entry.getKey());
+                }
+            }
+            if (extra != null) {
+                List<String> extraMsgs = new LinkedList<>();
+                for (String key : extra) {
+                    ModelParam param = model.getParam(key);
+                    String msg = null;
+                    if (param != null) {
+                        msg = param.getPrimaryFailMessage(locale);
+                    }
+                    if (msg == null) {
+                        msg = "Unknown parameter found: [" + model.name + "." + key + "]";
+                    }
+                    extraMsgs.add(msg);
+                }
+                throw new ServiceValidationException(extraMsgs, model, null, new LinkedList<>(extra), mode);
+            }
+            typeValidate(model, optional, optionalTest, locale);
+        } catch (ServiceValidationException e) {
+            Debug.logError("[ModelService.validate] : {" + model.name + "} : (" + mode + ") Required test error: " + e.toString(), module);
+            throw e;
+        }
+
+        // required and type validation complete, do allow-html validation
+        if (htmlChecks.length > 0) {
+            List<String> errorMessageList = new LinkedList<>();
+            for (ParamCheck check : htmlChecks) {
+                Object value = context.get(check.name);
+                if (value != null) {
+                    if ("none".equals(check.allowHtml)) {
+                        UtilCodec.checkStringForHtmlStrictNone(check.name, (String) value, errorMessageList, (Locale) context.get("locale"));
+                    } else if ("safe".equals(check.allowHtml)) {
+                        UtilCodec.checkStringForHtmlSafe(check.name, (String) value, errorMessageList, (Locale) context.get("locale"),
+                                EntityUtilProperties.getPropertyAsBoolean("owasp", "sanitizer.enable", true));
+                    }
+                }
+            }
+            if (errorMessageList.size() > 0) {
+                throw new ServiceValidationException(errorMessageList, model, mode);
+            }
+        }
+    }
+
+    private void typeValidate(ModelService model, Map<String, ParamCheck> checks, List<Map.Entry<String, Object>> test, Locale locale)
+            throws ServiceValidationException {
+        List<String> typeFailMsgs = new LinkedList<>();
+        for (Map.Entry<String, Object> entry : test) {
+            checks.get(entry.getKey()).typeValidate(entry.getValue(), locale, typeFailMsgs);
+        }
+        if (typeFailMsgs.size() > 0) {
+            throw new ServiceValidationException(typeFailMsgs, model, mode);
+        }
+    }
+
+    /** Copies the parameters of this mode from a map, see {@link ModelService#makeValid(Map, String, boolean, List, TimeZone, Locale)}. */
+    Map<String, Object> makeValid(ModelService model, Map<String, ? extends Object> source, boolean includeInternal, List<Object> errorMessages,
+            TimeZone timeZone, Locale locale) {
+        Map<String, Object> target = new HashMap<>();
+        for (ParamCheck param : targetParams) {
+            String key = param.name;
+
+            // internal map of strings
+            if (param.stringMapPrefix != null && !source.containsKey(key)) {
+                Map<String, Object> paramMap = makePrefixMap(source, param.stringMapPrefix);
+                if (UtilValidate.isNotEmpty(paramMap)) {
+                    target.put(key, paramMap);
+                }
+            // internal list of strings
+            } else if (param.stringListSuffix != null && !source.containsKey(key)) {
+                List<Object> paramList = makeSuffixList(source, param.stringListSuffix);
+                if (UtilValidate.isNotEmpty(paramList)) {
+                    target.put(key, paramList);
+                }
+            // other attributes
+            } else if ((includeInternal || !param.internal) && source.containsKey(key)) {
+                Object value = source.get(key);
+                try {
+                    // no need to fail on type conversion; the validator will catch this
+                    value = param.convert(value, timeZone, locale);
+                } catch (GeneralException e) {
+                    String errMsg = "Type conversion of field [" + key + "] to type [" + param.type + "] failed for value \"" + value + "\": " + e.toString();
+                    Debug.logWarning("[ModelService.makeValid] : " + errMsg, module);
+                    if (errorMessages != null) {
+                        errorMessages.add(errMsg);
+                    }
+                }
+                target.put(key, value);
+            }
+        }
+        return target;
+    }
+
+    private static Map<String, Object> makePrefixMap(Map<String, ? extends Object> source, String stringMapPrefix) {
+        Map<String, Object> paramMap = new HashMap<>();
+        for (Map.Entry<String, ? extends Object> entry: source.entrySet()) {
+            String key = entry.getKey();
+            if (key.startsWith(stringMapPrefix)) {
+                key = key.replace(stringMapPrefix, "");
+                paramMap.put(key, entry.getValue());
+            }
+        }
+        return paramMap;
+    }
+
+    private static List<Object> makeSuffixList(Map<String, ? extends Object> source, String stringListSuffix) {
+        List<Object> paramList = new LinkedList<>();
+        for (Map.Entry<String, ? extends Object> entry: source.entrySet()) {
+            String key = entry.getKey();
+            if (key.endsWith(stringListSuffix)) {
+                paramList.add(entry.getValue());
+            }
+        }
+        return paramList;
+    }
+
+    /** A parameter, with its type and validators resolved. */
+    private static final class ParamCheck {
+        private final String serviceName;
+        private final String name;
+        private final String type;
+        private final String allowHtml;
+        private final String stringMapPrefix;
+        private final String stringListSuffix;
+        private final boolean internal;
+        // the class of the type, or null when it has to be loaded on each call
+        private final Class<?> typeClass;
+        // the class converted to by makeValid, or null when the value has to be converted on each call
+        private final Class<?> targetClass;
+        private final ModelParam param;
+        private final ValidatorCheck[] validators;
+
+        private ParamCheck(ModelService model, ModelParam listParam) {
+            this.serviceName = model.name;
+            this.name = listParam.name;
+            this.type = listParam.type;
+            this.allowHtml = listParam.allowHtml;
+            this.stringMapPrefix = UtilValidate.isNotEmpty(listParam.stringMapPrefix) ? listParam.stringMapPrefix : null;
+            this.stringListSuffix = UtilValidate.isNotEmpty(listParam.stringListSuffix) ? listParam.stringListSuffix : null;
+            this.internal = listParam.internal;
+            this.typeClass = loadTypeClass(listParam.type);
+            this.targetClass = loadTargetClass(listParam.type);
+            // the validators are the ones of the parameter registered under this name
+            ModelParam param = model.getParam(listParam.name);
+            this.param = param != null ? param : listParam;
+            if (UtilValidate.isNotEmpty(this.param.validators)) {
+                this.validators = new ValidatorCheck[this.param.validators.size()];
+                for (int i = 0; i < this.validators.length; i++) {
+                    this.validators[i] = new ValidatorCheck(this.param.validators.get(i));
+                }
+            } else {
+                this.validators = null;
+            }
+        }
+
+        private static Class<?> loadTypeClass(String type) {
+            if (UtilValidate.isEmpty(type)) {
+                return null;
+            }
+            try {
+                return ObjectType.loadInfoClass(type, null);
+            } catch (IllegalArgumentException e) {
+                return null;
+            }
+        }
+
+        private static Class<?> loadTargetClass(String type) {
+            if (UtilValidate.isEmpty(type) || "PlainString".equals(type)) {
+                return null;
+            }
+            try {
+                Class<?> targetClass = ObjectType.loadClass(type);
+                return Node.class.isAssignableFrom(targetClass) ? null : targetClass;
+            } catch (ClassNotFoundException e) {
+                return null;
+            }
+        }
+
+        private boolean instanceOf(Object value) {
+            if (typeClass != null) {
+                return ObjectType.instanceOf(value, typeClass);
+            }
+            return ObjectType.instanceOf(value, type, null);
+        }
+
+        private Object convert(Object value, TimeZone timeZone, Locale locale) throws GeneralException {
+            if (value == null || (targetClass != null && value.getClass() == targetClass)) {
+                return value;
+            }
+            return ObjectType.simpleTypeConvert(value, type, null, timeZone, locale, false);
+        }
+
+        /** Adds the messages of the failed validations of a value to a list. */
+        private void typeValidate(Object value, Locale locale, List<String> typeFailMsgs) {
+            if (validators == null) {
+                if (!instanceOf(value)) {
+                    String testType = value == null ? "null" : value.getClass().getName();
+                    typeFailMsgs.add("Type check failed for field [" + serviceName + "." + name + "]; expected type is [" + type + "]; actual type is [" + testType + "]");
+                }
+                return;
+            }
+            for (ValidatorCheck validator : validators) {
+                if (validator.methodHandle == null && validator.error == null) {
+                    if (!instanceOf(value)) {
+                        typeFailMsgs.add(validator.getFailMessage(locale));
+                    }
+                    continue;
+                }
+                try {
+                    if (!validator.test(value)) {
+                        typeFailMsgs.add(validator.getFailMessage(locale));
+                    }
+                } catch (GeneralException e) {
+                    Debug.logError(e, module);
+                    String msg = param.getPrimaryFailMessage(locale);
+                    if (msg == null) {
+                        msg = "The following parameter failed validation: [" + serviceName + "." + name + "]";
+                    }
+                    typeFailMsgs.add(msg);
+                }
+            }
+        }
+
+        /** A validator, with its method looked up; a validator without a method only checks the type. */
+        private final class ValidatorCheck {
+            private final ModelParam.ModelParamValidator validator;
+            private final MethodHandle methodHandle;
+            private final boolean stringParam;
+            // the error of the method look up, thrown when the validator is run
+            private final GeneralException error;
+
+            private ValidatorCheck(ModelParam.ModelParamValidator validator) {
+                this.validator = validator;
+                MethodHandle methodHandle = null;
+                boolean stringParam = false;
+                GeneralException error = null;
+                if (UtilValidate.isNotEmpty(validator.getMethodName())) {
+                    try {
+                        Class<?> validatorClass = ObjectType.loadClass(validator.getClassName());
+                        Method validatorMethod;
+                        try {
+                            // try object type first
+                            validatorMethod = validatorClass.getMethod(validator.getMethodName(), Object.class);
+                        } catch (NoSuchMethodException e) {
+                            // next try string type
+                            validatorMethod = validatorClass.getMethod(validator.getMethodName(), String.class);
+                            stringParam = true;
+                        }
+                        if (!Modifier.isStatic(validatorMethod.getModifiers())) {
+                            throw new IllegalAccessException("Validation method [" + validator.getMethodName() + "] is not static");
+                        }
+                        methodHandle = MethodHandles.publicLookup().unreflect(validatorMethod).asType(VALIDATOR_TYPE);
+                    } catch (ClassNotFoundException e) {
+                        Debug.logWarning(e, module);
+                        error = new GeneralException("Unable to load validation class [" + validator.getClassName() + "]");
+                    } catch (NoSuchMethodException e) {
+                        Debug.logWarning(e, module);
+                        error = new GeneralException("Unable to find validation method [" + validator.getMethodName() + "] in class [" + validator.getClassName() + "]");
+                    } catch (IllegalAccessException | RuntimeException e) {
+                        error = new GeneralException("Unable to run validation method [" + validator.getMethodName() + "] in class [" + validator.getClassName() + "]");
+                    }
+                }
+                this.methodHandle = methodHandle;
+                this.stringParam = stringParam;
+                this.error = error;
+            }
+
+            private String getFailMessage(Locale locale) {
+                String msg = validator.getFailMessage(locale);
+                if (msg == null) {
+                    msg = "The following parameter failed validation: [" + serviceName + "." + name + "]";
+                }
+                return msg;
+            }
+
+            private boolean test(Object value) throws GeneralException {
+                if (error != null) {
+                    throw error;
+                }
+                Object param = value;
+                if (stringParam) {
+                    try {
+                        param = ObjectType.simpleTypeConvert(value, "String", null, null);
+                    } catch (GeneralException e) {
+                        throw new GeneralException("Unable to convert parameter to String");
+                    }
+                }
+                Object result;
+                try {
+                    result = methodHandle.invokeExact(param);
+                } catch (Throwable t) {
+                    throw new GeneralException("Unable to run validation method [" + validator.getMethodName() + "] in class [" + validator.getClassName() + "]");
+                }
+                if (!(result instanceof Boolean)) {
+                    throw new GeneralException("Validation method [" + validator.getMethodName() + "] in class [" + validator.getClassName() + "] did not return expected Boolean");
+                }
+                return (Boolean) result;
+            }
+        }
+    }
+}
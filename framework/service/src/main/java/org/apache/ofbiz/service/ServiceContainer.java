@@ -30,6 +30,7 @@ import org.apache.ofbiz.base.start.StartupCommand;
 import org.apache.ofbiz.base.util.Debug;
 import org.apache.ofbiz.base.util.UtilValidate;
 import org.apache.ofbiz.entity.Delegator;
+import org.apache.ofbiz.service.eca.ServiceEcaQueue;
 import org.apache.ofbiz.service.job.JobManager;
 
 /**
@@ -62,12 +63,15 @@ public class ServiceContainer implements Container {
 
     @Override
     public boolean start() throws ContainerException {
+        // runs the async-local ECA actions left in the journal by the last stop or crash
+        ServiceEcaQueue.getInstance();
         return true;
     }
 
     @Override
     public void stop() throws ContainerException {
         JobManager.shutDown();
+        ServiceEcaQueue.shutDown();
         Set<String> dispatcherNames = getAllDispatcherNames();
         for (String dispatcherName: dispatcherNames) {
             deregister(dispatcherName);
@@ -18,6 +18,7 @@
  *******************************************************************************/
 package org.apache.ofbiz.service;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.LinkedList;
@@ -77,6 +78,8 @@ public class ServiceDispatcher {
     private static boolean enableJM = true;
     private static boolean enableJMS = UtilProperties.getPropertyAsBoolean("service", "enableJMS", true);
     private static boolean enableSvcs = true;
+    // the callbacks deferred by the batch chunk running on the current thread
+    private static final ThreadLocal<ChunkCallbacks> chunkCallbacks = new ThreadLocal<>();
 
     protected Delegator delegator = null;
     protected GenericEngineFactory factory = null;
@@ -265,6 +268,18 @@ public class ServiceDispatcher {
      * @throws GenericServiceException
      */
     public Map<String, Object> runSync(String localName, ModelService modelService, Map<String, ? extends Object> params, boolean validateOut) throws ServiceAuthException, ServiceValidationException, GenericServiceException {
+        ServiceProfiler.Frame frame = ServiceProfiler.enter(modelService.name);
+        boolean failed = true;
+        try {
+            Map<String, Object> result = runSyncProfiled(localName, modelService, params, validateOut);
+            failed = ServiceUtil.isError(result) || ServiceUtil.isFailure(result);
+            return result;
+        } finally {
+            ServiceProfiler.exit(frame, failed);
+        }
+    }
+
+    private Map<String, Object> runSyncProfiled(String localName, ModelService modelService, Map<String, ? extends Object> params, boolean validateOut) throws ServiceAuthException, ServiceValidationException, GenericServiceException {
         long serviceStartTime = System.currentTimeMillis();
         Map<String, Object> result = new HashMap<>();
         ServiceSemaphore lock = null;
@@ -413,7 +428,7 @@ public class ServiceDispatcher {
                     if (!isError && !isFailure) {
                         Map<String, Object> invokeResult = null;
                         invokeResult = engine.runSync(localName, modelService, context);
-                        engine.sendCallbacks(modelService, context, invokeResult, GenericEngine.SYNC_MODE);
+                        sendSyncCallbacks(engine, modelService, context, invokeResult);
                         if (invokeResult != null) {
                             result.putAll(invokeResult);
                         } else {
@@ -532,7 +547,7 @@ public class ServiceDispatcher {
                     UtilTimer.closeTimer(localName + " / " + modelService.name, "Sync service failed...", module);
                 }
                 String errMsg = "Service [" + modelService.name + "] threw an unexpected exception/error";
-                engine.sendCallbacks(modelService, context, t, GenericEngine.SYNC_MODE);
+                sendSyncCallbacks(engine, modelService, context, t);
                 try {
                     TransactionUtil.rollback(beganTrans, errMsg, t);
                 } catch (GenericTransactionException te) {
@@ -638,6 +653,260 @@ public class ServiceDispatcher {
         return result;
     }
 
+    /**
+     * Run the service synchronously once for each context of a list, committing the calls in chunks.
+     * The calls do not join the transaction of the caller, which is suspended: each chunk of calls runs in its
+     * own transaction, committed before the next chunk starts. When a call of a chunk returns an error or
+     * throws an exception, the chunk is rolled back and its calls are run again one by one, each in its own
+     * transaction, so that only the failing calls are lost. The callbacks of the calls of a chunk are sent once
+     * the chunk is committed, so the calls run again one by one do not send them twice.
+     * For a service without ECA rules or semaphore, the contexts of a chunk are checked and validated before
+     * any call, and the calls skip the per call transaction, ECA and logging work of runSync; other services
+     * are run through runSync inside the chunk transaction.
+     * @param localName Name of the context to use.
+     * @param modelService Service model object.
+     * @param contexts List of maps of name, value pairs composing the parameters of each call.
+     * @param chunkSize Number of calls committed together, or 0 for a single transaction for all the calls.
+     * @return List of the results of the calls, in the order of the contexts; a call that failed its
+     * authorization or validation, or threw an exception, has an error result.
+     * @throws GenericServiceException
+     */
+    public List<Map<String, Object>> runSyncBatch(String localName, ModelService modelService, List<? extends Map<String, ? extends Object>> contexts, int chunkSize) throws GenericServiceException {
+        List<Map<String, Object>> results = new ArrayList<>(contexts.size());
+        if (contexts.isEmpty()) {
+            return results;
+        }
+        long startTime = System.currentTimeMillis();
+        int size = chunkSize > 0 ? chunkSize : contexts.size();
+        boolean batchable = ServiceEcaUtil.getServiceEventMap(modelService.name) == null && !modelService.requireNewTransaction
+                && !"wait".equals(modelService.semaphore) && !"fail".equals(modelService.semaphore);
+        RunningService rs = this.logService(localName, modelService, GenericEngine.SYNC_MODE);
+        Transaction parentTransaction = null;
+        try {
+            if (TransactionUtil.isTransactionInPlace()) {
+                parentTransaction = TransactionUtil.suspend();
+            }
+            for (int start = 0; start < contexts.size(); start += size) {
+                List<? extends Map<String, ? extends Object>> chunk = contexts.subList(start, Math.min(start + size, contexts.size()));
+                List<Map<String, Object>> chunkResults = runChunk(localName, modelService, chunk, batchable);
+                if (chunkResults == null) {
+                    Debug.logWarning("A call of service [" + modelService.name + "] failed in a batch, running the " + chunk.size() + " calls of its chunk one by one", module);
+                    for (Map<String, ? extends Object> context : chunk) {
+                        try {
+                            results.add(runSync(localName, modelService, context, true));
+                        } catch (GenericServiceException e) {
+                            results.add(ServiceUtil.returnError(e.getMessage()));
+                        }
+                    }
+                } else {
+                    results.addAll(chunkResults);
+                }
+            }
+        } catch (GenericTransactionException e) {
+            throw new GenericServiceException("Problems with the transaction of the batch of service [" + modelService.name + "]", e);
+        } finally {
+            if (parentTransaction != null) {
+                try {
+                    TransactionUtil.resume(parentTransaction);
+                } catch (GenericTransactionException ite) {
+                    Debug.logWarning(ite, "Transaction error, not resumed", module);
+                    rs.setEndStamp();
+                    throw new GenericServiceException("Resume transaction exception, see logs");
+                }
+            }
+            rs.setEndStamp();
+        }
+        if (Debug.timingOn()) {
+            Debug.logTiming("Sync service batch [" + localName + "/" + modelService.name + "] of " + contexts.size() + " calls finished in ["
+                    + (System.currentTimeMillis() - startTime) + "] milliseconds", module);
+        }
+        return results;
+    }
+
+    // runs the calls of a chunk in a transaction; returns null when the transaction was rolled back
+    private List<Map<String, Object>> runChunk(String localName, ModelService modelService, List<? extends Map<String, ? extends Object>> chunk, boolean batchable) throws GenericTransactionException {
+        List<Map<String, Object>> results = new ArrayList<>(chunk.size());
+        List<Map<String, Object>> contexts = null;
+        if (batchable) {
+            // check and validate all the contexts first, so that an invalid context does not roll back its chunk
+            contexts = new ArrayList<>(chunk.size());
+            for (Map<String, ? extends Object> params : chunk) {
+                Map<String, Object> context = new HashMap<>();
+                if (params != null) {
+                    context.putAll(params);
+                }
+                try {
+                    contexts.add(prepareBatchCall(localName, modelService, context));
+                    results.add(null);
+                } catch (ServiceValidationException e) {
+                    contexts.add(null);
+                    results.add(ServiceUtil.returnError(e.getMessage(), e.getMessageList()));
+                } catch (GenericServiceException e) {
+                    contexts.add(null);
+                    results.add(ServiceUtil.returnError(e.getMessage()));
+                }
+            }
+        }
+        int timeout = modelService.transactionTimeout > 0 ? modelService.transactionTimeout * chunk.size() : modelService.transactionTimeout;
+        boolean beganTrans = modelService.useTransaction && TransactionUtil.begin(timeout);
+        ChunkCallbacks outerCallbacks = chunkCallbacks.get();
+        ChunkCallbacks callbacks = new ChunkCallbacks(modelService.name);
+        chunkCallbacks.set(callbacks);
+        try {
+            for (int i = 0; i < chunk.size(); i++) {
+                Map<String, Object> result;
+                try {
+                    if (batchable) {
+                        if (contexts.get(i) == null) {
+                            continue;
+                        }
+                        result = runBatchCall(localName, modelService, contexts.get(i));
+                    } else {
+                        result = runSync(localName, modelService, chunk.get(i), true);
+                    }
+                } catch (GenericServiceException e) {
+                    if (beganTrans) {
+                        TransactionUtil.rollback(beganTrans, "Service [" + modelService.name + "] failed in a batch", e);
+                        return null;
+                    }
+                    result = ServiceUtil.returnError(e.getMessage());
+                }
+                if (beganTrans && ServiceUtil.isError(result)) {
+                    TransactionUtil.rollback(beganTrans, "Error in service [" + modelService.name + "] in a batch: " + ServiceUtil.getErrorMessage(result), null);
+                    return null;
+                }
+                if (batchable) {
+                    results.set(i, result);
+                } else {
+                    results.add(result);
+                }
+            }
+        } catch (RuntimeException | Error e) {
+            TransactionUtil.rollback(beganTrans, "Service [" + modelService.name + "] threw an unexpected exception in a batch", e);
+            throw e;
+        } finally {
+            if (outerCallbacks != null) {
+                chunkCallbacks.set(outerCallbacks);
+            } else {
+                chunkCallbacks.remove();
+            }
+        }
+        try {
+            TransactionUtil.commit(beganTrans);
+        } catch (GenericTransactionException e) {
+            Debug.logError(e, "Could not commit a chunk of calls of service [" + modelService.name + "]", module);
+            return null;
+        }
+        callbacks.send();
+        return results;
+    }
+
+    // sends the callbacks of a sync call, or defers them to the commit of the batch chunk running the call
+    private static void sendSyncCallbacks(GenericEngine engine, ModelService modelService, Map<String, Object> context, Map<String, Object> result) throws GenericServiceException {
+        ChunkCallbacks callbacks = chunkCallbacks.get();
+        if (callbacks != null && callbacks.serviceName.equals(modelService.name)) {
+            callbacks.pending.add(() -> engine.sendCallbacks(modelService, context, result, GenericEngine.SYNC_MODE));
+        } else {
+            engine.sendCallbacks(modelService, context, result, GenericEngine.SYNC_MODE);
+        }
+    }
+
+    private static void sendSyncCallbacks(GenericEngine engine, ModelService modelService, Map<String, Object> context, Throwable t) throws GenericServiceException {
+        ChunkCallbacks callbacks = chunkCallbacks.get();
+        if (callbacks != null && callbacks.serviceName.equals(modelService.name)) {
+            callbacks.pending.add(() -> engine.sendCallbacks(modelService, context, t, GenericEngine.SYNC_MODE));
+        } else {
+            engine.sendCallbacks(modelService, context, t, GenericEngine.SYNC_MODE);
+        }
+    }
+
+    @FunctionalInterface
+    private interface PendingCallback {
+        void send() throws GenericServiceException;
+    }
+
+    // the callbacks of the calls of a batch chunk; dropped when the chunk is rolled back, since its calls are run again
+    private static final class ChunkCallbacks {
+        private final String serviceName;
+        private final List<PendingCallback> pending = new ArrayList<>();
+
+        private ChunkCallbacks(String serviceName) {
+            this.serviceName = serviceName;
+        }
+
+        private void send() {
+            for (PendingCallback callback : pending) {
+                try {
+                    callback.send();
+                } catch (GenericServiceException | RuntimeException e) {
+                    Debug.logError(e, "Could not send a callback of service [" + serviceName + "] in a batch", module);
+                }
+            }
+        }
+    }
+
+    // sets the default values of a call and checks its authorization and parameters, like runSync
+    private Map<String, Object> prepareBatchCall(String localName, ModelService modelService, Map<String, Object> context) throws GenericServiceException {
+        Locale locale = this.checkLocale(context);
+        modelService.updateDefaultValues(context, ModelService.IN_PARAM);
+        context = checkAuth(localName, context, modelService);
+        if (modelService.auth && context.get("userLogin") == null) {
+            throw new ServiceAuthException("User authorization is required for this service: " + modelService.name + modelService.debugInfo());
+        }
+        if (modelService.validate) {
+            modelService.validate(context, ModelService.IN_PARAM, locale);
+        }
+        return context;
+    }
+
+    // invokes a prepared call of a batch, in the transaction of its chunk
+    private Map<String, Object> runBatchCall(String localName, ModelService modelService, Map<String, Object> context) throws GenericServiceException {
+        ServiceProfiler.Frame frame = ServiceProfiler.enter(modelService.name);
+        boolean failed = true;
+        long startTime = System.currentTimeMillis();
+        GenericValue userLogin = (GenericValue) context.get("userLogin");
+        boolean pushedUser = userLogin != null && userLogin.getString("userLoginId") != null;
+        if (pushedUser) {
+            GenericDelegator.pushUserIdentifier(userLogin.getString("userLoginId"));
+        }
+        try {
+            GenericEngine engine = this.getGenericEngine(modelService.engineName);
+            Map<String, Object> result = new HashMap<>();
+            Map<String, Object> invokeResult;
+            try {
+                invokeResult = engine.runSync(localName, modelService, context);
+            } catch (GenericServiceException | RuntimeException e) {
+                sendSyncCallbacks(engine, modelService, context, e);
+                throw e;
+            }
+            sendSyncCallbacks(engine, modelService, context, invokeResult);
+            if (invokeResult != null) {
+                result.putAll(invokeResult);
+            } else {
+                Debug.logWarning("Service (in runSyncBatch : " + modelService.name + ") returns null result", module);
+            }
+            modelService.updateDefaultValues(context, ModelService.OUT_PARAM);
+            if (modelService.validate && !ServiceUtil.isError(result)) {
+                try {
+                    modelService.validate(result, ModelService.OUT_PARAM, this.checkLocale(context));
+                } catch (ServiceValidationException e) {
+                    throw new GenericServiceException("Outgoing result (in runSyncBatch : " + modelService.name + ") does not match expected requirements", e);
+                }
+            }
+            modelService.evalNotifications(this.getLocalContext(localName), context, result);
+            failed = ServiceUtil.isError(result) || ServiceUtil.isFailure(result);
+            if (modelService.metrics != null) {
+                modelService.metrics.recordServiceRate(1, System.currentTimeMillis() - startTime);
+            }
+            return result;
+        } finally {
+            if (pushedUser) {
+                GenericDelegator.popUserIdentifier();
+            }
+            ServiceProfiler.exit(frame, failed);
+        }
+    }
+
     /**
      * Run the service asynchronously, passing an instance of GenericRequester that will receive the result.
      * @param localName Name of the context to use.
@@ -0,0 +1,276 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.service;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.ofbiz.base.util.UtilProperties;
+
+/**
+ * Records the latency of the synchronous services and the time they spend in the services they call.
+ * <p>Each call of {@link ServiceDispatcher#runSync} is timed, including the services it calls itself and the
+ * services of its ECA rules, which run on the same thread. The latencies of a service are counted in a
+ * log-linear histogram, with 8 buckets per power of two microseconds, so the percentiles are within 12.5%
+ * of the exact values. The buckets are striped by thread to keep the threads from writing the same cache
+ * lines, and the time of each call is also added to the edge from the calling service to the called one.</p>
+ * <p>The profiler is enabled unless <code>profiler.enable=false</code> is set in <code>service.properties</code>.</p>
+ */
+public final class ServiceProfiler {
+
+    public static final String module = ServiceProfiler.class.getName();
+
+    private static final boolean enabled = !"false".equalsIgnoreCase(UtilProperties.getPropertyValue("service", "profiler.enable", "true"));
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    // latencies from 2^36 microseconds, about 19 hours, all fall in the last bucket
+    private static final int MAX_EXPONENT = 36;
+    private static final int BUCKETS = (MAX_EXPONENT - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+    private static final int STRIPES = stripes();
+
+    private static final ConcurrentMap<String, ServiceStats> serviceStats = new ConcurrentHashMap<>();
+    private static final ThreadLocal<Frame> currentFrame = new ThreadLocal<>();
+
+    private ServiceProfiler() {}
+
+    private static int stripes() {
+        int stripes = 1;
+        int processors = Math.min(Runtime.getRuntime().availableProcessors(), 8);
+        while (stripes < processors) {
+            stripes <<= 1;
+        }
+        return stripes;
+    }
+
+    /** A running service call, on the stack of the calls of a thread. */
+    public static final class Frame {
+        private final String serviceName;
+        private final Frame parent;
+        private final long startNanos;
+
+        private Frame(String serviceName, Frame parent) {
+            this.serviceName = serviceName;
+            this.parent = parent;
+            this.startNanos = System.nanoTime();
+        }
+    }
+
+    private static final class EdgeStats {
+        private final LongAdder count = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+    }
+
+    private static final class ServiceStats {
+        private final AtomicLongArray[] buckets = new AtomicLongArray[STRIPES];
+        private final LongAdder count = new LongAdder();
+        private final LongAdder errors = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final LongAdder childNanos = new LongAdder();
+        private final AtomicLong maxNanos = new AtomicLong();
+        private final ConcurrentMap<String, EdgeStats> children = new ConcurrentHashMap<>();
+
+        private ServiceStats() {
+            for (int i = 0; i < STRIPES; i++) {
+                buckets[i] = new AtomicLongArray(BUCKETS);
+            }
+        }
+
+        private void record(long nanos, boolean error) {
+            buckets[(int) Thread.currentThread().getId() & (STRIPES - 1)].incrementAndGet(bucketIndex(nanos / 1000));
+            count.increment();
+            totalNanos.add(nanos);
+            if (error) {
+                errors.increment();
+            }
+            long max = maxNanos.get();
+            while (nanos > max && !maxNanos.compareAndSet(max, nanos)) {
+                max = maxNanos.get();
+            }
+        }
+
+        private void recordChild(String childName, long nanos) {
+            childNanos.add(nanos);
+            EdgeStats edge = children.get(childName);
+            if (edge == null) {
+                edge = children.computeIfAbsent(childName, k -> new EdgeStats());
+            }
+            edge.count.increment();
+            edge.totalNanos.add(nanos);
+        }
+
+        private long[] percentilesMicros(double... percentiles) {
+            long[] counts = new long[BUCKETS];
+            long total = 0;
+            for (AtomicLongArray stripe : buckets) {
+                for (int i = 0; i < BUCKETS; i++) {
+                    long bucketCount = stripe.get(i);
+                    counts[i] += bucketCount;
+                    total += bucketCount;
+                }
+            }
+            long[] values = new long[percentiles.length];
+            for (int p = 0; p < percentiles.length; p++) {
+                long rank = (long) Math.ceil(total * percentiles[p] / 100);
+                long seen = 0;
+                for (int i = 0; i < BUCKETS; i++) {
+                    seen += counts[i];
+                    if (seen >= rank && counts[i] > 0) {
+                        values[p] = bucketUpperBound(i);
+                        break;
+                    }
+                }
+            }
+            return values;
+        }
+    }
+
+    static int bucketIndex(long micros) {
+        if (micros < SUB_BUCKETS) {
+            return micros < 0 ? 0 : (int) micros;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(micros);
+        if (exponent >= MAX_EXPONENT) {
+            return BUCKETS - 1;
+        }
+        int subBucket = (int) (micros >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    static long bucketUpperBound(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int exponent = index / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        int subBucket = index % SUB_BUCKETS;
+        return ((long) (SUB_BUCKETS + subBucket + 1) << (exponent - SUB_BUCKET_BITS)) - 1;
+    }
+
+    /** Returns true when the service calls are profiled. */
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /** Starts timing a service call on the current thread.
+     *@param serviceName The name of the service called
+     *@return The frame to pass to {@link #exit}, or null when the profiler is disabled
+     */
+    public static Frame enter(String serviceName) {
+        if (!enabled) {
+            return null;
+        }
+        Frame frame = new Frame(serviceName, currentFrame.get());
+        currentFrame.set(frame);
+        return frame;
+    }
+
+    /** Stops timing a service call, adding its time to the service and to the edge from the calling service.
+     *@param frame The frame returned by {@link #enter}
+     *@param error True when the service returned an error or a failure, or threw an exception
+     */
+    public static void exit(Frame frame, boolean error) {
+        if (frame == null) {
+            return;
+        }
+        long nanos = System.nanoTime() - frame.startNanos;
+        if (frame.parent == null) {
+            currentFrame.remove();
+        } else {
+            currentFrame.set(frame.parent);
+        }
+        getServiceStats(frame.serviceName).record(nanos, error);
+        if (frame.parent != null) {
+            getServiceStats(frame.parent.serviceName).recordChild(frame.serviceName, nanos);
+        }
+    }
+
+    private static ServiceStats getServiceStats(String serviceName) {
+        ServiceStats stats = serviceStats.get(serviceName);
+        if (stats == null) {
+            stats = serviceStats.computeIfAbsent(serviceName, k -> new ServiceStats());
+        }
+        return stats;
+    }
+
+    private static double toMillis(long nanos) {
+        return Math.round(nanos / 1000.0) / 1000.0;
+    }
+
+    /** Returns the statistics of the services called since the profiler was reset, the longest total time first. */
+    public static List<Map<String, Object>> getServiceStatistics() {
+        List<Map<String, Object>> statistics = new ArrayList<>(serviceStats.size());
+        for (Map.Entry<String, ServiceStats> entry : serviceStats.entrySet()) {
+            ServiceStats stats = entry.getValue();
+            long count = stats.count.sum();
+            long totalNanos = stats.totalNanos.sum();
+            long[] percentiles = stats.percentilesMicros(50, 90, 99);
+            Map<String, Object> serviceMap = new HashMap<>();
+            serviceMap.put("serviceName", entry.getKey());
+            serviceMap.put("count", count);
+            serviceMap.put("errors", stats.errors.sum());
+            serviceMap.put("totalMillis", toMillis(totalNanos));
+            serviceMap.put("selfMillis", toMillis(Math.max(0, totalNanos - stats.childNanos.sum())));
+            serviceMap.put("averageMillis", count == 0 ? 0.0 : toMillis(totalNanos / count));
+            serviceMap.put("p50Millis", toMillis(percentiles[0] * 1000));
+            serviceMap.put("p90Millis", toMillis(percentiles[1] * 1000));
+            serviceMap.put("p99Millis", toMillis(percentiles[2] * 1000));
+            serviceMap.put("maxMillis", toMillis(stats.maxNanos.get()));
+            serviceMap.put("children", stats.children.size());
+            statistics.add(serviceMap);
+        }
+        statistics.sort(Comparator.comparing((Map<String, Object> m) -> (Double) m.get("totalMillis")).reversed());
+        return statistics;
+    }
+
+    /** Returns the services called by a service, the longest total time first.
+     *@param serviceName The name of the calling service
+     *@return A list of maps with the name of each service called, its number of calls, its total time and the share of the time of the calling service
+     */
+    public static List<Map<String, Object>> getChildStatistics(String serviceName) {
+        ServiceStats stats = serviceStats.get(serviceName);
+        if (stats == null) {
+            return new ArrayList<>();
+        }
+        long parentNanos = stats.totalNanos.sum();
+        List<Map<String, Object>> statistics = new ArrayList<>(stats.children.size());
+        for (Map.Entry<String, EdgeStats> entry : stats.children.entrySet()) {
+            long totalNanos = entry.getValue().totalNanos.sum();
+            Map<String, Object> childMap = new HashMap<>();
+            childMap.put("serviceName", entry.getKey());
+            childMap.put("count", entry.getValue().count.sum());
+            childMap.put("totalMillis", toMillis(totalNanos));
+            childMap.put("percentOfParent", parentNanos == 0 ? 0.0 : Math.round(totalNanos * 1000.0 / parentNanos) / 10.0);
+            statistics.add(childMap);
+        }
+        statistics.sort(Comparator.comparing((Map<String, Object> m) -> (Double) m.get("totalMillis")).reversed());
+        return statistics;
+    }
+
+    /** Clears the statistics of all the services. */
+    public static void reset() {
+        serviceStats.clear();
+    }
+}
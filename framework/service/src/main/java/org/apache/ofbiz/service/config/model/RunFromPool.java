@@ -28,7 +28,15 @@ import org.w3c.dom.Element;
 @ThreadSafe
 public final class RunFromPool {
 
+    public static final int WEIGHT = 1;
+    public static final int PRIORITY = 0;
+
     private final String name;
+    private final int minThreads;
+    private final int maxThreads;
+    private final int jobs;
+    private final int weight;
+    private final int priority;
 
     RunFromPool(Element runFromPoolElement) throws ServiceConfigException {
         String name = runFromPoolElement.getAttribute("name").intern();
@@ -36,9 +44,63 @@ public final class RunFromPool {
             throw new ServiceConfigException("<run-from-pool> element name attribute is empty");
         }
         this.name = name;
+        this.maxThreads = parseInt(runFromPoolElement, "max-threads", 0, 0);
+        this.minThreads = parseInt(runFromPoolElement, "min-threads", Math.min(1, maxThreads), 0);
+        if (maxThreads > 0 && minThreads > maxThreads) {
+            throw new ServiceConfigException("<run-from-pool> element max-threads attribute value is invalid");
+        }
+        this.jobs = parseInt(runFromPoolElement, "jobs", maxThreads > 0 ? ThreadPool.QUEUE_SIZE : 0, maxThreads > 0 ? 1 : 0);
+        this.weight = parseInt(runFromPoolElement, "weight", WEIGHT, 1);
+        String priority = runFromPoolElement.getAttribute("priority");
+        try {
+            this.priority = priority.isEmpty() ? PRIORITY : Integer.parseInt(priority);
+        } catch (NumberFormatException e) {
+            throw new ServiceConfigException("<run-from-pool> element priority attribute value is invalid");
+        }
+    }
+
+    private static int parseInt(Element element, String attributeName, int defaultValue, int minValue) throws ServiceConfigException {
+        String value = element.getAttribute(attributeName);
+        if (value.isEmpty()) {
+            return defaultValue;
+        }
+        try {
+            int intValue = Integer.parseInt(value);
+            if (intValue >= minValue) {
+                return intValue;
+            }
+        } catch (NumberFormatException e) {
+            // reported below
+        }
+        throw new ServiceConfigException("<run-from-pool> element " + attributeName + " attribute value is invalid");
     }
 
     public String getName() {
         return name;
     }
+
+    /** Returns true if the jobs of this pool run on their own threads rather than on the threads shared by the pools. */
+    public boolean hasOwnThreads() {
+        return maxThreads > 0;
+    }
+
+    public int getMinThreads() {
+        return minThreads;
+    }
+
+    public int getMaxThreads() {
+        return maxThreads;
+    }
+
+    public int getJobs() {
+        return jobs;
+    }
+
+    public int getWeight() {
+        return weight;
+    }
+
+    public int getPriority() {
+        return priority;
+    }
 }
@@ -43,6 +43,9 @@ public final class ThreadPool {
     public static final int PURGE_JOBS_DAYS = 30;
     public static final int QUEUE_SIZE = 100;
     public static final int THREAD_TTL = 120000; // Idle thread lifespan - 2 minutes.
+    public static final int MAX_VIRTUAL_THREADS = 200;
+    public static final int PINNED_THRESHOLD_MILLIS = 20;
+    public static final int SHARD_EXPIRE_MILLIS = 90000; // Instance heartbeat lifespan - 3 polling intervals.
 
     private final int failedRetryMin;
     private final int jobs;
@@ -51,9 +54,15 @@ public final class ThreadPool {
     private final int pollDbMillis;
     private final boolean pollEnabled;
     private final int purgeJobDays;
+    private final boolean pushEnabled;
     private final List<RunFromPool> runFromPools;
     private final String sendToPool;
     private final int ttl;
+    private final boolean virtualThreads;
+    private final int maxVirtualThreads;
+    private final int pinnedThresholdMillis;
+    private final boolean shardJobs;
+    private final int shardExpireMillis;
 
     ThreadPool(Element poolElement) throws ServiceConfigException, NumberFormatException {
         String sendToPool = poolElement.getAttribute("send-to-pool").intern();
@@ -145,6 +154,51 @@ public final class ThreadPool {
             }
         }
         this.pollEnabled = !"false".equals(poolElement.getAttribute("poll-enabled"));
+        this.pushEnabled = "true".equals(poolElement.getAttribute("push-enabled"));
+        this.virtualThreads = "true".equals(poolElement.getAttribute("virtual-threads"));
+        String maxVirtualThreads = poolElement.getAttribute("max-virtual-threads").intern();
+        if (maxVirtualThreads.isEmpty()) {
+            this.maxVirtualThreads = MAX_VIRTUAL_THREADS;
+        } else {
+            try {
+                this.maxVirtualThreads = Integer.parseInt(maxVirtualThreads);
+                if (this.maxVirtualThreads < 1) {
+                    throw new ServiceConfigException("<thread-pool> element max-virtual-threads attribute value is invalid");
+                }
+            } catch (NumberFormatException | ServiceConfigException e) {
+                Debug.logError(e, module);
+                throw new ServiceConfigException("<thread-pool> element max-virtual-threads attribute value is invalid");
+            }
+        }
+        String pinnedThresholdMillis = poolElement.getAttribute("pinned-threshold-millis").intern();
+        if (pinnedThresholdMillis.isEmpty()) {
+            this.pinnedThresholdMillis = PINNED_THRESHOLD_MILLIS;
+        } else {
+            try {
+                this.pinnedThresholdMillis = Integer.parseInt(pinnedThresholdMillis);
+                if (this.pinnedThresholdMillis < 0) {
+                    throw new ServiceConfigException("<thread-pool> element pinned-threshold-millis attribute value is invalid");
+                }
+            } catch (NumberFormatException | ServiceConfigException e) {
+                Debug.logError(e, module);
+                throw new ServiceConfigException("<thread-pool> element pinned-threshold-millis attribute value is invalid");
+            }
+        }
+        this.shardJobs = "true".equals(poolElement.getAttribute("shard-jobs"));
+        String shardExpireMillis = poolElement.getAttribute("shard-expire-millis").intern();
+        if (shardExpireMillis.isEmpty()) {
+            this.shardExpireMillis = SHARD_EXPIRE_MILLIS;
+        } else {
+            try {
+                this.shardExpireMillis = Integer.parseInt(shardExpireMillis);
+                if (this.shardExpireMillis < 1) {
+                    throw new ServiceConfigException("<thread-pool> element shard-expire-millis attribute value is invalid");
+                }
+            } catch (NumberFormatException | ServiceConfigException e) {
+                Debug.logError(e, module);
+                throw new ServiceConfigException("<thread-pool> element shard-expire-millis attribute value is invalid");
+            }
+        }
         String pollDbMillis = poolElement.getAttribute("poll-db-millis").intern();
         if (pollDbMillis.isEmpty()) {
             this.pollDbMillis = POLL_WAIT;
@@ -195,6 +249,18 @@ public final class ThreadPool {
         return pollEnabled;
     }
 
+    public boolean getPushEnabled() {
+        return pushEnabled;
+    }
+
+    public int getMaxVirtualThreads() {
+        return maxVirtualThreads;
+    }
+
+    public int getPinnedThresholdMillis() {
+        return pinnedThresholdMillis;
+    }
+
     public int getPurgeJobDays() {
         return purgeJobDays;
     }
@@ -207,7 +273,19 @@ public final class ThreadPool {
         return sendToPool;
     }
 
+    public int getShardExpireMillis() {
+        return shardExpireMillis;
+    }
+
+    public boolean getShardJobs() {
+        return shardJobs;
+    }
+
     public int getTtl() {
         return ttl;
     }
+
+    public boolean getVirtualThreads() {
+        return virtualThreads;
+    }
 }
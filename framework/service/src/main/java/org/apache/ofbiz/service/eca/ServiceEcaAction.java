@@ -113,11 +113,11 @@ public class ServiceEcaAction implements java.io.Serializable {
 
         if (eventName.startsWith("global-")) {
             if ("global-rollback".equals(eventName)) {
-                ServiceSynchronization.registerRollbackService(dctx, serviceName, runAsUser, context, "async".equals(serviceMode), persist); // using the actual context so we get updates
+                ServiceSynchronization.registerRollbackService(dctx, serviceName, runAsUser, context, !"sync".equals(serviceMode), persist); // using the actual context so we get updates
             } else if ("global-commit".equals(eventName)) {
-                ServiceSynchronization.registerCommitService(dctx, serviceName, runAsUser, context, "async".equals(serviceMode), persist); // using the actual context so we get updates
+                ServiceSynchronization.registerCommitService(dctx, serviceName, runAsUser, context, !"sync".equals(serviceMode), persist); // using the actual context so we get updates
             } else if ("global-commit-post-run".equals(eventName)) {
-                ServiceSynchronization.registerCommitService(dctx, serviceName, runAsUser, context, "async".equals(serviceMode), persist); // using the actual context so we get updates
+                ServiceSynchronization.registerCommitService(dctx, serviceName, runAsUser, context, !"sync".equals(serviceMode), persist); // using the actual context so we get updates
             }
         } else {
             // standard ECA
@@ -129,6 +129,8 @@ public class ServiceEcaAction implements java.io.Serializable {
                 }
             } else if ("async".equals(this.serviceMode)) {
                 dispatcher.runAsync(serviceName, actionContext, persist);
+            } else if ("async-local".equals(this.serviceMode)) {
+                ServiceEcaQueue.getInstance().enqueue(dctx, serviceName, actionContext);
             }
         }
 
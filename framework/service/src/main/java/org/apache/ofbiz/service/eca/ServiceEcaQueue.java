@@ -0,0 +1,494 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.service.eca;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+import javax.transaction.Status;
+import javax.transaction.Synchronization;
+import javax.xml.parsers.ParserConfigurationException;
+
+import org.apache.ofbiz.base.util.Debug;
+import org.apache.ofbiz.base.util.UtilGenerics;
+import org.apache.ofbiz.base.util.UtilProperties;
+import org.apache.ofbiz.entity.Delegator;
+import org.apache.ofbiz.entity.DelegatorFactory;
+import org.apache.ofbiz.entity.serialize.SerializeException;
+import org.apache.ofbiz.entity.serialize.XmlSerializer;
+import org.apache.ofbiz.entity.transaction.GenericTransactionException;
+import org.apache.ofbiz.entity.transaction.TransactionUtil;
+import org.apache.ofbiz.service.DispatchContext;
+import org.apache.ofbiz.service.GenericServiceException;
+import org.apache.ofbiz.service.LocalDispatcher;
+import org.apache.ofbiz.service.ServiceContainer;
+import org.apache.ofbiz.service.ServiceUtil;
+import org.xml.sax.SAXException;
+
+/**
+ * Runs the ECA actions with <code>mode="async-local"</code> on local threads, without a JobSandbox row.
+ * <p>Each action is appended to a journal file, and forced to the disk, before it is queued, and a completion record is appended once it
+ * has run, so the actions queued when the JVM stops or crashes are run again at the next start: the queue is
+ * started by the {@link ServiceContainer}, which replays the journal. The workers take the actions from the queue
+ * in batches, and the completion records of a batch are forced to the disk together. The journal is rewritten with
+ * the pending actions only when it grows beyond a size.</p>
+ * <p>An action which fails or returns an error is run again as a persisted job, which is retried like the other
+ * persisted jobs. When even that fails, the action stays in the journal and is run again at the next start.</p>
+ * <p>An action queued within a transaction is only journaled once the transaction is committed, and dropped when
+ * it is rolled back, like the persisted jobs which are only seen by the job poller after the commit.</p>
+ * <p>The queue is bounded: when it is full, the caller waits for a while, then the action is run as a persisted
+ * job instead, so that a burst of events slows down the callers without losing any action.</p>
+ * <p>Settings are read from the <code>eca.queue.*</code> properties of <code>service.properties</code>.</p>
+ */
+public final class ServiceEcaQueue {
+
+    public static final String module = ServiceEcaQueue.class.getName();
+    private static final byte ENTRY_RECORD = 1;
+    private static final byte DONE_RECORD = 2;
+    private static volatile ServiceEcaQueue instance = null;
+
+    private final Path journalPath;
+    private final int threads;
+    private final int batchSize;
+    private final long offerTimeoutMillis;
+    private final long compactBytes;
+    private final BlockingQueue<Entry> queue;
+    private final Map<Long, Entry> pending = new ConcurrentHashMap<>();
+    private final AtomicLong lastId = new AtomicLong();
+    private final ReentrantLock journalLock = new ReentrantLock();
+    private final List<Thread> workers = new ArrayList<>();
+    private final LongAdder processed = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder spilled = new LongAdder();
+    private final LongAdder retried = new LongAdder();
+    // guarded by journalLock
+    private FileChannel journal;
+    private volatile boolean stopped = false;
+
+    private static final class Entry {
+        private final long id;
+        private final String delegatorName;
+        private final String localName;
+        private final String serviceName;
+        private final byte[] context;
+
+        private Entry(long id, String delegatorName, String localName, String serviceName, byte[] context) {
+            this.id = id;
+            this.delegatorName = delegatorName;
+            this.localName = localName;
+            this.serviceName = serviceName;
+            this.context = context;
+        }
+    }
+
+    /** Returns the queue of the service engine, starting it and running the actions left in its journal on the first call. */
+    public static ServiceEcaQueue getInstance() {
+        ServiceEcaQueue queue = instance;
+        if (queue == null) {
+            synchronized (ServiceEcaQueue.class) {
+                queue = instance;
+                if (queue == null) {
+                    queue = new ServiceEcaQueue();
+                    queue.start();
+                    instance = queue;
+                }
+            }
+        }
+        return queue;
+    }
+
+    /** Stops the queue when started; the actions not run yet stay in the journal for the next start. */
+    public static synchronized void shutDown() {
+        if (instance != null) {
+            instance.stop();
+            instance = null;
+        }
+    }
+
+    private ServiceEcaQueue() {
+        this(Paths.get(UtilProperties.getPropertyValue("service", "eca.queue.journal", "runtime/data/seca-queue.journal")),
+                UtilProperties.getPropertyAsInteger("service", "eca.queue.capacity", 10000),
+                Math.max(1, UtilProperties.getPropertyAsInteger("service", "eca.queue.threads", 2)),
+                UtilProperties.getPropertyAsInteger("service", "eca.queue.batchSize", 100),
+                UtilProperties.getPropertyAsLong("service", "eca.queue.offerTimeoutMillis", 100),
+                UtilProperties.getPropertyAsLong("service", "eca.queue.compactBytes", 16 * 1024 * 1024));
+    }
+
+    /** Creates a queue with its own journal and settings; the service engine uses the one of {@link #getInstance}.
+     *@param journalPath The journal file of the queue
+     *@param capacity The maximum number of actions queued
+     *@param threads The number of worker threads, none leaving the actions in the queue
+     *@param batchSize The number of actions whose completion is written to the journal at once
+     *@param offerTimeoutMillis The time a caller waits for room in a full queue before the action is run as a persisted job
+     *@param compactBytes The journal size triggering its compaction
+     */
+    public ServiceEcaQueue(Path journalPath, int capacity, int threads, int batchSize, long offerTimeoutMillis, long compactBytes) {
+        this.journalPath = journalPath;
+        this.threads = Math.max(0, threads);
+        this.batchSize = Math.max(1, batchSize);
+        this.offerTimeoutMillis = offerTimeoutMillis;
+        this.compactBytes = compactBytes;
+        this.queue = new ArrayBlockingQueue<>(Math.max(1, capacity));
+    }
+
+    /** Opens the journal, starts the workers and queues the actions left in the journal. */
+    public void start() {
+        List<Entry> replayed = new ArrayList<>();
+        journalLock.lock();
+        try {
+            if (journalPath.getParent() != null) {
+                Files.createDirectories(journalPath.getParent());
+            }
+            replayed.addAll(readJournal());
+            for (Entry entry : replayed) {
+                pending.put(entry.id, entry);
+            }
+            rewriteJournal();
+        } catch (IOException e) {
+            Debug.logError(e, "Unable to open the ECA queue journal " + journalPath + ", the queued actions will not survive a restart", module);
+        } finally {
+            journalLock.unlock();
+        }
+        for (int i = 0; i < threads; i++) {
+            Thread worker = new Thread(this::work, "OFBiz-eca-queue-" + i);
+            worker.setDaemon(true);
+            worker.start();
+            workers.add(worker);
+        }
+        if (!replayed.isEmpty()) {
+            Debug.logInfo("Running " + replayed.size() + " ECA actions left in the journal " + journalPath, module);
+            for (Entry entry : replayed) {
+                try {
+                    if (threads > 0) {
+                        queue.put(entry);
+                    } else if (!queue.offer(entry)) {
+                        // without workers nothing makes room, the remaining actions stay in the journal
+                        break;
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+        }
+    }
+
+    /** Stops the workers once their current action is done; the actions not run yet stay in the journal. */
+    public void stop() {
+        // the workers are not interrupted, an action cut off would be lost for the next start
+        stopped = true;
+        for (Thread worker : workers) {
+            try {
+                worker.join(10000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            if (worker.isAlive()) {
+                Debug.logWarning("ECA queue worker " + worker.getName() + " is still running an action, it will run again at the next start", module);
+            }
+        }
+        journalLock.lock();
+        try {
+            if (journal != null) {
+                journal.force(false);
+                journal.close();
+                journal = null;
+            }
+        } catch (IOException e) {
+            Debug.logWarning(e, "Error closing the ECA queue journal", module);
+        } finally {
+            journalLock.unlock();
+        }
+    }
+
+    /** Queues an action, or runs it as a persisted job when the queue stays full. When a transaction is in place,
+     * the action is queued after the transaction is committed.
+     *@param dctx The dispatch context of the service which triggered the action
+     *@param serviceName The name of the service of the action
+     *@param context The context of the action
+     */
+    public void enqueue(DispatchContext dctx, String serviceName, Map<String, Object> context) throws GenericServiceException {
+        try {
+            if (TransactionUtil.isTransactionInPlace()) {
+                TransactionUtil.registerSynchronization(new Synchronization() {
+                    @Override
+                    public void beforeCompletion() {
+                    }
+
+                    @Override
+                    public void afterCompletion(int status) {
+                        if (status != Status.STATUS_COMMITTED) {
+                            return;
+                        }
+                        try {
+                            enqueueNow(dctx, serviceName, context);
+                        } catch (GenericServiceException e) {
+                            Debug.logError(e, "Unable to queue ECA action [" + serviceName + "] after the commit", module);
+                        }
+                    }
+                });
+                return;
+            }
+        } catch (GenericTransactionException | IllegalStateException e) {
+            throw new GenericServiceException("Unable to queue ECA action [" + serviceName + "] after the commit of the current transaction", e);
+        }
+        enqueueNow(dctx, serviceName, context);
+    }
+
+    private void enqueueNow(DispatchContext dctx, String serviceName, Map<String, Object> context) throws GenericServiceException {
+        byte[] serializedContext;
+        try {
+            serializedContext = XmlSerializer.serialize(context).getBytes(StandardCharsets.UTF_8);
+        } catch (SerializeException | IOException e) {
+            Debug.logWarning("Unable to serialize the context of ECA action [" + serviceName + "], running it as a non persisted async service: " + e, module);
+            dctx.getDispatcher().runAsync(serviceName, context, false);
+            return;
+        }
+        Entry entry = new Entry(lastId.incrementAndGet(), dctx.getDelegator().getDelegatorName(), dctx.getName(), serviceName, serializedContext);
+        pending.put(entry.id, entry);
+        // the action must be on the disk before the triggering service returns, or a crash would lose it
+        append(entryRecord(entry), true);
+        boolean queued;
+        try {
+            queued = !stopped && queue.offer(entry, offerTimeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            queued = false;
+        }
+        if (!queued) {
+            pending.remove(entry.id);
+            append(doneRecord(entry.id), true);
+            spilled.increment();
+            Debug.logWarning("The ECA queue is full, running action [" + serviceName + "] as a persisted job", module);
+            dctx.getDispatcher().runAsync(serviceName, context, true);
+        }
+    }
+
+    private void work() {
+        List<Entry> batch = new ArrayList<>(batchSize);
+        while (!stopped) {
+            try {
+                Entry first = queue.poll(1, TimeUnit.SECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, batchSize - 1);
+            } catch (InterruptedException e) {
+                continue;
+            }
+            ByteArrayOutputStream doneRecords = new ByteArrayOutputStream(batch.size() * 9);
+            for (Entry entry : batch) {
+                // the actions of the batch not started yet stay in the journal for the next start
+                if (stopped) {
+                    break;
+                }
+                if (run(entry)) {
+                    pending.remove(entry.id);
+                    doneRecords.write(doneRecord(entry.id), 0, 9);
+                }
+            }
+            batch.clear();
+            append(doneRecords.toByteArray(), true);
+            compactIfNeeded();
+        }
+    }
+
+    // returns true when the action is done, run or handed over to a persisted job
+    private boolean run(Entry entry) {
+        LocalDispatcher dispatcher;
+        try {
+            Delegator delegator = DelegatorFactory.getDelegator(entry.delegatorName);
+            String localName = entry.localName;
+            // the local dispatcher adds the tenant id back
+            if (delegator.getDelegatorTenantId() != null && localName.endsWith("#" + delegator.getDelegatorTenantId())) {
+                localName = localName.substring(0, localName.lastIndexOf('#'));
+            }
+            dispatcher = ServiceContainer.getLocalDispatcher(localName, delegator);
+        } catch (RuntimeException e) {
+            Debug.logError(e, "Unable to get the dispatcher of queued ECA action [" + entry.serviceName + "], it stays in the journal", module);
+            return false;
+        }
+        try {
+            Map<String, Object> result = dispatcher.runSync(entry.serviceName, deserialize(entry, dispatcher));
+            if (!ServiceUtil.isError(result)) {
+                processed.increment();
+                return true;
+            }
+            Debug.logWarning("Queued ECA action [" + entry.serviceName + "] returned an error: " + ServiceUtil.getErrorMessage(result), module);
+        } catch (Exception e) {
+            Debug.logError(e, "Error running queued ECA action [" + entry.serviceName + "]", module);
+        }
+        failed.increment();
+        try {
+            dispatcher.runAsync(entry.serviceName, deserialize(entry, dispatcher), true);
+            retried.increment();
+            return true;
+        } catch (Exception e) {
+            Debug.logError(e, "Unable to retry queued ECA action [" + entry.serviceName + "] as a persisted job, it stays in the journal", module);
+            return false;
+        }
+    }
+
+    private static Map<String, Object> deserialize(Entry entry, LocalDispatcher dispatcher)
+            throws SerializeException, SAXException, ParserConfigurationException, IOException {
+        return UtilGenerics.cast(XmlSerializer.deserialize(new String(entry.context, StandardCharsets.UTF_8), dispatcher.getDelegator()));
+    }
+
+    private static byte[] entryRecord(Entry entry) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(entry.context.length + 128);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(ENTRY_RECORD);
+            out.writeLong(entry.id);
+            out.writeUTF(entry.delegatorName);
+            out.writeUTF(entry.localName);
+            out.writeUTF(entry.serviceName);
+            out.writeInt(entry.context.length);
+            out.write(entry.context);
+        } catch (IOException e) {
+            // not thrown by a ByteArrayOutputStream
+            throw new IllegalStateException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static byte[] doneRecord(long id) {
+        return ByteBuffer.allocate(9).put(DONE_RECORD).putLong(id).array();
+    }
+
+    private void append(byte[] records, boolean force) {
+        journalLock.lock();
+        try {
+            if (journal == null) {
+                return;
+            }
+            ByteBuffer buffer = ByteBuffer.wrap(records);
+            while (buffer.hasRemaining()) {
+                journal.write(buffer);
+            }
+            if (force) {
+                journal.force(false);
+            }
+        } catch (IOException e) {
+            Debug.logError(e, "Error writing the ECA queue journal " + journalPath, module);
+        } finally {
+            journalLock.unlock();
+        }
+    }
+
+    // reads the actions of the journal without a completion record; stops at a record truncated by a crash
+    private List<Entry> readJournal() throws IOException {
+        Map<Long, Entry> entries = new LinkedHashMap<>();
+        if (Files.exists(journalPath)) {
+            try (InputStream in = Files.newInputStream(journalPath); DataInputStream data = new DataInputStream(new BufferedInputStream(in))) {
+                while (true) {
+                    byte type = data.readByte();
+                    long id = data.readLong();
+                    lastId.set(Math.max(lastId.get(), id));
+                    if (type == ENTRY_RECORD) {
+                        String delegatorName = data.readUTF();
+                        String localName = data.readUTF();
+                        String serviceName = data.readUTF();
+                        byte[] context = new byte[data.readInt()];
+                        data.readFully(context);
+                        entries.put(id, new Entry(id, delegatorName, localName, serviceName, context));
+                    } else if (type == DONE_RECORD) {
+                        entries.remove(id);
+                    } else {
+                        Debug.logWarning("Unknown record in the ECA queue journal " + journalPath + ", ignoring the rest of the journal", module);
+                        break;
+                    }
+                }
+            } catch (EOFException e) {
+                // end of the journal, or a record truncated by a crash
+            }
+        }
+        return new ArrayList<>(entries.values());
+    }
+
+    // writes the pending actions to a new journal which replaces the current one; called with the journal lock held
+    private void rewriteJournal() throws IOException {
+        Path newPath = journalPath.resolveSibling(journalPath.getFileName() + ".new");
+        try (FileChannel newJournal = FileChannel.open(newPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            for (Entry entry : new ArrayList<>(pending.values())) {
+                ByteBuffer buffer = ByteBuffer.wrap(entryRecord(entry));
+                while (buffer.hasRemaining()) {
+                    newJournal.write(buffer);
+                }
+            }
+            newJournal.force(false);
+        }
+        if (journal != null) {
+            journal.close();
+            journal = null;
+        }
+        Files.move(newPath, journalPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        journal = FileChannel.open(journalPath, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    private void compactIfNeeded() {
+        journalLock.lock();
+        try {
+            if (journal != null && journal.size() > compactBytes) {
+                rewriteJournal();
+            }
+        } catch (IOException e) {
+            Debug.logError(e, "Error compacting the ECA queue journal " + journalPath, module);
+        } finally {
+            journalLock.unlock();
+        }
+    }
+
+    /** Returns the state of the queue: its size, the number of actions run, failed, retried as persisted jobs, and run as persisted jobs because the queue was full. */
+    public Map<String, Object> getState() {
+        Map<String, Object> state = new HashMap<>();
+        state.put("queueSize", queue.size());
+        state.put("pending", pending.size());
+        state.put("processed", processed.sum());
+        state.put("failed", failed.sum());
+        state.put("retried", retried.sum());
+        state.put("spilled", spilled.sum());
+        return state;
+    }
+}
@@ -18,10 +18,13 @@
  */
 package org.apache.ofbiz.service.engine;
 
-import java.lang.reflect.InvocationTargetException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.ofbiz.base.util.Debug;
 import org.apache.ofbiz.base.util.UtilGenerics;
@@ -32,10 +35,16 @@ import org.apache.ofbiz.service.ServiceDispatcher;
 
 /**
  * Standard Java Static Method Service Engine
+ * <p>The Java method of a service is looked up on its first call and kept as a <code>MethodHandle</code>,
+ * so that the following calls do not load the class nor look up the method again. The handle is looked up
+ * again when the service definition is reloaded, the reloaded <code>ModelService</code> being a new object.</p>
  */
 public final class StandardJavaEngine extends GenericAsyncEngine {
 
     public static final String module = StandardJavaEngine.class.getName();
+    private static final MethodType INVOKER_TYPE = MethodType.methodType(Object.class, DispatchContext.class, Map.class);
+
+    private final ConcurrentHashMap<String, ServiceInvoker> invokers = new ConcurrentHashMap<>();
 
     public StandardJavaEngine(ServiceDispatcher dispatcher) {
         super(dispatcher);
@@ -77,8 +86,6 @@ public final class StandardJavaEngine extends GenericAsyncEngine {
             Debug.logError("ERROR: Null Service Context.", module);
         }
 
-        Object result = null;
-
         // check the package and method names
         if (modelService.location == null || modelService.invoke == null) {
             throw new GenericServiceException("Service [" + modelService.name + "] is missing location and/or invoke values which are required for execution.");
@@ -93,14 +100,32 @@ public final class StandardJavaEngine extends GenericAsyncEngine {
             cl = dctx.getClassLoader();
         }
 
+        ServiceInvoker invoker = invokers.get(modelService.name);
+        if (invoker == null || invoker.modelService != modelService || invoker.classLoader != cl) {
+            invoker = new ServiceInvoker(modelService, cl, getMethodHandle(modelService, cl));
+            invokers.put(modelService.name, invoker);
+        }
+        try {
+            return invoker.methodHandle.invokeExact(dctx, context);
+        } catch (ExceptionInInitializerError eie) {
+            throw new GenericServiceException("Service [" + modelService.name + "] Initialization failed", eie);
+        } catch (Throwable th) {
+            throw new GenericServiceException("Service [" + modelService.name + "] target threw an unexpected exception", th);
+        }
+    }
+
+    // Returns a handle of type (DispatchContext, Map)Object calling the Java method of a service, on a new instance for a non-static method.
+    private MethodHandle getMethodHandle(ModelService modelService, ClassLoader cl) throws GenericServiceException {
         try {
             Class<?> c = cl.loadClass(this.getLocation(modelService));
             Method m = c.getMethod(modelService.invoke, DispatchContext.class, Map.class);
-            if (Modifier.isStatic(m.getModifiers())) {
-                result = m.invoke(null, dctx, context);
-            } else {
-                result = m.invoke(c.getDeclaredConstructor().newInstance(), dctx, context);
+            MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+            MethodHandle methodHandle = lookup.unreflect(m);
+            if (!Modifier.isStatic(m.getModifiers())) {
+                MethodHandle constructor = lookup.unreflectConstructor(c.getDeclaredConstructor());
+                methodHandle = MethodHandles.foldArguments(methodHandle, constructor);
             }
+            return methodHandle.asType(INVOKER_TYPE);
         } catch (ClassNotFoundException cnfe) {
             throw new GenericServiceException("Cannot find service [" + modelService.name + "] location class", cnfe);
         } catch (NoSuchMethodException nsme) {
@@ -111,17 +136,23 @@ public final class StandardJavaEngine extends GenericAsyncEngine {
             throw new GenericServiceException("Service [" + modelService.name + "] Method not accessible", iae);
         } catch (IllegalArgumentException iarge) {
             throw new GenericServiceException("Service [" + modelService.name + "] Invalid parameter match", iarge);
-        } catch (InvocationTargetException ite) {
-            throw new GenericServiceException("Service [" + modelService.name + "] target threw an unexpected exception", ite.getTargetException());
-        } catch (NullPointerException npe) {
-            throw new GenericServiceException("Service [" + modelService.name + "] ran into an unexpected null object", npe);
         } catch (ExceptionInInitializerError eie) {
             throw new GenericServiceException("Service [" + modelService.name + "] Initialization failed", eie);
         } catch (Throwable th) {
             throw new GenericServiceException("Service [" + modelService.name + "] Error or unknown exception", th);
         }
+    }
 
-        return result;
+    /** The Java method of a service, with the definition and the class loader it was looked up for. */
+    private static final class ServiceInvoker {
+        private final ModelService modelService;
+        private final ClassLoader classLoader;
+        private final MethodHandle methodHandle;
+
+        private ServiceInvoker(ModelService modelService, ClassLoader classLoader, MethodHandle methodHandle) {
+            this.modelService = modelService;
+            this.classLoader = classLoader;
+            this.methodHandle = methodHandle;
+        }
     }
 }
-
@@ -37,6 +37,7 @@ public abstract class AbstractJob implements Job {
     protected State currentState = State.CREATED;
     private long elapsedTime = 0;
     private final Date startTime = new Date();
+    private long queuedMillis = 0;
 
     protected AbstractJob(String jobId, String jobName) {
         Assert.notNull("jobId", jobId, "jobName", jobName);
@@ -65,6 +66,7 @@ public abstract class AbstractJob implements Job {
             throw new InvalidJobException("Illegal state change");
         }
         this.currentState = State.QUEUED;
+        this.queuedMillis = System.currentTimeMillis();
     }
 
     @Override
@@ -75,6 +77,14 @@ public abstract class AbstractJob implements Job {
         this.currentState = State.CREATED;
     }
 
+    /**
+     * Returns the time in milliseconds since which this job waits to be run.
+     * The {@link JobPoller} measures the queue-to-start latency of the jobs from this time.
+     */
+    protected long getReadyTime() {
+        return queuedMillis;
+    }
+
     /**
      *  Executes this Job. The {@link #run()} method calls this method.
      */
@@ -27,8 +27,10 @@ import java.time.ZonedDateTime;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Date;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.RejectedExecutionException;
 
@@ -57,7 +59,7 @@ import org.apache.ofbiz.service.ServiceContainer;
 import org.apache.ofbiz.service.calendar.RecurrenceInfo;
 import org.apache.ofbiz.service.calendar.RecurrenceInfoException;
 import org.apache.ofbiz.service.config.ServiceConfigUtil;
-import org.apache.ofbiz.service.config.model.RunFromPool;
+import org.apache.ofbiz.service.config.model.ThreadPool;
 
 import com.ibm.icu.util.Calendar;
 
@@ -100,6 +102,9 @@ public final class JobManager {
             jm = registeredManagers.get(delegator.getDelegatorName());
             if (enablePoller) {
                 JobPoller.registerJobManager(jm);
+                if (jm.shards != null) {
+                    jm.shards.start();
+                }
             }
         }
         return jm;
@@ -111,13 +116,30 @@ public final class JobManager {
     public static void shutDown() {
         isShutDown = true;
         JobPoller.getInstance().stop();
+        for (JobManager jm : registeredManagers.values()) {
+            if (jm.shards != null) {
+                jm.shards.unregister();
+            }
+        }
     }
 
     private final Delegator delegator;
+    private final JobShards shards;
     private boolean crashedJobsReloaded = false;
 
     private JobManager(Delegator delegator) {
         this.delegator = delegator;
+        JobShards shards = null;
+        try {
+            ThreadPool threadPool = ServiceConfigUtil.getServiceEngine().getThreadPool();
+            // an instance which does not poll the jobs takes no range
+            if (threadPool.getShardJobs() && threadPool.getPollEnabled()) {
+                shards = new JobShards(delegator, instanceId, threadPool.getShardExpireMillis());
+            }
+        } catch (GenericConfigException e) {
+            Debug.logWarning(e, "Unable to get the job sharding settings, polling all the jobs: ", module);
+        }
+        this.shards = shards;
     }
 
     /** Returns the Delegator. */
@@ -137,7 +159,13 @@ public final class JobManager {
      * @return List containing a Map of each thread's state.
      */
     public Map<String, Object> getPoolState() {
-        return JobPoller.getInstance().getPoolState();
+        Map<String, Object> poolState = JobPoller.getInstance().getPoolState();
+        if (shards != null) {
+            poolState.put("shardStart", shards.getShardStart());
+            poolState.put("shardEnd", shards.getShardEnd());
+            poolState.put("shardInstances", shards.getInstanceCount());
+        }
+        return poolState;
     }
 
     /**
@@ -162,21 +190,16 @@ public final class JobManager {
         }
     }
 
-    private static List<String> getRunPools() throws GenericConfigException {
-        List<RunFromPool> runFromPools = ServiceConfigUtil.getServiceEngine().getThreadPool().getRunFromPools();
-        List<String> readPools = new ArrayList<>(runFromPools.size());
-        for (RunFromPool runFromPool : runFromPools) {
-            readPools.add(runFromPool.getName());
-        }
-        return readPools;
-    }
-
     /**
-     * Scans the JobSandbox entity and returns a list of jobs that are due to run.
+     * Scans the JobSandbox entity and returns a list of jobs of a pool that are due to run.
      * Returns an empty list if there are no jobs due to run.
      * This method is called by the {@link JobPoller} polling thread.
+     *
+     * @param poolId The pool of the jobs, or null for the jobs without a pool only.
+     * @param includeNoPool Also returns the jobs without a pool.
+     * @param limit The maximum number of jobs returned.
      */
-    protected List<Job> poll(int limit) {
+    protected List<Job> poll(String poolId, boolean includeNoPool, int limit) {
         assertIsRunning();
         // The rest of this method logs exceptions and does not throw them.
         // The idea is to keep the JobPoller working even when a database
@@ -211,19 +234,18 @@ public final class JobManager {
                 EntityCondition.makeCondition("startDateTime", EntityOperator.EQUALS, null),
                 EntityCondition.makeCondition("cancelDateTime", EntityOperator.EQUALS, null),
                 EntityCondition.makeCondition("runByInstanceId", EntityOperator.EQUALS, null));
-        // limit to just defined pools
-        List<String> pools = null;
-        try {
-            pools = getRunPools();
-        } catch (GenericConfigException e) {
-            Debug.logWarning(e, "Unable to get run pools - not running job: ", module);
-            return Collections.emptyList();
+        // limit to the shards of this instance
+        if (shards != null) {
+            shards.refreshIfDue();
+            expressions.add(shards.getCondition());
         }
-        List<EntityExpr> poolsExpr = UtilMisc.toList(EntityCondition.makeCondition("poolId", EntityOperator.EQUALS, null));
-        if (!pools.isEmpty()) {
-            for (String poolName : pools) {
-                poolsExpr.add(EntityCondition.makeCondition("poolId", EntityOperator.EQUALS, poolName));
-            }
+        // limit to the pool
+        List<EntityExpr> poolsExpr = new ArrayList<>(2);
+        if (includeNoPool || poolId == null) {
+            poolsExpr.add(EntityCondition.makeCondition("poolId", EntityOperator.EQUALS, null));
+        }
+        if (poolId != null) {
+            poolsExpr.add(EntityCondition.makeCondition("poolId", EntityOperator.EQUALS, poolId));
         }
         List<Job> poll = new ArrayList<>(limit);
         // make the conditions
@@ -237,17 +259,62 @@ public final class JobManager {
                 Debug.logWarning("Unable to poll JobSandbox for jobs; unable to begin transaction.", module);
                 return poll;
             }
-            try (EntityListIterator jobsIterator = EntityQuery.use(delegator).from("JobSandbox").where(mainCondition).orderBy("runTime").queryIterator()) {
+            try {
+                List<GenericValue> jobValues = EntityQuery.use(delegator).from("JobSandbox").where(mainCondition).orderBy("runTime").maxRows(limit).queryList();
+                for (GenericValue jobValue : claimJobs(jobValues)) {
+                    poll.add(new PersistedServiceJob(dctx, jobValue, null));
+                }
+            } catch (GenericEntityException e) {
+                Debug.logWarning(e, module);
+            }
+            TransactionUtil.commit(beganTransaction);
+        } catch (Throwable t) {
+            String errMsg = "Exception thrown while polling JobSandbox: ";
+            try {
+                TransactionUtil.rollback(beganTransaction, errMsg, t);
+            } catch (GenericEntityException e) {
+                Debug.logWarning(e, "Exception thrown while rolling back transaction: ", module);
+            }
+            Debug.logWarning(t, errMsg, module);
+            return Collections.emptyList();
+        }
+        return poll;
+    }
+
+    /**
+     * Scans the JobSandbox entity and returns a list of jobs to purge, run by this instance and
+     * finished or canceled for longer than the purge-job-days setting.
+     * This method is called by the {@link JobPoller} polling thread when no jobs are due to run.
+     */
+    protected List<Job> pollPurgeJobs(int limit) {
+        assertIsRunning();
+        List<Job> poll = new ArrayList<>(limit);
+        Calendar cal = Calendar.getInstance();
+        try {
+            int daysToKeep = ServiceConfigUtil.getServiceEngine().getThreadPool().getPurgeJobDays();
+            cal.add(Calendar.DAY_OF_YEAR, -daysToKeep);
+        } catch (GenericConfigException e) {
+            Debug.logWarning(e, "Unable to get purge job days: ", module);
+            return Collections.emptyList();
+        }
+        Timestamp purgeTime = new Timestamp(cal.getTimeInMillis());
+        List<EntityExpr> finExp = UtilMisc.toList(EntityCondition.makeCondition("finishDateTime", EntityOperator.NOT_EQUAL, null), EntityCondition.makeCondition("finishDateTime", EntityOperator.LESS_THAN, purgeTime));
+        List<EntityExpr> canExp = UtilMisc.toList(EntityCondition.makeCondition("cancelDateTime", EntityOperator.NOT_EQUAL, null), EntityCondition.makeCondition("cancelDateTime", EntityOperator.LESS_THAN, purgeTime));
+        EntityCondition doneCond = EntityCondition.makeCondition(UtilMisc.toList(EntityCondition.makeCondition(canExp), EntityCondition.makeCondition(finExp)), EntityOperator.OR);
+        EntityCondition mainCondition = EntityCondition.makeCondition(UtilMisc.toList(EntityCondition.makeCondition("runByInstanceId", instanceId), doneCond));
+        boolean beganTransaction = false;
+        try {
+            beganTransaction = TransactionUtil.begin();
+            if (!beganTransaction) {
+                Debug.logWarning("Unable to poll JobSandbox for jobs; unable to begin transaction.", module);
+                return Collections.emptyList();
+            }
+            try (EntityListIterator jobsIterator = EntityQuery.use(delegator).from("JobSandbox").where(mainCondition).orderBy("jobId").queryIterator()) {
                 GenericValue jobValue = jobsIterator.next();
                 while (jobValue != null) {
-                    // Claim ownership of this value. Using storeByCondition to avoid a race condition.
-                    List<EntityExpr> updateExpression = UtilMisc.toList(EntityCondition.makeCondition("jobId", EntityOperator.EQUALS, jobValue.get("jobId")), EntityCondition.makeCondition("runByInstanceId", EntityOperator.EQUALS, null));
-                    int rowsUpdated = delegator.storeByCondition("JobSandbox", UtilMisc.toMap("runByInstanceId", instanceId), EntityCondition.makeCondition(updateExpression));
-                    if (rowsUpdated == 1) {
-                        poll.add(new PersistedServiceJob(dctx, jobValue, null));
-                        if (poll.size() == limit) {
-                            break;
-                        }
+                    poll.add(new PurgeJob(jobValue));
+                    if (poll.size() == limit) {
+                        break;
                     }
                     jobValue = jobsIterator.next();
                 }
@@ -265,53 +332,44 @@ public final class JobManager {
             Debug.logWarning(t, errMsg, module);
             return Collections.emptyList();
         }
-        if (poll.isEmpty()) {
-            // No jobs to run, see if there are any jobs to purge
-            Calendar cal = Calendar.getInstance();
-            try {
-                int daysToKeep = ServiceConfigUtil.getServiceEngine().getThreadPool().getPurgeJobDays();
-                cal.add(Calendar.DAY_OF_YEAR, -daysToKeep);
-            } catch (GenericConfigException e) {
-                Debug.logWarning(e, "Unable to get purge job days: ", module);
-                return Collections.emptyList();
+        return poll;
+    }
+
+    /**
+     * Claims the ownership of the jobs with a single conditional UPDATE of the JobSandbox entity, which
+     * only sets the runByInstanceId field of the jobs not claimed meanwhile by another instance.
+     * Returns the jobs claimed, in the order of the passed list.
+     */
+    private List<GenericValue> claimJobs(List<GenericValue> jobValues) throws GenericEntityException {
+        if (jobValues.isEmpty()) {
+            return jobValues;
+        }
+        List<Object> jobIds = new ArrayList<>(jobValues.size());
+        for (GenericValue jobValue : jobValues) {
+            jobIds.add(jobValue.get("jobId"));
+        }
+        EntityCondition jobIdCondition = EntityCondition.makeCondition("jobId", EntityOperator.IN, jobIds);
+        int rowsUpdated = delegator.storeByCondition("JobSandbox", UtilMisc.toMap("runByInstanceId", instanceId),
+                EntityCondition.makeCondition(jobIdCondition, EntityOperator.AND, EntityCondition.makeCondition("runByInstanceId", EntityOperator.EQUALS, null)));
+        if (rowsUpdated == jobValues.size()) {
+            return jobValues;
+        }
+        // some jobs were claimed by another instance, find which ones are ours
+        List<GenericValue> claimed = new ArrayList<>(rowsUpdated);
+        if (rowsUpdated > 0) {
+            List<GenericValue> owned = EntityQuery.use(delegator).select("jobId").from("JobSandbox")
+                    .where(jobIdCondition, EntityCondition.makeCondition("runByInstanceId", instanceId)).queryList();
+            Set<Object> ownedIds = new HashSet<>();
+            for (GenericValue ownedValue : owned) {
+                ownedIds.add(ownedValue.get("jobId"));
             }
-            Timestamp purgeTime = new Timestamp(cal.getTimeInMillis());
-            List<EntityExpr> finExp = UtilMisc.toList(EntityCondition.makeCondition("finishDateTime", EntityOperator.NOT_EQUAL, null), EntityCondition.makeCondition("finishDateTime", EntityOperator.LESS_THAN, purgeTime));
-            List<EntityExpr> canExp = UtilMisc.toList(EntityCondition.makeCondition("cancelDateTime", EntityOperator.NOT_EQUAL, null), EntityCondition.makeCondition("cancelDateTime", EntityOperator.LESS_THAN, purgeTime));
-            EntityCondition doneCond = EntityCondition.makeCondition(UtilMisc.toList(EntityCondition.makeCondition(canExp), EntityCondition.makeCondition(finExp)), EntityOperator.OR);
-            mainCondition = EntityCondition.makeCondition(UtilMisc.toList(EntityCondition.makeCondition("runByInstanceId", instanceId), doneCond));
-            beganTransaction = false;
-            try {
-                beganTransaction = TransactionUtil.begin();
-                if (!beganTransaction) {
-                    Debug.logWarning("Unable to poll JobSandbox for jobs; unable to begin transaction.", module);
-                    return Collections.emptyList();
+            for (GenericValue jobValue : jobValues) {
+                if (ownedIds.contains(jobValue.get("jobId"))) {
+                    claimed.add(jobValue);
                 }
-                try (EntityListIterator jobsIterator = EntityQuery.use(delegator).from("JobSandbox").where(mainCondition).orderBy("jobId").queryIterator()) {
-                    GenericValue jobValue = jobsIterator.next();
-                    while (jobValue != null) {
-                        poll.add(new PurgeJob(jobValue));
-                        if (poll.size() == limit) {
-                            break;
-                        }
-                        jobValue = jobsIterator.next();
-                    }
-                } catch (GenericEntityException e) {
-                    Debug.logWarning(e, module);
-                }
-                TransactionUtil.commit(beganTransaction);
-            } catch (Throwable t) {
-                String errMsg = "Exception thrown while polling JobSandbox: ";
-                try {
-                    TransactionUtil.rollback(beganTransaction, errMsg, t);
-                } catch (GenericEntityException e) {
-                    Debug.logWarning(e, "Exception thrown while rolling back transaction: ", module);
-                }
-                Debug.logWarning(t, errMsg, module);
-                return Collections.emptyList();
             }
         }
-        return poll;
+        return claimed;
     }
 
     public synchronized void reloadCrashedJobs() {
@@ -596,10 +654,12 @@ public final class JobManager {
         // create the value and store
         GenericValue jobV;
         try {
+            jFields.put("shardId", JobShards.nextShard());
             jobV = delegator.makeValue("JobSandbox", jFields);
             delegator.createSetNextSeqId(jobV);
         } catch (GenericEntityException e) {
             throw new JobManagerException(e.getMessage(), e);
         }
+        JobPoller.getInstance().jobPersisted(this, startTime);
     }
 }
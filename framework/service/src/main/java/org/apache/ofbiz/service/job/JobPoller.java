@@ -19,11 +19,15 @@
 package org.apache.ofbiz.service.job;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.TreeSet;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.LinkedBlockingQueue;
@@ -32,24 +36,51 @@ import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.transaction.Status;
+import javax.transaction.Synchronization;
 
 import org.apache.ofbiz.base.config.GenericConfigException;
 import org.apache.ofbiz.base.start.Start;
 import org.apache.ofbiz.base.util.Assert;
 import org.apache.ofbiz.base.util.Debug;
+import org.apache.ofbiz.entity.transaction.GenericTransactionException;
+import org.apache.ofbiz.entity.transaction.TransactionUtil;
 import org.apache.ofbiz.service.config.ServiceConfigListener;
 import org.apache.ofbiz.service.config.ServiceConfigUtil;
+import org.apache.ofbiz.service.config.model.RunFromPool;
 import org.apache.ofbiz.service.config.model.ServiceConfig;
 import org.apache.ofbiz.service.config.model.ThreadPool;
 
 /**
  * Job poller. Queues and runs jobs.
+ * <p>The JobSandbox entity is polled every <code>poll-db-millis</code>. When <code>push-enabled</code> is set,
+ * the poller is also woken up when a job is persisted by this server, once the job is committed or when it is due,
+ * so that a job persisted to run now does not wait for the next poll.</p>
+ * <p>The jobs run on threads shared by the pools, except the jobs of the pools which have their own threads
+ * (the <code>run-from-pool</code> elements with a <code>max-threads</code> attribute), so that the slow jobs
+ * of a pool do not delay the jobs of the other pools. The capacity of the shared queue is split between
+ * the pools by weight, and the pools are polled by priority.</p>
+ * <p>When <code>virtual-threads</code> is set and the JVM supports them, the jobs run on virtual threads. The
+ * number of jobs running at once is then limited by <code>max-virtual-threads</code>, or by the
+ * <code>max-threads</code> of a pool with its own threads, rather than by the number of platform threads.</p>
  */
 public final class JobPoller implements ServiceConfigListener {
 
     public static final String module = JobPoller.class.getName();
     private static final AtomicInteger created = new AtomicInteger();
     private static final ConcurrentHashMap<String, JobManager> jobManagers = new ConcurrentHashMap<>();
+    private static final LongAdder startedJobs = new LongAdder();
+    private static final LongAdder totalQueueToStartMillis = new LongAdder();
+    private static final AtomicLong maxQueueToStartMillis = new AtomicLong();
+    private static final int MAX_WAKE_UP_TIMES = 1000;
+    private static final ConcurrentHashMap<String, ThreadPoolExecutor> poolExecutors = new ConcurrentHashMap<>();
+    private static final ConcurrentHashMap<String, PoolStatistics> poolStatistics = new ConcurrentHashMap<>();
+    // the pool polling the jobs without a pool
+    private static volatile String noPoolName = null;
+    private static boolean virtualThreads = false;
     private static final ThreadPoolExecutor executor = createThreadPoolExecutor();
     private static final JobPoller instance = new JobPoller();
 
@@ -63,12 +94,18 @@ public final class JobPoller implements ServiceConfigListener {
     private static ThreadPoolExecutor createThreadPoolExecutor() {
         try {
             ThreadPool threadPool = ServiceConfigUtil.getServiceEngine(ServiceConfigUtil.getEngine()).getThreadPool();
-            return new ThreadPoolExecutor(threadPool.getMinThreads(), threadPool.getMaxThreads(), threadPool.getTtl(),
-                    TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(threadPool.getJobs()), new JobInvokerThreadFactory(), new ThreadPoolExecutor.AbortPolicy());
+            if (threadPool.getVirtualThreads()) {
+                if (VirtualThreads.isAvailable()) {
+                    virtualThreads = true;
+                    VirtualThreads.startPinnedMonitor(threadPool.getPinnedThresholdMillis());
+                    return new JobExecutor(threadPool.getMaxVirtualThreads(), threadPool.getTtl(), threadPool.getJobs(), "OFBiz-JobQueue-");
+                }
+                Debug.logWarning("Virtual threads are not supported by this JVM, running the jobs on platform threads", module);
+            }
+            return new JobExecutor(threadPool.getMinThreads(), threadPool.getMaxThreads(), threadPool.getTtl(), threadPool.getJobs(), "OFBiz-JobQueue-");
         } catch (GenericConfigException e) {
             Debug.logError(e, "Exception thrown while getting <thread-pool> model, using default <thread-pool> values: ", module);
-            return new ThreadPoolExecutor(ThreadPool.MIN_THREADS, ThreadPool.MAX_THREADS, ThreadPool.THREAD_TTL,
-                    TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(ThreadPool.QUEUE_SIZE), new JobInvokerThreadFactory(), new ThreadPoolExecutor.AbortPolicy());
+            return new JobExecutor(ThreadPool.MIN_THREADS, ThreadPool.MAX_THREADS, ThreadPool.THREAD_TTL, ThreadPool.QUEUE_SIZE, "OFBiz-JobQueue-");
         }
     }
 
@@ -82,6 +119,54 @@ public final class JobPoller implements ServiceConfigListener {
         }
     }
 
+    // Returns the pools run by this server, by decreasing priority.
+    private static List<RunFromPool> getRunFromPools(ThreadPool threadPool) {
+        List<RunFromPool> runFromPools = new ArrayList<>(threadPool.getRunFromPools());
+        runFromPools.sort(Comparator.comparingInt(RunFromPool::getPriority).reversed());
+        return runFromPools;
+    }
+
+    // Returns the executor running the jobs of a pool which has its own threads.
+    private static ThreadPoolExecutor getPoolExecutor(RunFromPool pool, ThreadPool threadPool) {
+        return poolExecutors.computeIfAbsent(pool.getName(), name -> virtualThreads
+                ? new JobExecutor(pool.getMaxThreads(), threadPool.getTtl(), pool.getJobs(), "OFBiz-JobQueue-" + name + "-")
+                : new JobExecutor(pool.getMinThreads(), pool.getMaxThreads(), threadPool.getTtl(), pool.getJobs(), "OFBiz-JobQueue-" + name + "-"));
+    }
+
+    // Returns the pool of a job, or null when the job was not polled from the JobSandbox entity.
+    private static String getPoolName(Job job) {
+        if (job instanceof PersistedServiceJob) {
+            String poolId = ((PersistedServiceJob) job).getPoolId();
+            return poolId != null ? poolId : noPoolName;
+        }
+        return null;
+    }
+
+    private static PoolStatistics getPoolStatistics(String poolName) {
+        return poolStatistics.computeIfAbsent(poolName, name -> new PoolStatistics());
+    }
+
+    private static void resize(ThreadPoolExecutor jobExecutor, int minThreads, int maxThreads, long ttl) {
+        if (maxThreads >= jobExecutor.getCorePoolSize()) {
+            jobExecutor.setMaximumPoolSize(maxThreads);
+            jobExecutor.setCorePoolSize(minThreads);
+        } else {
+            jobExecutor.setCorePoolSize(minThreads);
+            jobExecutor.setMaximumPoolSize(maxThreads);
+        }
+        // a zero keep alive time is not allowed when the core threads time out
+        jobExecutor.setKeepAliveTime(jobExecutor.allowsCoreThreadTimeOut() ? Math.max(1, ttl) : ttl, TimeUnit.MILLISECONDS);
+    }
+
+    private static boolean pushEnabled() {
+        try {
+            return ServiceConfigUtil.getServiceEngine(ServiceConfigUtil.getEngine()).getThreadPool().getPushEnabled();
+        } catch (GenericConfigException e) {
+            Debug.logError(e, "Exception thrown while getting <thread-pool> model, using default <thread-pool> values: ", module);
+            return false;
+        }
+    }
+
     /**
      * Register a {@link JobManager} with the job poller.
      *
@@ -96,6 +181,8 @@ public final class JobPoller implements ServiceConfigListener {
     // -------------------------------------- //
 
     private final Thread jobManagerPollerThread;
+    // the run times of the jobs persisted by this server, guarded by itself
+    private final TreeSet<Long> wakeUpTimes = new TreeSet<>();
 
     private JobPoller() {
         if (pollEnabled()) {
@@ -120,11 +207,27 @@ public final class JobPoller implements ServiceConfigListener {
         poolState.put("maxNumberOfInvokerThreads", executor.getMaximumPoolSize());
         poolState.put("greatestNumberOfInvokerThreads", executor.getLargestPoolSize());
         poolState.put("numberOfCompletedTasks", executor.getCompletedTaskCount());
-        BlockingQueue<Runnable> queue = executor.getQueue();
+        long started = startedJobs.sum();
+        poolState.put("pushEnabled", pushEnabled());
+        poolState.put("virtualThreads", virtualThreads);
+        poolState.put("numberOfPinnedVirtualThreads", VirtualThreads.getPinnedEvents());
+        poolState.put("numberOfStartedJobs", started);
+        poolState.put("averageQueueToStartMillis", started == 0 ? 0 : totalQueueToStartMillis.sum() / started);
+        poolState.put("maxQueueToStartMillis", maxQueueToStartMillis.get());
+        List<BlockingQueue<Runnable>> queues = new ArrayList<>();
+        queues.add(executor.getQueue());
+        for (ThreadPoolExecutor poolExecutor : poolExecutors.values()) {
+            queues.add(poolExecutor.getQueue());
+        }
         List<Map<String, Object>> taskList = new ArrayList<>();
+        Map<String, Integer> queueDepths = new HashMap<>();
         Map<String, Object> taskInfo = null;
-        for (Runnable task : queue) {
+        for (Runnable task : queues.stream().flatMap(Collection::stream).toArray(Runnable[]::new)) {
             Job job = (Job) task;
+            String poolName = getPoolName(job);
+            if (poolName != null) {
+                queueDepths.merge(poolName, 1, Integer::sum);
+            }
             taskInfo = new HashMap<>();
             taskInfo.put("id", job.getJobId());
             taskInfo.put("name", job.getJobName());
@@ -135,9 +238,28 @@ public final class JobPoller implements ServiceConfigListener {
             taskInfo.put("serviceName", serviceName);
             taskInfo.put("time", job.getStartTime());
             taskInfo.put("runtime", job.getRuntime());
+            taskInfo.put("poolId", poolName);
             taskList.add(taskInfo);
         }
         poolState.put("taskList", taskList);
+        List<Map<String, Object>> pools = new ArrayList<>();
+        try {
+            for (RunFromPool pool : getRunFromPools(ServiceConfigUtil.getServiceEngine(ServiceConfigUtil.getEngine()).getThreadPool())) {
+                Map<String, Object> poolInfo = new HashMap<>();
+                poolInfo.put("poolId", pool.getName());
+                poolInfo.put("priority", pool.getPriority());
+                poolInfo.put("weight", pool.getWeight());
+                ThreadPoolExecutor poolExecutor = poolExecutors.get(pool.getName());
+                poolInfo.put("ownThreads", poolExecutor != null);
+                poolInfo.put("maxNumberOfInvokerThreads", poolExecutor != null ? poolExecutor.getMaximumPoolSize() : executor.getMaximumPoolSize());
+                poolInfo.put("queueDepth", queueDepths.getOrDefault(pool.getName(), 0));
+                getPoolStatistics(pool.getName()).addTo(poolInfo);
+                pools.add(poolInfo);
+            }
+        } catch (GenericConfigException e) {
+            Debug.logWarning(e, "Exception thrown while getting <thread-pool> model: ", module);
+        }
+        poolState.put("pools", pools);
         return poolState;
     }
 
@@ -145,9 +267,30 @@ public final class JobPoller implements ServiceConfigListener {
     public void onServiceConfigChange(ServiceConfig serviceConfig) {
         if (!executor.isShutdown()) {
             ThreadPool threadPool = serviceConfig.getServiceEngine(ServiceConfigUtil.getEngine()).getThreadPool();
-            executor.setCorePoolSize(threadPool.getMinThreads());
-            executor.setMaximumPoolSize(threadPool.getMaxThreads());
-            executor.setKeepAliveTime(threadPool.getTtl(), TimeUnit.MILLISECONDS);
+            // the thread mode and the queue sizes are only set when the threads are created
+            if (virtualThreads) {
+                resize(executor, threadPool.getMaxVirtualThreads(), threadPool.getMaxVirtualThreads(), threadPool.getTtl());
+            } else {
+                executor.setCorePoolSize(threadPool.getMinThreads());
+                executor.setMaximumPoolSize(threadPool.getMaxThreads());
+                executor.setKeepAliveTime(threadPool.getTtl(), TimeUnit.MILLISECONDS);
+            }
+            Map<String, RunFromPool> ownThreadPools = new HashMap<>();
+            for (RunFromPool pool : threadPool.getRunFromPools()) {
+                if (pool.hasOwnThreads()) {
+                    ownThreadPools.put(pool.getName(), pool);
+                }
+            }
+            for (Map.Entry<String, ThreadPoolExecutor> entry : poolExecutors.entrySet()) {
+                RunFromPool pool = ownThreadPools.get(entry.getKey());
+                if (pool != null) {
+                    resize(entry.getValue(), virtualThreads ? pool.getMaxThreads() : pool.getMinThreads(), pool.getMaxThreads(), threadPool.getTtl());
+                } else if (poolExecutors.remove(entry.getKey(), entry.getValue())) {
+                    // the pool runs on the shared threads now, or is no longer run: the queued jobs still run
+                    entry.getValue().shutdown();
+                    Debug.logInfo("Pool " + entry.getKey() + " no longer has its own threads, its jobs run on the shared threads", module);
+                }
+            }
         }
     }
 
@@ -166,14 +309,78 @@ public final class JobPoller implements ServiceConfigListener {
      * @throws RejectedExecutionException if the poller is stopped.
      */
     public void queueNow(Job job) throws InvalidJobException {
+        ThreadPoolExecutor jobExecutor = null;
+        String poolName = getPoolName(job);
+        if (poolName != null) {
+            jobExecutor = poolExecutors.get(poolName);
+        }
+        if (jobExecutor == null) {
+            jobExecutor = executor;
+        }
         job.queue();
         try {
-            executor.execute(job);
+            jobExecutor.execute(job);
         } catch (Exception e) {
             job.deQueue();
         }
     }
 
+    /**
+     * Tells the <code>JobPoller</code> a job was persisted in the JobSandbox entity by this server.
+     * When <code>push-enabled</code> is set, the poller is woken up when the job is due, after the current
+     * transaction commits, instead of finding the job at the next poll.
+     *
+     * @param jm The <code>JobManager</code> which persisted the job.
+     * @param runTime The time in milliseconds the job should run.
+     */
+    public void jobPersisted(JobManager jm, long runTime) {
+        if (jobManagerPollerThread == null || jobManagers.get(jm.getDelegator().getDelegatorName()) != jm || !pushEnabled()) {
+            return;
+        }
+        try {
+            if (TransactionUtil.isTransactionInPlace()) {
+                TransactionUtil.registerSynchronization(new WakeUpSynchronization(runTime));
+                return;
+            }
+        } catch (GenericTransactionException e) {
+            Debug.logWarning(e, "Unable to wait for the transaction of the persisted job, waking up the job poller now: ", module);
+        }
+        wakeUp(runTime);
+    }
+
+    private void wakeUp(long runTime) {
+        synchronized (wakeUpTimes) {
+            if (wakeUpTimes.add(runTime)) {
+                if (wakeUpTimes.size() > MAX_WAKE_UP_TIMES) {
+                    // the last jobs will be found by a regular poll
+                    wakeUpTimes.pollLast();
+                }
+                wakeUpTimes.notifyAll();
+            }
+        }
+    }
+
+    // Waits for the next poll, or for a job persisted by this server to be due.
+    private void waitForNextPoll(long pollWaitTime) throws InterruptedException {
+        long pollTime = System.currentTimeMillis() + pollWaitTime;
+        synchronized (wakeUpTimes) {
+            long now = System.currentTimeMillis();
+            long wakeUpTime = wakeUpTimes.isEmpty() ? pollTime : Math.min(pollTime, wakeUpTimes.first());
+            while (now < wakeUpTime) {
+                wakeUpTimes.wait(wakeUpTime - now);
+                now = System.currentTimeMillis();
+                wakeUpTime = wakeUpTimes.isEmpty() ? pollTime : Math.min(pollTime, wakeUpTimes.first());
+            }
+            wakeUpTimes.headSet(now, true).clear();
+        }
+    }
+
+    private static void jobStarted(long queueToStartMillis) {
+        startedJobs.increment();
+        totalQueueToStartMillis.add(queueToStartMillis);
+        maxQueueToStartMillis.accumulateAndGet(queueToStartMillis, Math::max);
+    }
+
     /**
      * Stops the <code>JobPoller</code>. This method is called when OFBiz shuts down.
      * The <code>JobPoller</code> cannot be restarted.
@@ -183,7 +390,11 @@ public final class JobPoller implements ServiceConfigListener {
         if (jobManagerPollerThread != null) {
             jobManagerPollerThread.interrupt();
         }
-        List<Runnable> queuedJobs = executor.shutdownNow();
+        List<Runnable> queuedJobs = new ArrayList<>(executor.shutdownNow());
+        for (ThreadPoolExecutor poolExecutor : poolExecutors.values()) {
+            queuedJobs.addAll(poolExecutor.shutdownNow());
+        }
+        VirtualThreads.stopPinnedMonitor();
         for (Runnable task : queuedJobs) {
             try {
                 Job queuedJob = (Job) task;
@@ -195,10 +406,116 @@ public final class JobPoller implements ServiceConfigListener {
         Debug.logInfo("JobPoller shutdown completed.", module);
     }
 
+    private static final class JobExecutor extends ThreadPoolExecutor {
+
+        private JobExecutor(int minThreads, int maxThreads, long ttl, int queueSize, String threadNamePrefix) {
+            super(minThreads, maxThreads, ttl, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(queueSize),
+                    new JobInvokerThreadFactory(threadNamePrefix), new ThreadPoolExecutor.AbortPolicy());
+        }
+
+        /** Creates an executor running the jobs on virtual threads. Its fixed number of threads acts as a
+         * semaphore limiting the jobs running at once, the idle threads ending after the ttl. */
+        private JobExecutor(int maxJobs, long ttl, int queueSize, String threadNamePrefix) {
+            super(maxJobs, maxJobs, Math.max(1, ttl), TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(queueSize),
+                    VirtualThreads.newThreadFactory(threadNamePrefix, new JobInvokerThreadFactory(threadNamePrefix)), new ThreadPoolExecutor.AbortPolicy());
+            allowCoreThreadTimeOut(true);
+        }
+
+        @Override
+        protected void beforeExecute(Thread thread, Runnable runnable) {
+            String poolName = getPoolName((Job) runnable);
+            PoolStatistics statistics = poolName != null ? getPoolStatistics(poolName) : null;
+            if (statistics != null) {
+                statistics.active.incrementAndGet();
+            }
+            if (runnable instanceof AbstractJob) {
+                long readyTime = ((AbstractJob) runnable).getReadyTime();
+                if (readyTime > 0) {
+                    long queueToStartMillis = Math.max(0, System.currentTimeMillis() - readyTime);
+                    jobStarted(queueToStartMillis);
+                    if (statistics != null) {
+                        statistics.jobStarted(queueToStartMillis);
+                    }
+                }
+            }
+        }
+
+        @Override
+        protected void afterExecute(Runnable runnable, Throwable thrown) {
+            String poolName = getPoolName((Job) runnable);
+            if (poolName != null) {
+                getPoolStatistics(poolName).active.decrementAndGet();
+            }
+        }
+    }
+
+    // The number of running jobs of a pool, and the queue-to-start latencies of its last jobs.
+    private static final class PoolStatistics {
+        private static final int SAMPLES = 1024;
+
+        private final AtomicInteger active = new AtomicInteger();
+        // the fields below are guarded by this
+        private final long[] latencies = new long[SAMPLES];
+        private long started = 0;
+
+        private synchronized void jobStarted(long queueToStartMillis) {
+            latencies[(int) (started % SAMPLES)] = queueToStartMillis;
+            started++;
+        }
+
+        private void addTo(Map<String, Object> poolInfo) {
+            long[] sorted;
+            long startedJobs;
+            synchronized (this) {
+                startedJobs = started;
+                sorted = Arrays.copyOf(latencies, (int) Math.min(started, SAMPLES));
+            }
+            Arrays.sort(sorted);
+            poolInfo.put("numberOfActiveInvokerThreads", active.get());
+            poolInfo.put("numberOfStartedJobs", startedJobs);
+            poolInfo.put("p50QueueToStartMillis", percentile(sorted, 50));
+            poolInfo.put("p90QueueToStartMillis", percentile(sorted, 90));
+            poolInfo.put("p99QueueToStartMillis", percentile(sorted, 99));
+            poolInfo.put("maxQueueToStartMillis", sorted.length == 0 ? 0 : sorted[sorted.length - 1]);
+        }
+
+        private static long percentile(long[] sorted, int percent) {
+            if (sorted.length == 0) {
+                return 0;
+            }
+            return sorted[Math.min(sorted.length - 1, (int) Math.ceil(sorted.length * percent / 100.0) - 1)];
+        }
+    }
+
+    // Wakes up the job poller when the transaction which persisted a job commits.
+    private final class WakeUpSynchronization implements Synchronization {
+        private final long runTime;
+
+        private WakeUpSynchronization(long runTime) {
+            this.runTime = runTime;
+        }
+
+        @Override
+        public void beforeCompletion() {
+        }
+
+        @Override
+        public void afterCompletion(int status) {
+            if (status == Status.STATUS_COMMITTED) {
+                wakeUp(runTime);
+            }
+        }
+    }
+
     private static class JobInvokerThreadFactory implements ThreadFactory {
+        private final String namePrefix;
+
+        private JobInvokerThreadFactory(String namePrefix) {
+            this.namePrefix = namePrefix;
+        }
 
         public Thread newThread(Runnable runnable) {
-            return new Thread(runnable, "OFBiz-JobQueue-" + created.getAndIncrement());
+            return new Thread(runnable, namePrefix + created.getAndIncrement());
         }
     }
 
@@ -214,44 +531,41 @@ public final class JobPoller implements ServiceConfigListener {
                     Thread.sleep(1000);
                 }
                 while (!executor.isShutdown()) {
-                    int remainingCapacity = executor.getQueue().remainingCapacity();
-                    if (remainingCapacity > 0) {
-                        // Build "list of lists"
-                        Collection<JobManager> jmCollection = jobManagers.values();
-                        List<Iterator<Job>> pollResults = new ArrayList<>();
-                        for (JobManager jm : jmCollection) {
-                            if (!jm.isAvailable()) {
-                                if (Debug.infoOn()) {
-                                    Debug.logInfo("The job manager is locked.", module);
-                                }
-                                continue;
+                    // Build "list of lists"
+                    Collection<JobManager> jmCollection = jobManagers.values();
+                    List<Iterator<Job>> pollResults = new ArrayList<>();
+                    for (JobManager jm : jmCollection) {
+                        if (!jm.isAvailable()) {
+                            if (Debug.infoOn()) {
+                                Debug.logInfo("The job manager is locked.", module);
                             }
-                            jm.reloadCrashedJobs();
-                            pollResults.add(jm.poll(remainingCapacity).iterator());
+                            continue;
                         }
-                        // Create queue candidate list from "list of lists"
-                        List<Job> queueCandidates = new ArrayList<>();
-                        boolean addingJobs = true;
-                        while (addingJobs) {
-                            addingJobs = false;
-                            for (Iterator<Job> jobIterator : pollResults) {
-                                if (jobIterator.hasNext()) {
-                                    queueCandidates.add(jobIterator.next());
-                                    addingJobs = true;
-                                }
+                        jm.reloadCrashedJobs();
+                        pollResults.add(pollPools(jm).iterator());
+                    }
+                    // Create queue candidate list from "list of lists"
+                    List<Job> queueCandidates = new ArrayList<>();
+                    boolean addingJobs = true;
+                    while (addingJobs) {
+                        addingJobs = false;
+                        for (Iterator<Job> jobIterator : pollResults) {
+                            if (jobIterator.hasNext()) {
+                                queueCandidates.add(jobIterator.next());
+                                addingJobs = true;
                             }
                         }
-                        // The candidate list might be larger than the queue remaining capacity,
-                        // but that is okay - the excess jobs will be dequeued and rescheduled.
-                        for (Job job : queueCandidates) {
-                            try {
-                                queueNow(job);
-                            } catch (InvalidJobException e) {
-                                Debug.logError(e, module);
-                            }
+                    }
+                    // The candidate list might be larger than the queue remaining capacity,
+                    // but that is okay - the excess jobs will be dequeued and rescheduled.
+                    for (Job job : queueCandidates) {
+                        try {
+                            queueNow(job);
+                        } catch (InvalidJobException e) {
+                            Debug.logError(e, module);
                         }
                     }
-                    Thread.sleep(pollWaitTime());
+                    waitForNextPoll(pollWaitTime());
                 }
             } catch (InterruptedException e) {
                 // Happens when JobPoller shuts down - nothing to do.
@@ -259,5 +573,44 @@ public final class JobPoller implements ServiceConfigListener {
             }
             Debug.logInfo("JobPoller thread stopped.", module);
         }
+
+        // Polls a JobManager for the jobs of each pool, up to the remaining capacity of the queue running the pool.
+        private List<Job> pollPools(JobManager jm) {
+            ThreadPool threadPool;
+            try {
+                threadPool = ServiceConfigUtil.getServiceEngine(ServiceConfigUtil.getEngine()).getThreadPool();
+            } catch (GenericConfigException e) {
+                Debug.logWarning(e, "Unable to get run pools - not running job: ", module);
+                return Collections.emptyList();
+            }
+            List<RunFromPool> runFromPools = getRunFromPools(threadPool);
+            List<Job> jobs = new ArrayList<>();
+            if (runFromPools.isEmpty()) {
+                noPoolName = null;
+                int capacity = executor.getQueue().remainingCapacity();
+                if (capacity > 0) {
+                    jobs.addAll(jm.poll(null, true, capacity));
+                }
+            } else {
+                // the jobs without a pool are run from the send-to-pool, or from the first pool
+                String noPool = threadPool.getRunFromPools().get(0).getName();
+                for (RunFromPool pool : runFromPools) {
+                    if (pool.getName().equals(threadPool.getSendToPool())) {
+                        noPool = pool.getName();
+                    }
+                }
+                noPoolName = noPool;
+                jobs.addAll(JobPools.poll(runFromPools, noPool, executor.getQueue().remainingCapacity(),
+                        pool -> getPoolExecutor(pool, threadPool).getQueue().remainingCapacity(), jm::poll));
+            }
+            if (jobs.isEmpty()) {
+                // No jobs to run, see if there are any jobs to purge
+                int capacity = executor.getQueue().remainingCapacity();
+                if (capacity > 0) {
+                    jobs.addAll(jm.pollPurgeJobs(capacity));
+                }
+            }
+            return jobs;
+        }
     }
 }
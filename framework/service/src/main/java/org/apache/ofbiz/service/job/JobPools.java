@@ -0,0 +1,92 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.service.job;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.ToIntFunction;
+
+import org.apache.ofbiz.service.config.model.RunFromPool;
+
+/**
+ * Splits the capacity of the job queues between the pools run by this server.
+ * <p>A pool with its own threads is polled up to the remaining capacity of its own queue. Each pool running
+ * on the shared threads gets a share of the remaining capacity of the shared queue in proportion to its weight,
+ * then the capacity left by the pools without enough jobs is given to the other pools, by priority.</p>
+ */
+final class JobPools {
+
+    private JobPools() {}
+
+    /** Polls the jobs of a pool, see {@link JobManager#poll(String, boolean, int)}. */
+    @FunctionalInterface
+    interface PoolPoller {
+        List<Job> poll(String poolName, boolean includeNoPool, int limit);
+    }
+
+    /**
+     * Polls the jobs of the pools.
+     *
+     * @param runFromPools The pools run by this server, by decreasing priority.
+     * @param noPool The pool running the jobs without a pool.
+     * @param sharedCapacity The remaining capacity of the queue shared by the pools.
+     * @param ownCapacity Returns the remaining capacity of the queue of a pool with its own threads.
+     * @param poller Polls the jobs of a pool.
+     * @return The jobs polled.
+     */
+    static List<Job> poll(List<RunFromPool> runFromPools, String noPool, int sharedCapacity, ToIntFunction<RunFromPool> ownCapacity, PoolPoller poller) {
+        List<Job> jobs = new ArrayList<>();
+        List<RunFromPool> sharedPools = new ArrayList<>();
+        int totalWeight = 0;
+        for (RunFromPool pool : runFromPools) {
+            if (pool.hasOwnThreads()) {
+                int capacity = ownCapacity.applyAsInt(pool);
+                if (capacity > 0) {
+                    jobs.addAll(poller.poll(pool.getName(), pool.getName().equals(noPool), capacity));
+                }
+            } else {
+                sharedPools.add(pool);
+                totalWeight += pool.getWeight();
+            }
+        }
+        int remainingCapacity = sharedCapacity;
+        List<RunFromPool> fullPools = new ArrayList<>();
+        for (RunFromPool pool : sharedPools) {
+            if (remainingCapacity <= 0) {
+                break;
+            }
+            int share = Math.min(remainingCapacity, Math.max(1, sharedCapacity * pool.getWeight() / totalWeight));
+            List<Job> polled = poller.poll(pool.getName(), pool.getName().equals(noPool), share);
+            jobs.addAll(polled);
+            remainingCapacity -= polled.size();
+            if (polled.size() == share) {
+                fullPools.add(pool);
+            }
+        }
+        for (RunFromPool pool : fullPools) {
+            if (remainingCapacity <= 0) {
+                break;
+            }
+            List<Job> polled = poller.poll(pool.getName(), pool.getName().equals(noPool), remainingCapacity);
+            jobs.addAll(polled);
+            remainingCapacity -= polled.size();
+        }
+        return jobs;
+    }
+}
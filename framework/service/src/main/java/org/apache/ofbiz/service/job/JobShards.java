@@ -0,0 +1,205 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.service.job;
+
+import java.sql.Timestamp;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.ofbiz.base.concurrent.ExecutionPool;
+import org.apache.ofbiz.base.util.Debug;
+import org.apache.ofbiz.base.util.UtilMisc;
+import org.apache.ofbiz.entity.Delegator;
+import org.apache.ofbiz.entity.GenericEntityException;
+import org.apache.ofbiz.entity.GenericValue;
+import org.apache.ofbiz.entity.condition.EntityCondition;
+import org.apache.ofbiz.entity.condition.EntityOperator;
+import org.apache.ofbiz.entity.transaction.TransactionUtil;
+import org.apache.ofbiz.entity.util.EntityQuery;
+
+/**
+ * The range of job shards polled by an instance.
+ * <p>Each job gets a shard when it is created, stored in the shardId field of the JobSandbox entity: a hash
+ * of its id, or a random shard when the id is only assigned by the sequencer as the job is created. The instances sharing the database record a heartbeat in the JobManagerShard entity, and each one
+ * takes an equal part of the shards, in the order of the instance ids of the live instances: since they all
+ * read the same heartbeats, they compute the same ranges without talking to each other. When an instance
+ * starts, stops or misses its heartbeats, the ranges are recomputed at the next refresh of each instance.
+ * Until then two ranges may overlap, which is safe since the jobs are still claimed with a conditional
+ * update, or leave shards unpolled for one refresh interval.</p>
+ * <p>Once started, the heartbeat is recorded on its own schedule rather than when the jobs are polled, so that
+ * an instance whose queue stays full, and which does not poll, keeps its range.</p>
+ */
+public final class JobShards {
+
+    public static final String module = JobShards.class.getName();
+    public static final int SHARDS = 1024;
+    private static final ScheduledExecutorService heartbeatExecutor = ExecutionPool.getScheduledExecutor(new ThreadGroup(module), "OFBiz-job-shards", 1, 0, true);
+
+    private final Delegator delegator;
+    private final String instanceId;
+    private final long expireMillis;
+    private volatile int shardStart = 0;
+    private volatile int shardEnd = SHARDS;
+    private volatile int instanceCount = 1;
+    private volatile long lastRefresh = 0;
+    private ScheduledFuture<?> heartbeat = null;
+    private boolean stopped = false;
+
+    /** Creates the shard range of an instance.
+     *@param delegator The delegator of the JobSandbox and JobManagerShard entities
+     *@param instanceId The id of the instance
+     *@param expireMillis The number of milliseconds after its last heartbeat an instance is considered gone
+     */
+    public JobShards(Delegator delegator, String instanceId, long expireMillis) {
+        this.delegator = delegator;
+        this.instanceId = instanceId;
+        this.expireMillis = expireMillis;
+    }
+
+    /** Returns the shard of a job id. */
+    public static long shardOf(String jobId) {
+        // spread the sequential ids over the shards
+        int hash = jobId.hashCode();
+        hash ^= hash >>> 16;
+        hash *= 0x85ebca6b;
+        hash ^= hash >>> 13;
+        hash *= 0xc2b2ae35;
+        hash ^= hash >>> 16;
+        return hash & (SHARDS - 1);
+    }
+
+    /** Returns a random shard, for a job created with {@link Delegator#createSetNextSeqId} which sets its id. */
+    public static long nextShard() {
+        return ThreadLocalRandom.current().nextInt(SHARDS);
+    }
+
+    /** Starts recording the heartbeat of the instance every third of the heartbeat lifespan, until it is unregistered. */
+    public synchronized void start() {
+        stopped = false;
+        if (heartbeat == null) {
+            long interval = Math.max(1, expireMillis / 3);
+            heartbeat = heartbeatExecutor.scheduleWithFixedDelay(this::refreshQuietly, 0, interval, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /** Refreshes the range when the last refresh is older than a third of the heartbeat lifespan; logs the errors. */
+    public void refreshIfDue() {
+        if (System.currentTimeMillis() - lastRefresh < expireMillis / 3) {
+            return;
+        }
+        refreshQuietly();
+    }
+
+    private void refreshQuietly() {
+        try {
+            refresh();
+        } catch (GenericEntityException | RuntimeException e) {
+            Debug.logWarning(e, "Unable to refresh the job shards of instance " + instanceId + ", keeping shards [" + shardStart + ", " + shardEnd + ")", module);
+        }
+    }
+
+    /** Records the heartbeat of the instance, and computes its range from the instances with a live heartbeat. */
+    public synchronized void refresh() throws GenericEntityException {
+        if (stopped) {
+            // a heartbeat waiting for the monitor while the instance was unregistered must not record it again
+            return;
+        }
+        long now = System.currentTimeMillis();
+        boolean beganTransaction = TransactionUtil.begin();
+        try {
+            List<GenericValue> liveInstances = EntityQuery.use(delegator).select("instanceId").from("JobManagerShard")
+                    .where(EntityCondition.makeCondition("lastHeartbeat", EntityOperator.GREATER_THAN, new Timestamp(now - expireMillis)),
+                            EntityCondition.makeCondition("instanceId", EntityOperator.NOT_EQUAL, instanceId))
+                    .orderBy("instanceId").queryList();
+            int index = 0;
+            for (GenericValue liveInstance : liveInstances) {
+                if (liveInstance.getString("instanceId").compareTo(instanceId) < 0) {
+                    index++;
+                }
+            }
+            int count = liveInstances.size() + 1;
+            int start = index * SHARDS / count;
+            int end = (index + 1) * SHARDS / count;
+            delegator.createOrStore(delegator.makeValue("JobManagerShard", UtilMisc.toMap("instanceId", instanceId,
+                    "lastHeartbeat", new Timestamp(now), "shardStart", (long) start, "shardEnd", (long) end)));
+            if (start == 0) {
+                // the owner of the first range removes the instances gone for long
+                delegator.removeByCondition("JobManagerShard",
+                        EntityCondition.makeCondition("lastHeartbeat", EntityOperator.LESS_THAN, new Timestamp(now - 10 * expireMillis)));
+            }
+            TransactionUtil.commit(beganTransaction);
+            if (start != shardStart || end != shardEnd) {
+                Debug.logInfo("Instance " + instanceId + " of " + count + " now polls the job shards [" + start + ", " + end + ")", module);
+            }
+            shardStart = start;
+            shardEnd = end;
+            instanceCount = count;
+            lastRefresh = now;
+        } catch (GenericEntityException | RuntimeException e) {
+            TransactionUtil.rollback(beganTransaction, "Error refreshing the job shards", e);
+            throw e;
+        }
+    }
+
+    /** Removes the heartbeat of the instance, so that the other instances take over its range at their next refresh. */
+    public synchronized void unregister() {
+        stopped = true;
+        if (heartbeat != null) {
+            heartbeat.cancel(false);
+            heartbeat = null;
+        }
+        try {
+            delegator.removeByAnd("JobManagerShard", UtilMisc.toMap("instanceId", instanceId));
+        } catch (GenericEntityException e) {
+            Debug.logWarning(e, "Unable to remove the job shards of instance " + instanceId, module);
+        }
+        lastRefresh = 0;
+    }
+
+    /** Returns the condition on the JobSandbox entity selecting the jobs of the range, including the jobs without a shard for the first range. */
+    public EntityCondition getCondition() {
+        int start = shardStart;
+        int end = shardEnd;
+        EntityCondition range = EntityCondition.makeCondition(EntityCondition.makeCondition("shardId", EntityOperator.GREATER_THAN_EQUAL_TO, (long) start),
+                EntityOperator.AND, EntityCondition.makeCondition("shardId", EntityOperator.LESS_THAN, (long) end));
+        if (start == 0) {
+            return EntityCondition.makeCondition(range, EntityOperator.OR, EntityCondition.makeCondition("shardId", EntityOperator.EQUALS, null));
+        }
+        return range;
+    }
+
+    public String getInstanceId() {
+        return instanceId;
+    }
+
+    public int getShardStart() {
+        return shardStart;
+    }
+
+    public int getShardEnd() {
+        return shardEnd;
+    }
+
+    public int getInstanceCount() {
+        return instanceCount;
+    }
+}
@@ -237,6 +237,7 @@ public class PersistedServiceJob extends GenericServiceJob {
                 newJob.set("currentRetryCount", 0L);
             }
             nextRecurrence = next;
+            newJob.set("shardId", JobShards.nextShard());
             delegator.createSetNextSeqId(newJob);
             if (Debug.verboseOn()) {
                 Debug.logVerbose("Created next job entry: " + newJob, module);
@@ -405,4 +406,15 @@ public class PersistedServiceJob extends GenericServiceJob {
     public Date getStartTime() {
         return new Date(startTime);
     }
+
+    /** Returns the pool of this job, or null when it has none. */
+    public String getPoolId() {
+        return jobValue.getString("poolId");
+    }
+
+    @Override
+    protected long getReadyTime() {
+        // the job waits since it is due, the time spent until the JobPoller finds it included
+        return Math.min(startTime, super.getReadyTime());
+    }
 }
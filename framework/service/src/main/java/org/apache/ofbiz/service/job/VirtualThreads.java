@@ -0,0 +1,135 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.service.job;
+
+import java.lang.reflect.Method;
+import java.time.Duration;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+import org.apache.ofbiz.base.util.Debug;
+
+/**
+ * Creates the virtual threads of the job executors, when the JVM supports them.
+ * <p>The project is built for Java 8, so the virtual thread builder of Java 21 and the JFR event stream are
+ * looked up by reflection. When they are missing, {@link #isAvailable()} returns false and the jobs run on
+ * platform threads.</p>
+ * <p>A virtual thread blocked in a <code>synchronized</code> block, or in native code, pins its carrier thread
+ * until the block exits, which may starve the other virtual threads. When the pinning monitor is started,
+ * each <code>jdk.VirtualThreadPinned</code> event longer than the threshold is counted and logged with its
+ * stack trace.</p>
+ */
+final class VirtualThreads {
+
+    public static final String module = VirtualThreads.class.getName();
+    private static final String PINNED_EVENT = "jdk.VirtualThreadPinned";
+    // the number of pinned events logged before only one in LOG_PINNED_EVERY is
+    private static final int LOG_PINNED_FIRST = 100;
+    private static final int LOG_PINNED_EVERY = 1000;
+
+    private static final Object ofVirtual = ofVirtual();
+    private static final LongAdder pinnedEvents = new LongAdder();
+    private static Object pinnedMonitor = null;
+
+    private VirtualThreads() {}
+
+    private static Object ofVirtual() {
+        try {
+            return Thread.class.getMethod("ofVirtual").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+
+    /** Returns true when the JVM supports virtual threads. */
+    static boolean isAvailable() {
+        return ofVirtual != null;
+    }
+
+    /** Returns a factory of virtual threads named with a prefix followed by a counter.
+     *@param namePrefix The prefix of the thread names
+     *@param fallback The factory returned, with a warning, when the JVM does not support virtual threads
+     */
+    static ThreadFactory newThreadFactory(String namePrefix, ThreadFactory fallback) {
+        if (ofVirtual == null) {
+            Debug.logWarning("Virtual threads are not supported by this JVM, using platform threads for " + namePrefix, module);
+            return fallback;
+        }
+        try {
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            Object builder = builderClass.getMethod("name", String.class, long.class).invoke(ofVirtual, namePrefix, 0L);
+            return (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            Debug.logWarning(e, "Unable to create a virtual thread factory, using platform threads for " + namePrefix, module);
+            return fallback;
+        }
+    }
+
+    /** Starts logging the virtual threads pinned for longer than a threshold; does nothing when already started or when JFR is not available.
+     *@param thresholdMillis The shortest pinning logged, in milliseconds
+     */
+    static synchronized void startPinnedMonitor(long thresholdMillis) {
+        if (pinnedMonitor != null || ofVirtual == null) {
+            return;
+        }
+        try {
+            Class<?> streamClass = Class.forName("jdk.jfr.consumer.RecordingStream");
+            Object stream = streamClass.getConstructor().newInstance();
+            Object settings = streamClass.getMethod("enable", String.class).invoke(stream, PINNED_EVENT);
+            Class<?> settingsClass = Class.forName("jdk.jfr.EventSettings");
+            settingsClass.getMethod("withThreshold", Duration.class).invoke(settings, Duration.ofMillis(thresholdMillis));
+            settingsClass.getMethod("withStackTrace").invoke(settings);
+            Consumer<Object> handler = VirtualThreads::pinned;
+            streamClass.getMethod("onEvent", String.class, Consumer.class).invoke(stream, PINNED_EVENT, handler);
+            streamClass.getMethod("startAsync").invoke(stream);
+            pinnedMonitor = stream;
+            Debug.logInfo("Logging the virtual threads pinned for more than " + thresholdMillis + " ms", module);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            Debug.logWarning("Unable to monitor the pinned virtual threads: " + e, module);
+        }
+    }
+
+    /** Stops the pinning monitor. */
+    static synchronized void stopPinnedMonitor() {
+        if (pinnedMonitor == null) {
+            return;
+        }
+        try {
+            Method close = pinnedMonitor.getClass().getMethod("close");
+            close.invoke(pinnedMonitor);
+        } catch (ReflectiveOperationException e) {
+            Debug.logWarning(e, module);
+        }
+        pinnedMonitor = null;
+    }
+
+    private static void pinned(Object event) {
+        pinnedEvents.increment();
+        long count = pinnedEvents.sum();
+        if (count <= LOG_PINNED_FIRST || count % LOG_PINNED_EVERY == 0) {
+            Debug.logWarning("Virtual thread pinned its carrier thread (" + count + " times so far): " + event, module);
+        }
+    }
+
+    /** Returns the number of pinnings longer than the threshold since the monitor was started. */
+    static long getPinnedEvents() {
+        return pinnedEvents.sum();
+    }
+}
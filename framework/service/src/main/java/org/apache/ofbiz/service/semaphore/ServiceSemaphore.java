@@ -19,6 +19,9 @@
 package org.apache.ofbiz.service.semaphore;
 
 import java.sql.Timestamp;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 
 import javax.transaction.Transaction;
 
@@ -35,15 +38,20 @@ import org.apache.ofbiz.service.job.JobManager;
 
 /**
  * ServiceSemaphore
+ * <p>The services of this instance first take a lock of the service in memory, so that a waiting service is
+ * woken up as soon as the running one releases it, and a failing one fails without a database query. The
+ * ServiceSemaphore entity then coordinates the instances: the service waits for a lock held by another
+ * instance by checking the entity every <code>semaphore-sleep</code> milliseconds.</p>
  */
 public class ServiceSemaphore {
     // TODO: add something to make sure semaphores are cleaned up on failures and when the thread somehow goes away without cleaning it up
-    // TODO: write service engine test cases to make sure semaphore both blocking and timing out (use config to set sleep and wait to low values so it times out quickly)
 
     public static final String module = ServiceSemaphore.class.getName();
     public static final int SEMAPHORE_MODE_FAIL = 0;
     public static final int SEMAPHORE_MODE_WAIT = 1;
     public static final int SEMAPHORE_MODE_NONE = 2;
+    // the locks of the services in this instance, by delegator and service name since each delegator has its own ServiceSemaphore rows
+    private static final ConcurrentHashMap<String, Semaphore> localLocks = new ConcurrentHashMap<>();
 
     protected Delegator delegator;
     protected GenericValue lock;
@@ -52,6 +60,7 @@ public class ServiceSemaphore {
     protected int wait = 0;
     protected int mode = SEMAPHORE_MODE_NONE;
     protected Timestamp lockTime = null;
+    private boolean localLockHeld = false;
 
     public ServiceSemaphore(Delegator delegator, ModelService model) {
         this.delegator = delegator;
@@ -67,36 +76,85 @@ public class ServiceSemaphore {
 
         lockTime = UtilDateTime.nowTimestamp();
 
-        if (this.checkLockNeedToWait()) {
-            waitOrFail();
+        acquireLocalLock();
+        boolean acquired = false;
+        try {
+            if (this.checkLockNeedToWait()) {
+                waitOrFail();
+            }
+            acquired = true;
+        } finally {
+            if (!acquired) {
+                releaseLocalLock();
+            }
         }
     }
 
-    public synchronized void release() throws SemaphoreFailException {
+    public void release() throws SemaphoreFailException {
         if (mode == SEMAPHORE_MODE_NONE) {
             return;
         }
 
-        // remove the lock file
-        if (lock != null) {
-            dbWrite(lock, true);
+        try {
+            // remove the lock file
+            if (lock != null) {
+                dbWrite(lock, true);
+            }
+        } finally {
+            releaseLocalLock();
         }
     }
 
+    private void acquireLocalLock() throws SemaphoreWaitException, SemaphoreFailException {
+        Semaphore localLock = localLocks.computeIfAbsent(getLocalLockKey(), key -> new Semaphore(1, true));
+        if (SEMAPHORE_MODE_FAIL == mode) {
+            if (!localLock.tryAcquire()) {
+                throw new SemaphoreFailException("Service [" + model.name + "] is locked");
+            }
+        } else {
+            try {
+                if (!localLock.tryAcquire(model.semaphoreWait, TimeUnit.SECONDS)) {
+                    throw new SemaphoreWaitException(getTimeoutMessage());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new SemaphoreWaitException("Service [" + model.name + "] with wait semaphore was interrupted, wait started at " + lockTime);
+            }
+        }
+        localLockHeld = true;
+    }
+
+    private void releaseLocalLock() {
+        if (localLockHeld) {
+            localLockHeld = false;
+            localLocks.get(getLocalLockKey()).release();
+        }
+    }
+
+    private String getLocalLockKey() {
+        return delegator.getDelegatorName() + ":" + model.name;
+    }
+
+    private String getTimeoutMessage() {
+        double waitTimeSec = ((System.currentTimeMillis() - lockTime.getTime()) / 1000.0);
+        return "Service [" + model.name + "] with wait semaphore exceeded wait timeout, waited [" + waitTimeSec + "], wait started at " + lockTime;
+    }
+
     private void waitOrFail() throws SemaphoreWaitException, SemaphoreFailException {
         if (SEMAPHORE_MODE_FAIL == mode) {
             // fail
             throw new SemaphoreFailException("Service [" + model.name + "] is locked");
         } else if (SEMAPHORE_MODE_WAIT == mode) {
-            // get the wait and sleep values
-            long maxWaitCount = ((model.semaphoreWait * 1000) / model.semaphoreSleep);
+            // another instance holds the lock, the time waited for the local lock counts in the wait time
+            long deadline = lockTime.getTime() + model.semaphoreWait * 1000L;
             long sleep = model.semaphoreSleep;
 
             boolean timedOut = true;
-            while (wait < maxWaitCount) {
+            long remaining;
+            while ((remaining = deadline - System.currentTimeMillis()) > 0) {
                 wait++;
                 try {
-                    Thread.sleep(sleep);
+                    Thread.sleep(Math.min(sleep, remaining));
                 } catch (InterruptedException e) {
                     Debug.logInfo(e, "Sleep interrupted: ServiceSemaphone.waitOrFail()", module);
                 }
@@ -108,9 +166,7 @@ public class ServiceSemaphore {
                 }
             }
             if (timedOut) {
-                double waitTimeSec = ((System.currentTimeMillis() - lockTime.getTime()) / 1000.0);
-                String errMsg = "Service [" + model.name + "] with wait semaphore exceeded wait timeout, waited [" + waitTimeSec + "], wait started at " + lockTime;
-                throw new SemaphoreWaitException(errMsg);
+                throw new SemaphoreWaitException(getTimeoutMessage());
             }
         } else if (SEMAPHORE_MODE_NONE == mode) {
             Debug.logWarning("Semaphore mode [none] attempted to aquire a lock; but should not have!", module);
@@ -147,7 +203,8 @@ public class ServiceSemaphore {
         return true;
     }
 
-    private synchronized void dbWrite(GenericValue value, boolean delete) throws SemaphoreFailException {
+    // only called by the thread holding the local lock of the service
+    private void dbWrite(GenericValue value, boolean delete) throws SemaphoreFailException {
         Transaction parent = null;
         boolean beganTx = false;
         boolean isError = false;
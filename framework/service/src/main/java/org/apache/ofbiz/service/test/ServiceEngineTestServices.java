@@ -18,10 +18,13 @@
  */
 package org.apache.ofbiz.service.test;
 
+import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
 import org.apache.ofbiz.base.util.Debug;
 import org.apache.ofbiz.base.util.UtilMisc;
@@ -41,6 +44,70 @@ public class ServiceEngineTestServices {
 
     public static final String module = ServiceEngineTestServices.class.getName();
     public static final String resource = "ServiceErrorUiLabels";
+    // the messages received by testServiceEcaQueueTarget
+    public static final Queue<String> ecaQueueMessages = new ConcurrentLinkedQueue<>();
+
+    public static Map<String, Object> testJavaNoOp(DispatchContext dctx, Map<String, ? extends Object> context) {
+        return ServiceUtil.returnSuccess();
+    }
+
+    public Map<String, Object> testJavaNoOpInstance(DispatchContext dctx, Map<String, ? extends Object> context) {
+        return ServiceUtil.returnSuccess();
+    }
+
+    public static Map<String, Object> testServiceBatch(DispatchContext dctx, Map<String, ? extends Object> context) {
+        Long value = (Long) context.get("value");
+        if (value < 0) {
+            return ServiceUtil.returnError("Negative value: " + value);
+        }
+        Map<String, Object> result = ServiceUtil.returnSuccess();
+        result.put("doubled", value * 2);
+        return result;
+    }
+
+    public static Map<String, Object> testServiceThreadMode(DispatchContext dctx, Map<String, ? extends Object> context) {
+        Map<String, Object> result = ServiceUtil.returnSuccess();
+        boolean virtualThread;
+        try {
+            // Thread.isVirtual() is only available from Java 21
+            virtualThread = (Boolean) Thread.class.getMethod("isVirtual").invoke(Thread.currentThread());
+        } catch (ReflectiveOperationException e) {
+            virtualThread = false;
+        }
+        result.put("virtualThread", virtualThread);
+        result.put("threadName", Thread.currentThread().getName());
+        return result;
+    }
+
+    public static Map<String, Object> testServiceEcaQueueSource(DispatchContext dctx, Map<String, ? extends Object> context) {
+        return ServiceUtil.returnSuccess();
+    }
+
+    public static Map<String, Object> testServiceEcaQueueTarget(DispatchContext dctx, Map<String, ? extends Object> context) {
+        ecaQueueMessages.add((String) context.get("message"));
+        return ServiceUtil.returnSuccess();
+    }
+
+    public static Map<String, Object> testServiceProfilerParent(DispatchContext dctx, Map<String, ? extends Object> context) {
+        LocalDispatcher dispatcher = dctx.getDispatcher();
+        try {
+            dispatcher.runSync("testJavaNoOp", new HashMap<String, Object>());
+            dispatcher.runSync("testJavaNoOp", new HashMap<String, Object>());
+        } catch (GenericServiceException e) {
+            return ServiceUtil.returnError(e.toString());
+        }
+        return ServiceUtil.returnSuccess();
+    }
+
+    public static Map<String, Object> testServiceSemaphoreSleep(DispatchContext dctx, Map<String, ? extends Object> context) {
+        try {
+            Thread.sleep((Long) context.get("sleepMillis"));
+        } catch (InterruptedException e) {
+            Debug.logError(e, "Sleep interrupted: " + e.toString(), module);
+            return ServiceUtil.returnError(e.toString());
+        }
+        return ServiceUtil.returnSuccess();
+    }
 
     public static Map<String, Object> testServiceDeadLockRetry(DispatchContext dctx, Map<String, ? extends Object> context) {
         Locale locale = (Locale) context.get("locale");
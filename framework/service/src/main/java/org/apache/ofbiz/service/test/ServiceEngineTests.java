@@ -18,14 +18,47 @@
  *******************************************************************************/
 package org.apache.ofbiz.service.test;
 
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 
+import org.apache.ofbiz.base.util.Debug;
 import org.apache.ofbiz.base.util.UtilMisc;
+import org.apache.ofbiz.base.util.UtilURL;
+import org.apache.ofbiz.base.util.UtilXml;
+import org.apache.ofbiz.base.util.cache.UtilCache;
+import org.apache.ofbiz.entity.Delegator;
+import org.apache.ofbiz.entity.GenericValue;
+import org.apache.ofbiz.entity.condition.EntityCondition;
+import org.apache.ofbiz.entity.condition.EntityOperator;
+import org.apache.ofbiz.entity.transaction.TransactionUtil;
+import org.apache.ofbiz.entity.util.EntityQuery;
+import org.apache.ofbiz.service.GenericResultWaiter;
+import org.apache.ofbiz.service.GenericServiceException;
 import org.apache.ofbiz.service.ModelService;
+import org.apache.ofbiz.service.ServiceProfiler;
+import org.apache.ofbiz.service.ServiceUtil;
+import org.apache.ofbiz.service.ServiceValidationException;
+import org.apache.ofbiz.service.calendar.RecurrenceRule;
+import org.apache.ofbiz.service.config.ServiceConfigUtil;
+import org.apache.ofbiz.service.config.model.ServiceConfig;
+import org.apache.ofbiz.service.config.model.ThreadPool;
+import org.apache.ofbiz.service.eca.ServiceEcaQueue;
+import org.apache.ofbiz.service.job.JobManager;
+import org.apache.ofbiz.service.job.JobShards;
 import org.apache.ofbiz.service.testtools.OFBizTestCase;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
 
 public class ServiceEngineTests extends OFBizTestCase {
 
+    public static final String module = ServiceEngineTests.class.getName();
+
     public ServiceEngineTests(String name) {
         super(name);
     }
@@ -42,4 +75,363 @@ public class ServiceEngineTests extends OFBizTestCase {
         Map<String, Object> result = dispatcher.runSync("testScv", UtilMisc.toMap("message", "Unit Test"));
         assertEquals("Service result success", ModelService.RESPOND_SUCCESS, result.get(ModelService.RESPONSE_MESSAGE));
     }
+
+    public void testModelServiceValidation() throws Exception {
+        ModelService model = dispatcher.getDispatchContext().getModelService("testScv");
+        model.validate(UtilMisc.toMap("defaultValue", 1.0, "message", "Unit Test"), ModelService.IN_PARAM, Locale.getDefault());
+        try {
+            model.validate(UtilMisc.toMap("message", "Unit Test"), ModelService.IN_PARAM, Locale.getDefault());
+            fail("Missing required parameter not reported");
+        } catch (ServiceValidationException e) {
+            assertEquals("Missing fields", UtilMisc.toList("defaultValue"), e.getMissingFields());
+        }
+        try {
+            model.validate(UtilMisc.toMap("defaultValue", 1.0, "unknownParameter", "Unit Test"), ModelService.IN_PARAM, Locale.getDefault());
+            fail("Unknown parameter not reported");
+        } catch (ServiceValidationException e) {
+            assertEquals("Extra fields", UtilMisc.toList("unknownParameter"), e.getExtraFields());
+        }
+        try {
+            model.validate(UtilMisc.toMap("defaultValue", "Unit Test"), ModelService.IN_PARAM, Locale.getDefault());
+            fail("Wrong parameter type not reported");
+        } catch (ServiceValidationException e) {
+            assertEquals("Type failure", 1, e.getMessageList().size());
+        }
+        Map<String, Object> valid = model.makeValid(UtilMisc.toMap("defaultValue", "1.5", "message", "Unit Test", "unknownParameter", 1), ModelService.IN_PARAM);
+        assertEquals("Converted parameter", 1.5, valid.get("defaultValue"));
+        assertEquals("Unchanged parameter", "Unit Test", valid.get("message"));
+        assertFalse("Unknown parameter removed", valid.containsKey("unknownParameter"));
+    }
+
+    public void testServiceSemaphoreWait() throws Exception {
+        long startTime = System.currentTimeMillis();
+        GenericResultWaiter holder = dispatcher.runAsyncWait("testServiceSemaphoreWait", UtilMisc.toMap("sleepMillis", 500L), false);
+        Thread.sleep(100);
+        Map<String, Object> result = dispatcher.runSync("testServiceSemaphoreWait", UtilMisc.toMap("sleepMillis", 0L));
+        long elapsed = System.currentTimeMillis() - startTime;
+        assertTrue("Waiting service result success", ServiceUtil.isSuccess(result));
+        assertTrue("Holding service result success", ServiceUtil.isSuccess(holder.waitForResult()));
+        // the waiting service is woken up by the release, not after the 2 seconds of semaphore-sleep
+        assertTrue("Waiting service resumed on release (" + elapsed + " ms)", elapsed < 2000);
+    }
+
+    public void testServiceSemaphoreFail() throws Exception {
+        GenericResultWaiter holder = dispatcher.runAsyncWait("testServiceSemaphoreFail", UtilMisc.toMap("sleepMillis", 1000L), false);
+        Thread.sleep(200);
+        try {
+            dispatcher.runSync("testServiceSemaphoreFail", UtilMisc.toMap("sleepMillis", 0L));
+            fail("Locked service did not fail");
+        } catch (GenericServiceException e) {
+            // expected, the service is locked
+        }
+        assertTrue("Holding service result success", ServiceUtil.isSuccess(holder.waitForResult()));
+        assertTrue("Service run once released", ServiceUtil.isSuccess(dispatcher.runSync("testServiceSemaphoreFail", UtilMisc.toMap("sleepMillis", 0L))));
+    }
+
+    public void testJavaServiceDispatchOverhead() throws Exception {
+        int numberOfCalls = 10000;
+        for (String serviceName : UtilMisc.toList("testJavaNoOp", "testJavaNoOpInstance")) {
+            // the first calls load the class and look up the method
+            for (int i = 0; i < 100; i++) {
+                assertTrue("Service result success", ServiceUtil.isSuccess(dispatcher.runSync(serviceName, new HashMap<String, Object>())));
+            }
+            long startTime = System.nanoTime();
+            for (int i = 0; i < numberOfCalls; i++) {
+                dispatcher.runSync(serviceName, new HashMap<String, Object>());
+            }
+            long elapsed = System.nanoTime() - startTime;
+            Debug.logInfo("Ran " + numberOfCalls + " calls of " + serviceName + " in " + (elapsed / 1000000) + " ms, "
+                    + (elapsed / numberOfCalls) + " ns per call", module);
+        }
+    }
+
+    public void testJobQueueToStartLatency() throws Exception {
+        Map<String, Object> poolState = dispatcher.getJobManager().getPoolState();
+        long startedJobs = (Long) poolState.get("numberOfStartedJobs");
+        dispatcher.runAsync("testScv", UtilMisc.toMap("message", "Unit Test"), false);
+        long timeout = System.currentTimeMillis() + 10000;
+        while ((Long) poolState.get("numberOfStartedJobs") == startedJobs && System.currentTimeMillis() < timeout) {
+            Thread.sleep(10);
+            poolState = dispatcher.getJobManager().getPoolState();
+        }
+        assertTrue("Job start recorded", (Long) poolState.get("numberOfStartedJobs") > startedJobs);
+        assertTrue("Average latency recorded", (Long) poolState.get("averageQueueToStartMillis") >= 0);
+        assertTrue("Max latency recorded", (Long) poolState.get("maxQueueToStartMillis") >= (Long) poolState.get("averageQueueToStartMillis"));
+    }
+
+    /*
+     * With push-enabled set, jobs persisted to run now are claimed and started once committed, well before
+     * the next poll of the JobSandbox entity
+     */
+    public void testPersistedJobPushLatency() throws Exception {
+        Delegator delegator = dispatcher.getDelegator();
+        ThreadPool threadPool = ServiceConfigUtil.getServiceEngine().getThreadPool();
+        long maxLatency = threadPool.getPollDbMillis() / 10;
+        // the reloaded configuration enables push, it is read again from the file afterwards
+        UtilCache<String, ServiceConfig> configCache = UtilCache.findCache("service.ServiceConfig");
+        Document document = UtilXml.readXmlDocument(UtilURL.fromResource(ServiceConfigUtil.getServiceEngineXmlFileName()), true, true);
+        Element engineElement = UtilXml.firstChildElement(document.getDocumentElement(), "service-engine", "name", ServiceConfigUtil.getEngine());
+        UtilXml.firstChildElement(engineElement, "thread-pool").setAttribute("push-enabled", "true");
+        String jobNamePrefix = "testPushLatency-" + System.currentTimeMillis() + "-";
+        int jobCount = 3;
+        try {
+            configCache.put("instance", ServiceConfig.create(document.getDocumentElement()));
+            assertEquals("Push enabled", Boolean.TRUE, dispatcher.getJobManager().getPoolState().get("pushEnabled"));
+            long scheduled = System.currentTimeMillis();
+            for (int i = 0; i < jobCount; i++) {
+                dispatcher.schedule(jobNamePrefix + i, threadPool.getSendToPool(), "testScv", UtilMisc.toMap("message", "Unit Test"),
+                        scheduled, RecurrenceRule.DAILY, 1, 1, 0, 0);
+            }
+            EntityCondition jobCondition = EntityCondition.makeCondition("jobName", EntityOperator.LIKE, jobNamePrefix + "%");
+            List<GenericValue> jobs = null;
+            long timeout = scheduled + maxLatency;
+            while (System.currentTimeMillis() < timeout) {
+                jobs = EntityQuery.use(delegator).from("JobSandbox").where(jobCondition,
+                        EntityCondition.makeCondition("startDateTime", EntityOperator.NOT_EQUAL, null)).queryList();
+                if (jobs.size() == jobCount) {
+                    break;
+                }
+                Thread.sleep(10);
+            }
+            assertNotNull("Jobs polled", jobs);
+            assertEquals("Jobs started within " + maxLatency + " ms, poll-db-millis is " + threadPool.getPollDbMillis(), jobCount, jobs.size());
+            for (GenericValue job : jobs) {
+                assertEquals("Job claimed by this instance", JobManager.instanceId, job.getString("runByInstanceId"));
+                assertTrue("Job started after it was scheduled", job.getTimestamp("startDateTime").getTime() - scheduled < maxLatency);
+            }
+        } finally {
+            configCache.remove("instance");
+            ServiceConfigUtil.getServiceConfig();
+        }
+    }
+
+    public void testJobPoolState() throws Exception {
+        Map<String, Object> poolState = dispatcher.getJobManager().getPoolState();
+        @SuppressWarnings("unchecked")
+        List<Map<String, Object>> pools = (List<Map<String, Object>>) poolState.get("pools");
+        assertNotNull("Pools listed", pools);
+        boolean found = false;
+        for (Map<String, Object> pool : pools) {
+            if ("pool".equals(pool.get("poolId"))) {
+                found = true;
+                assertEquals("Shared threads", Boolean.FALSE, pool.get("ownThreads"));
+                assertTrue("Queue depth", (Integer) pool.get("queueDepth") >= 0);
+                assertTrue("p99 latency", (Long) pool.get("p99QueueToStartMillis") <= (Long) pool.get("maxQueueToStartMillis"));
+            }
+        }
+        assertTrue("Run-from pool listed", found);
+    }
+
+    public void testAsyncServiceThreadMode() throws Exception {
+        boolean virtualThreads = (Boolean) dispatcher.getJobManager().getPoolState().get("virtualThreads");
+        boolean supported;
+        try {
+            Thread.class.getMethod("ofVirtual");
+            supported = true;
+        } catch (NoSuchMethodException e) {
+            supported = false;
+        }
+        if (!supported) {
+            assertFalse("No virtual threads without JVM support", virtualThreads);
+        }
+        Map<String, Object> result = dispatcher.runAsyncWait("testServiceThreadMode", new HashMap<String, Object>(), false).waitForResult();
+        assertTrue("Async service result success", ServiceUtil.isSuccess(result));
+        assertEquals("Job run on a " + (virtualThreads ? "virtual" : "platform") + " thread, ran on " + result.get("threadName"),
+                virtualThreads, result.get("virtualThread"));
+        assertTrue("Job run by the job poller", ((String) result.get("threadName")).startsWith("OFBiz-JobQueue-"));
+    }
+
+    private static Map<String, Object> findService(List<Map<String, Object>> statistics, String serviceName) {
+        for (Map<String, Object> serviceMap : statistics) {
+            if (serviceName.equals(serviceMap.get("serviceName"))) {
+                return serviceMap;
+            }
+        }
+        return null;
+    }
+
+    public void testServiceProfiler() throws Exception {
+        if (!ServiceProfiler.isEnabled()) {
+            return;
+        }
+        ServiceProfiler.reset();
+        for (int i = 0; i < 10; i++) {
+            assertTrue("Service result success", ServiceUtil.isSuccess(dispatcher.runSync("testServiceProfilerParent", new HashMap<String, Object>())));
+        }
+        Map<String, Object> parent = findService(ServiceProfiler.getServiceStatistics(), "testServiceProfilerParent");
+        assertNotNull("Parent service profiled", parent);
+        assertEquals("Parent calls", 10L, parent.get("count"));
+        assertEquals("Parent errors", 0L, parent.get("errors"));
+        assertTrue("p50 latency", (Double) parent.get("p50Millis") <= (Double) parent.get("p99Millis"));
+        assertTrue("Self time", (Double) parent.get("selfMillis") <= (Double) parent.get("totalMillis"));
+        Map<String, Object> child = findService(ServiceProfiler.getServiceStatistics(), "testJavaNoOp");
+        assertNotNull("Child service profiled", child);
+        assertEquals("Child calls", 20L, child.get("count"));
+        Map<String, Object> edge = findService(ServiceProfiler.getChildStatistics("testServiceProfilerParent"), "testJavaNoOp");
+        assertNotNull("Child attributed to its parent", edge);
+        assertEquals("Child calls from the parent", 20L, edge.get("count"));
+    }
+
+    public void testRunSyncBatch() throws Exception {
+        List<Map<String, Object>> contexts = UtilMisc.toList(UtilMisc.<String, Object>toMap("value", 1L), UtilMisc.<String, Object>toMap("value", 2L),
+                new HashMap<String, Object>(), UtilMisc.<String, Object>toMap("value", -1L), UtilMisc.<String, Object>toMap("value", 3L));
+        List<Map<String, Object>> results = dispatcher.runSyncBatch("testServiceBatch", contexts, 2);
+        assertEquals("One result per context", contexts.size(), results.size());
+        assertEquals("First result", 2L, results.get(0).get("doubled"));
+        assertEquals("Second result", 4L, results.get(1).get("doubled"));
+        assertTrue("Invalid context", ServiceUtil.isError(results.get(2)));
+        assertTrue("Error result", ServiceUtil.isError(results.get(3)));
+        assertEquals("Last result", 6L, results.get(4).get("doubled"));
+        assertTrue("Empty batch", dispatcher.runSyncBatch("testServiceBatch", new ArrayList<Map<String, Object>>(), 0).isEmpty());
+    }
+
+    public void testJobShards() throws Exception {
+        Delegator delegator = dispatcher.getDelegator();
+        List<JobShards> instances = UtilMisc.toList(new JobShards(delegator, "testShardA", 60000), new JobShards(delegator, "testShardB", 60000),
+                new JobShards(delegator, "testShardC", 60000));
+        try {
+            for (int i = 0; i < 2; i++) {
+                for (JobShards instance : instances) {
+                    instance.refresh();
+                }
+            }
+            long totalJobs = delegator.findCountByCondition("JobSandbox", null, null, null);
+            long shardedJobs = 0;
+            int expectedStart = 0;
+            for (JobShards instance : instances) {
+                assertEquals("Contiguous ranges", expectedStart, instance.getShardStart());
+                assertTrue("Non empty range", instance.getShardEnd() > instance.getShardStart());
+                expectedStart = instance.getShardEnd();
+                shardedJobs += delegator.findCountByCondition("JobSandbox", instance.getCondition(), null, null);
+            }
+            assertEquals("All the shards polled", JobShards.SHARDS, expectedStart);
+            // jobs may be created meanwhile by the other tests
+            assertTrue("Each job polled by one instance", shardedJobs >= totalJobs
+                    && shardedJobs <= delegator.findCountByCondition("JobSandbox", null, null, null));
+            // an instance leaves, the others take over its range
+            instances.remove(1).unregister();
+            for (JobShards instance : instances) {
+                instance.refresh();
+            }
+            assertEquals("First range", 0, instances.get(0).getShardStart());
+            assertEquals("Ranges rebalanced", instances.get(0).getShardEnd(), instances.get(1).getShardStart());
+            assertEquals("Last range", JobShards.SHARDS, instances.get(1).getShardEnd());
+        } finally {
+            for (JobShards instance : instances) {
+                instance.unregister();
+            }
+        }
+        for (int i = 0; i < 100; i++) {
+            long shard = JobShards.shardOf(Integer.toString(10000 + i));
+            assertTrue("Shard in range", shard >= 0 && shard < JobShards.SHARDS);
+        }
+    }
+
+    public void testJobShardsHeartbeat() throws Exception {
+        Delegator delegator = dispatcher.getDelegator();
+        JobShards instance = new JobShards(delegator, "testShardHeartbeat", 600);
+        try {
+            instance.start();
+            // the heartbeat is recorded without polling any job
+            long timeout = System.currentTimeMillis() + 5000;
+            GenericValue shard = null;
+            while (shard == null && System.currentTimeMillis() < timeout) {
+                Thread.sleep(50);
+                shard = EntityQuery.use(delegator).from("JobManagerShard").where("instanceId", "testShardHeartbeat").queryOne();
+            }
+            assertNotNull("First heartbeat recorded", shard);
+            Timestamp firstHeartbeat = shard.getTimestamp("lastHeartbeat");
+            Thread.sleep(1000);
+            shard = EntityQuery.use(delegator).from("JobManagerShard").where("instanceId", "testShardHeartbeat").queryOne();
+            assertNotNull("Heartbeat kept", shard);
+            assertTrue("Heartbeat recorded again", shard.getTimestamp("lastHeartbeat").after(firstHeartbeat));
+        } finally {
+            instance.unregister();
+        }
+        // a heartbeat running late does not record the instance again
+        instance.refresh();
+        Thread.sleep(500);
+        assertNull("No heartbeat after unregistering", EntityQuery.use(delegator).from("JobManagerShard").where("instanceId", "testShardHeartbeat").queryOne());
+    }
+
+    public void testServiceEcaQueue() throws Exception {
+        String message = "Unit Test " + System.currentTimeMillis();
+        assertTrue("Service result success", ServiceUtil.isSuccess(dispatcher.runSync("testServiceEcaQueueSource", UtilMisc.toMap("message", message))));
+        long timeout = System.currentTimeMillis() + 10000;
+        while ((!ServiceEngineTestServices.ecaQueueMessages.contains(message) || (Long) ServiceEcaQueue.getInstance().getState().get("processed") < 1)
+                && System.currentTimeMillis() < timeout) {
+            Thread.sleep(10);
+        }
+        assertTrue("Queued ECA action run", ServiceEngineTestServices.ecaQueueMessages.contains(message));
+        assertTrue("Queued action counted", (Long) ServiceEcaQueue.getInstance().getState().get("processed") >= 1);
+    }
+
+    public void testServiceEcaQueueJournalReplay() throws Exception {
+        Path journal = Files.createTempFile("seca-queue", ".journal");
+        String message = "Unit Test replay " + System.currentTimeMillis();
+        try {
+            // without workers the action stays in the journal when the queue stops
+            ServiceEcaQueue stopped = new ServiceEcaQueue(journal, 10, 0, 10, 100, 1024 * 1024);
+            stopped.start();
+            stopped.enqueue(dispatcher.getDispatchContext(), "testServiceEcaQueueTarget", UtilMisc.toMap("message", message));
+            stopped.stop();
+            assertFalse("Action not run before the restart", ServiceEngineTestServices.ecaQueueMessages.contains(message));
+
+            ServiceEcaQueue restarted = new ServiceEcaQueue(journal, 10, 1, 10, 100, 1024 * 1024);
+            restarted.start();
+            long timeout = System.currentTimeMillis() + 10000;
+            while ((Long) restarted.getState().get("processed") < 1 && System.currentTimeMillis() < timeout) {
+                Thread.sleep(10);
+            }
+            restarted.stop();
+            assertTrue("Action run after the restart", ServiceEngineTestServices.ecaQueueMessages.contains(message));
+
+            ServiceEcaQueue done = new ServiceEcaQueue(journal, 10, 0, 10, 100, 1024 * 1024);
+            done.start();
+            assertEquals("Action run once", 0, done.getState().get("pending"));
+            done.stop();
+        } finally {
+            Files.deleteIfExists(journal);
+        }
+    }
+
+    public void testServiceEcaQueueRollback() throws Exception {
+        Path journal = Files.createTempFile("seca-queue", ".journal");
+        ServiceEcaQueue queue = new ServiceEcaQueue(journal, 10, 0, 10, 100, 1024 * 1024);
+        queue.start();
+        try {
+            TransactionUtil.begin();
+            queue.enqueue(dispatcher.getDispatchContext(), "testServiceEcaQueueTarget", UtilMisc.toMap("message", "Unit Test rollback"));
+            assertEquals("Action not queued before the end of the transaction", 0, queue.getState().get("pending"));
+            TransactionUtil.rollback();
+            assertEquals("Action dropped on rollback", 0, queue.getState().get("pending"));
+
+            TransactionUtil.begin();
+            queue.enqueue(dispatcher.getDispatchContext(), "testServiceEcaQueueTarget", UtilMisc.toMap("message", "Unit Test commit"));
+            TransactionUtil.commit();
+            assertEquals("Action queued on commit", 1, queue.getState().get("pending"));
+        } finally {
+            queue.stop();
+            Files.deleteIfExists(journal);
+        }
+    }
+
+    public void testServiceEcaQueueSpill() throws Exception {
+        Delegator delegator = dispatcher.getDelegator();
+        EntityCondition jobCondition = EntityCondition.makeCondition("serviceName", "testServiceEcaQueueTarget");
+        long jobs = delegator.findCountByCondition("JobSandbox", jobCondition, null, null);
+        Path journal = Files.createTempFile("seca-queue", ".journal");
+        ServiceEcaQueue queue = new ServiceEcaQueue(journal, 1, 0, 10, 10, 1024 * 1024);
+        queue.start();
+        try {
+            queue.enqueue(dispatcher.getDispatchContext(), "testServiceEcaQueueTarget", UtilMisc.toMap("message", "Unit Test queued"));
+            queue.enqueue(dispatcher.getDispatchContext(), "testServiceEcaQueueTarget", UtilMisc.toMap("message", "Unit Test spilled"));
+            assertEquals("Queued action", 1, queue.getState().get("pending"));
+            assertEquals("Spilled action", 1L, queue.getState().get("spilled"));
+            assertEquals("Spilled action persisted", jobs + 1, delegator.findCountByCondition("JobSandbox", jobCondition, null, null));
+        } finally {
+            queue.stop();
+            Files.deleteIfExists(journal);
+        }
+    }
 }
@@ -0,0 +1,112 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.service.job;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.ofbiz.base.util.UtilXml;
+import org.apache.ofbiz.service.config.model.RunFromPool;
+import org.apache.ofbiz.service.config.model.ServiceConfig;
+import org.junit.Test;
+
+public class JobPoolsTests {
+
+    // Returns the pools of a thread-pool element, in the order they are defined.
+    private static List<RunFromPool> pools(String runFromPools) throws Exception {
+        String xml = "<service-config><service-engine name=\"default\"><authorization service-name=\"userLogin\"/>"
+                + "<thread-pool send-to-pool=\"a\">" + runFromPools + "</thread-pool></service-engine></service-config>";
+        ServiceConfig serviceConfig = ServiceConfig.create(UtilXml.readXmlDocument(xml).getDocumentElement());
+        return serviceConfig.getServiceEngine("default").getThreadPool().getRunFromPools();
+    }
+
+    // Polls up to the jobs available in each pool, recording the polls.
+    private static final class Poller implements JobPools.PoolPoller {
+        private final Map<String, Integer> available = new HashMap<>();
+        private final Map<String, Integer> polled = new HashMap<>();
+        private final List<String> polls = new ArrayList<>();
+
+        private Poller available(String poolName, int jobs) {
+            available.put(poolName, jobs);
+            return this;
+        }
+
+        @Override
+        public List<Job> poll(String poolName, boolean includeNoPool, int limit) {
+            polls.add(poolName + ":" + limit + (includeNoPool ? ":noPool" : ""));
+            int jobs = Math.min(limit, available.getOrDefault(poolName, 0));
+            available.merge(poolName, -jobs, Integer::sum);
+            polled.merge(poolName, jobs, Integer::sum);
+            return Collections.nCopies(jobs, (Job) null);
+        }
+
+        private int polled(String poolName) {
+            return polled.getOrDefault(poolName, 0);
+        }
+    }
+
+    @Test
+    public void sharedCapacityIsSplitByWeight() throws Exception {
+        Poller poller = new Poller().available("a", 100).available("b", 100);
+        List<Job> jobs = JobPools.poll(pools("<run-from-pool name=\"a\" weight=\"3\"/><run-from-pool name=\"b\" weight=\"1\"/>"),
+                "a", 8, pool -> 0, poller);
+        assertEquals(8, jobs.size());
+        assertEquals(6, poller.polled("a"));
+        assertEquals(2, poller.polled("b"));
+        assertEquals(Arrays.asList("a:6:noPool", "b:2"), poller.polls);
+    }
+
+    @Test
+    public void leftCapacityGoesToTheFullPools() throws Exception {
+        Poller poller = new Poller().available("a", 1).available("b", 100);
+        List<Job> jobs = JobPools.poll(pools("<run-from-pool name=\"a\"/><run-from-pool name=\"b\"/>"),
+                "a", 10, pool -> 0, poller);
+        assertEquals(10, jobs.size());
+        assertEquals(1, poller.polled("a"));
+        assertEquals(9, poller.polled("b"));
+        assertEquals(Arrays.asList("a:5:noPool", "b:5", "b:4"), poller.polls);
+    }
+
+    @Test
+    public void ownThreadsPoolUsesItsOwnQueue() throws Exception {
+        Poller poller = new Poller().available("slow", 100).available("a", 100);
+        List<Job> jobs = JobPools.poll(pools("<run-from-pool name=\"slow\" max-threads=\"2\" jobs=\"3\" weight=\"5\"/><run-from-pool name=\"a\"/>"),
+                "a", 4, pool -> pool.getJobs(), poller);
+        assertEquals(7, jobs.size());
+        // the pool with its own threads does not take a share of the shared queue
+        assertEquals(3, poller.polled("slow"));
+        assertEquals(4, poller.polled("a"));
+        assertEquals(Arrays.asList("slow:3", "a:4:noPool"), poller.polls);
+    }
+
+    @Test
+    public void fullOwnQueueIsNotPolled() throws Exception {
+        Poller poller = new Poller().available("slow", 100).available("a", 100);
+        JobPools.poll(pools("<run-from-pool name=\"slow\" max-threads=\"2\"/><run-from-pool name=\"a\"/>"),
+                "slow", 4, pool -> 0, poller);
+        assertEquals(0, poller.polled("slow"));
+        assertEquals(Arrays.asList("a:4"), poller.polls);
+    }
+}
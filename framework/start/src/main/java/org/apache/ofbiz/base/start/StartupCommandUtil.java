@@ -118,7 +118,9 @@ public final class StartupCommandUtil {
                     + System.lineSeparator()
                     + "-l repair-columns"
                     + System.lineSeparator()
-                    + "-l continue-on-failure" )
+                    + "-l continue-on-failure"
+                    + System.lineSeparator()
+                    + "-l writer-threads=4" )
             .numberOfArgs(2)
             .valueSeparator('=')
             .optionalArg(true)
@@ -0,0 +1,313 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.webapp.stats;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.ofbiz.base.concurrent.ExecutionPool;
+import org.apache.ofbiz.base.util.Debug;
+import org.apache.ofbiz.base.util.UtilProperties;
+import org.apache.ofbiz.entity.Delegator;
+import org.apache.ofbiz.entity.GenericEntityException;
+import org.apache.ofbiz.entity.GenericPK;
+import org.apache.ofbiz.entity.GenericValue;
+import org.apache.ofbiz.entity.util.EntityStoreOptions;
+
+/**
+ * Writes the ServerHit, Visit and Visitor records from a background thread.
+ * <p>When <code>stats.persist.async</code> is set in serverstats.properties, the records are not written on the
+ * request thread but added to lock-free queues, which are flushed on a schedule with JDBC batch inserts. The hits
+ * are kept in a bounded queue, whose oldest hits are dropped when it is full. The visits and visitors are never
+ * dropped since the hits refer to them: there is one of each per session, so their queue is bounded by the
+ * sessions. A flush writes the visits and visitors first, the visitors before the visits, so that the foreign
+ * keys of the visits and of the hits are satisfied. When a batch fails its records are written one by one, only
+ * the failing ones are lost.</p>
+ * <p>The queues hold copies of the records: the visits and visitors kept in the sessions can be changed while
+ * they wait, their updates being recorded with {@link #store}.</p>
+ */
+public final class HitRecorder {
+
+    public static final String module = HitRecorder.class.getName();
+
+    private static final boolean enabled = UtilProperties.propertyValueEqualsIgnoreCase("serverstats", "stats.persist.async", "true");
+    private static final HitRecorder instance = enabled ? start() : null;
+
+    private final int capacity;
+    private final int batchSize;
+    // the Visitor and Visit records, never dropped
+    private final Queue<Record> visits = new ConcurrentLinkedQueue<>();
+    // the other records, the oldest ones dropped when there are more than capacity
+    private final Queue<Record> hits = new ConcurrentLinkedQueue<>();
+    // primary keys of the records created but not written yet
+    private final Set<GenericPK> pendingCreates = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger bufferedVisits = new AtomicInteger();
+    private final AtomicInteger bufferedHits = new AtomicInteger();
+    private final AtomicLong recorded = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong written = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private long droppedLogged = 0;
+
+    private static HitRecorder start() {
+        HitRecorder recorder = new HitRecorder(UtilProperties.getPropertyAsInteger("serverstats", "stats.persist.async.queueSize", 10000),
+                UtilProperties.getPropertyAsInteger("serverstats", "stats.persist.async.batchSize", 500));
+        long flushInterval = UtilProperties.getPropertyAsLong("serverstats", "stats.persist.async.flushIntervalMillis", 1000L);
+        ScheduledExecutorService executor = ExecutionPool.getScheduledExecutor(new ThreadGroup(module), "OFBiz-hit-recorder", 1, 0, true);
+        executor.scheduleWithFixedDelay(recorder::flush, flushInterval, flushInterval, TimeUnit.MILLISECONDS);
+        Runtime.getRuntime().addShutdownHook(new Thread(recorder::flush, "OFBiz-hit-recorder-shutdown"));
+        return recorder;
+    }
+
+    HitRecorder(int capacity, int batchSize) {
+        this.capacity = Math.max(1, capacity);
+        this.batchSize = Math.max(1, batchSize);
+    }
+
+    private static final class Record {
+        private final GenericValue value;
+        private final boolean create;
+
+        private Record(GenericValue value, boolean create) {
+            this.value = value;
+            this.create = create;
+        }
+    }
+
+    /** Returns true when the records are written from the background thread. */
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /** Returns the recorder writing the records in the background, or null when not enabled. */
+    public static HitRecorder getInstance() {
+        return instance;
+    }
+
+    /** Records the creation of a value, written on the next flush.
+     *@param value The value to create, with its primary key set
+     */
+    public void create(GenericValue value) {
+        GenericValue copy = (GenericValue) value.clone();
+        pendingCreates.add(copy.getPrimaryKey());
+        add(new Record(copy, true));
+    }
+
+    /** Records the update of a value, written on the next flush after the pending creations.
+     *@param value The value to store
+     */
+    public void store(GenericValue value) {
+        add(new Record((GenericValue) value.clone(), false));
+    }
+
+    /** Returns true when the creation of a value is recorded but not written yet. */
+    public boolean isPending(GenericValue value) {
+        return pendingCreates.contains(value.getPrimaryKey());
+    }
+
+    private static boolean isVisit(GenericValue value) {
+        return "Visitor".equals(value.getEntityName()) || "Visit".equals(value.getEntityName());
+    }
+
+    private void add(Record record) {
+        recorded.incrementAndGet();
+        if (isVisit(record.value)) {
+            visits.offer(record);
+            bufferedVisits.incrementAndGet();
+            return;
+        }
+        hits.offer(record);
+        // drop the oldest hits when the queue is full, the newest ones are the most useful
+        int size = bufferedHits.incrementAndGet();
+        while (size > capacity) {
+            Record oldest = hits.poll();
+            if (oldest == null) {
+                break;
+            }
+            size = bufferedHits.decrementAndGet();
+            dropped.incrementAndGet();
+            if (oldest.create) {
+                pendingCreates.remove(oldest.value.getPrimaryKey());
+            }
+        }
+    }
+
+    /** Writes all the recorded values. Called on a schedule, it can also be called to write the values at once.
+     *@return The number of values written
+     */
+    public synchronized int flush() {
+        long droppedCount = dropped.get();
+        if (droppedCount > droppedLogged) {
+            Debug.logWarning("Dropped " + (droppedCount - droppedLogged) + " hit records, the queue of " + capacity
+                    + " records was full; writing them takes longer than recording them", module);
+            droppedLogged = droppedCount;
+        }
+        // the hits counted now were recorded after their visit, which is written first
+        int hitCount = bufferedHits.get();
+        int count = flush(visits, bufferedVisits, Integer.MAX_VALUE);
+        count += flush(hits, bufferedHits, hitCount);
+        return count;
+    }
+
+    private int flush(Queue<Record> queue, AtomicInteger buffered, int maxRecords) {
+        int count = 0;
+        int remaining = maxRecords;
+        while (remaining > 0) {
+            List<Record> records = new ArrayList<>(Math.min(batchSize, remaining));
+            Record record;
+            while (records.size() < batchSize && remaining > 0 && (record = queue.poll()) != null) {
+                buffered.decrementAndGet();
+                records.add(record);
+                remaining--;
+            }
+            if (records.isEmpty()) {
+                break;
+            }
+            try {
+                count += write(records);
+            } catch (RuntimeException e) {
+                Debug.logError(e, "Error writing " + records.size() + " hit records", module);
+                failed.addAndGet(records.size());
+            } finally {
+                for (Record done : records) {
+                    if (done.create) {
+                        pendingCreates.remove(done.value.getPrimaryKey());
+                    }
+                }
+            }
+        }
+        return count;
+    }
+
+    private int write(List<Record> records) {
+        // by delegator, the creations ordered by entity so that the foreign keys are satisfied, then the updates
+        Map<String, List<GenericValue>> creates = new LinkedHashMap<>();
+        Map<String, List<GenericValue>> stores = new LinkedHashMap<>();
+        for (int rank = 0; rank < 3; rank++) {
+            for (Record record : records) {
+                if (record.create && getRank(record.value) == rank) {
+                    creates.computeIfAbsent(record.value.getDelegator().getDelegatorName(), k -> new ArrayList<>()).add(record.value);
+                }
+            }
+        }
+        for (Record record : records) {
+            if (!record.create) {
+                stores.computeIfAbsent(record.value.getDelegator().getDelegatorName(), k -> new ArrayList<>()).add(record.value);
+            }
+        }
+        int count = 0;
+        for (List<GenericValue> values : creates.values()) {
+            count += createAll(values);
+        }
+        for (List<GenericValue> values : stores.values()) {
+            for (GenericValue value : values) {
+                try {
+                    value.getDelegator().store(value);
+                    count++;
+                } catch (GenericEntityException e) {
+                    Debug.logWarning("Could not update " + value.getPrimaryKey() + ": " + e.getMessage(), module);
+                    failed.incrementAndGet();
+                }
+            }
+        }
+        written.addAndGet(count);
+        return count;
+    }
+
+    private static int getRank(GenericValue value) {
+        switch (value.getEntityName()) {
+        case "Visitor":
+            return 0;
+        case "Visit":
+            return 1;
+        default:
+            return 2;
+        }
+    }
+
+    private int createAll(List<GenericValue> values) {
+        Delegator delegator = values.get(0).getDelegator();
+        try {
+            return delegator.createAll(values, new EntityStoreOptions(false, batchSize));
+        } catch (GenericEntityException e) {
+            Debug.logWarning("Could not write a batch of " + values.size() + " hit records, writing them one by one: " + e.getMessage(), module);
+        }
+        int count = 0;
+        for (GenericValue value : values) {
+            try {
+                delegator.create(value);
+                count++;
+            } catch (GenericEntityException e) {
+                if (Debug.verboseOn()) {
+                    Debug.logVerbose("Could not create " + value.getPrimaryKey() + ": " + e.getMessage(), module);
+                }
+                failed.incrementAndGet();
+            }
+        }
+        return count;
+    }
+
+    /** Returns the number of records waiting to be written. */
+    public int getBufferedCount() {
+        return Math.max(0, bufferedVisits.get()) + Math.max(0, bufferedHits.get());
+    }
+
+    /** Returns the number of records recorded since the start. */
+    public long getRecordedCount() {
+        return recorded.get();
+    }
+
+    /** Returns the number of hit records dropped because the queue was full. */
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    /** Returns the number of records written. */
+    public long getWrittenCount() {
+        return written.get();
+    }
+
+    /** Returns the number of records which could not be written. */
+    public long getFailedCount() {
+        return failed.get();
+    }
+
+    /** Returns the counters of the recorder, shown with the server statistics. */
+    public Map<String, Object> getState() {
+        Map<String, Object> state = new HashMap<>();
+        state.put("queueSize", capacity);
+        state.put("buffered", getBufferedCount());
+        state.put("recorded", getRecordedCount());
+        state.put("written", getWrittenCount());
+        state.put("dropped", getDroppedCount());
+        state.put("failed", getFailedCount());
+        return state;
+    }
+}
@@ -490,15 +490,18 @@ public class ServerHitBin {
                 return;
             }
             String visitId = visit.getString("visitId");
-            visit = EntityQuery.use(delegator).from("Visit").where("visitId", visitId).queryOne();
-            if (visit == null) {
-                // GenericValue stored in client session does not exist in database.
-                Debug.logInfo("The Visit GenericValue stored in the client session does not exist in the database, not storing server hit.", module);
-                return;
+            // a visit recorded in the background and not written yet is not checked, it is written before the hit
+            if (!HitRecorder.isEnabled() || !HitRecorder.getInstance().isPending(visit)) {
+                visit = EntityQuery.use(delegator).from("Visit").where("visitId", visitId).queryOne();
+                if (visit == null) {
+                    // GenericValue stored in client session does not exist in database.
+                    Debug.logInfo("The Visit GenericValue stored in the client session does not exist in the database, not storing server hit.", module);
+                    return;
+                }
+
+                Debug.logInfo("Visit delegatorName=" + visit.getDelegator().getDelegatorName() + ", ServerHitBin delegatorName=" + this.delegator.getDelegatorName(), module);
             }
-            
-            Debug.logInfo("Visit delegatorName=" + visit.getDelegator().getDelegatorName() + ", ServerHitBin delegatorName=" + this.delegator.getDelegatorName(), module);
-            
+
             GenericValue serverHit = delegator.makeValue("ServerHit");
 
             serverHit.set("visitId", visitId);
@@ -527,7 +530,11 @@ public class ServerHitBin {
                 serverHit.set("serverHostName", VisitHandler.address.getHostName());
             }
 
-            serverHit.create();
+            if (HitRecorder.isEnabled()) {
+                HitRecorder.getInstance().create(serverHit);
+            } else {
+                serverHit.create();
+            }
         }
     }
 }
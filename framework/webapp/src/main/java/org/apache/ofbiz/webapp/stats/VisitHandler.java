@@ -70,7 +70,7 @@ public class VisitHandler {
                 visitor.set("partyId", userLogin.get("partyId"));
             }
             try {
-                visitor.store();
+                store(visitor);
             } catch (GenericEntityException e) {
                 Debug.logError(e, "Could not update visitor: ", module);
             }
@@ -90,7 +90,7 @@ public class VisitHandler {
             }
 
             try {
-                visit.store();
+                store(visit);
             } catch (GenericEntityException e) {
                 Debug.logError(e, "Could not update visit: ", module);
             }
@@ -165,12 +165,15 @@ public class VisitHandler {
                             if (visitor != null) {
                                 String visitorId = visitor.getString("visitorId");
                                 
-                                // sometimes these values get stale, so check it before we use it
+                                // sometimes these values get stale, so check it before we use it, unless it is not written yet
                                 try {
-                                    GenericValue checkVisitor = EntityQuery.use(delegator).from("Visitor").where("visitorId", visitorId).queryOne();
-                                    if (checkVisitor == null) {
-                                        GenericValue newVisitor = delegator.create("Visitor", "visitorId", visitorId);
-                                        session.setAttribute("visitor", newVisitor);
+                                    if (!HitRecorder.isEnabled() || !HitRecorder.getInstance().isPending(visitor)) {
+                                        GenericValue checkVisitor = EntityQuery.use(delegator).from("Visitor").where("visitorId", visitorId).queryOne();
+                                        if (checkVisitor == null) {
+                                            GenericValue newVisitor = delegator.makeValue("Visitor", "visitorId", visitorId);
+                                            create(delegator, newVisitor);
+                                            session.setAttribute("visitor", newVisitor);
+                                        }
                                     }
                                     visit.set("visitorId", visitorId);
                                 } catch (GenericEntityException e) {
@@ -185,7 +188,7 @@ public class VisitHandler {
                             }
 
                             try {
-                                visit = delegator.createSetNextSeqId(visit);
+                                visit = createSetNextSeqId(delegator, visit);
                                 session.setAttribute("visit", visit);
                             } catch (GenericEntityException e) {
                                 Debug.logError(e, "Could not create new visit:", module);
@@ -204,6 +207,32 @@ public class VisitHandler {
         return null;
     }
 
+    // when the hits are recorded in the background the id is set at once and the value is written later
+    private static GenericValue createSetNextSeqId(Delegator delegator, GenericValue value) throws GenericEntityException {
+        if (!HitRecorder.isEnabled()) {
+            return delegator.createSetNextSeqId(value);
+        }
+        value.setNextSeqId();
+        HitRecorder.getInstance().create(value);
+        return value;
+    }
+
+    private static void create(Delegator delegator, GenericValue value) throws GenericEntityException {
+        if (HitRecorder.isEnabled()) {
+            HitRecorder.getInstance().create(value);
+        } else {
+            delegator.create(value);
+        }
+    }
+
+    private static void store(GenericValue value) throws GenericEntityException {
+        if (HitRecorder.isEnabled()) {
+            HitRecorder.getInstance().store(value);
+        } else {
+            value.store();
+        }
+    }
+
     public static GenericValue getVisitor(HttpServletRequest request, HttpServletResponse response) {
         // this defaults to true: ie if anything but "false" it will be true
         Delegator delegator = (Delegator) request.getAttribute("delegator");
@@ -245,7 +274,7 @@ public class VisitHandler {
                                 // no visitor cookie? create visitor and send back cookie too
                                 visitor = delegator.makeValue("Visitor");
                                 try {
-                                    delegator.createSetNextSeqId(visitor);
+                                    createSetNextSeqId(delegator, visitor);
                                 } catch (GenericEntityException e) {
                                     Debug.logError(e, "Could not create new visitor:", module);
                                     visitor = null;
@@ -256,7 +285,7 @@ public class VisitHandler {
                                     if (visitor == null) {
                                         // looks like we have an ID that doesn't exist in our database, so we'll create a new one
                                         visitor = delegator.makeValue("Visitor");
-                                        visitor = delegator.createSetNextSeqId(visitor);
+                                        visitor = createSetNextSeqId(delegator, visitor);
                                         if (Debug.infoOn()) {
                                             String visitorId = visitor != null ? visitor.getString("visitorId") : "empty visitor";
                                             Debug.logInfo("The visitorId [" + cookieVisitorId + "] found in cookie was invalid, creating new Visitor with ID [" + visitorId + "]", module);
@@ -0,0 +1,132 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.webapp.stats;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.ofbiz.entity.Delegator;
+import org.apache.ofbiz.entity.GenericEntityException;
+import org.apache.ofbiz.entity.GenericPK;
+import org.apache.ofbiz.entity.GenericValue;
+import org.apache.ofbiz.entity.util.EntityStoreOptions;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.InOrder;
+
+public class HitRecorderTests {
+    private Delegator delegator;
+
+    @Before
+    public void setUp() throws Exception {
+        delegator = mock(Delegator.class);
+        when(delegator.getDelegatorName()).thenReturn("default");
+        when(delegator.createAll(anyList(), any(EntityStoreOptions.class))).thenAnswer(invocation -> ((List<?>) invocation.getArgument(0)).size());
+    }
+
+    private GenericValue value(String entityName) {
+        GenericValue value = mock(GenericValue.class);
+        GenericPK primaryKey = mock(GenericPK.class);
+        when(value.getEntityName()).thenReturn(entityName);
+        when(value.getDelegator()).thenReturn(delegator);
+        when(value.getPrimaryKey()).thenReturn(primaryKey);
+        when(value.clone()).thenReturn(value);
+        return value;
+    }
+
+    @Test
+    public void dropOldestDropsTheHitsOnly() throws Exception {
+        HitRecorder recorder = new HitRecorder(2, 10);
+        GenericValue visitor = value("Visitor");
+        GenericValue visit = value("Visit");
+        GenericValue firstHit = value("ServerHit");
+        GenericValue secondHit = value("ServerHit");
+        GenericValue thirdHit = value("ServerHit");
+        recorder.create(visitor);
+        recorder.create(visit);
+        recorder.create(firstHit);
+        recorder.create(secondHit);
+        recorder.create(thirdHit);
+
+        assertEquals(5, recorder.getRecordedCount());
+        assertEquals(1, recorder.getDroppedCount());
+        assertEquals(4, recorder.getBufferedCount());
+        assertTrue(recorder.isPending(visitor));
+        assertTrue(recorder.isPending(visit));
+        assertFalse(recorder.isPending(firstHit));
+        assertTrue(recorder.isPending(thirdHit));
+
+        assertEquals(4, recorder.flush());
+        verify(delegator).createAll(eq(Arrays.asList(visitor, visit)), any(EntityStoreOptions.class));
+        verify(delegator).createAll(eq(Arrays.asList(secondHit, thirdHit)), any(EntityStoreOptions.class));
+        assertEquals(0, recorder.getBufferedCount());
+        assertEquals(4, recorder.getWrittenCount());
+        assertFalse(recorder.isPending(visit));
+    }
+
+    @Test
+    public void visitsAreCreatedBeforeTheHitsAndTheUpdates() throws Exception {
+        HitRecorder recorder = new HitRecorder(10, 10);
+        GenericValue visitor = value("Visitor");
+        GenericValue visit = value("Visit");
+        GenericValue hit = value("ServerHit");
+        recorder.create(visitor);
+        recorder.create(hit);
+        recorder.store(visitor);
+        recorder.create(visit);
+        recorder.store(visit);
+
+        assertEquals(5, recorder.flush());
+        InOrder order = inOrder(delegator);
+        order.verify(delegator).createAll(eq(Arrays.asList(visitor, visit)), any(EntityStoreOptions.class));
+        order.verify(delegator).store(visitor);
+        order.verify(delegator).store(visit);
+        order.verify(delegator).createAll(eq(Collections.singletonList(hit)), any(EntityStoreOptions.class));
+    }
+
+    @Test
+    public void failedBatchIsWrittenOneByOne() throws Exception {
+        HitRecorder recorder = new HitRecorder(10, 10);
+        GenericValue firstHit = value("ServerHit");
+        GenericValue secondHit = value("ServerHit");
+        when(delegator.createAll(anyList(), any(EntityStoreOptions.class))).thenThrow(new GenericEntityException("batch failed"));
+        when(delegator.create(secondHit)).thenThrow(new GenericEntityException("duplicate key"));
+        recorder.create(firstHit);
+        recorder.create(secondHit);
+
+        assertEquals(1, recorder.flush());
+        verify(delegator).create(firstHit);
+        verify(delegator).create(secondHit);
+        assertEquals(1, recorder.getWrittenCount());
+        assertEquals(1, recorder.getFailedCount());
+        assertEquals(0, recorder.getBufferedCount());
+    }
+}
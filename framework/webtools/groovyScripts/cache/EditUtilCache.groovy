@@ -38,6 +38,9 @@ if (cacheName) {
         cache.missCountSoftRef = UtilFormatOut.formatQuantity(utilCache.getMissCountSoftRef())
         cache.removeHitCount = UtilFormatOut.formatQuantity(utilCache.getRemoveHitCount())
         cache.removeMissCount = UtilFormatOut.formatQuantity(utilCache.getRemoveMissCount())
+        cache.offHeapSize = UtilFormatOut.formatQuantity(utilCache.getOffHeapSize())
+        cache.offHeapHitCount = UtilFormatOut.formatQuantity(utilCache.getOffHeapHitCount())
+        cache.offHeapMaxSize = UtilFormatOut.formatQuantity(utilCache.getOffHeapMaxSize())
         cache.maxInMemory = UtilFormatOut.formatQuantity(utilCache.getMaxInMemory())
         cache.expireTime = UtilFormatOut.formatQuantity(utilCache.getExpireTime())
         cache.useSoftReference = utilCache.getUseSoftReference().toString()
@@ -99,3 +99,8 @@ while (iterator.hasNext()) {
     }
 }
 context.viewList = viewList
+
+// Hits and visits written in the background
+if (HitRecorder.isEnabled()) {
+    context.hitRecorderState = HitRecorder.getInstance().getState()
+}
@@ -0,0 +1,291 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.webtools;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.sql.Timestamp;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.ofbiz.base.util.Debug;
+import org.apache.ofbiz.base.util.UtilIO;
+import org.apache.ofbiz.base.util.UtilValidate;
+import org.apache.ofbiz.entity.Delegator;
+import org.apache.ofbiz.entity.GenericEntityException;
+import org.apache.ofbiz.entity.GenericPK;
+import org.apache.ofbiz.entity.GenericValue;
+import org.apache.ofbiz.entity.condition.EntityCondition;
+import org.apache.ofbiz.entity.condition.EntityOperator;
+import org.apache.ofbiz.entity.model.ModelEntity;
+import org.apache.ofbiz.entity.transaction.GenericTransactionException;
+import org.apache.ofbiz.entity.transaction.TransactionUtil;
+import org.apache.ofbiz.entity.util.EntityListIterator;
+import org.apache.ofbiz.entity.util.EntityQuery;
+
+/**
+ * Exports the rows of one entity to XML files, the unit of work of the entityExportAll service.
+ * <p>Rows are read in primary key order through an <code>EntityListIterator</code> and written as they are read,
+ * so the memory used does not depend on the size of the table. When <code>rowsPerFile</code> is set the rows are
+ * split in several files (<code>Entity.xml</code>, <code>Entity.2.xml</code>, ...) and each completed file is
+ * recorded in the {@link Checkpoint}, with the primary key of its last row, so an interrupted export
+ * can resume after the last completed file instead of starting the entity over.</p>
+ */
+public class EntityExporter implements Callable<String> {
+
+    public static final String module = EntityExporter.class.getName();
+
+    public static final String COMPRESS_GZIP = "gzip";
+
+    private final Delegator delegator;
+    private final ModelEntity modelEntity;
+    private final File outdir;
+    private final Timestamp fromDate;
+    private final int txTimeout;
+    private final Integer fetchSize;
+    private final long rowsPerFile;
+    private final boolean gzip;
+    private final Checkpoint checkpoint;
+
+    /** Creates a new export task.
+     *@param delegator The delegator to read the rows from
+     *@param modelEntity The entity to export
+     *@param outdir The directory to write the files to
+     *@param fromDate If not null only the rows created since this date are exported
+     *@param txTimeout The transaction timeout in seconds
+     *@param fetchSize The JDBC fetch size hint, or null to use the driver default
+     *@param rowsPerFile The maximum number of rows in a file, 0 to write all the rows in one file
+     *@param compress Either "gzip" or null for no compression
+     *@param checkpoint Records the progress of the export
+     */
+    public EntityExporter(Delegator delegator, ModelEntity modelEntity, File outdir, Timestamp fromDate, int txTimeout, Integer fetchSize,
+            long rowsPerFile, String compress, Checkpoint checkpoint) {
+        this.delegator = delegator;
+        this.modelEntity = modelEntity;
+        this.outdir = outdir;
+        this.fromDate = fromDate;
+        this.txTimeout = txTimeout;
+        this.fetchSize = fetchSize;
+        this.rowsPerFile = rowsPerFile;
+        this.gzip = COMPRESS_GZIP.equals(compress);
+        this.checkpoint = checkpoint;
+    }
+
+    /** Exports the entity.
+     *@return A message telling how many rows were written, or what went wrong
+     */
+    @Override
+    public String call() {
+        String entityName = modelEntity.getEntityName();
+        if (checkpoint.isDone(entityName)) {
+            return "[" + checkpoint.getRows(entityName) + "] " + entityName + " already exported, skipping";
+        }
+        int segment = checkpoint.getSegments(entityName);
+        long numberWritten = checkpoint.getRows(entityName);
+        List<EntityCondition> conds = new LinkedList<>();
+        if (fromDate != null) {
+            conds.add(EntityCondition.makeCondition("createdStamp", EntityOperator.GREATER_THAN_EQUAL_TO, fromDate));
+        }
+        Map<String, String> lastPk = checkpoint.getLastPk(entityName);
+        if (UtilValidate.isNotEmpty(lastPk)) {
+            conds.add(makeAfterPkCondition(lastPk));
+        }
+        EntityQuery eq = EntityQuery.use(delegator).from(entityName).where(conds).orderBy(modelEntity.getPkFieldNames());
+        if (fetchSize != null) {
+            eq.fetchSize(fetchSize);
+        }
+        boolean beganTx = false;
+        try {
+            beganTx = TransactionUtil.begin(txTimeout);
+            // some databases don't support cursors, or other problems may happen, so if there is an error here log it and move on to get as much as possible
+            // don't bother writing the file if there's nothing to put into it
+            try (EntityListIterator values = eq.queryIterator()) {
+                GenericValue value = values.next();
+                if (value == null) {
+                    checkpoint.entityDone(entityName, numberWritten);
+                    TransactionUtil.commit(beganTx);
+                    return numberWritten > 0 ? "[" + numberWritten + "] " + entityName + " wrote " + numberWritten + " records"
+                            : "[---] " + entityName + " has no records, not writing file";
+                }
+                while (value != null) {
+                    segment++;
+                    long segmentWritten = 0;
+                    GenericValue lastValue = null;
+                    try (PrintWriter writer = createWriter(getFile(entityName, segment))) {
+                        writer.println("<?xml version=\"1.0\" encoding=\"UTF-8\"?>");
+                        writer.println("<entity-engine-xml>");
+                        do {
+                            value.writeXmlText(writer, "");
+                            lastValue = value;
+                            segmentWritten++;
+                            if ((numberWritten + segmentWritten) % 500 == 0) {
+                                TransactionUtil.commit(beganTx);
+                                beganTx = TransactionUtil.begin(txTimeout);
+                            }
+                            value = values.next();
+                        } while (value != null && (rowsPerFile <= 0 || segmentWritten < rowsPerFile));
+                        writer.println("</entity-engine-xml>");
+                        if (writer.checkError()) {
+                            throw new IOException("Could not write " + getFile(entityName, segment));
+                        }
+                    }
+                    numberWritten += segmentWritten;
+                    if (value != null) {
+                        checkpoint.segmentDone(entityName, segment, numberWritten, lastValue.getPrimaryKey());
+                    }
+                }
+                checkpoint.entityDone(entityName, numberWritten);
+            }
+            TransactionUtil.commit(beganTx);
+            return "[" + numberWritten + "] " + entityName + " wrote " + numberWritten + " records";
+        } catch (GenericEntityException | IOException e) {
+            Debug.logError(e, "Error when writing " + entityName, module);
+            try {
+                TransactionUtil.rollback(beganTx, "Error when writing " + entityName, e);
+            } catch (GenericTransactionException e2) {
+                Debug.logError(e2, module);
+            }
+            return "[xxx] Error when writing " + entityName + ": " + e;
+        }
+    }
+
+    private File getFile(String entityName, int segment) {
+        return new File(outdir, entityName + (segment > 1 ? "." + segment : "") + (gzip ? ".xml.gz" : ".xml"));
+    }
+
+    private PrintWriter createWriter(File file) throws IOException {
+        OutputStream out = new FileOutputStream(file);
+        if (gzip) {
+            out = new GZIPOutputStream(out, 64 * 1024);
+        }
+        return new PrintWriter(new BufferedWriter(new OutputStreamWriter(out, UtilIO.getUtf8()), 64 * 1024));
+    }
+
+    /** Makes the condition selecting the rows whose primary key sorts after the passed one, in the order of the primary key fields. */
+    private EntityCondition makeAfterPkCondition(Map<String, String> lastPk) {
+        GenericPK pk = delegator.makePK(modelEntity.getEntityName());
+        for (Map.Entry<String, String> entry : lastPk.entrySet()) {
+            pk.setString(entry.getKey(), entry.getValue());
+        }
+        List<String> pkFieldNames = modelEntity.getPkFieldNames();
+        List<EntityCondition> orConds = new LinkedList<>();
+        for (int i = 0; i < pkFieldNames.size(); i++) {
+            List<EntityCondition> andConds = new LinkedList<>();
+            for (int j = 0; j < i; j++) {
+                andConds.add(EntityCondition.makeCondition(pkFieldNames.get(j), EntityOperator.EQUALS, pk.get(pkFieldNames.get(j))));
+            }
+            andConds.add(EntityCondition.makeCondition(pkFieldNames.get(i), EntityOperator.GREATER_THAN, pk.get(pkFieldNames.get(i))));
+            orConds.add(EntityCondition.makeCondition(andConds));
+        }
+        return EntityCondition.makeCondition(orConds, EntityOperator.OR);
+    }
+
+    /**
+     * The progress of an export, kept in a properties file of the output directory.
+     * <p>For each entity it records the number of files completed, the number of rows they hold, the primary key of
+     * their last row and whether the entity is done. The file is replaced atomically each time it changes.</p>
+     */
+    public static final class Checkpoint {
+
+        public static final String FILE_NAME = "entityExportAll.checkpoint";
+
+        private final File file;
+        private final Properties properties = new Properties();
+
+        /** Creates the checkpoint of the export to the passed directory.
+         *@param outdir The output directory of the export
+         *@param resume If true the progress recorded by a previous export is loaded, otherwise it is discarded
+         */
+        public Checkpoint(File outdir, boolean resume) throws IOException {
+            this.file = new File(outdir, FILE_NAME);
+            if (file.exists()) {
+                if (resume) {
+                    try (InputStream in = new FileInputStream(file)) {
+                        properties.load(in);
+                    }
+                } else if (!file.delete()) {
+                    throw new IOException("Could not delete " + file);
+                }
+            }
+        }
+
+        public synchronized boolean isDone(String entityName) {
+            return "true".equals(properties.getProperty(entityName + ".done"));
+        }
+
+        public synchronized int getSegments(String entityName) {
+            return Integer.parseInt(properties.getProperty(entityName + ".segments", "0"));
+        }
+
+        public synchronized long getRows(String entityName) {
+            return Long.parseLong(properties.getProperty(entityName + ".rows", "0"));
+        }
+
+        /** Returns the primary key of the last row written in a completed file, as Strings, or an empty Map if there is none. */
+        public synchronized Map<String, String> getLastPk(String entityName) {
+            Map<String, String> lastPk = new LinkedHashMap<>();
+            String prefix = entityName + ".pk.";
+            for (String name : properties.stringPropertyNames()) {
+                if (name.startsWith(prefix)) {
+                    lastPk.put(name.substring(prefix.length()), properties.getProperty(name));
+                }
+            }
+            return lastPk;
+        }
+
+        /** Records a completed file, the export of the entity will resume after its last row. */
+        public synchronized void segmentDone(String entityName, int segment, long rows, GenericPK lastPk) throws IOException {
+            properties.setProperty(entityName + ".segments", Integer.toString(segment));
+            properties.setProperty(entityName + ".rows", Long.toString(rows));
+            for (Map.Entry<String, Object> entry : lastPk.entrySet()) {
+                properties.setProperty(entityName + ".pk." + entry.getKey(), String.valueOf(entry.getValue()));
+            }
+            store();
+        }
+
+        /** Records the entity was completely exported. */
+        public synchronized void entityDone(String entityName, long rows) throws IOException {
+            properties.setProperty(entityName + ".done", "true");
+            properties.setProperty(entityName + ".rows", Long.toString(rows));
+            store();
+        }
+
+        private void store() throws IOException {
+            File tmpFile = new File(file.getPath() + ".tmp");
+            try (OutputStream out = new FileOutputStream(tmpFile)) {
+                properties.store(out, "entityExportAll progress, used when the export is resumed");
+            }
+            Files.move(tmpFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+    }
+}
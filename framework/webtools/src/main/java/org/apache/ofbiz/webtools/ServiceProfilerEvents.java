@@ -0,0 +1,72 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.webtools;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.ofbiz.base.util.UtilValidate;
+import org.apache.ofbiz.security.Security;
+import org.apache.ofbiz.service.ServiceProfiler;
+
+/**
+ * Contains the events of the service profiler.
+ */
+public final class ServiceProfilerEvents {
+
+    private ServiceProfilerEvents() {
+    }
+
+    /** An HTTP WebEvent handler setting the statistics of the service profiler as request attributes, for a JSON response.
+     * The statistics of the services called by the service of the <code>serviceName</code> parameter are set too, when present.
+     * @param request The HTTP request object for the current JSP or Servlet request.
+     * @param response The HTTP response object for the current JSP or Servlet request.
+     * @return success, or error when the user does not have the permission to view the services
+     */
+    public static String getServiceProfile(HttpServletRequest request, HttpServletResponse response) {
+        Security security = (Security) request.getAttribute("security");
+        if (!security.hasPermission("SERVICE_MAINT", request.getSession())) {
+            request.setAttribute("_ERROR_MESSAGE_", "You do not have permission to view the service profile");
+            return "error";
+        }
+        request.setAttribute("enabled", ServiceProfiler.isEnabled());
+        request.setAttribute("services", ServiceProfiler.getServiceStatistics());
+        String serviceName = request.getParameter("serviceName");
+        if (UtilValidate.isNotEmpty(serviceName)) {
+            request.setAttribute("serviceName", serviceName);
+            request.setAttribute("children", ServiceProfiler.getChildStatistics(serviceName));
+        }
+        return "success";
+    }
+
+    /** An HTTP WebEvent handler clearing the statistics of the service profiler.
+     * @param request The HTTP request object for the current JSP or Servlet request.
+     * @param response The HTTP response object for the current JSP or Servlet request.
+     * @return success, or error when the user does not have the permission to update the services
+     */
+    public static String resetServiceProfile(HttpServletRequest request, HttpServletResponse response) {
+        Security security = (Security) request.getAttribute("security");
+        if (!security.hasPermission("SERVICE_MAINT", request.getSession())) {
+            request.setAttribute("_ERROR_MESSAGE_", "You do not have permission to reset the service profile");
+            return "error";
+        }
+        ServiceProfiler.reset();
+        return "success";
+    }
+}
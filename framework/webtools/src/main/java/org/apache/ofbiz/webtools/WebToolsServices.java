@@ -18,13 +18,9 @@
  */
 package org.apache.ofbiz.webtools;
 
-import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.OutputStreamWriter;
-import java.io.PrintWriter;
 import java.io.StringReader;
 import java.io.StringWriter;
 import java.io.UnsupportedEncodingException;
@@ -36,6 +32,7 @@ import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Locale;
@@ -43,12 +40,16 @@ import java.util.Map;
 import java.util.ResourceBundle;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
 
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
 
 import org.apache.commons.lang3.StringUtils;
+import org.apache.ofbiz.base.concurrent.ExecutionPool;
 import org.apache.ofbiz.base.location.FlexibleLocation;
 import org.apache.ofbiz.base.util.Debug;
 import org.apache.ofbiz.base.util.GeneralException;
@@ -66,8 +67,6 @@ import org.apache.ofbiz.entity.Delegator;
 import org.apache.ofbiz.entity.DelegatorFactory;
 import org.apache.ofbiz.entity.GenericEntityException;
 import org.apache.ofbiz.entity.GenericValue;
-import org.apache.ofbiz.entity.condition.EntityCondition;
-import org.apache.ofbiz.entity.condition.EntityOperator;
 import org.apache.ofbiz.entity.model.ModelEntity;
 import org.apache.ofbiz.entity.model.ModelField;
 import org.apache.ofbiz.entity.model.ModelFieldType;
@@ -77,12 +76,8 @@ import org.apache.ofbiz.entity.model.ModelReader;
 import org.apache.ofbiz.entity.model.ModelRelation;
 import org.apache.ofbiz.entity.model.ModelUtil;
 import org.apache.ofbiz.entity.model.ModelViewEntity;
-import org.apache.ofbiz.entity.transaction.GenericTransactionException;
-import org.apache.ofbiz.entity.transaction.TransactionUtil;
 import org.apache.ofbiz.entity.util.EntityDataAssert;
 import org.apache.ofbiz.entity.util.EntityDataLoader;
-import org.apache.ofbiz.entity.util.EntityListIterator;
-import org.apache.ofbiz.entity.util.EntityQuery;
 import org.apache.ofbiz.entity.util.EntitySaxReader;
 import org.apache.ofbiz.entity.util.EntityUtilProperties;
 import org.apache.ofbiz.entityext.EntityGroupUtil;
@@ -481,6 +476,17 @@ public class WebToolsServices {
         if (txTimeout == null) {
             txTimeout = 7200;
         }
+        Integer exportThreads = (Integer) context.get("exportThreads");
+        if (exportThreads == null || exportThreads < 1) {
+            exportThreads = 1;
+        }
+        Integer fetchSize = (Integer) context.get("fetchSize");
+        Long rowsPerFile = (Long) context.get("rowsPerFile");
+        if (rowsPerFile == null) {
+            rowsPerFile = 0L;
+        }
+        String compress = (String) context.get("compress");
+        boolean resume = Boolean.TRUE.equals(context.get("resume"));
 
         List<String> results = new LinkedList<String>();
 
@@ -498,57 +504,42 @@ public class WebToolsServices {
                 } catch (Exception exc) {
                     return ServiceUtil.returnError(UtilProperties.getMessage(resource, "EntityImportErrorRetrievingEntityNames", locale));
                 }
-                int fileNumber = 1;
-
-                for (String curEntityName: passedEntityNames) {
-                    long numberWritten = 0;
-                    ModelEntity me = delegator.getModelEntity(curEntityName);
-                    if (me instanceof ModelViewEntity) {
-                        results.add("["+fileNumber +"] [vvv] " + curEntityName + " skipping view entity");
-                        continue;
-                    }
-                    List<EntityCondition> conds = new LinkedList<EntityCondition>();
-                    if (UtilValidate.isNotEmpty(fromDate)) {
-                        conds.add(EntityCondition.makeCondition("createdStamp", EntityOperator.GREATER_THAN_EQUAL_TO, fromDate));
+                EntityExporter.Checkpoint checkpoint;
+                try {
+                    checkpoint = new EntityExporter.Checkpoint(outdir, resume);
+                } catch (IOException e) {
+                    Debug.logError(e, module);
+                    return ServiceUtil.returnError(e.getMessage());
+                }
+                // each entity is exported by its own task, the results are listed in the order of the entity names
+                ScheduledExecutorService executor = ExecutionPool.getScheduledExecutor(new ThreadGroup(module), "entity-export", exportThreads, 0, false);
+                // the view entities are not exported, they have no task
+                Map<String, Future<String>> futures = new LinkedHashMap<String, Future<String>>();
+                try {
+                    for (String curEntityName: passedEntityNames) {
+                        ModelEntity me = delegator.getModelEntity(curEntityName);
+                        if (me instanceof ModelViewEntity) {
+                            futures.put(curEntityName, null);
+                            continue;
+                        }
+                        futures.put(curEntityName, executor.submit(new EntityExporter(delegator, me, outdir, fromDate, txTimeout, fetchSize, rowsPerFile, compress, checkpoint)));
                     }
-                    EntityQuery eq = EntityQuery.use(delegator).from(curEntityName).where(conds).orderBy(me.getPkFieldNames());
-
-                    try {
-                        boolean beganTx = TransactionUtil.begin();
-                        // some databases don't support cursors, or other problems may happen, so if there is an error here log it and move on to get as much as possible
-                        //Don't bother writing the file if there's nothing to put into it
-                        try (EntityListIterator values = eq.queryIterator()) {
-                            GenericValue value = values.next();
-                            if (value != null) {
-                                try (PrintWriter writer = new PrintWriter(new BufferedWriter(new OutputStreamWriter(new FileOutputStream(new File(outdir, curEntityName +".xml")), "UTF-8")))) {
-                                    writer.println("<?xml version=\"1.0\" encoding=\"UTF-8\"?>");
-                                    writer.println("<entity-engine-xml>");
-                                    do {
-                                        value.writeXmlText(writer, "");
-                                        numberWritten++;
-                                        if (numberWritten % 500 == 0) {
-                                            TransactionUtil.commit(beganTx);
-                                            beganTx = TransactionUtil.begin();
-                                        }
-                                    } while ((value = values.next()) != null);
-                                    writer.println("</entity-engine-xml>");
-                                } catch (UnsupportedEncodingException | FileNotFoundException e) {
-                                    results.add("["+fileNumber +"] [xxx] Error when writing " + curEntityName + ": " + e);
-                                }
-                                results.add("["+fileNumber +"] [" + numberWritten + "] " + curEntityName + " wrote " + numberWritten + " records");
-                            } else {
-                                results.add("["+fileNumber +"] [---] " + curEntityName + " has no records, not writing file");
-                            }
-                            TransactionUtil.commit(beganTx);
-                        } catch (GenericEntityException entityEx) {
-                            results.add("["+fileNumber +"] [xxx] Error when writing " + curEntityName + ": " + entityEx);
+                    int fileNumber = 1;
+                    for (Map.Entry<String, Future<String>> entry : futures.entrySet()) {
+                        if (entry.getValue() == null) {
+                            results.add("[" + fileNumber + "] [vvv] " + entry.getKey() + " skipping view entity");
                             continue;
                         }
+                        try {
+                            results.add("[" + fileNumber + "] " + entry.getValue().get());
+                        } catch (ExecutionException | InterruptedException e) {
+                            Debug.logError(e, module);
+                            results.add("[" + fileNumber + "] [xxx] Error when writing " + entry.getKey() + ": " + e);
+                        }
                         fileNumber++;
-                    } catch (GenericTransactionException e) {
-                        Debug.logError(e, module);
-                        results.add(e.getLocalizedMessage());
                     }
+                } finally {
+                    executor.shutdown();
                 }
             } else {
                 results.add("Path not found or no write access.");
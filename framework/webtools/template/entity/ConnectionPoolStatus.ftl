@@ -30,6 +30,8 @@ under the License.
         <td>Min Idle</td>
         <td>Min Evictable Idle Time</td>
         <td>Max Wait</td>
+        <td>Statement Cache Hits</td>
+        <td>Statement Cache Misses</td>
     </tr>
     <#assign alt_row = false>
     <#if (groups?has_content)>
@@ -48,6 +50,8 @@ under the License.
                         <td>${dataSourceInfo.poolMinIdle!}</td>
                         <td>${dataSourceInfo.poolMinEvictableIdleTimeMillis!}</td>
                         <td>${dataSourceInfo.poolMaxWait!}</td>
+                        <td>${dataSourceInfo.statementCacheHits!}</td>
+                        <td>${dataSourceInfo.statementCacheMisses!}</td>
                     </tr>
                 </#if>
             </#if>
@@ -54,6 +54,49 @@ under the License.
                 <input type="text" size="6" value="${txTimeout?default('7200')}" name="txTimeout"/>
                 </td>
                 </tr>
+                <tr>
+                    <td class="label">
+                        <label>${uiLabelMap.WebtoolsExportThreads}</label>
+                    </td>
+                    <td>
+                        <input type="text" size="6" value="${exportThreads?default('1')}" name="exportThreads"/>
+                    </td>
+                </tr>
+                <tr>
+                    <td class="label">
+                        <label>${uiLabelMap.WebtoolsFetchSize}</label>
+                    </td>
+                    <td>
+                        <input type="text" size="6" value="${fetchSize!}" name="fetchSize"/>
+                    </td>
+                </tr>
+                <tr>
+                    <td class="label">
+                        <label>${uiLabelMap.WebtoolsRowsPerFile}</label>
+                    </td>
+                    <td>
+                        <input type="text" size="10" value="${rowsPerFile!}" name="rowsPerFile"/>
+                    </td>
+                </tr>
+                <tr>
+                    <td class="label">
+                        <label>${uiLabelMap.WebtoolsCompress}</label>
+                    </td>
+                    <td>
+                        <select name="compress">
+                            <option value="">${uiLabelMap.CommonNone}</option>
+                            <option value="gzip"<#if "gzip" == compress!> selected="selected"</#if>>gzip</option>
+                        </select>
+                    </td>
+                </tr>
+                <tr>
+                    <td class="label">
+                        <label>${uiLabelMap.WebtoolsResumeExport}</label>
+                    </td>
+                    <td>
+                        <input type="checkbox" name="resume" value="true"<#if "true" == resume!> checked="checked"</#if>/>
+                    </td>
+                </tr>
                 <tr>
                     <td class="label">
                     </td>
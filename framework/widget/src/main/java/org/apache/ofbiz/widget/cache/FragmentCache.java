@@ -0,0 +1,223 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.widget.cache;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.ofbiz.base.util.Debug;
+import org.apache.ofbiz.base.util.GeneralException;
+import org.apache.ofbiz.base.util.cache.CacheListener;
+import org.apache.ofbiz.base.util.cache.UtilCache;
+import org.apache.ofbiz.entity.Delegator;
+import org.apache.ofbiz.entity.cache.EntityDependencyRecorder;
+import org.apache.ofbiz.widget.model.ModelScreenWidget;
+import org.apache.ofbiz.widget.renderer.ScreenStringRenderer;
+import org.apache.ofbiz.widget.renderer.VisualTheme;
+
+/**
+ * Caches the output of the screen sections and platform specific templates with <code>use-cache="true"</code>.
+ * <p>While a fragment is rendered, the entities it reads through the delegator are recorded with the
+ * {@link EntityDependencyRecorder}, and the fragment is indexed by these entities. When the entity cache of one
+ * of them is cleared, which happens on each write to the entity, the fragments depending on it are evicted.
+ * A fragment reading an entity which is never cached is not kept, since the writes to such an entity do not
+ * clear any cache. A cached fragment rendered within another one adds its entities to the enclosing fragment.</p>
+ * <p>The data which becomes effective or expires with time, like the prices and promotions with a from or thru
+ * date, changes without any write; the fragments therefore also expire after the
+ * <code>widget.screen.fragment.expireTime</code> of cache.properties.</p>
+ */
+public final class FragmentCache {
+
+    public static final String module = FragmentCache.class.getName();
+
+    private static final UtilCache<String, Fragment> fragmentCache = UtilCache.createUtilCache("widget.screen.fragment", 10000, 300000, false);
+    // keys of the fragments by delegator and entity name
+    private static final ConcurrentMap<String, Set<String>> fragmentKeys = new ConcurrentHashMap<>();
+    // sequence of the last clearing of each delegator and entity name
+    private static final ConcurrentMap<String, Long> lastCleared = new ConcurrentHashMap<>();
+    private static final AtomicLong clearSequence = new AtomicLong();
+
+    static {
+        EntityDependencyRecorder.addCacheClearListener(FragmentCache::evict);
+        fragmentCache.addListener(new CacheListener<String, Fragment>() {
+            @Override
+            public void noteKeyRemoval(UtilCache<String, Fragment> cache, String key, Fragment oldValue) {
+                if (oldValue != null) {
+                    unindex(key, oldValue);
+                }
+            }
+
+            @Override
+            public void noteKeyAddition(UtilCache<String, Fragment> cache, String key, Fragment newValue) {
+            }
+
+            @Override
+            public void noteKeyUpdate(UtilCache<String, Fragment> cache, String key, Fragment newValue, Fragment oldValue) {
+                if (oldValue != null) {
+                    unindex(key, oldValue);
+                }
+                index(key, newValue);
+            }
+        });
+    }
+
+    private FragmentCache() {}
+
+    /** Renders the output of a fragment to a writer. */
+    @FunctionalInterface
+    public interface FragmentRenderer {
+        void render(Appendable writer) throws GeneralException, IOException;
+    }
+
+    private static final class Fragment {
+        private final String output;
+        private final String delegatorName;
+        private final Set<String> entityNames;
+
+        private Fragment(String output, String delegatorName, Set<String> entityNames) {
+            this.output = output;
+            this.delegatorName = delegatorName;
+            this.entityNames = entityNames;
+        }
+    }
+
+    /** Writes the cached output of a fragment, rendering and caching it when not cached yet.
+     *@param widget The section or platform specific widget of the fragment
+     *@param cacheKey The expanded cache-key of the widget
+     *@param writer The writer of the screen
+     *@param context The context of the screen
+     *@param screenStringRenderer The renderer of the screen
+     *@param renderer Renders the fragment when it is not cached
+     */
+    public static void render(ModelScreenWidget widget, String cacheKey, Appendable writer, Map<String, Object> context, ScreenStringRenderer screenStringRenderer,
+            FragmentRenderer renderer) throws GeneralException, IOException {
+        Delegator delegator = (Delegator) context.get("delegator");
+        String delegatorName = delegator != null ? delegator.getDelegatorName() : "default";
+        String key = makeKey(widget, cacheKey, delegatorName, context, screenStringRenderer);
+        Fragment fragment = fragmentCache.get(key);
+        if (fragment != null) {
+            EntityDependencyRecorder.recordReads(fragment.entityNames);
+            writer.append(fragment.output);
+            return;
+        }
+        long sequence = clearSequence.get();
+        StringWriter output = new StringWriter();
+        EntityDependencyRecorder.Recording recording = EntityDependencyRecorder.start();
+        try {
+            renderer.render(output);
+        } finally {
+            EntityDependencyRecorder.stop(recording);
+        }
+        writer.append(output.toString());
+        if (!recording.isCacheable()) {
+            if (Debug.verboseOn()) {
+                Debug.logVerbose("Not caching fragment [" + key + "], it reads entities which are never cached", module);
+            }
+            return;
+        }
+        if (changedSince(delegatorName, recording.getEntityNames(), sequence)) {
+            // an entity changed while rendering, the output may be stale already
+            return;
+        }
+        fragment = new Fragment(output.toString(), delegatorName, recording.getEntityNames());
+        index(key, fragment);
+        fragmentCache.put(key, fragment);
+        if (changedSince(delegatorName, recording.getEntityNames(), sequence)) {
+            fragmentCache.remove(key);
+        }
+    }
+
+    private static boolean changedSince(String delegatorName, Set<String> entityNames, long sequence) {
+        Long allCleared = lastCleared.get(delegatorName + ":");
+        if (allCleared != null && allCleared > sequence) {
+            return true;
+        }
+        for (String entityName : entityNames) {
+            Long cleared = lastCleared.get(delegatorName + ":" + entityName);
+            if (cleared != null && cleared > sequence) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String makeKey(ModelScreenWidget widget, String cacheKey, String delegatorName, Map<String, Object> context,
+            ScreenStringRenderer screenStringRenderer) {
+        Locale locale = (Locale) context.get("locale");
+        VisualTheme visualTheme = (VisualTheme) context.get("visualTheme");
+        StringBuilder key = new StringBuilder();
+        key.append(widget.getModelScreen().getSourceLocation()).append('#').append(widget.getModelScreen().getName());
+        key.append('@').append(widget.getStartLine()).append(':').append(widget.getStartColumn());
+        key.append('|').append(delegatorName);
+        key.append('|').append(screenStringRenderer.getRendererName());
+        key.append('|').append(locale);
+        key.append('|').append(visualTheme != null ? visualTheme.getVisualThemeId() : null);
+        key.append('|').append(cacheKey);
+        return key.toString();
+    }
+
+    private static void index(String key, Fragment fragment) {
+        for (String entityName : fragment.entityNames) {
+            fragmentKeys.computeIfAbsent(fragment.delegatorName + ":" + entityName, k -> ConcurrentHashMap.newKeySet()).add(key);
+        }
+    }
+
+    private static void unindex(String key, Fragment fragment) {
+        for (String entityName : fragment.entityNames) {
+            Set<String> keys = fragmentKeys.get(fragment.delegatorName + ":" + entityName);
+            if (keys != null) {
+                keys.remove(key);
+            }
+        }
+    }
+
+    private static void evict(String delegatorName, String entityName) {
+        String dependency = delegatorName + ":" + (entityName != null ? entityName : "");
+        lastCleared.put(dependency, clearSequence.incrementAndGet());
+        if (entityName == null) {
+            for (String key : fragmentCache.getCacheLineKeys()) {
+                if (key.contains("|" + delegatorName + "|")) {
+                    fragmentCache.remove(key);
+                }
+            }
+            return;
+        }
+        Set<String> keys = fragmentKeys.remove(dependency);
+        if (keys == null) {
+            return;
+        }
+        if (Debug.verboseOn()) {
+            Debug.logVerbose("Evicting " + keys.size() + " fragments reading entity [" + entityName + "]", module);
+        }
+        for (String key : keys) {
+            fragmentCache.remove(key);
+        }
+    }
+
+    /** Removes all the cached fragments. */
+    public static void clear() {
+        fragmentCache.clear();
+    }
+}
@@ -28,6 +28,7 @@ import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
 
 import javax.servlet.ServletContext;
 import javax.servlet.http.HttpSession;
@@ -135,16 +136,37 @@ public abstract class AbstractModelAction implements Serializable, ModelAction {
         if (actions == null) {
             return;
         }
+        boolean timing = Debug.timingOn();
         for (ModelAction action : actions) {
             if (Debug.verboseOn()) {
                  Debug.logVerbose("Running action " + action.getClass().getName(), module);
             }
+            long startTime = timing ? System.nanoTime() : 0;
             try {
                 action.runAction(context);
             } catch (GeneralException e) {
                 throw new RuntimeException(e);
             }
+            if (timing) {
+                logTiming(action, System.nanoTime() - startTime, null);
+            }
+        }
+    }
+
+    /**
+     * Logs the time taken by an action to the timing log.
+     *
+     * @param action
+     * @param nanos The time taken by the action, in nanoseconds
+     * @param threadName The name of the thread which ran the action when it did not run on the rendering thread, or null
+     */
+    static void logTiming(ModelAction action, long nanos, String threadName) {
+        StringBuilder message = new StringBuilder("Action ").append(action).append(" took ")
+                .append(TimeUnit.NANOSECONDS.toMillis(nanos)).append("ms");
+        if (threadName != null) {
+            message.append(" on thread ").append(threadName);
         }
+        Debug.logTiming(message.toString(), module);
     }
 
     private final ModelWidget modelWidget;
@@ -43,6 +43,7 @@ import org.apache.ofbiz.entity.GenericEntityException;
 import org.apache.ofbiz.entity.GenericValue;
 import org.apache.ofbiz.entity.util.EntityQuery;
 import org.apache.ofbiz.widget.WidgetFactory;
+import org.apache.ofbiz.widget.cache.FragmentCache;
 import org.apache.ofbiz.widget.model.CommonWidgetModels.AutoEntityParameters;
 import org.apache.ofbiz.widget.model.CommonWidgetModels.AutoServiceParameters;
 import org.apache.ofbiz.widget.model.CommonWidgetModels.Image;
@@ -54,6 +55,7 @@ import org.apache.ofbiz.widget.renderer.FormStringRenderer;
 import org.apache.ofbiz.widget.renderer.MenuStringRenderer;
 import org.apache.ofbiz.widget.renderer.ScreenRenderer;
 import org.apache.ofbiz.widget.renderer.ScreenStringRenderer;
+import org.apache.ofbiz.widget.renderer.StreamingWriter;
 import org.apache.ofbiz.widget.renderer.TreeStringRenderer;
 import org.apache.ofbiz.widget.renderer.VisualTheme;
 import org.w3c.dom.Element;
@@ -129,7 +131,10 @@ public abstract class ModelScreenWidget extends ModelWidget {
             ModelScreenWidget section = sectionMap.get(sectionName);
             // if no section by that name, write nothing
             if (section != null) {
+                // when streaming, send what precedes the section, like the document head, before running its actions
+                StreamingWriter.flushChunk(this.writer);
                 section.renderWidgetString(this.writer, this.context, this.screenStringRenderer);
+                StreamingWriter.flushChunk(this.writer);
             }
             return "";
         }
@@ -209,9 +214,12 @@ public abstract class ModelScreenWidget extends ModelWidget {
         public static final String TAG_NAME = "section";
         private final ModelCondition condition;
         private final List<ModelAction> actions;
+        private final boolean parallelActions;
         private final List<ModelScreenWidget> subWidgets;
         private final List<ModelScreenWidget> failWidgets;
         private final boolean isMainSection;
+        private final boolean useCache;
+        private final FlexibleStringExpander cacheKeyExdr;
 
         public Section(ModelScreen modelScreen, Element sectionElement) {
             this(modelScreen, sectionElement, false);
@@ -233,8 +241,10 @@ public abstract class ModelScreenWidget extends ModelWidget {
             Element actionsElement = UtilXml.firstChildElement(sectionElement, "actions");
             if (actionsElement != null) {
                 this.actions = AbstractModelAction.readSubActions(modelScreen, actionsElement);
+                this.parallelActions = "true".equals(actionsElement.getAttribute("parallel"));
             } else {
                 this.actions = Collections.emptyList();
+                this.parallelActions = false;
             }
 
             // read sub-widgets
@@ -255,6 +265,8 @@ public abstract class ModelScreenWidget extends ModelWidget {
                 this.failWidgets = Collections.emptyList();
             }
             this.isMainSection = isMainSection;
+            this.useCache = "true".equals(sectionElement.getAttribute("use-cache"));
+            this.cacheKeyExdr = FlexibleStringExpander.getInstance(sectionElement.getAttribute("cache-key"));
         }
 
         @Override
@@ -264,6 +276,15 @@ public abstract class ModelScreenWidget extends ModelWidget {
 
         @Override
         public void renderWidgetString(Appendable writer, Map<String, Object> context, ScreenStringRenderer screenStringRenderer) throws GeneralException, IOException {
+            if (this.useCache) {
+                FragmentCache.render(this, this.cacheKeyExdr.expandString(context), writer, context, screenStringRenderer,
+                        fragmentWriter -> renderSection(fragmentWriter, context, screenStringRenderer));
+            } else {
+                renderSection(writer, context, screenStringRenderer);
+            }
+        }
+
+        private void renderSection(Appendable writer, Map<String, Object> context, ScreenStringRenderer screenStringRenderer) throws GeneralException, IOException {
             // check the condition, if there is one
             boolean condTrue = true;
             if (this.condition != null) {
@@ -275,7 +296,11 @@ public abstract class ModelScreenWidget extends ModelWidget {
             // if condition does not exist or evals to true run actions and render widgets, otherwise render fail-widgets
             if (condTrue) {
                 // run the actions only if true
-                AbstractModelAction.runSubActions(this.actions, context);
+                if (this.parallelActions) {
+                    ParallelActions.runSubActions(this.actions, context);
+                } else {
+                    AbstractModelAction.runSubActions(this.actions, context);
+                }
 
                 try {
                     // section by definition do not themselves do anything, so this method will generally do nothing, but we'll call it anyway
@@ -320,6 +345,10 @@ public abstract class ModelScreenWidget extends ModelWidget {
             return actions;
         }
 
+        public boolean getParallelActions() {
+            return parallelActions;
+        }
+
         public List<ModelScreenWidget> getSubWidgets() {
             return subWidgets;
         }
@@ -335,6 +364,14 @@ public abstract class ModelScreenWidget extends ModelWidget {
         public ModelCondition getCondition() {
             return condition;
         }
+
+        public boolean getUseCache() {
+            return useCache;
+        }
+
+        public FlexibleStringExpander getCacheKeyExdr() {
+            return cacheKeyExdr;
+        }
     }
 
     public static final class ColumnContainer extends ModelScreenWidget {
@@ -1291,6 +1328,8 @@ public abstract class ModelScreenWidget extends ModelWidget {
     public static final class PlatformSpecific extends ModelScreenWidget {
         public static final String TAG_NAME = "platform-specific";
         private final Map<String, ModelScreenWidget> subWidgets;
+        private final boolean useCache;
+        private final FlexibleStringExpander cacheKeyExdr;
 
         public PlatformSpecific(ModelScreen modelScreen, Element platformSpecificElement) {
             super(modelScreen, platformSpecificElement);
@@ -1316,10 +1355,21 @@ public abstract class ModelScreenWidget extends ModelWidget {
                 }
             }
             this.subWidgets = Collections.unmodifiableMap(subWidgets);
+            this.useCache = "true".equals(platformSpecificElement.getAttribute("use-cache"));
+            this.cacheKeyExdr = FlexibleStringExpander.getInstance(platformSpecificElement.getAttribute("cache-key"));
         }
 
         @Override
         public void renderWidgetString(Appendable writer, Map<String, Object> context, ScreenStringRenderer screenStringRenderer) throws GeneralException, IOException {
+            if (this.useCache) {
+                FragmentCache.render(this, this.cacheKeyExdr.expandString(context), writer, context, screenStringRenderer,
+                        fragmentWriter -> renderSubWidget(fragmentWriter, context, screenStringRenderer));
+            } else {
+                renderSubWidget(writer, context, screenStringRenderer);
+            }
+        }
+
+        private void renderSubWidget(Appendable writer, Map<String, Object> context, ScreenStringRenderer screenStringRenderer) throws GeneralException, IOException {
             ModelScreenWidget subWidget = null;
             subWidget = subWidgets.get(screenStringRenderer.getRendererName());
             if (subWidget == null) {
@@ -1340,6 +1390,14 @@ public abstract class ModelScreenWidget extends ModelWidget {
         public Map<String, ModelScreenWidget> getSubWidgets() {
             return subWidgets;
         }
+
+        public boolean getUseCache() {
+            return useCache;
+        }
+
+        public FlexibleStringExpander getCacheKeyExdr() {
+            return cacheKeyExdr;
+        }
     }
 
     public static final class Content extends ModelScreenWidget {
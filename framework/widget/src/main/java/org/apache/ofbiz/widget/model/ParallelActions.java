@@ -0,0 +1,197 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.widget.model;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.ofbiz.base.util.Debug;
+import org.apache.ofbiz.base.util.GeneralException;
+import org.apache.ofbiz.base.util.UtilGenerics;
+import org.apache.ofbiz.base.util.UtilProperties;
+import org.apache.ofbiz.base.util.collections.MapStack;
+import org.apache.ofbiz.entity.cache.EntityDependencyRecorder;
+
+/**
+ * Runs the actions of an <code>&lt;actions parallel="true"&gt;</code> block at the same time.
+ * <p>Each action runs on a fork of the context: it reads the context as it was when the block started, and its
+ * writes go to a map of its own. The first action runs on the rendering thread and the others on a bounded pool
+ * shared by all the screens; when the pool is full the rendering thread runs them itself. Once all the actions are
+ * done, their writes are merged into the context in the order of declaration, the writes to the global context
+ * into the global context. The actions of a block must therefore not depend on each other, nor modify in place
+ * the objects they read from the context.</p>
+ * <p>The actions running on the pool are outside of the transaction of the screen. The entities they read are
+ * added to the entity dependency recording of the rendering thread, so they are taken into account by the
+ * cached fragments.</p>
+ */
+public final class ParallelActions {
+
+    public static final String module = ParallelActions.class.getName();
+
+    private static final ThreadPoolExecutor executor = createExecutor();
+    // set while the current thread runs an action of a block, a block in such an action runs sequentially
+    private static final ThreadLocal<Boolean> runningBlock = new ThreadLocal<>();
+
+    private ParallelActions() {}
+
+    private static ThreadPoolExecutor createExecutor() {
+        int threads = UtilProperties.getPropertyAsInteger("widget", "widget.screen.actions.parallel.threads", 8);
+        int queueSize = UtilProperties.getPropertyAsInteger("widget", "widget.screen.actions.parallel.queueSize", 100);
+        AtomicInteger threadCount = new AtomicInteger();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(queueSize),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "OFBiz-screen-actions-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }, new ThreadPoolExecutor.CallerRunsPolicy());
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /** An action running on its fork of the context. */
+    private static final class ForkedAction implements Runnable {
+        private final ModelAction action;
+        private final MapStack<String> context;
+        private final Map<String, Object> writes = new HashMap<>();
+        private final Map<String, Object> globalWrites = new HashMap<>();
+        private final boolean hasGlobalContext;
+        private EntityDependencyRecorder.Recording recording;
+        private long time;
+        private String threadName;
+
+        private ForkedAction(ModelAction action, Map<String, Object> parentContext) {
+            this.action = action;
+            this.context = MapStack.create(parentContext);
+            Map<String, Object> globalContext = UtilGenerics.checkMap(parentContext.get("globalContext"));
+            this.hasGlobalContext = globalContext != null;
+            if (hasGlobalContext) {
+                MapStack<String> globalFork = MapStack.create(globalContext);
+                globalFork.push(globalWrites);
+                Map<String, Object> forkedGlobals = new HashMap<>();
+                forkedGlobals.put("globalContext", globalFork);
+                this.context.push(forkedGlobals);
+            }
+            this.context.push(writes);
+        }
+
+        @Override
+        public void run() {
+            Boolean wasRunningBlock = runningBlock.get();
+            runningBlock.set(Boolean.TRUE);
+            threadName = Thread.currentThread().getName();
+            recording = EntityDependencyRecorder.start();
+            long startTime = System.nanoTime();
+            try {
+                action.runAction(context);
+            } catch (GeneralException e) {
+                throw new RuntimeException(e);
+            } finally {
+                time = System.nanoTime() - startTime;
+                EntityDependencyRecorder.stop(recording);
+                runningBlock.set(wasRunningBlock);
+            }
+        }
+    }
+
+    /**
+     * Executes the actions contained in <code>actions</code> at the same time, and merges their writes into the
+     * context in the order of declaration. The actions run sequentially when there is only one, or when the current
+     * thread already runs an action of a block.
+     *
+     * @param actions
+     * @param context
+     */
+    public static void runSubActions(List<ModelAction> actions, Map<String, Object> context) {
+        if (actions == null || actions.isEmpty()) {
+            return;
+        }
+        if (actions.size() == 1 || Boolean.TRUE.equals(runningBlock.get())) {
+            AbstractModelAction.runSubActions(actions, context);
+            return;
+        }
+        long startTime = System.nanoTime();
+        List<ForkedAction> forks = new ArrayList<>(actions.size());
+        List<FutureTask<Void>> tasks = new ArrayList<>(actions.size());
+        for (ModelAction action : actions) {
+            ForkedAction fork = new ForkedAction(action, context);
+            forks.add(fork);
+            tasks.add(new FutureTask<>(fork, null));
+        }
+        String callerName = Thread.currentThread().getName();
+        for (int i = 1; i < tasks.size(); i++) {
+            executor.execute(tasks.get(i));
+        }
+        tasks.get(0).run();
+        RuntimeException error = null;
+        boolean interrupted = false;
+        boolean timing = Debug.timingOn();
+        for (int i = 0; i < forks.size(); i++) {
+            ForkedAction fork = forks.get(i);
+            try {
+                tasks.get(i).get();
+            } catch (InterruptedException e) {
+                interrupted = true;
+                error = new RuntimeException("Interrupted while running the parallel actions of screen [" + getScreenName(fork.action) + "]", e);
+                break;
+            } catch (ExecutionException e) {
+                // the writes of the following actions are not merged, as if they ran after the failing one
+                Throwable cause = e.getCause();
+                if (cause instanceof Error) {
+                    throw (Error) cause;
+                }
+                error = cause instanceof RuntimeException ? (RuntimeException) cause : new RuntimeException(cause);
+                break;
+            }
+            context.putAll(fork.writes);
+            if (fork.hasGlobalContext && !fork.globalWrites.isEmpty()) {
+                Map<String, Object> globalContext = UtilGenerics.checkMap(context.get("globalContext"));
+                globalContext.putAll(fork.globalWrites);
+            }
+            EntityDependencyRecorder.addRecording(fork.recording);
+            if (timing) {
+                AbstractModelAction.logTiming(fork.action, fork.time, callerName.equals(fork.threadName) ? null : fork.threadName);
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        if (error != null) {
+            throw error;
+        }
+        if (timing) {
+            Debug.logTiming("Ran " + forks.size() + " parallel actions of screen [" + getScreenName(actions.get(0)) + "] in "
+                    + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime) + "ms", module);
+        }
+    }
+
+    private static String getScreenName(ModelAction action) {
+        if (action instanceof AbstractModelAction && ((AbstractModelAction) action).getModelWidget() != null) {
+            return ((AbstractModelAction) action).getModelWidget().getName();
+        }
+        return null;
+    }
+}
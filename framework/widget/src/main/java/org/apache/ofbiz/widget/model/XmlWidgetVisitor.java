@@ -452,7 +452,12 @@ public class XmlWidgetVisitor extends XmlAbstractWidgetVisitor implements ModelW
 
     @Override
     public void visit(PlatformSpecific platformSpecific) throws Exception {
-        writer.append("<platform-specific>");
+        writer.append("<platform-specific");
+        if (platformSpecific.getUseCache()) {
+            visitAttribute("use-cache", Boolean.TRUE);
+            visitAttribute("cache-key", platformSpecific.getCacheKeyExdr());
+        }
+        writer.append(">");
         for (Map.Entry<String, ModelScreenWidget> entry : platformSpecific.getSubWidgets().entrySet()) {
             writer.append("<").append(entry.getKey()).append(">");
             entry.getValue().accept(this);
@@ -500,6 +505,10 @@ public class XmlWidgetVisitor extends XmlAbstractWidgetVisitor implements ModelW
     public void visit(Section section) throws Exception {
         writer.append("<section");
         visitModelWidget(section);
+        if (section.getUseCache()) {
+            visitAttribute("use-cache", Boolean.TRUE);
+            visitAttribute("cache-key", section.getCacheKeyExdr());
+        }
         writer.append(">");
         if (section.getCondition() != null) {
             writer.append("<condition>");
@@ -507,7 +516,11 @@ public class XmlWidgetVisitor extends XmlAbstractWidgetVisitor implements ModelW
             writer.append("</condition>");
         }
         if (!section.getActions().isEmpty()) {
-            writer.append("<actions>");
+            writer.append("<actions");
+            if (section.getParallelActions()) {
+                visitAttribute("parallel", Boolean.TRUE);
+            }
+            writer.append(">");
             visitActions(section.getActions());
             writer.append("</actions>");
         }
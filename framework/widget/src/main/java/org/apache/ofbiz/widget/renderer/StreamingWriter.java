@@ -0,0 +1,131 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.widget.renderer;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Writer streaming the output of a screen to the response in chunks.
+ * <p>The output is gathered in a bounded buffer, written to the response writer when the buffer is full, and
+ * flushed to the client at the boundaries of the decorator sections with {@link #flushChunk(Appendable)}, so the
+ * document head and the completed sections are sent while the next section runs its actions. A chunk is only
+ * flushed when output was written since the previous one. This writer is not thread safe, it is meant to be
+ * used by the thread rendering the screen.</p>
+ */
+public final class StreamingWriter extends Writer {
+
+    public static final String module = StreamingWriter.class.getName();
+
+    private final Writer out;
+    private final char[] buffer;
+    private int count = 0;
+    // true when output was written to the response writer since the last flush
+    private boolean pending = false;
+
+    /**
+     *@param out The response writer
+     *@param bufferSize The number of characters buffered before writing to the response writer
+     */
+    public StreamingWriter(Writer out, int bufferSize) {
+        if (bufferSize <= 0) {
+            throw new IllegalArgumentException("Buffer size must be positive: " + bufferSize);
+        }
+        this.out = out;
+        this.buffer = new char[bufferSize];
+    }
+
+    @Override
+    public void write(int c) throws IOException {
+        if (count == buffer.length) {
+            flushBuffer();
+        }
+        buffer[count++] = (char) c;
+    }
+
+    @Override
+    public void write(char[] cbuf, int off, int len) throws IOException {
+        if (len >= buffer.length) {
+            // larger than the buffer, do not copy it
+            flushBuffer();
+            out.write(cbuf, off, len);
+            pending = true;
+            return;
+        }
+        if (count + len > buffer.length) {
+            flushBuffer();
+        }
+        System.arraycopy(cbuf, off, buffer, count, len);
+        count += len;
+    }
+
+    @Override
+    public void write(String str, int off, int len) throws IOException {
+        if (len >= buffer.length) {
+            flushBuffer();
+            out.write(str, off, len);
+            pending = true;
+            return;
+        }
+        if (count + len > buffer.length) {
+            flushBuffer();
+        }
+        str.getChars(off, off + len, buffer, count);
+        count += len;
+    }
+
+    private void flushBuffer() throws IOException {
+        if (count > 0) {
+            out.write(buffer, 0, count);
+            count = 0;
+            pending = true;
+        }
+    }
+
+    /** Sends the output written so far to the client, if any. */
+    public void flushChunk() throws IOException {
+        flushBuffer();
+        if (pending) {
+            out.flush();
+            pending = false;
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        flushBuffer();
+        out.flush();
+        pending = false;
+    }
+
+    @Override
+    public void close() throws IOException {
+        flush();
+        out.close();
+    }
+
+    /** Sends the output written so far to the client when the writer of a screen is streaming, does nothing otherwise.
+     *@param writer The writer of the screen
+     */
+    public static void flushChunk(Appendable writer) throws IOException {
+        if (writer instanceof StreamingWriter) {
+            ((StreamingWriter) writer).flushChunk();
+        }
+    }
+}
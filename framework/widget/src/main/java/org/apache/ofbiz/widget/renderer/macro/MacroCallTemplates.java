@@ -0,0 +1,261 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.widget.renderer.macro;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.ofbiz.base.util.UtilProperties;
+import org.apache.ofbiz.base.util.cache.UtilCache;
+import org.apache.ofbiz.base.util.template.FreeMarkerWorker;
+
+import freemarker.template.Template;
+
+/**
+ * Compiled templates of the macro calls built by the macro renderers.
+ * <p>A macro call such as <code>&lt;@renderDisplayField idName="a" size=10 /&gt;</code> is split into its shape,
+ * where each string and number literal is replaced by an item of the {@link #ARGUMENTS} sequence, and the
+ * values of these literals. The shape only depends on the macro and on the arguments passed, so it is compiled
+ * once and cached, and the values are set as a template variable when the call is rendered.</p>
+ * <p>When <code>widget.macro.callTemplate.enabled</code> is false in widget.properties, each macro call is
+ * compiled into a new template as before.</p>
+ */
+public final class MacroCallTemplates {
+
+    public static final String module = MacroCallTemplates.class.getName();
+    /** The name of the variable holding the values of the literals of a macro call. */
+    static final String ARGUMENTS = "_macroCallArguments_";
+
+    private static final UtilCache<String, Template> templateCache = UtilCache.createUtilCache("widget.macro.callTemplate", 5000, 0, false);
+    private static volatile boolean enabled = !"false".equals(UtilProperties.getPropertyValue("widget", "widget.macro.callTemplate.enabled", "true"));
+
+    private MacroCallTemplates() {}
+
+    /** Returns true when the macro calls are rendered from the cached templates. */
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /** Sets whether the macro calls are rendered from the cached templates, to compare both paths.
+     *@param enabled false to compile each macro call into a new template
+     */
+    public static void setEnabled(boolean enabled) {
+        MacroCallTemplates.enabled = enabled;
+    }
+
+    /** A macro call split into its shape and the values of its literals. */
+    static final class MacroCall {
+        private final String shape;
+        private final List<Object> arguments;
+
+        private MacroCall(String shape, List<Object> arguments) {
+            this.shape = shape;
+            this.arguments = arguments;
+        }
+
+        String getShape() {
+            return shape;
+        }
+
+        /** Returns the values of the literals, as strings and big decimals. */
+        List<Object> getArguments() {
+            return arguments;
+        }
+    }
+
+    /** Splits macro calls into their shape and the values of their literals.
+     *@param macro The source of one or more FreeMarker macro calls
+     *@return The macro call, or null when the source has text outside of the tags, or literals it cannot decode
+     */
+    static MacroCall parse(String macro) {
+        StringBuilder shape = new StringBuilder(macro.length());
+        List<Object> arguments = new ArrayList<>();
+        int length = macro.length();
+        int i = 0;
+        while (i < length) {
+            char c = macro.charAt(i);
+            if (c == '<' && i + 1 < length && (macro.charAt(i + 1) == '@' || macro.charAt(i + 1) == '#' || macro.charAt(i + 1) == '/')) {
+                i = parseTag(macro, i, shape, arguments);
+                if (i < 0) {
+                    return null;
+                }
+            } else if (Character.isWhitespace(c)) {
+                shape.append(c);
+                i++;
+            } else {
+                // text is rendered as is and would make a new shape for each value
+                return null;
+            }
+        }
+        return new MacroCall(shape.toString(), arguments);
+    }
+
+    private static int parseTag(String macro, int start, StringBuilder shape, List<Object> arguments) {
+        int length = macro.length();
+        int depth = 0;
+        int i = start;
+        shape.append(macro, i, i + 2);
+        i += 2;
+        while (i < length) {
+            char c = macro.charAt(i);
+            if (c == '"' || c == '\'') {
+                boolean raw = i > start && macro.charAt(i - 1) == 'r' && !Character.isJavaIdentifierPart(macro.charAt(i - 2));
+                int end = raw ? macro.indexOf(c, i + 1) : findStringEnd(macro, i);
+                if (end < 0) {
+                    return -1;
+                }
+                String source = macro.substring(i + 1, end);
+                if (raw) {
+                    shape.setLength(shape.length() - 1);
+                    appendArgument(source, shape, arguments);
+                } else if (source.contains("${") || source.contains("#{") || source.contains("[=")) {
+                    // interpolations are evaluated by the template
+                    shape.append(macro, i, end + 1);
+                } else {
+                    String value = unescape(source);
+                    if (value == null) {
+                        return -1;
+                    }
+                    appendArgument(value, shape, arguments);
+                }
+                i = end + 1;
+            } else if (c >= '0' && c <= '9' && !Character.isJavaIdentifierPart(macro.charAt(i - 1))) {
+                int end = i;
+                while (end < length && Character.isDigit(macro.charAt(end))) {
+                    end++;
+                }
+                if (end + 1 < length && macro.charAt(end) == '.' && Character.isDigit(macro.charAt(end + 1))) {
+                    end++;
+                    while (end < length && Character.isDigit(macro.charAt(end))) {
+                        end++;
+                    }
+                }
+                appendArgument(new BigDecimal(macro.substring(i, end)), shape, arguments);
+                i = end;
+            } else {
+                shape.append(c);
+                i++;
+                if (c == '(' || c == '[' || c == '{') {
+                    depth++;
+                } else if (c == ')' || c == ']' || c == '}') {
+                    depth--;
+                } else if (c == '>' && depth <= 0) {
+                    return i;
+                }
+            }
+        }
+        return -1;
+    }
+
+    private static void appendArgument(Object value, StringBuilder shape, List<Object> arguments) {
+        shape.append(ARGUMENTS).append('[').append(arguments.size()).append(']');
+        arguments.add(value);
+    }
+
+    private static int findStringEnd(String macro, int start) {
+        char quote = macro.charAt(start);
+        for (int i = start + 1; i < macro.length(); i++) {
+            char c = macro.charAt(i);
+            if (c == '\\') {
+                i++;
+            } else if (c == quote) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static String unescape(String source) {
+        if (source.indexOf('\\') < 0) {
+            return source;
+        }
+        StringBuilder value = new StringBuilder(source.length());
+        for (int i = 0; i < source.length(); i++) {
+            char c = source.charAt(i);
+            if (c != '\\') {
+                value.append(c);
+                continue;
+            }
+            if (++i >= source.length()) {
+                return null;
+            }
+            char escaped = source.charAt(i);
+            switch (escaped) {
+            case '"':
+            case '\'':
+            case '\\':
+            case '{':
+            case '=':
+                value.append(escaped);
+                break;
+            case 'n':
+                value.append('\n');
+                break;
+            case 'r':
+                value.append('\r');
+                break;
+            case 't':
+                value.append('\t');
+                break;
+            case 'b':
+                value.append('\b');
+                break;
+            case 'f':
+                value.append('\f');
+                break;
+            case 'l':
+                value.append('<');
+                break;
+            case 'g':
+                value.append('>');
+                break;
+            case 'a':
+                value.append('&');
+                break;
+            case 'x':
+                int end = i + 1;
+                while (end < source.length() && end < i + 5 && Character.digit(source.charAt(end), 16) >= 0) {
+                    end++;
+                }
+                if (end == i + 1) {
+                    return null;
+                }
+                value.append((char) Integer.parseInt(source.substring(i + 1, end), 16));
+                i = end - 1;
+                break;
+            default:
+                return null;
+            }
+        }
+        return value.toString();
+    }
+
+    /** Returns the compiled template of a macro call shape, compiling it on the first call. */
+    static Template getTemplate(String shape) throws IOException {
+        Template template = templateCache.get(shape);
+        if (template == null) {
+            template = new Template("macroCall", new StringReader(shape), FreeMarkerWorker.getDefaultOfbizConfig());
+            template = templateCache.putIfAbsentAndGet(shape, template);
+        }
+        return template;
+    }
+}
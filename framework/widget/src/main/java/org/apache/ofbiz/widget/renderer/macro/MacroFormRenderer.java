@@ -26,6 +26,7 @@ import java.io.UnsupportedEncodingException;
 import java.net.URLEncoder;
 import java.rmi.server.UID;
 import java.sql.Timestamp;
+import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedList;
@@ -99,8 +100,12 @@ import org.apache.ofbiz.widget.renderer.VisualTheme;
 import com.ibm.icu.util.Calendar;
 
 import freemarker.core.Environment;
+import freemarker.template.SimpleNumber;
+import freemarker.template.SimpleScalar;
+import freemarker.template.SimpleSequence;
 import freemarker.template.Template;
 import freemarker.template.TemplateException;
+import freemarker.template.TemplateModel;
 
 /**
  * Widget Library - Form Renderer implementation based on Freemarker macros
@@ -149,6 +154,16 @@ public final class MacroFormRenderer implements FormStringRenderer {
             Environment environment = getEnvironment(writer);
             environment.setVariable("visualTheme", FreeMarkerWorker.autoWrap(visualTheme, environment));
             environment.setVariable("modelTheme", FreeMarkerWorker.autoWrap(visualTheme.getModelTheme(), environment));
+            MacroCallTemplates.MacroCall macroCall = MacroCallTemplates.isEnabled() ? MacroCallTemplates.parse(macro) : null;
+            if (macroCall != null) {
+                List<TemplateModel> arguments = new ArrayList<>(macroCall.getArguments().size());
+                for (Object argument : macroCall.getArguments()) {
+                    arguments.add(argument instanceof String ? new SimpleScalar((String) argument) : new SimpleNumber((Number) argument));
+                }
+                environment.setVariable(MacroCallTemplates.ARGUMENTS, new SimpleSequence(arguments, environment.getObjectWrapper()));
+                environment.include(MacroCallTemplates.getTemplate(macroCall.getShape()));
+                return;
+            }
             Reader templateReader = new StringReader(macro);
             Template template = new Template(new UID().toString(), templateReader, FreeMarkerWorker.getDefaultOfbizConfig());
             templateReader.close();
@@ -22,10 +22,13 @@ package org.apache.ofbiz.widget.test;
 import java.io.InputStream;
 
 import org.apache.ofbiz.base.start.Start;
+import org.apache.ofbiz.base.util.Debug;
 import org.apache.ofbiz.base.util.HttpClient;
 import org.apache.ofbiz.base.util.HttpClientException;
 import org.apache.ofbiz.base.util.SSLUtil;
+import org.apache.ofbiz.base.util.cache.UtilCache;
 import org.apache.ofbiz.service.testtools.OFBizTestCase;
+import org.apache.ofbiz.widget.renderer.macro.MacroCallTemplates;
 import org.apache.tika.metadata.Metadata;
 import org.apache.tika.parser.ParseContext;
 import org.apache.tika.parser.pdf.PDFParser;
@@ -34,6 +37,8 @@ import org.apache.tika.sax.BodyContentHandler;
 
 public class WidgetMacroLibraryTests extends OFBizTestCase {
 
+    public static final String module = WidgetMacroLibraryTests.class.getName();
+
     protected String screenUrl = "https://localhost:8443/webtools/control/WebtoolsLayoutDemo" ; //use existing screen to present most of layout use case
     protected final String authentificationQuery = "?USERNAME=admin&PASSWORD=ofbiz";
 
@@ -136,4 +141,53 @@ public class WidgetMacroLibraryTests extends OFBizTestCase {
         //Test if a ftl macro error is present
         assertFalse("Fop Screen contains Macro on error : see " + screentextUrl + " for more detail", screenOutString.contains("FreeMarker template error:"));
     }
+
+    /*
+     * Renders a screen a number of times after a warm up, returning the average time of a rendering in microseconds
+     */
+    private long benchmarkScreen(HttpClient http, String url, int renderings) throws Exception {
+        String screenOutString = http.post();
+        assertNotNull("Response failed from ofbiz", screenOutString);
+        assertFalse("Screen contains Macro on error : see " + url + " for more detail", screenOutString.contains("FreeMarker template error:"));
+        long start = System.nanoTime();
+        for (int i = 0; i < renderings; i++) {
+            http.post();
+        }
+        return (System.nanoTime() - start) / renderings / 1000;
+    }
+
+    /*
+     * Renders a screen built from form widgets with the macro calls compiled each time, then with the cached
+     * macro call templates, logging the average time of a rendering of both
+     */
+    private void compareFormScreen(String url, int renderings) throws Exception {
+        if (Start.getInstance().getConfig().portOffset != 0) {
+            Integer port = 8443 + Start.getInstance().getConfig().portOffset;
+            url = url.replace("8443", port.toString());
+        }
+        HttpClient http = initHttpClient();
+        http.setUrl(url.concat(url.contains("?") ? authentificationQuery.replace('?', '&') : authentificationQuery));
+        boolean enabled = MacroCallTemplates.isEnabled();
+        UtilCache<String, ?> templateCache = UtilCache.findCache("widget.macro.callTemplate");
+        try {
+            MacroCallTemplates.setEnabled(false);
+            long uncachedMicros = benchmarkScreen(http, url, renderings);
+            MacroCallTemplates.setEnabled(true);
+            templateCache.clear();
+            long cachedMicros = benchmarkScreen(http, url, renderings);
+            assertTrue("The form renderer did not use the cached macro call templates for " + url, templateCache.size() > 0);
+            Debug.logInfo("Rendered " + url + " " + renderings + " times, " + uncachedMicros + " microseconds per rendering compiling the macro calls, "
+                    + cachedMicros + " microseconds with the cached macro call templates", module);
+        } finally {
+            MacroCallTemplates.setEnabled(enabled);
+        }
+    }
+
+    public void testCacheListFormBenchmark() throws Exception {
+        compareFormScreen("https://localhost:8443/webtools/control/FindUtilCache", 20);
+    }
+
+    public void testListInventoryItemsFormBenchmark() throws Exception {
+        compareFormScreen("https://localhost:8443/facility/control/EditFacilityInventoryItems?facilityId=WebStoreWarehouse", 20);
+    }
 }
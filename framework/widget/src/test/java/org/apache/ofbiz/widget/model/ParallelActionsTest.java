@@ -0,0 +1,146 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.widget.model;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.ofbiz.base.util.GeneralException;
+import org.apache.ofbiz.base.util.UtilGenerics;
+import org.apache.ofbiz.base.util.collections.MapStack;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ParallelActionsTest {
+    private MapStack<String> context;
+
+    private interface ActionBody {
+        void run(Map<String, Object> context) throws Exception;
+    }
+
+    private static ModelAction action(ActionBody body) {
+        return new ModelAction() {
+            @Override
+            public void accept(ModelActionVisitor visitor) {
+            }
+
+            @Override
+            public void runAction(Map<String, Object> context) throws GeneralException {
+                try {
+                    body.run(context);
+                } catch (GeneralException | RuntimeException e) {
+                    throw e;
+                } catch (Exception e) {
+                    throw new GeneralException(e);
+                }
+            }
+        };
+    }
+
+    @Before
+    public void setUp() {
+        context = MapStack.create();
+        context.put("quoteId", "Q1");
+        context.put("globalContext", context.standAloneStack());
+        context.push();
+    }
+
+    @Test
+    public void writesAreMergedInDeclarationOrder() {
+        ParallelActions.runSubActions(Arrays.asList(
+                action(ctx -> {
+                    ctx.put("first", ctx.get("quoteId"));
+                    ctx.put("shared", "first");
+                }),
+                action(ctx -> {
+                    ctx.put("second", ctx.get("quoteId"));
+                    ctx.put("shared", "second");
+                })), context);
+        assertThat(context.get("first"), is("Q1"));
+        assertThat(context.get("second"), is("Q1"));
+        assertThat(context.get("shared"), is("second"));
+    }
+
+    @Test
+    public void actionsDoNotSeeTheWritesOfTheOthers() {
+        CountDownLatch written = new CountDownLatch(1);
+        Object[] seen = new Object[1];
+        ParallelActions.runSubActions(Arrays.asList(
+                action(ctx -> {
+                    ctx.put("first", "value");
+                    written.countDown();
+                }),
+                action(ctx -> {
+                    written.await(5, TimeUnit.SECONDS);
+                    seen[0] = ctx.get("first");
+                })), context);
+        assertThat(seen[0], is(nullValue()));
+        assertThat(context.get("first"), is("value"));
+    }
+
+    @Test
+    public void actionsRunAtTheSameTime() {
+        CountDownLatch started = new CountDownLatch(2);
+        ParallelActions.runSubActions(Arrays.asList(
+                action(ctx -> {
+                    started.countDown();
+                    ctx.put("first", started.await(5, TimeUnit.SECONDS));
+                }),
+                action(ctx -> {
+                    started.countDown();
+                    ctx.put("second", started.await(5, TimeUnit.SECONDS));
+                })), context);
+        assertThat(context.get("first"), is(Boolean.TRUE));
+        assertThat(context.get("second"), is(Boolean.TRUE));
+    }
+
+    @Test
+    public void globalWritesAreMergedIntoTheGlobalContext() {
+        ParallelActions.runSubActions(Arrays.asList(
+                action(ctx -> UtilGenerics.<String, Object>checkMap(ctx.get("globalContext")).put("label", "global")),
+                action(ctx -> ctx.put("local", "value"))), context);
+        context.pop();
+        assertThat(context.get("label"), is("global"));
+        assertThat(context.get("local"), is(nullValue()));
+    }
+
+    @Test
+    public void writesAfterAFailureAreNotMerged() {
+        try {
+            ParallelActions.runSubActions(Arrays.asList(
+                    action(ctx -> ctx.put("first", "value")),
+                    action(ctx -> {
+                        throw new IllegalArgumentException("lookup failed");
+                    }),
+                    action(ctx -> ctx.put("third", "value"))), context);
+            fail("The failure of an action must be thrown");
+        } catch (IllegalArgumentException e) {
+            assertThat(e.getMessage(), is("lookup failed"));
+        }
+        assertThat(context.get("first"), is("value"));
+        assertThat(context.get("third"), is(nullValue()));
+    }
+}
@@ -0,0 +1,85 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.widget.renderer;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.io.IOException;
+import java.io.StringWriter;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class StreamingWriterTest {
+
+    private static final class ResponseWriter extends StringWriter {
+        private int flushes = 0;
+
+        @Override
+        public void flush() {
+            flushes++;
+        }
+    }
+
+    private ResponseWriter response;
+    private StreamingWriter writer;
+
+    @Before
+    public void setUp() {
+        response = new ResponseWriter();
+        writer = new StreamingWriter(response, 8);
+    }
+
+    @Test
+    public void outputIsBufferedUntilChunkFlushed() throws IOException {
+        writer.append("<head>");
+        assertThat(response.toString(), is(""));
+        StreamingWriter.flushChunk(writer);
+        assertThat(response.toString(), is("<head>"));
+        assertThat(response.flushes, is(1));
+    }
+
+    @Test
+    public void fullBufferIsWrittenWithoutFlushing() throws IOException {
+        writer.append("<html>").append("<head>");
+        assertThat(response.toString(), is("<html>"));
+        writer.append("<body class=\"page\">");
+        assertThat(response.toString(), is("<html><head><body class=\"page\">"));
+        assertThat(response.flushes, is(0));
+    }
+
+    @Test
+    public void emptyChunksAreNotFlushed() throws IOException {
+        writer.append("<div>");
+        writer.flushChunk();
+        writer.flushChunk();
+        assertThat(response.flushes, is(1));
+        writer.append("</div>");
+        writer.flush();
+        assertThat(response.toString(), is("<div></div>"));
+        assertThat(response.flushes, is(2));
+    }
+
+    @Test
+    public void otherWritersAreNotFlushed() throws IOException {
+        StreamingWriter.flushChunk(response);
+        assertThat(response.flushes, is(0));
+    }
+}
@@ -0,0 +1,68 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package org.apache.ofbiz.widget.renderer.macro;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+
+import org.apache.ofbiz.widget.renderer.macro.MacroCallTemplates.MacroCall;
+import org.junit.Test;
+
+public class MacroCallTemplatesTest {
+
+    @Test
+    public void sameShapeForDifferentValues() {
+        MacroCall first = MacroCallTemplates.parse("<@renderDisplayField idName=\"a\" description=\"first\" size=10 alert=false />");
+        MacroCall second = MacroCallTemplates.parse("<@renderDisplayField idName=\"b\" description=\"second\" size=20 alert=false />");
+        assertThat(first.getShape(), is(second.getShape()));
+        assertThat(first.getArguments(), is(Arrays.<Object>asList("a", "first", new BigDecimal("10"))));
+        assertThat(second.getArguments(), is(Arrays.<Object>asList("b", "second", new BigDecimal("20"))));
+    }
+
+    @Test
+    public void literalsAreUnescaped() {
+        MacroCall call = MacroCallTemplates.parse("<@renderLabel text=\"say \\\"hi\\\" \\\\ \\l\\g\" />");
+        assertThat(call.getArguments(), is(Arrays.<Object>asList("say \"hi\" \\ <>")));
+    }
+
+    @Test
+    public void literalsInSequencesAndHashes() {
+        MacroCall call = MacroCallTemplates.parse("<@renderDropDownField options=[{\"key\":\"A\", \"description\":\"Item A\"}] />");
+        assertThat(call.getArguments(), is(Arrays.<Object>asList("key", "A", "description", "Item A")));
+        String argument = MacroCallTemplates.ARGUMENTS;
+        assertThat(call.getShape(), is("<@renderDropDownField options=[{" + argument + "[0]:" + argument + "[1], "
+                + argument + "[2]:" + argument + "[3]}] />"));
+    }
+
+    @Test
+    public void identifiersAndInterpolationsAreKept() {
+        MacroCall call = MacroCallTemplates.parse("<@renderDateTimeField hour1=3 title=\"${label}\" />");
+        assertThat(call.getShape(), is("<@renderDateTimeField hour1=" + MacroCallTemplates.ARGUMENTS + "[0] title=\"${label}\" />"));
+        assertThat(call.getArguments(), is(Arrays.<Object>asList(new BigDecimal("3"))));
+    }
+
+    @Test
+    public void textOutsideOfTags() {
+        assertThat(MacroCallTemplates.parse("Text <@renderLabel text=\"a\" />"), is(nullValue()));
+    }
+}
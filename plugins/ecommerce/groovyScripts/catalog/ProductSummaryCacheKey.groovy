@@ -0,0 +1,35 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+/*
+ * Builds the cache key of the product summary: everything the summary depends on besides the entities,
+ * the product, the category and the pricing inputs of the cart, and the names of the forms.
+ */
+
+import org.apache.ofbiz.order.shoppingcart.ShoppingCartEvents
+import org.apache.ofbiz.product.catalog.CatalogWorker
+
+cart = ShoppingCartEvents.getCartObject(request)
+productId = request.getAttribute("optProduct")?.productId ?: request.getAttribute("optProductId") ?: request.getAttribute("productId")
+categoryId = parameters.category_id ?: request.getAttribute("productCategoryId")
+
+context.productSummaryCacheKey = [productId, categoryId, request.getAttribute("productCategoryMember")?.productCategoryId,
+        CatalogWorker.getCurrentCatalogId(request), cart.getProductStoreId(), cart.getWebSiteId(), cart.getOrderType(),
+        cart.getCurrency(), cart.getPartyId(), cart.getAgreementId(), request.getAttribute("formNamePrefix"),
+        request.getAttribute("listIndex"), request.isSecure()].join("|")